@@ -0,0 +1,42 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.api
+
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry
+import com.atlassian.sal.api.websudo.WebSudoNotRequired
+import javax.ws.rs.GET
+import javax.ws.rs.Path
+import javax.ws.rs.Produces
+import javax.ws.rs.core.MediaType
+import javax.ws.rs.core.Response
+
+/**
+ * Exposes the counters, gauges and timers of the migration pipeline, the same values as the JMX bean, for monitoring
+ * which scrapes the migration while it runs. Polled, so web sudo isn't required.
+ */
+@Path("/migration/metrics")
+class MetricsEndpoint(private val metricsRegistry: MetricsRegistry) {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    @WebSudoNotRequired
+    fun getMetrics(): Response {
+        return Response
+            .ok(mapOf("metrics" to metricsRegistry.snapshot()))
+            .build()
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atlassian.migration.datacenter.api.fs
+
+import com.atlassian.migration.datacenter.core.aws.AwsRequestMetrics
+import com.atlassian.migration.datacenter.core.fs.UploadLatencies
+import com.atlassian.sal.api.websudo.WebSudoRequired
+import javax.ws.rs.DELETE
+import javax.ws.rs.GET
+import javax.ws.rs.Path
+import javax.ws.rs.Produces
+import javax.ws.rs.core.MediaType
+import javax.ws.rs.core.Response
+
+/**
+ * Exposes the latencies of the requests the filesystem migration sends to S3, per operation and file size, to tell
+ * slow S3 requests apart from other causes of a slow migration. Also exposes the requests of all AWS clients per
+ * service and operation, which tells throttling and connection pool starvation apart from other failures.
+ */
+@Path("/migration/fs/diagnostics")
+@WebSudoRequired
+class FileSystemDiagnosticsEndpoint(
+        private val uploadLatencies: UploadLatencies,
+        private val requestMetrics: AwsRequestMetrics
+) {
+
+    @GET
+    @Path("/latencies")
+    @Produces(MediaType.APPLICATION_JSON)
+    fun getLatencies(): Response {
+        val latencies = uploadLatencies.summarise().map {
+            mapOf(
+                "operation" to it.operation.apiName,
+                "sizeClass" to it.sizeClass.label,
+                "count" to it.count,
+                "p50Millis" to toMillis(it.p50Micros),
+                "p90Millis" to toMillis(it.p90Micros),
+                "p99Millis" to toMillis(it.p99Micros),
+                "maxMillis" to toMillis(it.maxMicros)
+            )
+        }
+        return Response
+            .ok(mapOf("latencies" to latencies))
+            .build()
+    }
+
+    /**
+     * Forgets the latencies recorded so far, so that the next ones can be looked at on their own.
+     */
+    @DELETE
+    @Path("/latencies")
+    fun resetLatencies(): Response {
+        uploadLatencies.reset()
+        return Response
+            .noContent()
+            .build()
+    }
+
+    @GET
+    @Path("/requests")
+    @Produces(MediaType.APPLICATION_JSON)
+    fun getRequests(): Response {
+        val requests = requestMetrics.summarise().map {
+            mapOf(
+                "service" to it.service,
+                "operation" to it.operation,
+                "calls" to it.calls,
+                "failures" to it.failures,
+                "clientFailures" to it.clientFailures,
+                "retries" to it.retries,
+                "throttled" to it.throttled,
+                "p50Millis" to toMillis(it.p50Micros),
+                "p99Millis" to toMillis(it.p99Micros),
+                "maxMillis" to toMillis(it.maxMicros),
+                "statusCodes" to it.statusCodes.mapKeys { status -> status.key.toString() }
+            )
+        }
+        return Response
+            .ok(mapOf("requests" to requests))
+            .build()
+    }
+
+    /**
+     * Forgets the AWS requests recorded so far, so that the next ones can be looked at on their own.
+     */
+    @DELETE
+    @Path("/requests")
+    fun resetRequests(): Response {
+        requestMetrics.reset()
+        return Response
+            .noContent()
+            .build()
+    }
+
+    private fun toMillis(micros: Long): Double {
+        return micros / 1000.0
+    }
+}
@@ -30,6 +30,7 @@ import com.fasterxml.jackson.core.JsonProcessingException
 import com.fasterxml.jackson.databind.ObjectMapper
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
+import java.io.UncheckedIOException
 import java.util.stream.Collectors
 import javax.ws.rs.Consumes
 import javax.ws.rs.DELETE
@@ -37,6 +38,7 @@ import javax.ws.rs.GET
 import javax.ws.rs.PUT
 import javax.ws.rs.Path
 import javax.ws.rs.Produces
+import javax.ws.rs.QueryParam
 import javax.ws.rs.core.MediaType
 import javax.ws.rs.core.Response
 
@@ -51,6 +53,8 @@ class FileSystemMigrationEndpoint(private val fsMigrationService: FilesystemMigr
 
     companion object {
         val log: Logger = LoggerFactory.getLogger(FileSystemMigrationEndpoint::class.java)
+        private const val DEFAULT_FAILED_FILES_PAGE_SIZE = 100
+        private const val MAX_FAILED_FILES_PAGE_SIZE = 1000
     }
 
     private val mapper: ObjectMapper = ObjectMapper()
@@ -118,6 +122,39 @@ class FileSystemMigrationEndpoint(private val fsMigrationService: FilesystemMigr
         }
     }
 
+    /**
+     * Pages through all the files which failed to migrate, as the report only holds the first of them. A page is read
+     * from the cursor of the previous one, the first page from cursor 0.
+     */
+    @GET
+    @Path("/report/failures")
+    @Produces(MediaType.APPLICATION_JSON)
+    @WebSudoNotRequired // Lists the same kind of information as the report
+    fun getFailedFiles(@QueryParam("cursor") cursor: Long?, @QueryParam("limit") limit: Int?): Response {
+        val report = reportManager.getCurrentReport(ReportType.Filesystem)
+            ?: return Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(mapOf("error" to "no file system migration exists"))
+                .build()
+        val pageSize = (limit ?: DEFAULT_FAILED_FILES_PAGE_SIZE).coerceAtMost(MAX_FAILED_FILES_PAGE_SIZE)
+        return try {
+            Response
+                .ok(mapper.writeValueAsString(report.readFailedFiles(cursor ?: 0, pageSize)))
+                .build()
+        } catch (e: IllegalArgumentException) {
+            Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(mapOf("error" to e.message))
+                .build()
+        } catch (e: UncheckedIOException) {
+            log.error("Unable to read failed files", e)
+            Response
+                .serverError()
+                .entity(mapOf("error" to e.message))
+                .build()
+        }
+    }
+
     @DELETE
     @Produces(MediaType.APPLICATION_JSON)
     @Path("/abort")
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atlassian.migration.datacenter.api.fs
+
+import com.atlassian.migration.datacenter.core.fs.UploadThrottle
+import com.atlassian.migration.datacenter.core.fs.UploadThrottleSettings
+import com.atlassian.sal.api.websudo.WebSudoRequired
+import com.fasterxml.jackson.annotation.JsonAutoDetect
+import javax.ws.rs.Consumes
+import javax.ws.rs.GET
+import javax.ws.rs.PUT
+import javax.ws.rs.Path
+import javax.ws.rs.Produces
+import javax.ws.rs.core.MediaType
+import javax.ws.rs.core.Response
+
+/**
+ * Reads and adjusts the limits on how fast files are uploaded while the migration runs. Limits left out of an update
+ * keep their current value, 0 removes a limit.
+ */
+@Path("/migration/fs/throttle")
+@WebSudoRequired
+class FileSystemThrottleEndpoint(private val uploadThrottle: UploadThrottle) {
+
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    fun getThrottle(): Response {
+        return Response
+            .ok(throttleState())
+            .build()
+    }
+
+    @PUT
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    fun updateThrottle(update: ThrottleWebObject?): Response {
+        val current = uploadThrottle.settings
+        return try {
+            uploadThrottle.settings = UploadThrottleSettings(
+                update?.businessHoursBytesPerSecond ?: current.businessHoursBytesPerSecond,
+                update?.businessHoursRequestsPerSecond ?: current.businessHoursRequestsPerSecond,
+                update?.offHoursBytesPerSecond ?: current.offHoursBytesPerSecond,
+                update?.offHoursRequestsPerSecond ?: current.offHoursRequestsPerSecond,
+                update?.businessHoursStart ?: current.businessHoursStart,
+                update?.businessHoursEnd ?: current.businessHoursEnd
+            )
+            Response
+                .ok(throttleState())
+                .build()
+        } catch (e: IllegalArgumentException) {
+            Response
+                .status(Response.Status.BAD_REQUEST)
+                .entity(mapOf("error" to e.message))
+                .build()
+        }
+    }
+
+    private fun throttleState(): Map<String, Any> {
+        val settings = uploadThrottle.settings
+        return mapOf(
+            "businessHoursBytesPerSecond" to settings.businessHoursBytesPerSecond,
+            "businessHoursRequestsPerSecond" to settings.businessHoursRequestsPerSecond,
+            "offHoursBytesPerSecond" to settings.offHoursBytesPerSecond,
+            "offHoursRequestsPerSecond" to settings.offHoursRequestsPerSecond,
+            "businessHoursStart" to settings.businessHoursStart,
+            "businessHoursEnd" to settings.businessHoursEnd,
+            "businessHours" to uploadThrottle.isBusinessHours,
+            "bytesPerSecond" to uploadThrottle.bytesPerSecond,
+            "requestsPerSecond" to uploadThrottle.requestsPerSecond
+        )
+    }
+
+    @JsonAutoDetect
+    class ThrottleWebObject {
+        var businessHoursBytesPerSecond: Long? = null
+        var businessHoursRequestsPerSecond: Long? = null
+        var offHoursBytesPerSecond: Long? = null
+        var offHoursRequestsPerSecond: Long? = null
+        var businessHoursStart: Int? = null
+        var businessHoursEnd: Int? = null
+    }
+}
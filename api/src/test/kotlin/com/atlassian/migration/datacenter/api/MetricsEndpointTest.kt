@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.api
+
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import java.util.concurrent.TimeUnit
+import javax.ws.rs.core.Response
+
+internal class MetricsEndpointTest {
+    private val registry = MetricsRegistry()
+    private val endpoint = MetricsEndpoint(registry)
+
+    @Test
+    fun shouldReturnSnapshotOfMetrics() {
+        registry.counter("crawler.files").add(3)
+        registry.gauge("queue.depth") { 7L }
+        registry.timer("queue.putBlocked").record(2, TimeUnit.MILLISECONDS)
+
+        val response = endpoint.getMetrics()
+
+        assertEquals(Response.Status.OK.statusCode, response.status)
+        val metrics = (response.entity as Map<*, *>)["metrics"] as Map<*, *>
+        assertEquals(3L, metrics["crawler.files"])
+        assertEquals(7L, metrics["queue.depth"])
+        assertEquals(1L, metrics["queue.putBlocked.count"])
+        assertEquals(2000L, metrics["queue.putBlocked.totalMicros"])
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atlassian.migration.datacenter.api.fs
+
+import com.atlassian.migration.datacenter.core.aws.AwsRequestMetrics
+import com.atlassian.migration.datacenter.core.fs.UploadLatencies
+import io.mockk.every
+import io.mockk.mockk
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute
+import software.amazon.awssdk.http.SdkHttpResponse
+import java.util.concurrent.TimeUnit
+import javax.ws.rs.core.Response
+
+internal class FileSystemDiagnosticsEndpointTest {
+    private val latencies = UploadLatencies()
+    private val requestMetrics = AwsRequestMetrics()
+    private val endpoint = FileSystemDiagnosticsEndpoint(latencies, requestMetrics)
+
+    @Test
+    fun shouldReturnLatenciesPerOperationAndSizeClass() {
+        latencies.record(UploadLatencies.Operation.PUT_OBJECT, 1024, TimeUnit.MILLISECONDS.toNanos(20))
+        latencies.record(UploadLatencies.Operation.UPLOAD_PART, 2L * 1024 * 1024 * 1024, TimeUnit.MILLISECONDS.toNanos(900))
+
+        val response = endpoint.getLatencies()
+
+        assertEquals(Response.Status.OK.statusCode, response.status)
+        val entries = (response.entity as Map<*, *>)["latencies"] as List<*>
+        assertEquals(2, entries.size)
+        val putObject = entries[0] as Map<*, *>
+        assertEquals("PutObject", putObject["operation"])
+        assertEquals("<64KB", putObject["sizeClass"])
+        assertEquals(1L, putObject["count"])
+        assertEquals(20.0, putObject["maxMillis"])
+        val uploadPart = entries[1] as Map<*, *>
+        assertEquals("UploadPart", uploadPart["operation"])
+        assertEquals("1GB+", uploadPart["sizeClass"])
+    }
+
+    @Test
+    fun shouldForgetLatenciesWhenReset() {
+        latencies.record(UploadLatencies.Operation.PUT_OBJECT, 1024, TimeUnit.MILLISECONDS.toNanos(20))
+
+        assertEquals(Response.Status.NO_CONTENT.statusCode, endpoint.resetLatencies().status)
+
+        val entries = (endpoint.getLatencies().entity as Map<*, *>)["latencies"] as List<*>
+        assertEquals(0, entries.size)
+    }
+
+    @Test
+    fun shouldReturnAwsRequestsPerServiceAndOperation() {
+        val attributes = ExecutionAttributes()
+            .putAttribute(SdkExecutionAttribute.SERVICE_NAME, "SQS")
+            .putAttribute(SdkExecutionAttribute.OPERATION_NAME, "ReceiveMessage")
+        requestMetrics.beforeExecution(mockk(), attributes)
+        requestMetrics.beforeTransmission(mockk(), attributes)
+        requestMetrics.afterTransmission(mockk {
+            every { httpResponse() } returns SdkHttpResponse.builder().statusCode(200).build()
+        }, attributes)
+        requestMetrics.afterExecution(mockk(), attributes)
+
+        val response = endpoint.getRequests()
+
+        assertEquals(Response.Status.OK.statusCode, response.status)
+        val requests = (response.entity as Map<*, *>)["requests"] as List<*>
+        assertEquals(1, requests.size)
+        val receiveMessage = requests[0] as Map<*, *>
+        assertEquals("SQS", receiveMessage["service"])
+        assertEquals("ReceiveMessage", receiveMessage["operation"])
+        assertEquals(1L, receiveMessage["calls"])
+        assertEquals(0L, receiveMessage["retries"])
+        assertEquals(mapOf("200" to 1L), receiveMessage["statusCodes"])
+
+        assertEquals(Response.Status.NO_CONTENT.statusCode, endpoint.resetRequests().status)
+        assertEquals(0, ((endpoint.getRequests().entity as Map<*, *>)["requests"] as List<*>).size)
+    }
+}
@@ -20,7 +20,9 @@ import com.atlassian.migration.datacenter.core.fs.ReportType
 import com.atlassian.migration.datacenter.core.fs.captor.AttachmentSyncManager
 import com.atlassian.migration.datacenter.spi.MigrationService
 import com.atlassian.migration.datacenter.spi.fs.FilesystemMigrationService
+import com.atlassian.migration.datacenter.spi.fs.reporting.ConcurrencyAdjustment
 import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFilePage
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport
 import com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus
 import com.fasterxml.jackson.annotation.JsonAutoDetect
@@ -79,10 +81,21 @@ class FileSystemMigrationProgressEndpointTest {
             every { getNumberOfCommencedFileUploads() } returns 1L
             every { getNumberOfFilesFound() } returns 1L
             every { failedFiles } returns failedFilesCollection
+            every { getFailedFilesCount() } returns 1L
+            every { getFailedFilesCountByReason() } returns mapOf(testReason to 1L)
             every { getCountOfUploadedFiles() } returns 1L
             every { elapsedTime } returns Duration.ofMinutes(1)
             every { getCountOfDownloadFiles() } returns 1L
             every { isCrawlingFinished() } returns true
+            every { getUploadConcurrency() } returns 25
+            every { getUploadConcurrencyAdjustments() } returns listOf(ConcurrencyAdjustment(0, 50, 25, "Throttled by S3"))
+            every { getBytesFound() } returns 4096L
+            every { getBytesUploaded() } returns 1024L
+            every { getBytesDownloaded() } returns 512L
+            every { getUploadBytesPerSecond() } returns 256.0
+            every { getUploadFilesPerSecond() } returns 0.5
+            every { getDownloadBytesPerSecond() } returns 0.0
+            every { getEstimatedSecondsRemaining() } returns 12L
         }
 
         val response = endpoint.getFilesystemMigrationStatus()
@@ -98,6 +111,15 @@ class FileSystemMigrationProgressEndpointTest {
         val responseSuccessFileCount = tree.at("/uploadedFiles").asLong()
         val responseDownloadFileCount = tree.at("/downloadedFiles").asLong()
         val responseAllFilesFound = tree.at("/crawlingFinished").asBoolean()
+        val responseUploadConcurrency = tree.at("/uploadConcurrency").asInt()
+        val responseAdjustmentReason = tree.at("/uploadConcurrencyAdjustments/0/reason").asText()
+        val responseFailedFilesCount = tree.at("/failedFilesCount").asLong()
+        val responseReasonCount = tree.at("/failureReasons/$testReason").asLong()
+        val responseBytesFound = tree.at("/bytesFound").asLong()
+        val responseUploadedBytes = tree.at("/uploadedBytes").asLong()
+        val responseDownloadedBytes = tree.at("/downloadedBytes").asLong()
+        val responseUploadBytesPerSecond = tree.at("/uploadBytesPerSecond").asDouble()
+        val responseEstimatedSecondsRemaining = tree.at("/estimatedSecondsRemaining").asLong()
 
         assertEquals(FilesystemMigrationStatus.UPLOADING.name, responseStatus)
         assertEquals(testReason, responseReason)
@@ -105,6 +127,15 @@ class FileSystemMigrationProgressEndpointTest {
         assertEquals(1, responseSuccessFileCount)
         assertEquals(1, responseDownloadFileCount)
         assertTrue(responseAllFilesFound)
+        assertEquals(25, responseUploadConcurrency)
+        assertEquals("Throttled by S3", responseAdjustmentReason)
+        assertEquals(1, responseFailedFilesCount)
+        assertEquals(1, responseReasonCount)
+        assertEquals(4096, responseBytesFound)
+        assertEquals(1024, responseUploadedBytes)
+        assertEquals(512, responseDownloadedBytes)
+        assertEquals(256.0, responseUploadBytesPerSecond)
+        assertEquals(12, responseEstimatedSecondsRemaining)
     }
 
     @Test
@@ -116,6 +147,15 @@ class FileSystemMigrationProgressEndpointTest {
         every { report.getNumberOfCommencedFileUploads() } returns 1000000L
         every { report.getCountOfDownloadFiles() } returns 1000000L
         every { report.isCrawlingFinished() } returns true
+        every { report.getUploadConcurrency() } returns 50
+        every { report.getUploadConcurrencyAdjustments() } returns emptyList()
+        every { report.getBytesFound() } returns 1000000L * 1024
+        every { report.getBytesUploaded() } returns 1000000L * 1024
+        every { report.getBytesDownloaded() } returns 1000000L * 1024
+        every { report.getUploadBytesPerSecond() } returns 0.0
+        every { report.getUploadFilesPerSecond() } returns 0.0
+        every { report.getDownloadBytesPerSecond() } returns 0.0
+        every { report.getEstimatedSecondsRemaining() } returns 0L
         val failedFiles: MutableSet<FailedFileMigration?> = HashSet()
         val testReason = "test reason"
         val testFile = Paths.get("file")
@@ -124,6 +164,8 @@ class FileSystemMigrationProgressEndpointTest {
             failedFiles.add(failedFileMigration)
         }
         every { report.failedFiles } returns failedFiles as Set<FailedFileMigration>
+        every { report.getFailedFilesCount() } returns 100L
+        every { report.getFailedFilesCountByReason() } returns mapOf(testReason to 100L)
         every { report.getCountOfUploadedFiles() } returns 1000000L
 
         val response = endpoint.getFilesystemMigrationStatus()
@@ -148,6 +190,29 @@ class FileSystemMigrationProgressEndpointTest {
         assertTrue(responseAllFilesFound)
     }
 
+    @Test
+    fun shouldReturnPageOfFailedFiles() {
+        every { reportManager.getCurrentReport(ReportType.Filesystem) } returns report
+        every { report.readFailedFiles(42, 10) } returns FailedFilePage(listOf(FailedFileMigration(Paths.get("file"), "test reason")), 84)
+
+        val response = endpoint.getFailedFiles(42, 10)
+
+        val tree = ObjectMapper().reader().readTree(response.entity as String)
+        assertEquals(Response.Status.OK.statusCode, response.status)
+        assertEquals("test reason", tree.at("/failedFiles/0/reason").asText())
+        assertEquals(84, tree.at("/nextCursor").asLong())
+    }
+
+    @Test
+    fun shouldReadFirstPageOfFailedFilesByDefault() {
+        every { reportManager.getCurrentReport(ReportType.Filesystem) } returns report
+        every { report.readFailedFiles(0, 100) } returns FailedFilePage(emptyList(), 0)
+
+        val response = endpoint.getFailedFiles(null, null)
+
+        assertEquals(Response.Status.OK.statusCode, response.status)
+    }
+
     @Test
     fun shouldReturnBadRequestWhenNoReportExists() {
         every { reportManager.getCurrentReport(ReportType.Filesystem) } returns null
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.api.fs
+
+import com.atlassian.migration.datacenter.api.fs.FileSystemThrottleEndpoint.ThrottleWebObject
+import com.atlassian.migration.datacenter.core.fs.UploadThrottle
+import com.atlassian.migration.datacenter.core.fs.UploadThrottleSettings
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+import javax.ws.rs.core.Response
+
+internal class FileSystemThrottleEndpointTest {
+    private val throttle = UploadThrottle(UploadThrottleSettings(1000, 10, 5000, 50, 8, 18))
+    private val endpoint = FileSystemThrottleEndpoint(throttle)
+
+    @Test
+    fun shouldReturnCurrentLimits() {
+        val response = endpoint.getThrottle()
+
+        assertEquals(Response.Status.OK.statusCode, response.status)
+        val entity = response.entity as Map<*, *>
+        assertEquals(1000L, entity["businessHoursBytesPerSecond"])
+        assertEquals(50L, entity["offHoursRequestsPerSecond"])
+        assertEquals(8, entity["businessHoursStart"])
+    }
+
+    @Test
+    fun shouldOnlyChangeLimitsGivenInUpdate() {
+        val update = ThrottleWebObject()
+        update.offHoursBytesPerSecond = 0
+        update.businessHoursEnd = 17
+
+        val response = endpoint.updateThrottle(update)
+
+        assertEquals(Response.Status.OK.statusCode, response.status)
+        val settings = throttle.settings
+        assertEquals(1000L, settings.businessHoursBytesPerSecond)
+        assertEquals(10L, settings.businessHoursRequestsPerSecond)
+        assertEquals(0L, settings.offHoursBytesPerSecond)
+        assertEquals(50L, settings.offHoursRequestsPerSecond)
+        assertEquals(17, settings.businessHoursEnd)
+    }
+
+    @Test
+    fun shouldRejectInvalidLimits() {
+        val update = ThrottleWebObject()
+        update.businessHoursRequestsPerSecond = -1
+
+        val response = endpoint.updateThrottle(update)
+
+        assertEquals(Response.Status.BAD_REQUEST.statusCode, response.status)
+        assertEquals(10L, throttle.settings.businessHoursRequestsPerSecond)
+    }
+}
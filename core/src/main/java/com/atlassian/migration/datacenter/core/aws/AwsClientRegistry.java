@@ -0,0 +1,203 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.aws;
+
+import com.atlassian.migration.datacenter.core.aws.auth.ReadCredentialsService;
+import com.atlassian.migration.datacenter.core.aws.region.RegionService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.core.SdkClient;
+import software.amazon.awssdk.regions.Region;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Hands out one AWS SDK client per service and region, shared by everything calling that service.
+ * <p>
+ * Building a client starts its own connection pool, and for asynchronous clients its own event loop, so a client
+ * built for every call costs a TLS handshake per call and leaks threads as long as nobody closes it. Clients of the
+ * registry are built on first use instead and reused afterwards.
+ * <p>
+ * Every lookup checks the stored region and credentials, so a client is replaced, and the old one closed, as soon as
+ * the migration is configured with another region or other credentials. All clients are closed when the plugin is
+ * disabled. Callers must therefore not close the clients they get, nor hold on to them beyond the operation at hand.
+ */
+public class AwsClientRegistry implements DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(AwsClientRegistry.class);
+
+    private final AwsCredentialsProvider credentialsProvider;
+    private final RegionService regionService;
+    private final ReadCredentialsService readCredentialsService;
+    private final Map<ClientKey, CachedClient> clients = new ConcurrentHashMap<>();
+
+    public AwsClientRegistry(AwsCredentialsProvider credentialsProvider, RegionService regionService, ReadCredentialsService readCredentialsService) {
+        this.credentialsProvider = credentialsProvider;
+        this.regionService = regionService;
+        this.readCredentialsService = readCredentialsService;
+    }
+
+    /**
+     * Builds a client of one service.
+     */
+    @FunctionalInterface
+    public interface ClientFactory<T extends SdkClient> {
+        T create(AwsCredentialsProvider credentialsProvider, Region region);
+    }
+
+    /**
+     * @param type    the client interface of the service, e.g. {@code S3AsyncClient.class}
+     * @param factory builds the client when there is none for the current region and credentials yet
+     * @return a supplier of the shared client of the service in the region the migration is configured with
+     */
+    public <T extends SdkClient> Supplier<T> supplier(Class<T> type, ClientFactory<T> factory) {
+        return () -> lookup(type, null, factory);
+    }
+
+    /**
+     * @param type    the client interface of the service, e.g. {@code Ec2Client.class}
+     * @param region  the region to call, regardless of the region the migration is configured with
+     * @param factory builds the client when there is none for the region and current credentials yet
+     * @return the shared client of the service in the region
+     */
+    public <T extends SdkClient> T get(Class<T> type, Region region, ClientFactory<T> factory) {
+        return lookup(type, region.id(), factory);
+    }
+
+    /**
+     * Closes all clients, e.g. because the plugin is disabled. Clients asked for afterwards are built again.
+     */
+    public void invalidateAll() {
+        final List<CachedClient> closing = new ArrayList<>();
+        synchronized (clients) {
+            closing.addAll(clients.values());
+            clients.clear();
+        }
+        closing.forEach(CachedClient::close);
+    }
+
+    @Override
+    public void destroy() {
+        logger.debug("Closing all AWS clients");
+        invalidateAll();
+    }
+
+    private <T extends SdkClient> T lookup(Class<T> type, String fixedRegion, ClientFactory<T> factory) {
+        final ClientKey key = new ClientKey(type, fixedRegion);
+        final String region = fixedRegion != null ? fixedRegion : regionService.getRegion();
+        final byte[] credentials = credentialsFingerprint();
+
+        CachedClient cached = clients.get(key);
+        if (cached != null && cached.isFor(region, credentials)) {
+            return type.cast(cached.client);
+        }
+        final CachedClient replaced;
+        synchronized (clients) {
+            cached = clients.get(key);
+            if (cached != null && cached.isFor(region, credentials)) {
+                return type.cast(cached.client);
+            }
+            logger.debug("Creating {} for region {}", type.getSimpleName(), region);
+            replaced = cached;
+            cached = new CachedClient(factory.create(credentialsProvider, Region.of(region)), region, credentials);
+            clients.put(key, cached);
+        }
+        if (replaced != null) {
+            logger.info("Region or credentials changed, replacing {} for region {}", type.getSimpleName(), replaced.region);
+            replaced.close();
+        }
+        return type.cast(cached.client);
+    }
+
+    /**
+     * Hashes the stored credentials rather than keeping them in the clear, it only needs to tell whether they changed.
+     */
+    private byte[] credentialsFingerprint() {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(readCredentialsService.getAccessKeyId()).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(readCredentialsService.getSecretAccessKey()).getBytes(StandardCharsets.UTF_8));
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static final class ClientKey {
+        private final Class<?> type;
+        // null for clients following the region the migration is configured with
+        private final String fixedRegion;
+
+        ClientKey(Class<?> type, String fixedRegion) {
+            this.type = type;
+            this.fixedRegion = fixedRegion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ClientKey)) {
+                return false;
+            }
+            final ClientKey other = (ClientKey) o;
+            return type.equals(other.type) && Objects.equals(fixedRegion, other.fixedRegion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, fixedRegion);
+        }
+    }
+
+    private static final class CachedClient {
+        private final SdkClient client;
+        private final String region;
+        private final byte[] credentials;
+
+        CachedClient(SdkClient client, String region, byte[] credentials) {
+            this.client = client;
+            this.region = region;
+            this.credentials = credentials;
+        }
+
+        boolean isFor(String region, byte[] credentials) {
+            return this.region.equals(region) && Arrays.equals(this.credentials, credentials);
+        }
+
+        void close() {
+            try {
+                client.close();
+            } catch (RuntimeException e) {
+                logger.warn("Error closing {} client for region {}", client.serviceName(), region, e);
+            }
+        }
+    }
+}
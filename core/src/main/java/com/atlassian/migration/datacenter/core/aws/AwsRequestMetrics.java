@@ -0,0 +1,299 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.aws;
+
+import com.atlassian.migration.datacenter.core.util.LatencyHistogram;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the requests sent by the AWS clients per service and operation: how long the calls took, how often they
+ * were retried or throttled, and the HTTP status codes of the responses. Connection pool starvation and throttling
+ * then show up as such, rather than as anonymous failures of the migration.
+ * <p>
+ * Registered on the clients as an execution interceptor, see {@link #overrideConfiguration()}. The interceptor is
+ * called for every attempt of a call, so retries are counted as the attempts beyond the first. The SDK doesn't tell
+ * interceptors how long it waited for a connection, so a starved connection pool shows as calls taking longer and as
+ * client failures, i.e. calls which failed without a response, such as connection acquire timeouts.
+ */
+public class AwsRequestMetrics implements ExecutionInterceptor {
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    private static final int HTTP_SERVICE_UNAVAILABLE = 503;
+
+    private static final ExecutionAttribute<Call> CALL = new ExecutionAttribute<>("AwsRequestMetrics.call");
+
+    private final ConcurrentMap<OperationKey, OperationMetrics> operations = new ConcurrentHashMap<>();
+
+    /**
+     * @return the configuration registering these metrics on a client, to be passed to its builder
+     */
+    public ClientOverrideConfiguration overrideConfiguration() {
+        return ClientOverrideConfiguration.builder()
+                .addExecutionInterceptor(this)
+                .build();
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(CALL, new Call(System.nanoTime()));
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        final Call call = executionAttributes.getAttribute(CALL);
+        if (call != null) {
+            call.attempts++;
+            // Cleared, so that an attempt failing without a response isn't mistaken for the response of the one before
+            call.lastStatus = Call.NO_RESPONSE;
+        }
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        final int status = context.httpResponse().statusCode();
+        final Call call = executionAttributes.getAttribute(CALL);
+        if (call != null) {
+            call.lastStatus = status;
+        }
+        final OperationMetrics metrics = metricsOf(executionAttributes);
+        metrics.statusCodes.computeIfAbsent(status, code -> new LongAdder()).increment();
+        if (status == HTTP_TOO_MANY_REQUESTS || status == HTTP_SERVICE_UNAVAILABLE) {
+            metrics.throttled.increment();
+        }
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        completed(executionAttributes);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        final OperationMetrics metrics = completed(executionAttributes);
+        metrics.failures.increment();
+        final Call call = executionAttributes.getAttribute(CALL);
+        final int lastStatus = call == null ? Call.NO_RESPONSE : call.lastStatus;
+        if (lastStatus == Call.NO_RESPONSE) {
+            metrics.clientFailures.increment();
+        } else if (lastStatus != HTTP_TOO_MANY_REQUESTS && lastStatus != HTTP_SERVICE_UNAVAILABLE && isThrottling(context.exception())) {
+            // Some services throttle with a 400 and an error code, which is only known once the response is parsed
+            metrics.throttled.increment();
+        }
+    }
+
+    /**
+     * @return the requests of every service and operation which was called, sorted by service and operation
+     */
+    public List<Summary> summarise() {
+        final List<Summary> summaries = new ArrayList<>();
+        for (Map.Entry<OperationKey, OperationMetrics> entry : operations.entrySet()) {
+            summaries.add(new Summary(entry.getKey(), entry.getValue()));
+        }
+        summaries.sort(Comparator.comparing(Summary::getService).thenComparing(Summary::getOperation));
+        return summaries;
+    }
+
+    /**
+     * Forgets all requests, so that the next ones can be looked at on their own. Calls in flight at the time are
+     * accounted to the new figures.
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    private OperationMetrics completed(ExecutionAttributes executionAttributes) {
+        final OperationMetrics metrics = metricsOf(executionAttributes);
+        metrics.calls.increment();
+        final Call call = executionAttributes.getAttribute(CALL);
+        if (call != null) {
+            metrics.retries.add(Math.max(0, call.attempts - 1));
+            metrics.duration.record(System.nanoTime() - call.started, TimeUnit.NANOSECONDS);
+        }
+        return metrics;
+    }
+
+    private OperationMetrics metricsOf(ExecutionAttributes executionAttributes) {
+        final OperationKey key = new OperationKey(
+                executionAttributes.getAttribute(SdkExecutionAttribute.SERVICE_NAME),
+                executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME));
+        return operations.computeIfAbsent(key, k -> new OperationMetrics());
+    }
+
+    private static boolean isThrottling(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkServiceException && ((SdkServiceException) cause).isThrottlingException()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * State of a call across its attempts. The attempts of a call run one after the other, though not necessarily on
+     * the same thread.
+     */
+    private static final class Call {
+        static final int NO_RESPONSE = -1;
+
+        final long started;
+        volatile int attempts;
+        volatile int lastStatus = NO_RESPONSE;
+
+        Call(long started) {
+            this.started = started;
+        }
+    }
+
+    private static final class OperationKey {
+        private final String service;
+        private final String operation;
+
+        OperationKey(String service, String operation) {
+            this.service = String.valueOf(service);
+            this.operation = String.valueOf(operation);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof OperationKey)) {
+                return false;
+            }
+            final OperationKey other = (OperationKey) o;
+            return service.equals(other.service) && operation.equals(other.operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(service, operation);
+        }
+    }
+
+    private static final class OperationMetrics {
+        final LongAdder calls = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder clientFailures = new LongAdder();
+        final LongAdder retries = new LongAdder();
+        final LongAdder throttled = new LongAdder();
+        final LatencyHistogram duration = new LatencyHistogram();
+        final ConcurrentMap<Integer, LongAdder> statusCodes = new ConcurrentHashMap<>();
+    }
+
+    public static final class Summary {
+        private final String service;
+        private final String operation;
+        private final long calls;
+        private final long failures;
+        private final long clientFailures;
+        private final long retries;
+        private final long throttled;
+        private final LatencyHistogram.Snapshot duration;
+        private final SortedMap<Integer, Long> statusCodes = new TreeMap<>();
+
+        Summary(OperationKey key, OperationMetrics metrics) {
+            this.service = key.service;
+            this.operation = key.operation;
+            this.calls = metrics.calls.sum();
+            this.failures = metrics.failures.sum();
+            this.clientFailures = metrics.clientFailures.sum();
+            this.retries = metrics.retries.sum();
+            this.throttled = metrics.throttled.sum();
+            this.duration = metrics.duration.snapshot();
+            metrics.statusCodes.forEach((status, count) -> statusCodes.put(status, count.sum()));
+        }
+
+        public String getService() {
+            return service;
+        }
+
+        public String getOperation() {
+            return operation;
+        }
+
+        /**
+         * @return the number of calls which completed, successfully or not
+         */
+        public long getCalls() {
+            return calls;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the number of failed calls whose last attempt got no response, e.g. because no connection could be
+         * acquired or the connection was reset
+         */
+        public long getClientFailures() {
+            return clientFailures;
+        }
+
+        /**
+         * @return the number of attempts beyond the first of the completed calls
+         */
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return the number of attempts which were throttled by the service
+         */
+        public long getThrottled() {
+            return throttled;
+        }
+
+        public long getP50Micros() {
+            return duration.getPercentileMicros(50);
+        }
+
+        public long getP99Micros() {
+            return duration.getPercentileMicros(99);
+        }
+
+        public long getMaxMicros() {
+            return duration.getMaxMicros();
+        }
+
+        /**
+         * @return the number of responses by HTTP status code, of all attempts
+         */
+        public SortedMap<Integer, Long> getStatusCodes() {
+            return statusCodes;
+        }
+    }
+}
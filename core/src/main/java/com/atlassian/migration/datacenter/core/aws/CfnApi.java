@@ -16,7 +16,6 @@
 
 package com.atlassian.migration.datacenter.core.aws;
 
-import com.atlassian.migration.datacenter.core.aws.region.RegionService;
 import com.atlassian.migration.datacenter.core.util.LogUtils;
 import com.atlassian.migration.datacenter.spi.exceptions.InfrastructureProvisioningError;
 import com.atlassian.migration.datacenter.spi.infrastructure.InfrastructureDeploymentError;
@@ -25,8 +24,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.cloudformation.CloudFormationAsyncClient;
 import software.amazon.awssdk.services.cloudformation.model.Capability;
 import software.amazon.awssdk.services.cloudformation.model.CreateStackRequest;
@@ -60,6 +57,7 @@ import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -68,18 +66,10 @@ import static software.amazon.awssdk.services.cloudformation.model.ResourceStatu
 public class CfnApi {
     private static final Logger logger = LoggerFactory.getLogger(CfnApi.class);
 
-    /**
-     * Stored client is only used for testing purposes
-     */
-    private final Optional<CloudFormationAsyncClient> client;
+    private final Supplier<CloudFormationAsyncClient> clientSupplier;
 
-    private AwsCredentialsProvider credentialsProvider;
-    private RegionService regionManager;
-
-    public CfnApi(AwsCredentialsProvider credentialsProvider, RegionService regionManager) {
-        this.credentialsProvider = credentialsProvider;
-        this.regionManager = regionManager;
-        this.client = Optional.empty();
+    public CfnApi(Supplier<CloudFormationAsyncClient> clientSupplier) {
+        this.clientSupplier = clientSupplier;
     }
 
     /**
@@ -89,19 +79,14 @@ public class CfnApi {
      * @param client An async CloudFormation client
      */
     CfnApi(CloudFormationAsyncClient client) {
-        this.client = Optional.of(client);
+        this(() -> client);
     }
 
     /**
      * Return a client should only be called after necessary AWS information has been provided.
      */
     private CloudFormationAsyncClient getClient() {
-        return client.orElseGet(
-                () -> CloudFormationAsyncClient.builder()
-                        .credentialsProvider(credentialsProvider)
-                        .region(Region.of(regionManager.getRegion()))
-                        .build());
-
+        return clientSupplier.get();
     }
 
     public InfrastructureDeploymentState getStatus(String stackName) {
@@ -41,8 +41,11 @@ public class DefaultAwsCloudCredentialsValidator implements CloudCredentialsVali
         try {
             Region awsRegion = Region.of(region);
             AwsBasicCredentials awsBasicCredentials = AwsBasicCredentials.create(accessKeyId, secretAccessKey);
-            StsClient stsClient = buildStsClient(awsBasicCredentials, awsRegion);
-            GetCallerIdentityResponse callerIdentity = stsClient.getCallerIdentity();
+            // Built for the candidate credentials only, so it isn't shared and must be closed here
+            GetCallerIdentityResponse callerIdentity;
+            try (StsClient stsClient = buildStsClient(awsBasicCredentials, awsRegion)) {
+                callerIdentity = stsClient.getCallerIdentity();
+            }
             logCallerIdentityMetadata(callerIdentity);
             logger.debug("Successfully retrieved AWS credentials from ");
             return true;
@@ -19,23 +19,34 @@ package com.atlassian.migration.datacenter.core.aws.db;
 import com.atlassian.migration.datacenter.core.aws.MigrationStageCallback;
 import com.atlassian.migration.datacenter.core.db.DatabaseExtractor;
 import com.atlassian.migration.datacenter.core.db.DatabaseExtractorFactory;
+import com.atlassian.migration.datacenter.core.metrics.Counter;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
+import com.atlassian.migration.datacenter.core.metrics.Timer;
 import com.atlassian.migration.datacenter.spi.exceptions.DatabaseMigrationFailure;
 import com.atlassian.migration.datacenter.spi.exceptions.InvalidMigrationStageError;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 public class DatabaseArchivalService {
-
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private DatabaseExtractorFactory databaseExtractorFactory;
     private MigrationStageCallback migrationStageCallback;
+    private final Timer exportTime;
+    private final Counter exportFailures;
 
     public DatabaseArchivalService(DatabaseExtractorFactory databaseExtractorFactory, MigrationStageCallback migrationStageCallback) {
+        this(databaseExtractorFactory, migrationStageCallback, new MetricsRegistry());
+    }
+
+    public DatabaseArchivalService(DatabaseExtractorFactory databaseExtractorFactory, MigrationStageCallback migrationStageCallback, MetricsRegistry metrics) {
         this.databaseExtractorFactory = databaseExtractorFactory;
         this.migrationStageCallback = migrationStageCallback;
+        this.exportTime = metrics.timer("db.export");
+        this.exportFailures = metrics.counter("db.exportFailures");
     }
 
     public Path archiveDatabase(Path tempDirectory) throws InvalidMigrationStageError {
@@ -45,12 +56,15 @@ public class DatabaseArchivalService {
         this.migrationStageCallback.assertInStartingStage();
 
         DatabaseExtractor databaseExtractor = databaseExtractorFactory.getExtractor();
+        final long started = System.nanoTime();
         Process extractorProcess = databaseExtractor.startDatabaseDump(target);
         this.migrationStageCallback.transitionToServiceWaitStage();
 
         try {
             extractorProcess.waitFor();
+            exportTime.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
         } catch (Exception e) {
+            exportFailures.increment();
             String msg = "Error while waiting for DB extractor to finish";
             this.migrationStageCallback.transitionToServiceErrorStage(e.getMessage());
             throw new DatabaseMigrationFailure(msg, e);
@@ -23,9 +23,13 @@ import com.atlassian.migration.datacenter.core.fs.DirectoryStreamCrawler;
 import com.atlassian.migration.datacenter.core.fs.FileSystemMigrationReportManager;
 import com.atlassian.migration.datacenter.core.fs.FileUploadException;
 import com.atlassian.migration.datacenter.core.fs.FilesystemUploader;
+import com.atlassian.migration.datacenter.core.fs.PathIgnoreList;
 import com.atlassian.migration.datacenter.core.fs.ReportType;
 import com.atlassian.migration.datacenter.core.fs.S3UploadConfig;
 import com.atlassian.migration.datacenter.core.fs.S3Uploader;
+import com.atlassian.migration.datacenter.core.fs.UploadLatencies;
+import com.atlassian.migration.datacenter.core.fs.UploadThrottle;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.spi.exceptions.InvalidMigrationStageError;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
@@ -39,13 +43,22 @@ public class DatabaseArtifactS3UploadService {
     private final MigrationStageCallback migrationStageCallback;
     private S3AsyncClient s3AsyncClient;
     private final FileSystemMigrationReportManager reportManager;
+    private final MetricsRegistry metrics;
 
     public DatabaseArtifactS3UploadService(Supplier<S3AsyncClient> s3AsyncClientSupplier,
                                            MigrationStageCallback migrationStageCallback,
                                            FileSystemMigrationReportManager reportManager) {
+        this(s3AsyncClientSupplier, migrationStageCallback, reportManager, new MetricsRegistry());
+    }
+
+    public DatabaseArtifactS3UploadService(Supplier<S3AsyncClient> s3AsyncClientSupplier,
+                                           MigrationStageCallback migrationStageCallback,
+                                           FileSystemMigrationReportManager reportManager,
+                                           MetricsRegistry metrics) {
         this.s3AsyncClientSupplier = s3AsyncClientSupplier;
         this.migrationStageCallback = migrationStageCallback;
         this.reportManager = reportManager;
+        this.metrics = metrics;
     }
 
     @PostConstruct
@@ -59,7 +72,7 @@ public class DatabaseArtifactS3UploadService {
         this.migrationStageCallback.assertInStartingStage();
 
         FileSystemMigrationReport report = reportManager.resetReport(ReportType.Database);
-        FilesystemUploader filesystemUploader = buildFileSystemUploader(target, targetBucketName, report, s3AsyncClient);
+        FilesystemUploader filesystemUploader = buildFileSystemUploader(target, targetBucketName, report, s3AsyncClient, metrics);
 
         this.migrationStageCallback.transitionToServiceWaitStage();
         filesystemUploader.uploadDirectory(target);
@@ -69,10 +82,10 @@ public class DatabaseArtifactS3UploadService {
     }
 
     //TODO: Use builder pattern instead of creating dependencies like this.
-    private static FilesystemUploader buildFileSystemUploader(Path target, String targetBucketName, FileSystemMigrationReport migrationReport, S3AsyncClient s3Client) {
-        S3UploadConfig config = new S3UploadConfig(targetBucketName, s3Client, target.getParent());
+    private static FilesystemUploader buildFileSystemUploader(Path target, String targetBucketName, FileSystemMigrationReport migrationReport, S3AsyncClient s3Client, MetricsRegistry metrics) {
+        S3UploadConfig config = new S3UploadConfig(targetBucketName, s3Client, target.getParent(), UploadThrottle.unlimited(), new UploadLatencies(), metrics);
         S3Uploader uploader = new S3Uploader(config, migrationReport);
-        Crawler crawler = new DirectoryStreamCrawler(migrationReport);
-        return new DefaultFilesystemUploader(crawler, uploader);
+        Crawler crawler = new DirectoryStreamCrawler(migrationReport, PathIgnoreList.fromSystemProperties(), metrics);
+        return new DefaultFilesystemUploader(crawler, uploader, 1, metrics);
     }
 }
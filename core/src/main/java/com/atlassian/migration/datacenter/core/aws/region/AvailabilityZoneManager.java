@@ -17,21 +17,25 @@
 package com.atlassian.migration.datacenter.core.aws.region;
 
 import com.atlassian.migration.datacenter.core.aws.GlobalInfrastructure;
-import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.ec2.model.AvailabilityZone;
 import software.amazon.awssdk.services.ec2.model.DescribeAvailabilityZonesResponse;
 
 import java.util.List;
+import java.util.function.Function;
 
 public class AvailabilityZoneManager implements AvailabilityZoneService {
 
-    private final AwsCredentialsProvider credentialsProvider;
+    private final Function<Region, Ec2Client> ec2Clients;
     private final GlobalInfrastructure globalInfrastructure;
 
-    public AvailabilityZoneManager(AwsCredentialsProvider credentialsProvider, GlobalInfrastructure globalInfrastructure) {
-        this.credentialsProvider = credentialsProvider;
+    /**
+     * @param ec2Clients           gives the EC2 client of a region, which must not be closed by this class
+     * @param globalInfrastructure the regions which may be asked for
+     */
+    public AvailabilityZoneManager(Function<Region, Ec2Client> ec2Clients, GlobalInfrastructure globalInfrastructure) {
+        this.ec2Clients = ec2Clients;
         this.globalInfrastructure = globalInfrastructure;
     }
 
@@ -43,7 +47,7 @@ public class AvailabilityZoneManager implements AvailabilityZoneService {
     @Override
     public List<AvailabilityZone> getAZForRegion(Region region) throws InvalidAWSRegionException {
         if (this.isValidRegion(region.toString())) {
-            Ec2Client ec2 = getEC2Client(region);
+            Ec2Client ec2 = ec2Clients.apply(region);
             DescribeAvailabilityZonesResponse zonesResponse = ec2.describeAvailabilityZones();
             return zonesResponse.availabilityZones();
         } else {
@@ -52,10 +56,6 @@ public class AvailabilityZoneManager implements AvailabilityZoneService {
 
     }
 
-    private Ec2Client getEC2Client(Region region) {
-        return Ec2Client.builder().region(region).credentialsProvider(this.credentialsProvider).build();
-    }
-
     private boolean isValidRegion(String testRegion) {
         return this.globalInfrastructure
                 .getRegions()
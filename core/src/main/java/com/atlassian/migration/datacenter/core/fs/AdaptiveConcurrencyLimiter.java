@@ -0,0 +1,221 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.spi.fs.reporting.ConcurrencyAdjustment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Limits the number of requests in flight to S3, adapting the limit to how S3 copes with the load (AIMD).
+ * <p>
+ * The limit grows by one every time a full window of requests, i.e. as many requests as the limit allows, has
+ * completed successfully without the latency rising well above its long-term average. It is halved when S3 throttles
+ * a request or a request times out. Requests which were already in flight when the limit was halved were sent under
+ * the old limit, so their throttling doesn't halve the limit again.
+ * <p>
+ * Every change of the limit is handed to a listener, which is how it ends up in the migration report.
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLimiter.class);
+
+    private static final double SHORT_LATENCY_WEIGHT = 0.2;
+    private static final double LONG_LATENCY_WEIGHT = 0.01;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.5;
+
+    public enum Outcome {
+        /**
+         * The request succeeded.
+         */
+        SUCCESS,
+        /**
+         * S3 asked to slow down or the request timed out.
+         */
+        THROTTLED,
+        /**
+         * The request failed for a reason unrelated to the load, e.g. the file was deleted.
+         */
+        FAILED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final Consumer<ConcurrencyAdjustment> listener;
+    private final Clock clock;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition belowLimit = lock.newCondition();
+
+    private int limit;
+    private int inFlight;
+    private int healthyCompletions;
+    private boolean saturated;
+    private int completionsToIgnoreThrottling;
+    private double shortLatency;
+    private double longLatency;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Consumer<ConcurrencyAdjustment> listener) {
+        this(initialLimit, minLimit, maxLimit, listener, Clock.systemUTC());
+    }
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, Consumer<ConcurrencyAdjustment> listener, Clock clock) {
+        if (minLimit < 1 || minLimit > maxLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException(String.format(
+                    "Concurrency limits must satisfy 1 <= min <= initial <= max, were min=%d, initial=%d, max=%d",
+                    minLimit, initialLimit, maxLimit));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.listener = listener;
+        this.clock = clock;
+        this.limit = initialLimit;
+        listener.accept(new ConcurrencyAdjustment(clock.millis(), 0, initialLimit, "Initial limit"));
+    }
+
+    /**
+     * Blocks until a request may be sent. Every call must be matched by a call to {@link #release(long, Outcome)} or
+     * {@link #release()}.
+     *
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (inFlight >= limit) {
+                saturated = true;
+                belowLimit.await();
+            }
+            inFlight++;
+            if (inFlight >= limit) {
+                saturated = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports that a request has completed and adjusts the limit according to its outcome.
+     *
+     * @param latencyNanos how long the request took
+     * @param outcome      how the request completed
+     */
+    public void release(long latencyNanos, Outcome outcome) {
+        lock.lock();
+        try {
+            inFlight--;
+            final boolean sentUnderPreviousLimit = completionsToIgnoreThrottling > 0;
+            if (sentUnderPreviousLimit) {
+                completionsToIgnoreThrottling--;
+            }
+            switch (outcome) {
+                case SUCCESS:
+                    onSuccess(latencyNanos);
+                    break;
+                case THROTTLED:
+                    onThrottled(sentUnderPreviousLimit);
+                    break;
+                default:
+                    // Failures unrelated to the load say nothing about the limit, but don't count towards growing it
+                    healthyCompletions = 0;
+            }
+            belowLimit.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reports that a request has completed without adjusting the limit, for requests whose latency says nothing about
+     * the load, e.g. a multipart upload spanning many requests.
+     */
+    public void release() {
+        lock.lock();
+        try {
+            inFlight--;
+            belowLimit.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess(long latencyNanos) {
+        if (longLatency == 0) {
+            shortLatency = latencyNanos;
+            longLatency = latencyNanos;
+        } else {
+            shortLatency += SHORT_LATENCY_WEIGHT * (latencyNanos - shortLatency);
+            longLatency += LONG_LATENCY_WEIGHT * (latencyNanos - longLatency);
+        }
+
+        if (shortLatency > longLatency * LATENCY_TOLERANCE) {
+            healthyCompletions = 0;
+            return;
+        }
+        healthyCompletions++;
+        // Only grow a limit which is actually used, otherwise a slow crawler would let it grow without bounds
+        if (healthyCompletions >= limit && saturated && limit < maxLimit) {
+            setLimit(limit + 1, "Healthy latency");
+        }
+    }
+
+    private void onThrottled(boolean sentUnderPreviousLimit) {
+        healthyCompletions = 0;
+        if (sentUnderPreviousLimit || limit == minLimit) {
+            return;
+        }
+        setLimit(Math.max(minLimit, (int) (limit * DECREASE_FACTOR)), "Throttled by S3");
+        completionsToIgnoreThrottling = inFlight;
+    }
+
+    private void setLimit(int newLimit, String reason) {
+        final int previousLimit = limit;
+        limit = newLimit;
+        healthyCompletions = 0;
+        saturated = inFlight >= newLimit;
+        logger.debug("Changed upload concurrency from {} to {}: {}", previousLimit, newLimit, reason);
+        listener.accept(new ConcurrencyAdjustment(clock.millis(), previousLimit, newLimit, reason));
+    }
+}
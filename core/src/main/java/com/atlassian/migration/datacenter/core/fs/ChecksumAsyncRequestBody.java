@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.model.ServerSideEncryption;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Optional;
+
+/**
+ * Request body computing the MD5 of another body while it is sent, so that the upload can be checked against the
+ * ETag S3 returns without reading the file a second time.
+ * <p>
+ * S3 keeps the MD5 of a plain upload as its ETag, which the filesystem processor on the target verifies the
+ * downloaded bytes against in turn. Objects encrypted with KMS get an opaque ETag, so they can't be checked.
+ */
+public final class ChecksumAsyncRequestBody implements AsyncRequestBody {
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final AsyncRequestBody body;
+    private volatile String md5;
+
+    public ChecksumAsyncRequestBody(AsyncRequestBody body) {
+        this.body = body;
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return body.contentLength();
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        // Every subscription sends the body again, e.g. when the SDK retries, so the digest starts over
+        md5 = null;
+        final MessageDigest digest = newDigest();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscriber.onSubscribe(subscription);
+            }
+
+            @Override
+            public void onNext(ByteBuffer chunk) {
+                digest.update(chunk.duplicate());
+                subscriber.onNext(chunk);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                subscriber.onError(error);
+            }
+
+            @Override
+            public void onComplete() {
+                md5 = toHex(digest.digest());
+                subscriber.onComplete();
+            }
+        });
+    }
+
+    /**
+     * @return the hex encoded MD5 of the body, once it was sent completely
+     */
+    public Optional<String> getMd5() {
+        return Optional.ofNullable(md5);
+    }
+
+    /**
+     * Checks the ETag S3 returned for the body.
+     *
+     * @param etag       the ETag of the object or part
+     * @param encryption the server side encryption S3 applied, may be null
+     * @return false only if the ETag is known to be the MD5 of the content and differs from the bytes which were sent
+     */
+    public boolean matches(String etag, ServerSideEncryption encryption) {
+        if (etag == null || md5 == null || encryption == ServerSideEncryption.AWS_KMS) {
+            return true;
+        }
+        return md5.equalsIgnoreCase(etag.replace("\"", ""));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported by the JVM", e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        final char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
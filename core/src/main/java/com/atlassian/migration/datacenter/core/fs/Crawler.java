@@ -22,5 +22,5 @@ import java.io.IOException;
 import java.nio.file.Path;
 
 public interface Crawler {
-    void crawlDirectory(Path start, UploadQueue<Path> queue) throws IOException;
+    void crawlDirectory(Path start, UploadQueue<FileEntry> queue) throws IOException;
 }
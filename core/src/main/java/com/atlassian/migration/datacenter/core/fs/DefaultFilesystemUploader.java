@@ -16,6 +16,7 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.core.util.UploadQueue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,55 +24,89 @@ import org.slf4j.LoggerFactory;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.util.List;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 
+/**
+ * Uploads a directory by running one crawler and a configurable number of upload workers. All workers consume the
+ * same {@link UploadQueue} through the same {@link Uploader}, which therefore has to support concurrent calls.
+ */
 public class DefaultFilesystemUploader implements FilesystemUploader
 {
     private static final Logger logger = LoggerFactory.getLogger(DefaultFilesystemUploader.class);
 
     private final Uploader uploader;
     private final Crawler crawler;
+    private final int uploadWorkers;
     private final ExecutorService pool;
+    private final MetricsRegistry metrics;
+
+    private volatile UploadQueue<FileEntry> queue;
 
     public DefaultFilesystemUploader(Crawler crawler, Uploader uploader) {
+        this(crawler, uploader, 1);
+    }
+
+    public DefaultFilesystemUploader(Crawler crawler, Uploader uploader, int uploadWorkers) {
+        this(crawler, uploader, uploadWorkers, new MetricsRegistry());
+    }
+
+    public DefaultFilesystemUploader(Crawler crawler, Uploader uploader, int uploadWorkers, MetricsRegistry metrics) {
+        if (uploadWorkers < 1) {
+            throw new IllegalArgumentException("Number of upload workers must be at least 1, was " + uploadWorkers);
+        }
         this.uploader = uploader;
         this.crawler = crawler;
-        this.pool = Executors.newFixedThreadPool(2);
+        this.uploadWorkers = uploadWorkers;
+        this.pool = Executors.newFixedThreadPool(uploadWorkers + 1);
+        this.metrics = metrics;
     }
 
     @Override
     public void uploadDirectory(Path dir) throws FileUploadException {
-        logger.trace("Beginning FS upload. Uploading shared home dir {}", dir);
+        logger.trace("Beginning FS upload. Uploading shared home dir {} with {} upload workers", dir, uploadWorkers);
 
-        ExecutorService pool = Executors.newFixedThreadPool(2);
-        UploadQueue<Path> queue = new UploadQueue<>(uploader.maxConcurrent());
+        final UploadQueue<FileEntry> queue = new UploadQueue<>(uploader.maxConcurrent() * uploadWorkers, metrics.timer("queue.putBlocked"));
+        this.queue = queue;
+        try (MetricsRegistry.Registration ignored = metrics.gauge("queue.depth", queue::size)) {
+            runTasks(dir, queue);
+        }
+
+        pool.shutdown();
+    }
 
-        Future<Boolean> crawlFuture = pool.submit(() -> {
+    private void runTasks(Path dir, UploadQueue<FileEntry> queue) throws FileUploadException {
+        final CompletionService<Boolean> tasks = new ExecutorCompletionService<>(pool);
+        tasks.submit(() -> {
             crawler.crawlDirectory(dir, queue);
             return true;
         });
-        Future<Boolean> uploadFuture = pool.submit(() -> {
-            uploader.upload(queue);
-            return true;
-        });
+        for (int i = 0; i < uploadWorkers; i++) {
+            tasks.submit(() -> {
+                uploader.upload(queue);
+                return true;
+            });
+        }
 
         try {
-            crawlFuture.get();
-            uploadFuture.get();
+            // The workers exit once the crawler has finished the queue, so every task completes unless one fails
+            for (int i = 0; i < uploadWorkers + 1; i++) {
+                tasks.take().get();
+            }
         } catch (InterruptedException e) {
+            stopTasks(queue);
             throw new FileUploadException("Failed to traverse/upload filesystem: " + dir, e);
         } catch (ExecutionException e) {
+            stopTasks(queue);
             if (e.getCause().getClass().equals(NoSuchFileException.class)) {
                 NoSuchFileException nsfe = (NoSuchFileException) e.getCause();
                 throw new FileUploadException("Failed to migrate content. File not found: " + nsfe.getFile(), e.getCause());
             }
             throw new FileUploadException("Failed to traverse/upload filesystem: " + dir, e.getCause());
         }
-
-        pool.shutdown();
     }
 
     /**
@@ -79,8 +114,19 @@ public class DefaultFilesystemUploader implements FilesystemUploader
      */
     @Override
     public void abort() {
-        final List<Runnable> runnables = pool.shutdownNow();
+        final List<Runnable> runnables = stopTasks(queue);
         logger.warn("Shut down executors, list of task not commenced: {}", runnables);
     }
 
+    private List<Runnable> stopTasks(UploadQueue<FileEntry> queue) {
+        if (queue != null) {
+            try {
+                // Releases the crawler if it is blocked on a queue nobody consumes any more
+                queue.finish();
+            } catch (InterruptedException e) {
+                logger.error("Failed to finalise upload queue.", e);
+            }
+        }
+        return pool.shutdownNow();
+    }
 }
@@ -16,6 +16,9 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
+import com.atlassian.migration.datacenter.core.metrics.Counter;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.core.util.UploadQueue;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
@@ -24,33 +27,64 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.regex.Pattern;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumSet;
 
 public class DirectoryStreamCrawler implements Crawler {
     private static final Logger logger = LoggerFactory.getLogger(DirectoryStreamCrawler.class);
 
-    private static final String ignorePattern = "^(dbconfig\\.xml|cluster\\.properties|log|caches|import|export|plugins/.bundled_plugins|plugins/.osgi-plugins|keyFile|saltFile)";
-    private static final Pattern defaultIgnoreList = Pattern.compile(ignorePattern);
-
     private FileSystemMigrationReport report;
+    private final PathIgnoreList ignoreList;
+    private final CrawlManifest manifest;
+    private final Counter directoriesCrawled;
+    private final Counter filesFound;
+    private final Counter bytesFound;
+    private final Counter skipped;
+    private final Counter failures;
 
     public DirectoryStreamCrawler(FileSystemMigrationReport report) {
+        this(report, PathIgnoreList.fromSystemProperties());
+    }
+
+    public DirectoryStreamCrawler(FileSystemMigrationReport report, PathIgnoreList ignoreList) {
+        this(report, ignoreList, new MetricsRegistry());
+    }
+
+    public DirectoryStreamCrawler(FileSystemMigrationReport report, PathIgnoreList ignoreList, MetricsRegistry metrics) {
+        this(report, ignoreList, metrics, CrawlManifest.NONE);
+    }
+
+    /**
+     * @param manifest checked before a file is queued, so that files uploaded by a previous run don't take up room in
+     *                 the queue. Its keys are the paths relative to the crawled directory.
+     */
+    public DirectoryStreamCrawler(FileSystemMigrationReport report, PathIgnoreList ignoreList, MetricsRegistry metrics, CrawlManifest manifest) {
         this.report = report;
+        this.ignoreList = ignoreList;
+        this.manifest = manifest;
+        this.directoriesCrawled = metrics.counter("crawler.directories");
+        this.filesFound = metrics.counter("crawler.files");
+        this.bytesFound = metrics.counter("crawler.bytes");
+        this.skipped = metrics.counter("crawler.skipped");
+        this.failures = metrics.counter("crawler.failures");
     }
 
     @Override
-    public void crawlDirectory(Path start, UploadQueue<Path> queue) throws IOException {
+    public void crawlDirectory(Path start, UploadQueue<FileEntry> queue) throws IOException {
         try {
-            final DirectoryStream<Path> paths;
-            paths = Files.newDirectoryStream(start);
-            listDirectories(start, queue, paths);
+            // Following links keeps the behaviour of the previous Files.isDirectory based traversal
+            Files.walkFileTree(start, EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE, new QueueingFileVisitor(start, queue));
         } catch (NoSuchFileException e) {
             logger.error("Failed to find path " + start, e);
-            report.reportFileNotMigrated(new FailedFileMigration(start, e.getMessage()));
+            reportFailure(start, e.getMessage());
             report.setStatus(FilesystemMigrationStatus.FAILED);
             throw e;
 
@@ -65,33 +99,98 @@ public class DirectoryStreamCrawler implements Crawler {
         }
     }
 
-    private void listDirectories(Path base, UploadQueue<Path> queue, DirectoryStream<Path> paths) {
-        int off = base.getNameCount();
-        paths.forEach(p -> {
-            // NOTE: This should be possible with the directoryStream regex glob,
-            // but in practice doesn't play well with nested directory patterns.
-            String subpath = p.subpath(off, p.getNameCount()).toString();
-            if (defaultIgnoreList.matcher(subpath).matches())
-                return;
-
-            if (Files.isDirectory(p)) {
-                logger.trace("Found directory while crawling home: {}", p);
-                try (final DirectoryStream<Path> newPaths = Files.newDirectoryStream(p.toAbsolutePath())) {
-                    listDirectories(base, queue, newPaths);
-                } catch (Exception e) {
-                    logger.error("Error when traversing directory {}, with exception {}", p, e);
-                    report.reportFileNotMigrated(new FailedFileMigration(p, e.getMessage()));
-                }
-            } else {
-                try {
-                    logger.trace("queueing file: {}", p);
-                    queue.put(p);
-                } catch (InterruptedException e) {
-                    logger.error("Error when queuing {}, with exception {}", p, e);
-                    report.reportFileNotMigrated(new FailedFileMigration(p, e.getMessage()));
-                }
-                report.reportFileFound();
+    /**
+     * Visits every file once, queueing it together with the attributes read by the walk so that
+     * no further metadata calls are needed before the upload.
+     */
+    private class QueueingFileVisitor extends SimpleFileVisitor<Path> {
+        private final Path base;
+        private final UploadQueue<FileEntry> queue;
+        // Ignore list nodes of the directories being visited
+        private final Deque<PathIgnoreList.Node> ignoreNodes = new ArrayDeque<>();
+
+        QueueingFileVisitor(Path base, UploadQueue<FileEntry> queue) {
+            this.base = base;
+            this.queue = queue;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            final PathIgnoreList.Node node = ignoreNodes.isEmpty() ? ignoreList.root() : ignoreNodes.peek().child(dir);
+            if (node.isIgnored()) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            ignoreNodes.push(node);
+            directoriesCrawled.increment();
+            logger.trace("Found directory while crawling home: {}", dir);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+            // The stack is empty only when the crawl was started on a file
+            if (!ignoreNodes.isEmpty() && ignoreNodes.peek().child(p).isIgnored()) {
+                return FileVisitResult.CONTINUE;
+            }
+            if (attrs.isSymbolicLink()) {
+                // Only reported for links whose target doesn't exist, as we follow links
+                reportFailure(p, String.format("File doesn't exist: %s", p));
+                return FileVisitResult.CONTINUE;
+            }
+
+            final FileEntry entry = FileEntry.of(p, attrs);
+            if (!manifest.shouldUpload(base.relativize(p).toString(), entry)) {
+                logger.trace("{} was uploaded by a previous run, skipping", p);
+                reportFound(attrs.size());
+                report.reportFileSkipped(attrs.size());
+                skipped.increment();
+                return FileVisitResult.CONTINUE;
             }
-        });
+
+            try {
+                logger.trace("queueing file: {}", p);
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                logger.error("Error when queuing {}, with exception {}", p, e);
+                reportFailure(p, e.getMessage());
+                Thread.currentThread().interrupt();
+                // The crawl is being aborted, neither this file nor the rest of the walk is going to be uploaded
+                return FileVisitResult.TERMINATE;
+            }
+            reportFound(attrs.size());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path p, IOException e) throws IOException {
+            if (p.equals(base)) {
+                throw e;
+            }
+            logger.error("Error when traversing directory {}, with exception {}", p, e);
+            reportFailure(p, e.getMessage());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+            ignoreNodes.pop();
+            if (e != null) {
+                logger.error("Error when traversing directory {}, with exception {}", dir, e);
+                reportFailure(dir, e.getMessage());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    private void reportFound(long size) {
+        report.reportFileFound();
+        report.reportBytesFound(size);
+        filesFound.increment();
+        bytesFound.add(size);
+    }
+
+    private void reportFailure(Path path, String reason) {
+        failures.increment();
+        report.reportFileNotMigrated(new FailedFileMigration(path, reason));
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A file queued for upload, together with the attributes that were read when it was discovered.
+ * <p>
+ * Crawlers capture the attributes once while traversing the home directory, so that uploaders don't need to go
+ * back to the (possibly network) filesystem to check whether the file exists or how big it is.
+ * Entries created from a bare path (e.g. attachments captured for the final sync) are unresolved and read their
+ * attributes on the first call to {@link #resolve()}.
+ */
+public final class FileEntry {
+    private static final long UNKNOWN = -1;
+
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+    private final Object fileKey;
+
+    private FileEntry(Path path, long size, long lastModified, Object fileKey) {
+        this.path = path;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.fileKey = fileKey;
+    }
+
+    public static FileEntry of(Path path, BasicFileAttributes attributes) {
+        return new FileEntry(path, attributes.size(), attributes.lastModifiedTime().toMillis(), attributes.fileKey());
+    }
+
+    public static FileEntry unresolved(Path path) {
+        return new FileEntry(path, UNKNOWN, UNKNOWN, null);
+    }
+
+    /**
+     * @return this entry if its attributes are already known, otherwise a new entry with the attributes read from disk
+     * @throws java.nio.file.NoSuchFileException if the file no longer exists
+     */
+    public FileEntry resolve() throws IOException {
+        if (isResolved()) {
+            return this;
+        }
+        return of(path, Files.readAttributes(path, BasicFileAttributes.class));
+    }
+
+    public boolean isResolved() {
+        return size != UNKNOWN;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * @return size in bytes, or -1 if the entry is unresolved
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return last modified time in milliseconds since the epoch, or -1 if the entry is unresolved
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return the filesystem specific file key (e.g. device and inode), or null if it is unavailable
+     */
+    public Object getFileKey() {
+        return fileKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FileEntry)) {
+            return false;
+        }
+        return path.equals(((FileEntry) o).path);
+    }
+
+    @Override
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Threads reading the files which are uploaded. The HTTP client asks request bodies for their chunks on its event loop
+ * threads, each of which serves many connections, so a slow read from the shared home, usually on NFS, would hold up
+ * all of them. {@link FileRegionAsyncRequestBody} hands its reads to these threads instead.
+ * <p>
+ * The number of threads, from the {@value #THREADS_PROPERTY} system property, bounds the reads running at the same
+ * time. A request body has at most one read queued, so the queue is bounded by the requests in flight.
+ */
+public class FileReadExecutor implements Executor {
+    public static final String THREADS_PROPERTY = "com.atlassian.migration.datacenter.fs.fileReadThreads";
+    private static final int DEFAULT_THREADS = 16;
+
+    private final ThreadPoolExecutor executor;
+
+    public FileReadExecutor(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Number of file read threads must be at least 1, was " + threads);
+        }
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>(), threadFactory());
+        // The threads go away when nothing is uploaded, so that an idle plugin doesn't keep them
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static FileReadExecutor fromSystemProperties() {
+        return new FileReadExecutor(Math.max(1, Integer.getInteger(THREADS_PROPERTY, DEFAULT_THREADS)));
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    private static ThreadFactory threadFactory() {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "s3-upload-file-read-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
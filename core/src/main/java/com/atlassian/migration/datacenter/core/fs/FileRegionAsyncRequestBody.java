@@ -0,0 +1,412 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Request body streaming a range of a file straight from a {@link FileChannel}, e.g. one part of a multipart upload.
+ * <p>
+ * Chunks are read with positional reads as the HTTP client asks for them, so nothing but the chunks being written to
+ * the network is held in memory, however large the range. Every subscription reads the range from its start, which
+ * is what lets the SDK and the uploader retry a request with the same body.
+ * <p>
+ * Every chunk is a fresh heap buffer which is handed over to the client and never reused. The Netty client requests
+ * chunks before it has written the ones it holds and gives no signal once it has, so a recycled buffer could be
+ * overwritten while a request still sends it. The memory taken by chunks is bounded by the demand of the client.
+ * <p>
+ * The client asks for chunks on its event loop threads, which must not wait for the shared home. Files are opened, read
+ * and closed on a {@link FileReadExecutor}, one read at a time per subscription, and a chunk is emitted once its read
+ * completes.
+ * <p>
+ * A body may also be a sequence of regions of several files with bytes in between, see {@link #of(List, Executor)}, which is
+ * how small files are streamed into a bundle.
+ * <p>
+ * A body {@link #throttledBy(UploadThrottle) throttled} by an {@link UploadThrottle} holds chunks back until the
+ * throttle has bandwidth for them. It doesn't wait on the thread asking for the chunk, which belongs to the HTTP
+ * client, but resumes from the scheduler of the throttle.
+ */
+public final class FileRegionAsyncRequestBody implements AsyncRequestBody {
+    static final int CHUNK_SIZE = 64 * 1024;
+
+    private final List<Region> regions;
+    private final long length;
+    private final Executor reads;
+    private final UploadThrottle throttle;
+
+    public FileRegionAsyncRequestBody(Path file, long position, long length, Executor reads) {
+        this(Collections.singletonList(Region.of(file, position, length)), reads);
+    }
+
+    private FileRegionAsyncRequestBody(List<Region> regions, Executor reads) {
+        this.regions = Collections.unmodifiableList(new ArrayList<>(regions));
+        long total = 0;
+        for (Region region : this.regions) {
+            total += region.length;
+        }
+        this.length = total;
+        this.reads = reads;
+        this.throttle = null;
+    }
+
+    private FileRegionAsyncRequestBody(FileRegionAsyncRequestBody body, UploadThrottle throttle) {
+        this.regions = body.regions;
+        this.length = body.length;
+        this.reads = body.reads;
+        this.throttle = throttle;
+    }
+
+    /**
+     * @param regions the regions to send one after the other
+     * @param reads   the executor reading the files, see {@link FileReadExecutor}
+     * @return a body streaming the concatenation of the regions
+     */
+    public static FileRegionAsyncRequestBody of(List<Region> regions, Executor reads) {
+        return new FileRegionAsyncRequestBody(regions, reads);
+    }
+
+    /**
+     * @param throttle the throttle pacing the chunks
+     * @return a body streaming the same regions, no faster than the throttle allows
+     */
+    public FileRegionAsyncRequestBody throttledBy(UploadThrottle throttle) {
+        return new FileRegionAsyncRequestBody(this, throttle);
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return Optional.of(length);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        subscriber.onSubscribe(new RegionSubscription(subscriber));
+    }
+
+    /**
+     * A range of a file or a few bytes given up front, e.g. a header.
+     */
+    public static final class Region {
+        private final Path file;
+        private final byte[] bytes;
+        private final long position;
+        private final long length;
+
+        private Region(Path file, byte[] bytes, long position, long length) {
+            if (position < 0 || length < 0) {
+                throw new IllegalArgumentException(String.format("Invalid file region, position %d and length %d", position, length));
+            }
+            this.file = file;
+            this.bytes = bytes;
+            this.position = position;
+            this.length = length;
+        }
+
+        public static Region of(Path file, long position, long length) {
+            return new Region(file, null, position, length);
+        }
+
+        public static Region of(byte[] bytes) {
+            return new Region(null, bytes, 0, bytes.length);
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+
+    /**
+     * Emits the chunks of the regions as they are requested. Requests may arrive from any thread and even from within
+     * onNext, and reads complete on the threads of the executor, so a single drain loop, entered by whichever thread
+     * gets there first, does all signals and hands out the reads.
+     * <p>
+     * The channel belongs to the reads, which open it for the first chunk of a region and close it after the last one.
+     * There is only ever one read in flight, so they never overlap, and a body which stops in the middle of a region
+     * closes the channel with one more task on the executor.
+     */
+    private final class RegionSubscription implements Subscription {
+        private final Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private final AtomicInteger drainers = new AtomicInteger();
+
+        private volatile boolean cancelled;
+        private boolean done;
+        private long sent;
+        private int regionIndex;
+        private long sentOfRegion;
+        // Set while the next chunk waits for bandwidth, to the nanoTime at which it may be sent
+        private boolean paced;
+        private long sendableAt;
+        // A read is in flight until the drain picks up its outcome, a chunk or the IOException it failed with
+        private boolean reading;
+        private volatile Object readOutcome;
+        private ByteBuffer readChunk;
+        // Whether the reads so far stopped in the middle of a region, leaving its channel open
+        private boolean channelLeftOpen;
+        // Only used by the reads
+        private FileChannel channel;
+
+        RegionSubscription(Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                drain();
+                subscriber.onError(new IllegalArgumentException("Subscriber requested a non-positive number of chunks: " + n));
+                return;
+            }
+            demand.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (drainers.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                if (cancelled || done) {
+                    finish();
+                } else {
+                    emitRequestedChunks();
+                }
+            } while (drainers.decrementAndGet() != 0);
+        }
+
+        private void emitRequestedChunks() {
+            while (!done && !cancelled) {
+                if (reading && !takeReadOutcome()) {
+                    // The read resumes the drain once it completes
+                    return;
+                }
+                if (done) {
+                    return;
+                }
+                if (readChunk != null) {
+                    if (demand.get() == 0) {
+                        return;
+                    }
+                    final ByteBuffer chunk = readChunk;
+                    readChunk = null;
+                    demand.decrementAndGet();
+                    subscriber.onNext(chunk);
+                    continue;
+                }
+                if (sent == length) {
+                    // Completion doesn't need demand
+                    finish();
+                    subscriber.onComplete();
+                    return;
+                }
+                if (demand.get() == 0) {
+                    return;
+                }
+                final Region region = nextRegion();
+                final int chunkSize = chunkSize(region);
+                if (!pace(chunkSize)) {
+                    return;
+                }
+                if (region.file == null) {
+                    demand.decrementAndGet();
+                    subscriber.onNext(copyChunk(region, chunkSize));
+                } else {
+                    startRead(region, chunkSize);
+                }
+            }
+        }
+
+        /**
+         * @return false if the read is still in flight
+         */
+        private boolean takeReadOutcome() {
+            final Object outcome = readOutcome;
+            if (outcome == null) {
+                return false;
+            }
+            readOutcome = null;
+            reading = false;
+            if (outcome instanceof IOException) {
+                finish();
+                subscriber.onError((IOException) outcome);
+            } else {
+                readChunk = (ByteBuffer) outcome;
+            }
+            return true;
+        }
+
+        /**
+         * @return the region the next chunk is taken from, skipping regions which are fully sent
+         */
+        private Region nextRegion() {
+            Region region = regions.get(regionIndex);
+            while (sentOfRegion == region.length) {
+                regionIndex++;
+                sentOfRegion = 0;
+                region = regions.get(regionIndex);
+            }
+            return region;
+        }
+
+        private int chunkSize(Region region) {
+            return (int) Math.min(CHUNK_SIZE, region.length - sentOfRegion);
+        }
+
+        /**
+         * Takes bandwidth for the next chunk from the throttle, if any.
+         *
+         * @return false if the chunk has to wait, in which case the drain is resumed once it may be sent
+         */
+        private boolean pace(int chunkSize) {
+            if (throttle == null) {
+                return true;
+            }
+            if (!paced) {
+                final long delay = throttle.reserveBytes(chunkSize);
+                if (delay == 0) {
+                    return true;
+                }
+                paced = true;
+                sendableAt = System.nanoTime() + delay;
+                throttle.schedule(this::drain, delay);
+                return false;
+            }
+            if (System.nanoTime() - sendableAt < 0) {
+                // Requested again before the bandwidth is there, the scheduled drain sends the chunk
+                return false;
+            }
+            paced = false;
+            return true;
+        }
+
+        private ByteBuffer copyChunk(Region region, int chunkSize) {
+            final ByteBuffer chunk = ByteBuffer.wrap(region.bytes, (int) sentOfRegion, chunkSize).slice();
+            advance(chunkSize);
+            return chunk;
+        }
+
+        private void advance(int chunkSize) {
+            sent += chunkSize;
+            sentOfRegion += chunkSize;
+        }
+
+        private void startRead(Region region, int chunkSize) {
+            final long position = region.position + sentOfRegion;
+            final boolean lastOfRegion = sentOfRegion + chunkSize == region.length;
+            reading = true;
+            channelLeftOpen = !lastOfRegion;
+            advance(chunkSize);
+            try {
+                reads.execute(() -> {
+                    Object outcome;
+                    try {
+                        outcome = readChunk(region, position, chunkSize, lastOfRegion);
+                    } catch (IOException e) {
+                        outcome = e;
+                    }
+                    readOutcome = outcome;
+                    drain();
+                });
+            } catch (RejectedExecutionException e) {
+                readOutcome = new IOException("Unable to read " + region.file, e);
+            }
+        }
+
+        private ByteBuffer readChunk(Region region, long position, int chunkSize, boolean lastOfRegion) throws IOException {
+            try {
+                if (channel == null) {
+                    channel = FileChannel.open(region.file, StandardOpenOption.READ);
+                }
+                final ByteBuffer chunk = ByteBuffer.allocate(chunkSize);
+                while (chunk.hasRemaining()) {
+                    final int read = channel.read(chunk, position + chunk.position());
+                    if (read < 0) {
+                        throw new EOFException(String.format("%s ended %d bytes before the end of the uploaded region", region.file, region.position + region.length - position - chunk.position()));
+                    }
+                }
+                // The re-typing is to provide compatibility when compiling with Java 9+ and running on Java 8
+                ((Buffer) chunk).flip();
+                if (lastOfRegion) {
+                    closeChannel();
+                }
+                return chunk;
+            } catch (IOException e) {
+                closeChannel();
+                throw e;
+            }
+        }
+
+        private void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Only read from, so nothing is lost
+                }
+                channel = null;
+            }
+        }
+
+        /**
+         * Stops the subscription. A read in flight is left to complete, the drain it resumes closes the channel.
+         */
+        private void finish() {
+            done = true;
+            readChunk = null;
+            if (reading) {
+                if (readOutcome == null) {
+                    return;
+                }
+                readOutcome = null;
+                reading = false;
+            }
+            if (channelLeftOpen) {
+                channelLeftOpen = false;
+                try {
+                    reads.execute(this::closeChannel);
+                } catch (RejectedExecutionException ignored) {
+                    // Shut down, so there is no thread left which could still use the channel
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
+import com.atlassian.migration.datacenter.core.metrics.Counter;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
+import com.atlassian.migration.datacenter.core.util.UploadQueue;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls the home directory using a work-stealing {@link ForkJoinPool}. Every sub-directory is listed by its own
+ * task, so that slow directory listings (e.g. on NFS) don't hold up the rest of the crawl.
+ * <p>
+ * Applies the same {@link PathIgnoreList} as {@link DirectoryStreamCrawler}. The attributes of each entry are read once and
+ * handed to the uploader with the queued {@link FileEntry}.
+ */
+public class ParallelDirectoryCrawler implements Crawler {
+    private static final Logger logger = LoggerFactory.getLogger(ParallelDirectoryCrawler.class);
+
+    private static final long STOP_TIMEOUT_SECONDS = 60;
+
+    private final FileSystemMigrationReport report;
+    private final int parallelism;
+    private final PathIgnoreList ignoreList;
+    private final CrawlManifest manifest;
+    private final Counter directoriesCrawled;
+    private final Counter filesFound;
+    private final Counter bytesFound;
+    private final Counter skipped;
+    private final Counter failures;
+
+    public ParallelDirectoryCrawler(FileSystemMigrationReport report, int parallelism) {
+        this(report, parallelism, PathIgnoreList.fromSystemProperties());
+    }
+
+    public ParallelDirectoryCrawler(FileSystemMigrationReport report, int parallelism, PathIgnoreList ignoreList) {
+        this(report, parallelism, ignoreList, new MetricsRegistry());
+    }
+
+    public ParallelDirectoryCrawler(FileSystemMigrationReport report, int parallelism, PathIgnoreList ignoreList, MetricsRegistry metrics) {
+        this(report, parallelism, ignoreList, metrics, CrawlManifest.NONE);
+    }
+
+    /**
+     * @param manifest checked before a file is queued, see {@link DirectoryStreamCrawler}
+     */
+    public ParallelDirectoryCrawler(FileSystemMigrationReport report, int parallelism, PathIgnoreList ignoreList, MetricsRegistry metrics, CrawlManifest manifest) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Crawler parallelism must be at least 1, was " + parallelism);
+        }
+        this.report = report;
+        this.parallelism = parallelism;
+        this.ignoreList = ignoreList;
+        this.manifest = manifest;
+        this.directoriesCrawled = metrics.counter("crawler.directories");
+        this.filesFound = metrics.counter("crawler.files");
+        this.bytesFound = metrics.counter("crawler.bytes");
+        this.skipped = metrics.counter("crawler.skipped");
+        this.failures = metrics.counter("crawler.failures");
+    }
+
+    @Override
+    public void crawlDirectory(Path start, UploadQueue<FileEntry> queue) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            // Opening the root on the calling thread keeps the error reporting for a missing home identical to
+            // DirectoryStreamCrawler
+            Files.newDirectoryStream(start).close();
+
+            logger.info("Crawling {} with parallelism {}", start, parallelism);
+            pool.submit(new CrawlDirectoryTask(start.toAbsolutePath(), start, ignoreList.root(), queue)).get();
+        } catch (NoSuchFileException e) {
+            logger.error("Failed to find path " + start, e);
+            reportFailure(start, e.getMessage());
+            report.setStatus(FilesystemMigrationStatus.FAILED);
+            throw e;
+        } catch (InterruptedException e) {
+            logger.error("Interrupted while crawling {}", start, e);
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.error("Unexpected error while crawling {}", start, e.getCause());
+            reportFailure(start, e.getCause().getMessage());
+            // Part of the home wasn't crawled, so the migration can't be complete
+            report.setStatus(FilesystemMigrationStatus.FAILED);
+        } finally {
+            stopCrawl(pool);
+            try {
+                logger.info("Crawled and added {} files for upload.", report.getNumberOfFilesFound());
+                report.reportCrawlingFinished();
+                queue.finish();
+            } catch (InterruptedException e) {
+                logger.error("Failed to finalise upload queue.", e);
+            }
+        }
+    }
+
+    /**
+     * Stops the tasks of an aborted crawl before the queue is finished. Shutting the pool down doesn't stop the tasks
+     * which are already running, they stop once they notice the shutdown, and must not queue files after the queue was
+     * finished.
+     */
+    private void stopCrawl(ForkJoinPool pool) {
+        pool.shutdownNow();
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!pool.awaitTermination(STOP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Crawler tasks didn't stop within {} seconds", STOP_TIMEOUT_SECONDS);
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private class CrawlDirectoryTask extends RecursiveAction {
+        // The absolute crawl root, which the manifest keys are relative to
+        private final Path base;
+        private final Path directory;
+        private final PathIgnoreList.Node ignoreNode;
+        private final UploadQueue<FileEntry> queue;
+
+        CrawlDirectoryTask(Path base, Path directory, PathIgnoreList.Node ignoreNode, UploadQueue<FileEntry> queue) {
+            this.base = base;
+            this.directory = directory;
+            this.ignoreNode = ignoreNode;
+            this.queue = queue;
+        }
+
+        @Override
+        protected void compute() {
+            final List<CrawlDirectoryTask> subdirectories = new ArrayList<>();
+
+            try (final DirectoryStream<Path> paths = Files.newDirectoryStream(directory.toAbsolutePath())) {
+                directoriesCrawled.increment();
+                for (Path p : paths) {
+                    if (getPool().isShutdown()) {
+                        // The crawl was aborted
+                        break;
+                    }
+                    final PathIgnoreList.Node node = ignoreNode.child(p);
+                    if (node.isIgnored()) {
+                        continue;
+                    }
+
+                    final BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(p, BasicFileAttributes.class);
+                    } catch (IOException e) {
+                        logger.error("Error when reading attributes of {}, with exception {}", p, e);
+                        reportFailure(p, e.getMessage());
+                        continue;
+                    }
+
+                    if (attributes.isDirectory()) {
+                        logger.trace("Found directory while crawling home: {}", p);
+                        CrawlDirectoryTask task = new CrawlDirectoryTask(base, p, node, queue);
+                        task.fork();
+                        subdirectories.add(task);
+                    } else {
+                        queueFile(FileEntry.of(p, attributes));
+                    }
+                }
+            } catch (Exception e) {
+                logger.error("Error when traversing directory {}, with exception {}", directory, e);
+                reportFailure(directory, e.getMessage());
+            }
+
+            subdirectories.forEach(CrawlDirectoryTask::join);
+        }
+
+        private void queueFile(FileEntry entry) {
+            if (!manifest.shouldUpload(base.relativize(entry.getPath()).toString(), entry)) {
+                logger.trace("{} was uploaded by a previous run, skipping", entry.getPath());
+                reportFound(entry.getSize());
+                report.reportFileSkipped(entry.getSize());
+                skipped.increment();
+                return;
+            }
+            try {
+                logger.trace("queueing file: {}", entry);
+                queue.put(entry);
+            } catch (InterruptedException e) {
+                logger.error("Error when queuing {}, with exception {}", entry, e);
+                reportFailure(entry.getPath(), e.getMessage());
+                // The crawl is being aborted, the file isn't going to be uploaded
+                return;
+            }
+            reportFound(entry.getSize());
+        }
+    }
+
+    private void reportFound(long size) {
+        report.reportFileFound();
+        report.reportBytesFound(size);
+        filesFound.increment();
+        bytesFound.add(size);
+    }
+
+    private void reportFailure(Path path, String reason) {
+        failures.increment();
+        report.reportFileNotMigrated(new FailedFileMigration(path, reason));
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Paths of the home directory which are not migrated, compiled into a trie over path name elements.
+ * <p>
+ * Crawlers walk the trie alongside the directory tree: every directory gets the {@link Node} matching its path, or
+ * {@link Node#EMPTY} once the path leaves the trie. Ignored directories are pruned as a whole and nothing under an
+ * empty node is looked up, so the cost of the ignore list is limited to the few directories it mentions.
+ * <p>
+ * The list is read from the {@value #IGNORE_LIST_PROPERTY} system property when a crawler is created, as a comma
+ * separated list of paths relative to the home directory, e.g. {@code log,plugins/.osgi-plugins}.
+ */
+public final class PathIgnoreList {
+    public static final String IGNORE_LIST_PROPERTY = "com.atlassian.migration.datacenter.fs.ignoreList";
+    public static final String DEFAULT_IGNORE_LIST = "dbconfig.xml,cluster.properties,log,caches,import,export,plugins/.bundled_plugins,plugins/.osgi-plugins,keyFile,saltFile";
+
+    private final Node root = new Node();
+
+    private PathIgnoreList(String ignoreList) {
+        for (String entry : ignoreList.split(",")) {
+            add(entry.trim());
+        }
+    }
+
+    public static PathIgnoreList of(String ignoreList) {
+        return new PathIgnoreList(ignoreList);
+    }
+
+    public static PathIgnoreList fromSystemProperties() {
+        return of(System.getProperty(IGNORE_LIST_PROPERTY, DEFAULT_IGNORE_LIST));
+    }
+
+    /**
+     * @return the node of the home directory itself
+     */
+    public Node root() {
+        return root;
+    }
+
+    private void add(String entry) {
+        Node node = root;
+        for (String name : entry.split("[/\\\\]")) {
+            if (name.isEmpty()) {
+                continue;
+            }
+            node = node.children.computeIfAbsent(name, it -> new Node());
+        }
+        if (node != root) {
+            node.ignored = true;
+        }
+    }
+
+    public static final class Node {
+        /**
+         * Node of paths under which nothing is ignored.
+         */
+        public static final Node EMPTY = new Node();
+
+        private final Map<String, Node> children = new HashMap<>();
+        private boolean ignored;
+
+        private Node() {
+        }
+
+        /**
+         * @param path a direct child of the path this node stands for
+         * @return the node of the child, or {@link #EMPTY} if nothing under the child is ignored
+         */
+        public Node child(Path path) {
+            if (children.isEmpty()) {
+                return EMPTY;
+            }
+            final Path name = path.getFileName();
+            final Node child = name == null ? null : children.get(name.toString());
+            return child == null ? EMPTY : child;
+        }
+
+        public boolean isIgnored() {
+            return ignored;
+        }
+    }
+}
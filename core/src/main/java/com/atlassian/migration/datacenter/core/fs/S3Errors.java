@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classifies the errors of S3 requests, looking through the exceptions wrapping the cause.
+ * <p>
+ * The upload client doesn't retry on its own, so the uploaders are the only ones retrying and this decides alone which
+ * failures are sent again. Errors reading the uploaded file come wrapped in client exceptions, but unlike a reset
+ * connection they fail the same way on every attempt.
+ */
+final class S3Errors {
+    static final int HTTP_SERVICE_UNAVAILABLE = 503;
+    private static final int HTTP_SERVER_ERROR = 500;
+
+    private S3Errors() {
+    }
+
+    /**
+     * @return true if S3 asked to slow down, i.e. 503 SlowDown, or the request timed out
+     */
+    static boolean isThrottling(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = next(cause)) {
+            if (cause instanceof SdkServiceException) {
+                final SdkServiceException serviceException = (SdkServiceException) cause;
+                if (serviceException.isThrottlingException() || serviceException.statusCode() == HTTP_SERVICE_UNAVAILABLE) {
+                    return true;
+                }
+            }
+            if (cause instanceof ApiCallTimeoutException
+                    || cause instanceof ApiCallAttemptTimeoutException
+                    || cause instanceof TimeoutException
+                    || cause instanceof SocketTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the request may succeed when sent again, e.g. on throttling, 5xx responses or connection resets,
+     * but not if the uploaded file can't be read
+     */
+    static boolean isRetryable(Throwable error) {
+        if (isThrottling(error)) {
+            return true;
+        }
+        for (Throwable cause = error; cause != null; cause = next(cause)) {
+            if (isFileError(cause)) {
+                return false;
+            }
+        }
+        for (Throwable cause = error; cause != null; cause = next(cause)) {
+            if (cause instanceof SdkServiceException) {
+                return ((SdkServiceException) cause).statusCode() >= HTTP_SERVER_ERROR;
+            }
+            if (cause instanceof IOException || cause instanceof SdkClientException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the file was deleted or can't be read, or is shorter than the size it was crawled with
+     */
+    private static boolean isFileError(Throwable cause) {
+        return cause instanceof NoSuchFileException
+                || cause instanceof FileNotFoundException
+                || cause instanceof AccessDeniedException
+                || cause instanceof EOFException;
+    }
+
+    private static Throwable next(Throwable cause) {
+        return cause.getCause() == cause ? null : cause.getCause();
+    }
+}
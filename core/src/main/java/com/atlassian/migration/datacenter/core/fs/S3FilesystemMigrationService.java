@@ -42,6 +42,8 @@ import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigr
 
 public class S3FilesystemMigrationService implements FilesystemMigrationService, DisposableBean {
     private static final Logger logger = LoggerFactory.getLogger(S3FilesystemMigrationService.class);
+    private static final boolean CATCH_UP_PASS_ENABLED = Boolean.parseBoolean(System
+            .getProperty("com.atlassian.migration.datacenter.fs.catchUpPass", "true"));
 
 
     private final Environment environment;
@@ -113,6 +115,11 @@ public class S3FilesystemMigrationService implements FilesystemMigrationService,
         try {
             bulkCopy.copySharedHomeToS3();
 
+            if (CATCH_UP_PASS_ENABLED && isRunning()) {
+                logger.info("upload of shared home complete. uploading files changed during the upload");
+                bulkCopy.copyChangedFilesToS3();
+            }
+
             logger.info("upload of shared home complete. commencing shared home download");
             report.setStatus(DOWNLOADING);
             fileSystemDownloadManager.downloadFileSystem(report);
@@ -16,28 +16,42 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.fs.manifest.MultipartUploadRecord;
+import com.atlassian.migration.datacenter.core.fs.manifest.MultipartUploadStore;
+import com.atlassian.migration.datacenter.core.metrics.Counter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
 import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
 import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
-import java.io.BufferedInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.Buffer;
-import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 /**
  * Uploads file to S3 in multiple parts.
@@ -46,59 +60,180 @@ import java.util.concurrent.ExecutionException;
  * 2. Split the file into same sized parts (except the last one) and upload them to S3
  * 3. Confirm the upload has finished with all the required parts
  * <p>
- * All files larger than 5MB (hard AWS limit) are required to be uploaded via this method.
+ * Several parts of a file are uploaded at the same time, up to the {@value #PARTS_IN_FLIGHT_PROPERTY} system property
+ * (4 by default). The next part is only sent once a part in flight completes. Parts are streamed from their range of
+ * the file, so no part is ever held in memory. A failed part is retried on its own while the other parts carry on.
+ * <p>
+ * All files larger than 5GB (hard AWS limit) are required to be uploaded via this method.
+ * <p>
+ * Parts are {@value #PART_SIZE_PROPERTY} bytes (25MB by default), or larger if the file would otherwise need more
+ * than the 10,000 parts S3 allows.
+ * <p>
+ * The upload id and the accepted parts are recorded in a {@link MultipartUploadStore}. When the same version of a
+ * file is uploaded again, e.g. after a restart, the parts S3 already holds are listed and only the missing ones are
+ * sent. An upload of a version of the file which has changed since is aborted instead.
+ * <p>
+ * The bytes of every part are reported as uploaded once S3 has accepted the part, so that the progress of a large file
+ * advances part by part rather than all at once when the whole file is done.
+ * <p>
+ * The MD5 of every part is computed while it is sent and checked against the ETag S3 returns for it. The part size is
+ * stored as {@value #PART_SIZE_METADATA} metadata of the object, which lets the target recompute the ETag of the
+ * whole object from the downloaded bytes.
  * <p>
  * https://docs.aws.amazon.com/AmazonS3/latest/dev/mpuoverview.html
  * https://docs.aws.amazon.com/AmazonS3/latest/dev/qfacts.html
  */
 public class S3MultiPartUploader {
     private final static Logger logger = LoggerFactory.getLogger(S3MultiPartUploader.class);
+    public static final String PARTS_IN_FLIGHT_PROPERTY = "com.atlassian.migration.datacenter.fs.multipartPartsInFlight";
+    private static final int DEFAULT_PARTS_IN_FLIGHT = 4;
+    public static final String PART_SIZE_PROPERTY = "com.atlassian.migration.datacenter.fs.multipartPartSize";
+    public static final String PART_SIZE_METADATA = "dc-part-size";
+    static final int MIN_PART_SIZE = 5 * 1024 * 1024; // 5MB, S3 minimum for all parts but the last
+    private static final int DEFAULT_PART_SIZE = 25 * 1024 * 1024; // 25 MB
+    private static final int MAX_PARTS = 10_000;
+    private static final int PART_SIZE_ALIGNMENT = 1024 * 1024;
+    private static final long MAX_PART_SIZE = Integer.MAX_VALUE / PART_SIZE_ALIGNMENT * PART_SIZE_ALIGNMENT;
+    // The upload client doesn't retry, and an abort which fails for good leaves the parts behind
+    private static final int ABORT_ATTEMPTS = 3;
+
     private final S3UploadConfig config;
     private final File file;
+    // Read once, rather than going back to the (possibly network) filesystem for every part and request
+    private final long fileSize;
     private final String key;
+    private final UploadRetryPolicy retryPolicy;
+    private final MultipartUploadStore uploads;
+    private final LongConsumer bytesUploaded;
+    // Counted together with the retries of single requests
+    private final Counter retries;
 
-    private int sizeToUpload = 25 * 1024 * 1024; // 25 MB
+    private int sizeToUpload;
+    private int maxPartsInFlight = configuredPartsInFlight();
     private List<CompletedPart> completedParts = new ArrayList<>();
-    private ByteBuffer buffer;
     private int uploadPartNumber = 1;
+    // Completions of the parts in flight, handed over from the SDK threads to the uploading thread
+    private final BlockingQueue<PartCompletion> partCompletions = new LinkedBlockingQueue<>();
 
     public S3MultiPartUploader(S3UploadConfig config, File file, String key) {
+        this(config, file, key, UploadRetryPolicy.noRetries());
+    }
+
+    public S3MultiPartUploader(S3UploadConfig config, File file, String key, UploadRetryPolicy retryPolicy) {
+        this(config, file, key, retryPolicy, MultipartUploadStore.NONE);
+    }
+
+    public S3MultiPartUploader(S3UploadConfig config, File file, String key, UploadRetryPolicy retryPolicy, MultipartUploadStore uploads) {
+        this(config, file, key, retryPolicy, uploads, bytes -> {
+        });
+    }
+
+    /**
+     * @param bytesUploaded receives the size of every part once it is uploaded, including the parts a resumed upload
+     *                      doesn't need to send again
+     */
+    public S3MultiPartUploader(S3UploadConfig config, File file, String key, UploadRetryPolicy retryPolicy, MultipartUploadStore uploads, LongConsumer bytesUploaded) {
         this.config = config;
         this.file = file;
+        this.fileSize = file.length();
         this.key = key;
+        this.retryPolicy = retryPolicy;
+        this.uploads = uploads;
+        this.bytesUploaded = bytesUploaded;
+        this.retries = config.getMetrics().counter("upload.retries");
+        this.sizeToUpload = partSizeFor(fileSize);
     }
 
-    public void upload() throws ExecutionException, InterruptedException {
-        // lazily loaded to save memory
-        buffer = ByteBuffer.allocate(getSizeToUpload());
+    /**
+     * @return the number of parts of a file sent at the same time, from the {@value #PARTS_IN_FLIGHT_PROPERTY} system property
+     */
+    public static int configuredPartsInFlight() {
+        return Math.max(1, Integer.getInteger(PARTS_IN_FLIGHT_PROPERTY, DEFAULT_PARTS_IN_FLIGHT));
+    }
 
-        String uploadId = initiateUpload();
+    /**
+     * Picks the part size of a file: the configured part size, unless the file would need more than 10,000 parts
+     * with it. Larger files get the smallest whole number of megabytes which fits them in 10,000 parts.
+     *
+     * @param fileSize size of the file in bytes
+     * @return the part size in bytes
+     */
+    public static int partSizeFor(long fileSize) {
+        return partSizeFor(fileSize, Integer.getInteger(PART_SIZE_PROPERTY, DEFAULT_PART_SIZE));
+    }
 
-        try (FileInputStream fileInputStream = new FileInputStream(file);
-             BufferedInputStream bufferedInputStream = new BufferedInputStream(fileInputStream)) {
+    static int partSizeFor(long fileSize, int preferredPartSize) {
+        final long minimumForFile = (fileSize + MAX_PARTS - 1) / MAX_PARTS;
+        final long alignedMinimum = (minimumForFile + PART_SIZE_ALIGNMENT - 1) / PART_SIZE_ALIGNMENT * PART_SIZE_ALIGNMENT;
+        final long partSize = Math.max(Math.max(preferredPartSize, MIN_PART_SIZE), alignedMinimum);
+        return (int) Math.min(partSize, MAX_PART_SIZE);
+    }
 
-            int readBytes;
-            while ((readBytes = bufferedInputStream.read(buffer.array())) > 0) {
-                logger.trace("Read {} bytes from file {}", readBytes, file);
+    public void upload() throws ExecutionException, InterruptedException, IOException {
+        final long lastModified = file.lastModified();
 
-                String etag = uploadChunk(uploadId, uploadPartNumber, readBytes);
-                logger.debug("Uploaded part {} with etag {}", uploadPartNumber, etag);
+        final Map<Integer, String> uploadedParts = new HashMap<>();
+        String uploadId = resumeUpload(lastModified, uploadedParts);
+        if (uploadId == null) {
+            uploadId = initiateUpload();
+            uploads.started(new MultipartUploadRecord(config.getBucketName(), key, uploadId, fileSize, lastModified, getSizeToUpload()));
+        }
+
+        int partsInFlight = 0;
+        Throwable failure = null;
+        long position = 0;
+        while (failure == null && (position < fileSize || partsInFlight > 0)) {
+            if (position < fileSize && partsInFlight < maxPartsInFlight) {
+                final long partSize = Math.min(getSizeToUpload(), fileSize - position);
+                final String uploadedEtag = uploadedParts.get(uploadPartNumber);
+                if (uploadedEtag != null) {
+                    completePart(uploadPartNumber, uploadedEtag);
+                    bytesUploaded.accept(partSize);
+                    uploadPartNumber++;
+                    position += partSize;
+                    continue;
+                }
+                logger.trace("Uploading {} bytes at {} of file {}", partSize, position, file);
+                uploadChunk(new Part(uploadId, uploadPartNumber, partSize, new ChecksumAsyncRequestBody(
+                        new FileRegionAsyncRequestBody(file.toPath(), position, partSize, config.getFileReads()).throttledBy(config.getThrottle()))));
+                uploadPartNumber++;
+                partsInFlight++;
+                position += partSize;
+                continue;
+            }
 
-                uploadPartNumber = completePart(uploadPartNumber, etag);
+            // The window is full or all parts are sent, so wait for the next part to complete
+            final PartCompletion completion = partCompletions.take();
+            partsInFlight--;
+            if (completion.error == null) {
+                logger.debug("Uploaded part {} with etag {}", completion.part.number, completion.etag);
+                completePart(completion.part.number, completion.etag);
+                uploads.partUploaded(key, completion.part.number, completion.etag);
+                bytesUploaded.accept(completion.part.size);
+            } else if (retryPart(completion)) {
+                partsInFlight++;
+            } else {
+                failure = completion.error;
             }
-        } catch (IOException e) {
-            logger.error("Cannot open file for the multi-part upload", e);
         }
-        // The re-typing is to provide compatibility when compiling with Java 9+ and running on Java 8
-        ((Buffer) buffer).clear();
 
-        logger.trace("Finished uploading parts, sending complete request.");
-        try {
-            completeUpload(key, uploadId).get();
-            logger.debug("Finished multipart upload for {} with {} parts", key, completedParts.size());
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("Encountered error when uploading multipart file.", e);
+        if (failure != null) {
+            // The other parts are left to settle, so that nothing is sent for this file once upload() has returned
+            for (; partsInFlight > 0; partsInFlight--) {
+                partCompletions.take();
+            }
+            // The upload is kept, so that the parts sent so far are reused by the next attempt to upload the file
+            throw new ExecutionException(String.format("Error when uploading part of %s", key), failure);
         }
+
+        // Failures are propagated so that a partial upload is never recorded as complete
+        logger.trace("Finished uploading parts, sending complete request.");
+        // Parts complete in any order, but S3 requires them in ascending order
+        completedParts.sort(Comparator.comparing(CompletedPart::partNumber));
+        final String completedUploadId = uploadId;
+        withRetries("complete upload", UploadLatencies.Operation.COMPLETE_MULTIPART_UPLOAD, () -> completeUpload(key, completedUploadId));
+        uploads.finished(key);
+        logger.debug("Finished multipart upload for {} with {} parts", key, completedParts.size());
     }
 
     /**
@@ -119,46 +254,218 @@ public class S3MultiPartUploader {
         this.sizeToUpload = sizeToUpload;
     }
 
+    /**
+     * Changes the number of parts which are uploaded at the same time
+     *
+     * @param maxPartsInFlight number of parts
+     */
+    public void setMaxPartsInFlight(int maxPartsInFlight) {
+        this.maxPartsInFlight = Math.max(1, maxPartsInFlight);
+    }
+
     private String initiateUpload() throws InterruptedException, ExecutionException {
         CreateMultipartUploadRequest createMultipartUploadRequest = CreateMultipartUploadRequest.builder()
                 .bucket(config.getBucketName())
                 .key(key)
+                .metadata(Collections.singletonMap(PART_SIZE_METADATA, String.valueOf(getSizeToUpload())))
                 .build();
-        CreateMultipartUploadResponse response = config.getS3AsyncClient().createMultipartUpload(createMultipartUploadRequest).get();
+        CreateMultipartUploadResponse response = withRetries("initiate upload", UploadLatencies.Operation.CREATE_MULTIPART_UPLOAD, () -> config.getS3AsyncClient().createMultipartUpload(createMultipartUploadRequest));
         return response.uploadId();
     }
 
-    private String uploadChunk(String uploadId, int uploadPartNumber, int readBytes) throws InterruptedException, ExecutionException {
+    /**
+     * Looks for an earlier upload of the same version of the file and collects the parts S3 holds for it.
+     *
+     * @param uploadedParts receives the ETags of the parts which don't need to be sent again, by part number
+     * @return the id of the upload to resume, or null if a new upload needs to be initiated
+     */
+    private String resumeUpload(long lastModified, Map<Integer, String> uploadedParts) throws InterruptedException, ExecutionException {
+        final Optional<MultipartUploadRecord> previous = uploads.find(key);
+        if (!previous.isPresent()) {
+            return null;
+        }
+        final MultipartUploadRecord upload = previous.get();
+        if (!upload.isResumableFor(config.getBucketName(), fileSize, lastModified, getSizeToUpload())) {
+            logger.info("{} changed since {} was started, aborting it", file, upload);
+            abort(config.getS3AsyncClient(), upload);
+            uploads.finished(key);
+            return null;
+        }
+
+        final Map<Integer, String> recordedEtags = upload.getEtags();
+        Integer partNumberMarker = null;
+        do {
+            final ListPartsRequest request = ListPartsRequest.builder()
+                    .bucket(upload.getBucket())
+                    .key(key)
+                    .uploadId(upload.getUploadId())
+                    .partNumberMarker(partNumberMarker)
+                    .build();
+            final ListPartsResponse response;
+            try {
+                response = withRetries("list parts", UploadLatencies.Operation.LIST_PARTS, () -> config.getS3AsyncClient().listParts(request));
+            } catch (ExecutionException e) {
+                if (isNoSuchUpload(e)) {
+                    logger.info("{} no longer exists, starting over", upload);
+                    uploads.finished(key);
+                    return null;
+                }
+                throw e;
+            }
+            for (software.amazon.awssdk.services.s3.model.Part part : response.parts()) {
+                final long expectedSize = Math.min(getSizeToUpload(), fileSize - (long) (part.partNumber() - 1) * getSizeToUpload());
+                final String recordedEtag = recordedEtags.get(part.partNumber());
+                // A part which doesn't match what this uploader would send is sent again, S3 replaces it
+                if (part.size() != null && part.size() == expectedSize && (recordedEtag == null || recordedEtag.equals(part.eTag()))) {
+                    uploadedParts.put(part.partNumber(), part.eTag());
+                }
+            }
+            partNumberMarker = Boolean.TRUE.equals(response.isTruncated()) ? response.nextPartNumberMarker() : null;
+        } while (partNumberMarker != null);
+
+        logger.info("Resuming {} with {} parts already uploaded", upload, uploadedParts.size());
+        return upload.getUploadId();
+    }
+
+    private static boolean isNoSuchUpload(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NoSuchUploadException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Aborts a multipart upload, so that S3 drops its parts. Transient failures are retried a few times, final ones
+     * are only logged, as the upload is given up on either way.
+     *
+     * @return a future completing once S3 has answered
+     */
+    public static CompletableFuture<AbortMultipartUploadResponse> abort(S3AsyncClient client, MultipartUploadRecord upload) {
+        final AbortMultipartUploadRequest request = AbortMultipartUploadRequest.builder()
+                .bucket(upload.getBucket())
+                .key(upload.getKey())
+                .uploadId(upload.getUploadId())
+                .build();
+        return abort(client, request, 1).whenComplete((response, error) -> {
+            if (error != null) {
+                logger.warn("Unable to abort {}, its parts are left in S3", upload, error);
+            } else {
+                logger.debug("Aborted {}", upload);
+            }
+        });
+    }
+
+    private static CompletableFuture<AbortMultipartUploadResponse> abort(S3AsyncClient client, AbortMultipartUploadRequest request, int attempt) {
+        final CompletableFuture<AbortMultipartUploadResponse> aborted = new CompletableFuture<>();
+        client.abortMultipartUpload(request).whenComplete((response, error) -> {
+            if (error == null) {
+                aborted.complete(response);
+            } else if (attempt < ABORT_ATTEMPTS && S3Errors.isRetryable(error)) {
+                abort(client, request, attempt + 1).whenComplete((retried, retryError) -> {
+                    if (retryError == null) {
+                        aborted.complete(retried);
+                    } else {
+                        aborted.completeExceptionally(retryError);
+                    }
+                });
+            } else {
+                aborted.completeExceptionally(error);
+            }
+        });
+        return aborted;
+    }
+
+    private void uploadChunk(Part part) throws InterruptedException {
         UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
                 .bucket(config.getBucketName())
                 .key(key)
-                .uploadId(uploadId)
-                .partNumber(uploadPartNumber)
+                .uploadId(part.uploadId)
+                .partNumber(part.number)
                 .build();
 
-        AsyncRequestBody body;
-        if (readBytes < buffer.limit()) {
-            // We need to limit the buffer if the rest of the file is smaller than the allocated size.
-            // If don't do this, the size of the sent part will be always equal to the buffer size.
-            // The re-typing is to provide compatibility when compiling with Java 9+ and running on Java 8
-            body = AsyncRequestBody.fromByteBuffer((ByteBuffer) ((Buffer) buffer).limit(readBytes));
-        } else {
-            body = AsyncRequestBody.fromByteBuffer(buffer);
+        if (part.attempts == 1) {
+            retryPolicy.recordRequest();
+        }
+        config.getThrottle().acquireRequest();
+        final long started = System.nanoTime();
+        final CompletableFuture<UploadPartResponse> response;
+        try {
+            response = config.getS3AsyncClient().uploadPart(uploadPartRequest, part.body);
+        } catch (RuntimeException e) {
+            partCompletions.add(new PartCompletion(part, null, e));
+            return;
+        }
+        response.whenComplete((uploadPartResponse, error) -> {
+            config.getLatencies().record(UploadLatencies.Operation.UPLOAD_PART, fileSize, System.nanoTime() - started);
+            if (error != null) {
+                partCompletions.add(new PartCompletion(part, null, error instanceof CompletionException && error.getCause() != null ? error.getCause() : error));
+            } else if (!part.body.matches(uploadPartResponse.eTag(), uploadPartResponse.serverSideEncryption())) {
+                // Retried like any other transient failure
+                partCompletions.add(new PartCompletion(part, null, new IOException(String.format(
+                        "Checksum mismatch on part %d of %s, sent MD5 %s but S3 returned ETag %s",
+                        part.number, key, part.body.getMd5().orElse(null), uploadPartResponse.eTag()))));
+            } else {
+                partCompletions.add(new PartCompletion(part, uploadPartResponse.eTag(), null));
+            }
+        });
+    }
+
+    /**
+     * Sends a failed part again after a backoff, if the failure is transient and the retry policy allows it. The
+     * other parts in flight carry on in the meantime.
+     *
+     * @return true if the part was sent again
+     */
+    private boolean retryPart(PartCompletion completion) throws InterruptedException {
+        final Part part = completion.part;
+        final long delay = S3Errors.isRetryable(completion.error) ? retryPolicy.nextRetryDelayMillis(part.attempts) : -1;
+        if (delay < 0) {
+            return false;
         }
-        final CompletableFuture<UploadPartResponse> uploadPartResponseCompletableFuture = config.getS3AsyncClient().uploadPart(uploadPartRequest, body);
+        logger.warn("Attempt {} to upload part {} of {} failed, retrying in {}ms: {}", part.attempts, part.number, key, delay, completion.error.getMessage());
+        retries.increment();
+        Thread.sleep(delay);
+        part.attempts++;
+        uploadChunk(part);
+        return true;
+    }
 
-        UploadPartResponse uploadPartResponse = uploadPartResponseCompletableFuture.get();
-        return uploadPartResponse.eTag();
+    /**
+     * Sends a request until it succeeds, retrying transient failures as long as the retry policy allows. The latency
+     * of every attempt is recorded.
+     */
+    private <T> T withRetries(String description, UploadLatencies.Operation operation, Supplier<CompletableFuture<T>> request) throws InterruptedException, ExecutionException {
+        retryPolicy.recordRequest();
+        for (int attempt = 1; ; attempt++) {
+            config.getThrottle().acquireRequest();
+            final long started = System.nanoTime();
+            final ExecutionException failure;
+            try {
+                return request.get().get();
+            } catch (ExecutionException e) {
+                failure = e;
+            } finally {
+                // Recorded before backing off, which isn't part of the request
+                config.getLatencies().record(operation, fileSize, System.nanoTime() - started);
+            }
+            final long delay = S3Errors.isRetryable(failure) ? retryPolicy.nextRetryDelayMillis(attempt) : -1;
+            if (delay < 0) {
+                throw failure;
+            }
+            logger.warn("Attempt {} to {} of {} failed, retrying in {}ms: {}", attempt, description, key, delay, failure.getMessage());
+            retries.increment();
+            Thread.sleep(delay);
+        }
     }
 
-    private int completePart(int uploadPartNumber, String etag) {
+    private void completePart(int uploadPartNumber, String etag) {
         CompletedPart part = CompletedPart.builder()
                 .partNumber(uploadPartNumber)
                 .eTag(etag)
                 .build();
         completedParts.add(part);
-
-        return uploadPartNumber + 1;
     }
 
     private CompletableFuture<CompleteMultipartUploadResponse> completeUpload(String key, String uploadId) {
@@ -174,4 +481,31 @@ public class S3MultiPartUploader {
                         .build();
         return config.getS3AsyncClient().completeMultipartUpload(completeMultipartUploadRequest);
     }
+
+    private static class Part {
+        final String uploadId;
+        final int number;
+        final long size;
+        final ChecksumAsyncRequestBody body;
+        int attempts = 1;
+
+        Part(String uploadId, int number, long size, ChecksumAsyncRequestBody body) {
+            this.uploadId = uploadId;
+            this.number = number;
+            this.size = size;
+            this.body = body;
+        }
+    }
+
+    private static class PartCompletion {
+        final Part part;
+        final String etag;
+        final Throwable error;
+
+        PartCompletion(Part part, String etag, Throwable error) {
+            this.part = part;
+            this.etag = etag;
+            this.error = error;
+        }
+    }
 }
@@ -16,6 +16,7 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 
 import java.nio.file.Path;
@@ -27,11 +28,35 @@ public class S3UploadConfig {
     private String bucketName;
     private S3AsyncClient s3AsyncClient;
     private Path sharedHome;
+    private UploadThrottle throttle;
+    private UploadLatencies latencies;
+    private MetricsRegistry metrics;
+    private FileReadExecutor fileReads;
 
     public S3UploadConfig(String bucketName, S3AsyncClient s3AsyncClient, Path sharedHome) {
+        this(bucketName, s3AsyncClient, sharedHome, UploadThrottle.unlimited());
+    }
+
+    public S3UploadConfig(String bucketName, S3AsyncClient s3AsyncClient, Path sharedHome, UploadThrottle throttle) {
+        this(bucketName, s3AsyncClient, sharedHome, throttle, new UploadLatencies());
+    }
+
+    public S3UploadConfig(String bucketName, S3AsyncClient s3AsyncClient, Path sharedHome, UploadThrottle throttle, UploadLatencies latencies) {
+        this(bucketName, s3AsyncClient, sharedHome, throttle, latencies, new MetricsRegistry());
+    }
+
+    public S3UploadConfig(String bucketName, S3AsyncClient s3AsyncClient, Path sharedHome, UploadThrottle throttle, UploadLatencies latencies, MetricsRegistry metrics) {
+        this(bucketName, s3AsyncClient, sharedHome, throttle, latencies, metrics, FileReadExecutor.fromSystemProperties());
+    }
+
+    public S3UploadConfig(String bucketName, S3AsyncClient s3AsyncClient, Path sharedHome, UploadThrottle throttle, UploadLatencies latencies, MetricsRegistry metrics, FileReadExecutor fileReads) {
         this.bucketName = bucketName;
         this.s3AsyncClient = s3AsyncClient;
         this.sharedHome = sharedHome;
+        this.throttle = throttle;
+        this.latencies = latencies;
+        this.metrics = metrics;
+        this.fileReads = fileReads;
     }
 
     /**
@@ -60,4 +85,40 @@ public class S3UploadConfig {
     public Path getSharedHome() {
         return sharedHome;
     }
+
+    /**
+     * Limits on the bandwidth and request rate of the upload
+     *
+     * @return throttle shared by all uploads of the migration
+     */
+    public UploadThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * Latencies of the requests sent to S3
+     *
+     * @return latencies shared by all uploads of the migration
+     */
+    public UploadLatencies getLatencies() {
+        return latencies;
+    }
+
+    /**
+     * Metrics of the upload, e.g. the number of completed and retried requests
+     *
+     * @return registry of the metrics of the migration
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Threads reading the uploaded files, so that the HTTP client's threads never wait for the shared home
+     *
+     * @return file reads shared by all uploads of the migration
+     */
+    public FileReadExecutor getFileReads() {
+        return fileReads;
+    }
 }
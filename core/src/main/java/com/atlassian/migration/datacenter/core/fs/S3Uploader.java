@@ -16,6 +16,10 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.fs.AdaptiveConcurrencyLimiter.Outcome;
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
+import com.atlassian.migration.datacenter.core.metrics.Counter;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.core.util.UploadQueue;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
@@ -25,127 +29,520 @@ import org.slf4j.LoggerFactory;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
 
-import java.nio.file.Files;
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.util.LinkedList;
-import java.util.Optional;
-import java.util.Queue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class S3Uploader implements Uploader {
     private static final Logger logger = LoggerFactory.getLogger(S3Uploader.class);
-    public static final int MAX_OPEN_CONNECTIONS = 50;
+    public static final String MAX_CONCURRENCY_PROPERTY = "com.atlassian.migration.datacenter.fs.maxUploadConcurrency";
+    private static final int INITIAL_CONCURRENCY = 50;
+    private static final int DEFAULT_MAX_CONCURRENCY = 200;
+    private static final int HTTP_SERVER_ERROR = 500;
+    private static final int QUEUE_BATCH_SIZE = 16;
+    // How often a worker waiting for files or responses checks for retries which are due
+    private static final long RETRY_POLL_MILLIS = 50;
+    public static final String MULTIPART_THRESHOLD_PROPERTY = "com.atlassian.migration.datacenter.fs.multipartThreshold";
+    private static final long DEFAULT_MULTIPART_THRESHOLD = 64 * 1024 * 1024L; // 64MB
     private static final long MAXIMUM_FILE_SIZE_TO_UPLOAD = 5 * 1024 * 1024 * 1024L; // 5GB  https://docs.aws.amazon.com/AmazonS3/latest/dev/UploadingObjects.html
+    public static final String BUNDLE_THRESHOLD_PROPERTY = "com.atlassian.migration.datacenter.fs.bundleThreshold";
+    public static final String BUNDLE_SIZE_PROPERTY = "com.atlassian.migration.datacenter.fs.bundleSize";
+    private static final long DEFAULT_BUNDLE_SIZE = 8 * 1024 * 1024L; // 8MB
+    private static final int MAX_FILES_PER_BUNDLE = 1000;
+    private static final int MAX_OPEN_BUNDLES = 64;
 
     private final FileSystemMigrationReport report;
-    private final Queue<S3UploadOperation> responsesQueue = new LinkedList<>();
     private final S3UploadConfig config;
+    // Files were checked against the manifest by the crawler, the uploader only records the ones it uploaded
+    private final CrawlManifest manifest;
+    // Shared by all workers calling upload(), so that the limit applies to the uploader as a whole
+    private final AdaptiveConcurrencyLimiter inFlightRequests;
+    private final UploadRetryPolicy retryPolicy;
+    // Files larger than this are uploaded in parts, which are sent in parallel and retried one by one
+    private final long multipartThreshold;
+    // Files smaller than this are packed into bundles per directory, 0 uploads every file on its own
+    private final long bundleThreshold;
+    private final long bundleSize;
+    private final Counter completions;
+    private final Counter bytes;
+    private final Counter failures;
+    private final Counter retries;
+    // The gauges read from the limiter, so they are only registered while upload() runs to let it go afterwards
+    private int activeUploads;
+    private List<MetricsRegistry.Registration> gauges = Collections.emptyList();
 
     public S3Uploader(S3UploadConfig config, FileSystemMigrationReport report) {
+        this(config, report, CrawlManifest.NONE);
+    }
+
+    public S3Uploader(S3UploadConfig config, FileSystemMigrationReport report, CrawlManifest manifest) {
+        this(config, report, manifest, UploadRetryPolicy.fromSystemProperties());
+    }
+
+    public S3Uploader(S3UploadConfig config, FileSystemMigrationReport report, CrawlManifest manifest, UploadRetryPolicy retryPolicy) {
         this.config = config;
         this.report = report;
+        this.manifest = manifest;
+        this.retryPolicy = retryPolicy;
+        this.multipartThreshold = Math.max(S3MultiPartUploader.MIN_PART_SIZE,
+                Math.min(MAXIMUM_FILE_SIZE_TO_UPLOAD, Long.getLong(MULTIPART_THRESHOLD_PROPERTY, DEFAULT_MULTIPART_THRESHOLD)));
+        this.bundleThreshold = Math.max(0, Long.getLong(BUNDLE_THRESHOLD_PROPERTY, 0));
+        this.bundleSize = Math.max(1, Long.getLong(BUNDLE_SIZE_PROPERTY, DEFAULT_BUNDLE_SIZE));
+        this.inFlightRequests = new AdaptiveConcurrencyLimiter(INITIAL_CONCURRENCY, 1, configuredMaxConcurrency(), report::reportUploadConcurrencyAdjusted);
+        final MetricsRegistry metrics = config.getMetrics();
+        this.completions = metrics.counter("upload.completions");
+        this.bytes = metrics.counter("upload.bytes");
+        this.failures = metrics.counter("upload.failures");
+        this.retries = metrics.counter("upload.retries");
+    }
+
+    /**
+     * @return the most uploads which may be in flight at the same time, from the {@value #MAX_CONCURRENCY_PROPERTY} system property
+     */
+    public static int configuredMaxConcurrency() {
+        return Math.max(INITIAL_CONCURRENCY, Integer.getInteger(MAX_CONCURRENCY_PROPERTY, DEFAULT_MAX_CONCURRENCY));
     }
 
     @Override
     public Integer maxConcurrent() {
-        return MAX_OPEN_CONNECTIONS;
+        return inFlightRequests.getMaxLimit();
     }
 
     @Override
-    public void upload(UploadQueue<Path> queue) throws FileUploadException
+    public void upload(UploadQueue<FileEntry> queue) throws FileUploadException
     {
+        // Tracks the responses and retries of this call only, so that several workers can consume the same queue with
+        // one uploader. Retries are sent by this call rather than re-queued, as the crawler may have finished the queue
+        // in the meantime.
+        final Phaser pendingResponses = new Phaser(1);
+        final PendingRetries pendingRetries = new PendingRetries();
+        final List<FileEntry> batch = new ArrayList<>(QUEUE_BATCH_SIZE);
+        // Bundles being filled by this call, by directory
+        final Map<Path, SmallFileBundle> openBundles = new LinkedHashMap<>();
+        registerGauges();
         try {
-            for (Optional<Path> opt = queue.take(); opt.isPresent(); opt = queue.take()) {
-                uploadFile(opt.get());
+            while (!queue.isDrained()) {
+                sendDueRetries(pendingRetries, pendingResponses);
+                queue.drainTo(batch, QUEUE_BATCH_SIZE, RETRY_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                for (FileEntry entry : batch) {
+                    uploadFile(entry, openBundles, pendingResponses, pendingRetries);
+                }
+                batch.clear();
+            }
+            for (SmallFileBundle bundle : openBundles.values()) {
+                sendBundle(bundle, pendingResponses, pendingRetries);
             }
+            openBundles.clear();
+            logger.debug("Finished uploading all files, waiting for pending responses");
+            awaitPendingResponses(pendingResponses, pendingRetries);
         } catch (InterruptedException e) {
-            String msg = "InterruptedException while fetching file from queue";
+            // The upload is being aborted, so retries which are still waiting must not be sent anymore
+            for (S3UploadOperation operation : pendingRetries.abort()) {
+                addFailedFiles(operation, operation.failureReason());
+            }
+            String msg = "InterruptedException while uploading files from queue";
             logger.error(msg, e);
             throw new FileUploadException(msg, e);
+        } finally {
+            unregisterGauges();
         }
-        logger.debug("Finished uploading all files, acknowledging pending responses");
-        acknowledgeAndFlushResponses();
         logger.info("Finished uploading files to S3");
     }
 
-    private void uploadFile(Path path) {
-        if (responsesQueue.size() >= MAX_OPEN_CONNECTIONS) {
-            logger.trace("Response queue greater than connection threshold. Acknowledging response queue");
-            acknowledgeAndFlushResponses();
+    /**
+     * Waits until every request sent by a call to upload() has a final outcome, sending the retries as they are due.
+     * Operations waiting for a retry keep their registration, so the phase only advances once they are done.
+     */
+    private void awaitPendingResponses(Phaser pendingResponses, PendingRetries pendingRetries) throws InterruptedException {
+        final int phase = pendingResponses.arrive();
+        while (true) {
+            try {
+                pendingResponses.awaitAdvanceInterruptibly(phase, RETRY_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                sendDueRetries(pendingRetries, pendingResponses);
+            }
+        }
+    }
+
+    // Only one uploader runs at a time, so the gauges follow the latest one
+    private synchronized void registerGauges() {
+        if (activeUploads++ == 0) {
+            final MetricsRegistry metrics = config.getMetrics();
+            gauges = Arrays.asList(
+                    metrics.gauge("upload.inFlight", inFlightRequests::getInFlight),
+                    metrics.gauge("upload.concurrencyLimit", inFlightRequests::getLimit));
         }
+    }
 
-        if (Files.exists(path)) {
-            logger.trace("Consuming {} from upload queue", path);
-            String key = config.getSharedHome().relativize(path).toString();
-            if (path.toFile().length() > MAXIMUM_FILE_SIZE_TO_UPLOAD) {
-                logger.debug("File {} is larger than {}, running multipart upload", path, FileUtils.byteCountToDisplaySize(MAXIMUM_FILE_SIZE_TO_UPLOAD));
+    private synchronized void unregisterGauges() {
+        if (--activeUploads == 0) {
+            gauges.forEach(MetricsRegistry.Registration::close);
+            gauges = Collections.emptyList();
+        }
+    }
 
-                final S3MultiPartUploader multiPartUploader = new S3MultiPartUploader(config, path.toFile(), key);
-                try {
-                    multiPartUploader.upload();
-                } catch (InterruptedException | ExecutionException e) {
-                    logger.error("Error when running multi-part upload for file {} with exception {}", path, e.getMessage());
-                }
-            } else {
-                logger.trace("uploading file {}", path);
-                final PutObjectRequest putRequest = PutObjectRequest.builder()
-                        .bucket(config.getBucketName())
-                        .key(key)
-                        .build();
-                final CompletableFuture<PutObjectResponse> response = config.getS3AsyncClient().putObject(putRequest, path);
-                final S3UploadOperation uploadOperation = new S3UploadOperation(path, response);
-                responsesQueue.add(uploadOperation);
+    private void uploadFile(FileEntry queued, Map<Path, SmallFileBundle> openBundles, Phaser pendingResponses, PendingRetries pendingRetries) throws InterruptedException {
+        final Path path = queued.getPath();
+        final FileEntry entry;
+        try {
+            // Crawled entries already carry their attributes, so this doesn't touch the filesystem
+            entry = queued.resolve();
+        } catch (NoSuchFileException e) {
+            addFailedFile(path, String.format("File doesn't exist: %s", path));
+            return;
+        } catch (IOException e) {
+            addFailedFile(path, e.getMessage());
+            return;
+        }
 
-                report.reportFileUploadCommenced();
+        logger.trace("Consuming {} from upload queue", path);
+        String key = config.getSharedHome().relativize(path).toString();
+
+        if (entry.getSize() < bundleThreshold && addToBundle(key, entry, openBundles, pendingResponses, pendingRetries)) {
+            return;
+        }
+
+        if (entry.getSize() > multipartThreshold) {
+            // The parts are paced by the multipart uploader, each of them is a request of its own
+            inFlightRequests.acquire();
+            logger.debug("File {} is larger than {}, running multipart upload", path, FileUtils.byteCountToDisplaySize(multipartThreshold));
+
+            final S3MultiPartUploader multiPartUploader = new S3MultiPartUploader(config, path.toFile(), key, retryPolicy, manifest.multipartUploads(), report::reportBytesUploaded);
+            report.reportFileUploadCommenced();
+            final long started = System.nanoTime();
+            Outcome outcome = Outcome.SUCCESS;
+            try {
+                multiPartUploader.upload();
+                manifest.markUploaded(key, entry);
+                // The bytes were reported part by part
+                report.reportFileUploaded();
+                completions.increment();
+                bytes.add(entry.getSize());
+            } catch (ExecutionException | IOException e) {
+                outcome = S3Errors.isThrottling(e) ? Outcome.THROTTLED : Outcome.FAILED;
+                logger.error("Error when running multi-part upload for file {} with exception {}", path, e.getMessage());
+                addFailedFile(path, e.getMessage());
+            } finally {
+                // The duration of a multipart upload depends on the file size rather than the load, only throttling counts
+                if (outcome == Outcome.THROTTLED) {
+                    inFlightRequests.release(System.nanoTime() - started, outcome);
+                } else {
+                    inFlightRequests.release();
+                }
             }
         } else {
-            addFailedFile(path, String.format("File doesn't exist: %s", path));
+            logger.trace("uploading file {}", path);
+            config.getThrottle().acquireRequest();
+            // Blocks only until the first of the in-flight requests completes, not until all of them do
+            inFlightRequests.acquire();
+            retryPolicy.recordRequest();
+            // Registered before the request is sent, as its callback runs right away if the response is already complete
+            pendingResponses.register();
+            sendPutObject(new S3UploadOperation(path, key, entry), pendingResponses, pendingRetries);
         }
     }
 
-    private void acknowledgeAndFlushResponses() {
-        final int initialQueueSize = responsesQueue.size();
-        for (int i = 0; i < initialQueueSize; i++) {
-            S3UploadOperation operation = responsesQueue.poll();
-            if (operation != null) {
-                handlePutObjectResponse(operation);
+    /**
+     * Adds a small file to the bundle of its directory, sending the bundle once it is full.
+     *
+     * @return false if the file can't be bundled and needs to be uploaded on its own
+     */
+    private boolean addToBundle(String key, FileEntry entry, Map<Path, SmallFileBundle> openBundles, Phaser pendingResponses, PendingRetries pendingRetries) throws InterruptedException {
+        final Path directory = entry.getPath().getParent();
+        SmallFileBundle bundle = openBundles.get(directory);
+        if (bundle == null) {
+            if (openBundles.size() >= MAX_OPEN_BUNDLES) {
+                // Crawlers mostly finish a directory before moving on, so the eldest bundle is the least likely to grow
+                final Iterator<SmallFileBundle> eldest = openBundles.values().iterator();
+                sendBundle(eldest.next(), pendingResponses, pendingRetries);
+                eldest.remove();
             }
+            bundle = new SmallFileBundle();
+            openBundles.put(directory, bundle);
+        }
+        if (!bundle.add(key, entry)) {
+            return false;
+        }
+        if (bundle.getContentSize() >= bundleSize || bundle.size() >= MAX_FILES_PER_BUNDLE) {
+            openBundles.remove(directory);
+            sendBundle(bundle, pendingResponses, pendingRetries);
         }
+        return true;
     }
 
-    private void handlePutObjectResponse(S3UploadOperation operation) {
+    private void sendBundle(SmallFileBundle bundle, Phaser pendingResponses, PendingRetries pendingRetries) throws InterruptedException {
+        if (bundle.size() == 0) {
+            return;
+        }
+        logger.trace("Uploading bundle {} of {} files", bundle.getKey(), bundle.size());
+        config.getThrottle().acquireRequest();
+        inFlightRequests.acquire();
+        retryPolicy.recordRequest();
+        pendingResponses.register();
+        sendPutObject(new S3UploadOperation(bundle), pendingResponses, pendingRetries);
+    }
+
+    /**
+     * Sends the request of an operation which holds a permit and is registered with the pending responses. The permit
+     * is given back after every attempt and taken again for a retry, while the registration is kept until the file is
+     * uploaded or has failed for good.
+     */
+    private void sendPutObject(S3UploadOperation operation, Phaser pendingResponses, PendingRetries pendingRetries) {
+        final PutObjectRequest putRequest = PutObjectRequest.builder()
+                .bucket(config.getBucketName())
+                .key(operation.key)
+                .build();
+        final long started = System.nanoTime();
+        final CompletableFuture<PutObjectResponse> response;
+        final ChecksumAsyncRequestBody body;
         try {
-            logger.trace("acknowledging file upload for {}", operation.path);
-            final PutObjectResponse evaluatedResponse = operation.response.get();
-            if (!evaluatedResponse.sdkHttpResponse().isSuccessful()) {
-                final String errorMessage = String.format(
-                        "Error when uploading %s to S3, %s",
-                        operation.path,
-                        evaluatedResponse.sdkHttpResponse().statusText());
-                logger.warn("error uploading {} to S3 - {}", operation.path, evaluatedResponse);
-                addFailedFile(operation.path, errorMessage);
-            } else {
-                logger.trace("{} migrated successfully", operation.path);
+            // Streamed through a checksum rather than handed to the SDK as a path, so the upload can be verified
+            final FileRegionAsyncRequestBody content = operation.bundle == null
+                    ? new FileRegionAsyncRequestBody(operation.path, 0, operation.entry.getSize(), config.getFileReads())
+                    : operation.bundle.toRequestBody(config.getFileReads());
+            body = new ChecksumAsyncRequestBody(content.throttledBy(config.getThrottle()));
+            response = config.getS3AsyncClient().putObject(putRequest, body);
+        } catch (RuntimeException e) {
+            inFlightRequests.release(System.nanoTime() - started, Outcome.FAILED);
+            addFailedFiles(operation, e.getMessage());
+            pendingResponses.arriveAndDeregister();
+            return;
+        }
+        if (operation.attempts == 1) {
+            // Bundled files are accounted one by one, the bundle itself isn't a file of the home directory
+            for (int i = 0; i < operation.fileCount(); i++) {
+                report.reportFileUploadCommenced();
+            }
+        }
+
+        response.whenComplete((evaluatedResponse, error) -> {
+            config.getLatencies().record(UploadLatencies.Operation.PUT_OBJECT, operation.size(), System.nanoTime() - started);
+            Outcome outcome = Outcome.FAILED;
+            boolean retrying = false;
+            try {
+                outcome = handlePutObjectResponse(operation, body, evaluatedResponse, error);
+                retrying = outcome != Outcome.SUCCESS && scheduleRetry(operation, pendingRetries);
+                if (outcome != Outcome.SUCCESS && !retrying) {
+                    addFailedFiles(operation, operation.failureReason());
+                }
+            } catch (RuntimeException e) {
+                // Nothing would see an exception thrown from the completion callback
+                addFailedFiles(operation, e.getMessage());
+            } finally {
+                inFlightRequests.release(System.nanoTime() - started, outcome);
+                if (!retrying) {
+                    pendingResponses.arriveAndDeregister();
+                }
+            }
+        });
+    }
+
+    private Outcome handlePutObjectResponse(S3UploadOperation operation, ChecksumAsyncRequestBody body, PutObjectResponse evaluatedResponse, Throwable error) {
+        logger.trace("acknowledging file upload for {}", operation);
+        if (error != null) {
+            final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            operation.failed(cause.getMessage(), S3Errors.isRetryable(cause));
+            return S3Errors.isThrottling(cause) ? Outcome.THROTTLED : Outcome.FAILED;
+        } else if (!evaluatedResponse.sdkHttpResponse().isSuccessful()) {
+            final int statusCode = evaluatedResponse.sdkHttpResponse().statusCode();
+            final String errorMessage = String.format(
+                    "Error when uploading %s to S3, %s",
+                    operation,
+                    evaluatedResponse.sdkHttpResponse().statusText());
+            logger.warn("error uploading {} to S3 - {}", operation, evaluatedResponse);
+            operation.failed(errorMessage, statusCode >= HTTP_SERVER_ERROR);
+            return statusCode == S3Errors.HTTP_SERVICE_UNAVAILABLE ? Outcome.THROTTLED : Outcome.FAILED;
+        } else if (!body.matches(evaluatedResponse.eTag(), evaluatedResponse.serverSideEncryption())) {
+            // S3 stored different bytes than were read from the file, so they were corrupted on the way
+            final String errorMessage = String.format(
+                    "Checksum mismatch when uploading %s to S3, sent MD5 %s but S3 returned ETag %s",
+                    operation,
+                    body.getMd5().orElse(null),
+                    evaluatedResponse.eTag());
+            operation.failed(errorMessage, true);
+            return Outcome.FAILED;
+        } else {
+            logger.trace("{} migrated successfully", operation);
+            if (operation.bundle == null) {
+                manifest.markUploaded(operation.key, operation.entry);
                 report.reportFileUploaded();
+                report.reportBytesUploaded(operation.entry.getSize());
+                completions.increment();
+                bytes.add(operation.entry.getSize());
+            } else {
+                for (int i = 0; i < operation.bundle.size(); i++) {
+                    manifest.markUploaded(operation.bundle.getKeys().get(i), operation.bundle.getEntries().get(i));
+                    report.reportFileUploaded();
+                    report.reportBytesUploaded(operation.bundle.getEntries().get(i).getSize());
+                }
+                completions.add(operation.bundle.size());
+                bytes.add(operation.bundle.getContentSize());
+            }
+            return Outcome.SUCCESS;
+        }
+    }
+
+    /**
+     * Schedules another attempt of a failed operation, unless the failure isn't transient, the retry policy refuses it
+     * or the upload was aborted.
+     *
+     * @return true if the operation will be retried
+     */
+    private boolean scheduleRetry(S3UploadOperation operation, PendingRetries pendingRetries) {
+        if (!operation.retryable) {
+            return false;
+        }
+        final long delay = retryPolicy.nextRetryDelayMillis(operation.attempts);
+        if (delay < 0) {
+            return false;
+        }
+        logger.debug("Attempt {} to upload {} failed, retrying in {}ms: {}", operation.attempts, operation, delay, operation.lastError);
+        if (!pendingRetries.add(operation, delay)) {
+            return false;
+        }
+        retries.increment();
+        return true;
+    }
+
+    /**
+     * Sends the retries which are due. Runs on the worker which sent the operations, as the throttle and the limiter
+     * may block it until there is room for another request.
+     */
+    private void sendDueRetries(PendingRetries pendingRetries, Phaser pendingResponses) throws InterruptedException {
+        S3UploadOperation operation;
+        while ((operation = pendingRetries.pollDue()) != null) {
+            try {
+                config.getThrottle().acquireRequest();
+                inFlightRequests.acquire();
+            } catch (InterruptedException e) {
+                addFailedFiles(operation, operation.failureReason());
+                pendingResponses.arriveAndDeregister();
+                throw e;
             }
-        } catch (InterruptedException | ExecutionException e) {
-            addFailedFile(operation.path, e.getMessage());
+            operation.attempts++;
+            sendPutObject(operation, pendingResponses, pendingRetries);
+        }
+    }
+
+    private void addFailedFiles(S3UploadOperation operation, String reason) {
+        if (operation.bundle == null) {
+            addFailedFile(operation.path, reason);
+            return;
+        }
+        for (FileEntry entry : operation.bundle.getEntries()) {
+            addFailedFile(entry.getPath(), String.format("%s (bundled in %s)", reason, operation.key));
         }
     }
 
     private void addFailedFile(Path path, String reason) {
+        failures.increment();
         report.reportFileNotMigrated(new FailedFileMigration(path, reason));
         logger.error("File {} wasn't uploaded. Reason: {}", path, reason);
     }
 
-    private static class S3UploadOperation {
+    /**
+     * Operations of one call to upload() which wait for another attempt, in the order they are due.
+     */
+    private static class PendingRetries {
+        private final DelayQueue<S3UploadOperation> operations = new DelayQueue<>();
+        private boolean aborted;
+
+        /**
+         * @return false if the upload was aborted, in which case the operation is not retried
+         */
+        synchronized boolean add(S3UploadOperation operation, long delayMillis) {
+            if (aborted) {
+                return false;
+            }
+            operation.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            operations.add(operation);
+            return true;
+        }
+
+        S3UploadOperation pollDue() {
+            return operations.poll();
+        }
+
+        /**
+         * @return the operations which were still waiting, none is added anymore afterwards
+         */
+        synchronized List<S3UploadOperation> abort() {
+            aborted = true;
+            final List<S3UploadOperation> waiting = new ArrayList<>(operations);
+            operations.clear();
+            return waiting;
+        }
+    }
+
+    private static class S3UploadOperation implements Delayed {
         Path path;
-        CompletableFuture<PutObjectResponse> response;
+        String key;
+        FileEntry entry;
+        // Set instead of the path and entry when the operation uploads a bundle of small files
+        SmallFileBundle bundle;
+        int attempts = 1;
+        String lastError;
+        boolean retryable;
+        // The nanoTime at which the operation is retried, while it waits in PendingRetries
+        long retryAt;
 
-        S3UploadOperation(Path path, CompletableFuture<PutObjectResponse> response) {
+        S3UploadOperation(Path path, String key, FileEntry entry) {
             this.path = path;
-            this.response = response;
+            this.key = key;
+            this.entry = entry;
+        }
+
+        S3UploadOperation(SmallFileBundle bundle) {
+            this.key = bundle.getKey();
+            this.bundle = bundle;
+        }
+
+        int fileCount() {
+            return bundle == null ? 1 : bundle.size();
+        }
+
+        long size() {
+            return bundle == null ? entry.getSize() : bundle.getContentSize();
+        }
+
+        void failed(String error, boolean retryable) {
+            this.lastError = error;
+            this.retryable = retryable;
+        }
+
+        String failureReason() {
+            return attempts > 1 ? String.format("%s (after %d attempts)", lastError, attempts) : lastError;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(retryAt - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public String toString() {
+            return bundle == null ? path.toString() : String.format("bundle %s of %d files", key, bundle.size());
         }
     }
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.fs.FileRegionAsyncRequestBody.Region;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+
+/**
+ * Small files of one directory packed into a single S3 object, so that they cost one request instead of one each.
+ * <p>
+ * The bundle is streamed from the files as they are sent; only the headers are held in memory. Its layout is read
+ * back by the filesystem processor on the target:
+ * <pre>
+ * | magic (4) | version (4) |
+ * | key length (2) | key | size (8) | mtime (8) | content (size) |   once per file
+ * | 0 (2) |
+ * | file count (4) | content offset (8) |                          index, once per file
+ * </pre>
+ * Keys are the S3 keys the files would have been uploaded to, in UTF-8. Bundles are stored under
+ * {@value #BUNDLE_PREFIX}, which doesn't clash with anything in the home directory.
+ */
+public class SmallFileBundle {
+    public static final String BUNDLE_PREFIX = ".dc-migration-bundles/";
+    public static final String BUNDLE_SUFFIX = ".bundle";
+    static final int MAGIC = 0x44434d42; // "DCMB"
+    static final int VERSION = 1;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    private final String key = BUNDLE_PREFIX + UUID.randomUUID() + BUNDLE_SUFFIX;
+    private final List<String> keys = new ArrayList<>();
+    private final List<FileEntry> entries = new ArrayList<>();
+    private long contentSize;
+
+    /**
+     * @return false if the key of the file can't be stored in a bundle, in which case it needs to be uploaded on its
+     * own
+     */
+    public boolean add(String key, FileEntry entry) {
+        if (key.getBytes(StandardCharsets.UTF_8).length > MAX_KEY_LENGTH) {
+            return false;
+        }
+        keys.add(key);
+        entries.add(entry);
+        contentSize += entry.getSize();
+        return true;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public List<String> getKeys() {
+        return Collections.unmodifiableList(keys);
+    }
+
+    public List<FileEntry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the number of bytes of the bundled files, without the headers
+     */
+    public long getContentSize() {
+        return contentSize;
+    }
+
+    /**
+     * Lays out the bundle for upload. Files are sent with the size they were crawled with, so a file which shrank in
+     * the meantime fails the request, see {@link FileRegionAsyncRequestBody}.
+     *
+     * @param reads the executor reading the bundled files
+     */
+    public FileRegionAsyncRequestBody toRequestBody(Executor reads) {
+        final List<Region> regions = new ArrayList<>(entries.size() * 2 + 2);
+        final long[] contentOffsets = new long[entries.size()];
+        long offset = 0;
+        try {
+            final ByteArrayOutputStream header = new ByteArrayOutputStream();
+            final DataOutputStream out = new DataOutputStream(header);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (int i = 0; i < entries.size(); i++) {
+                final FileEntry entry = entries.get(i);
+                final byte[] keyBytes = keys.get(i).getBytes(StandardCharsets.UTF_8);
+                out.writeShort(keyBytes.length);
+                out.write(keyBytes);
+                out.writeLong(entry.getSize());
+                out.writeLong(entry.getLastModified());
+                out.flush();
+
+                regions.add(Region.of(header.toByteArray()));
+                offset += header.size();
+                header.reset();
+                contentOffsets[i] = offset;
+                regions.add(Region.of(entry.getPath(), 0, entry.getSize()));
+                offset += entry.getSize();
+            }
+            out.writeShort(0);
+            out.writeInt(entries.size());
+            for (long contentOffset : contentOffsets) {
+                out.writeLong(contentOffset);
+            }
+            out.flush();
+            regions.add(Region.of(header.toByteArray()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to lay out bundle", e);
+        }
+        return FileRegionAsyncRequestBody.of(regions, reads);
+    }
+}
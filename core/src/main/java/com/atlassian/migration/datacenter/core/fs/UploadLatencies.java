@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Latencies of the S3 requests sent by the upload, per operation and size of the file uploaded.
+ * <p>
+ * A latency runs from sending the request until its response arrives, so for requests with a body it includes
+ * reading the file from the home directory and any throttling of the upload, but not the time a file waits in the
+ * upload queue. Every attempt of a request is recorded, including failed ones.
+ */
+public class UploadLatencies {
+
+    public enum Operation {
+        PUT_OBJECT("PutObject"),
+        CREATE_MULTIPART_UPLOAD("CreateMultipartUpload"),
+        UPLOAD_PART("UploadPart"),
+        COMPLETE_MULTIPART_UPLOAD("CompleteMultipartUpload"),
+        LIST_PARTS("ListParts");
+
+        private final String apiName;
+
+        Operation(String apiName) {
+            this.apiName = apiName;
+        }
+
+        public String getApiName() {
+            return apiName;
+        }
+    }
+
+    public enum SizeClass {
+        UP_TO_64KB("<64KB", 64L * 1024),
+        UP_TO_1MB("64KB-1MB", 1024L * 1024),
+        UP_TO_16MB("1MB-16MB", 16L * 1024 * 1024),
+        UP_TO_128MB("16MB-128MB", 128L * 1024 * 1024),
+        UP_TO_1GB("128MB-1GB", 1024L * 1024 * 1024),
+        LARGER("1GB+", Long.MAX_VALUE);
+
+        private final String label;
+        private final long maxSize;
+
+        SizeClass(String label, long maxSize) {
+            this.label = label;
+            this.maxSize = maxSize;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public static SizeClass of(long fileSize) {
+            for (SizeClass sizeClass : values()) {
+                if (fileSize < sizeClass.maxSize) {
+                    return sizeClass;
+                }
+            }
+            return LARGER;
+        }
+    }
+
+    private static final int SIZE_CLASSES = SizeClass.values().length;
+
+    // Histograms are only created for the combinations which occur, most operations only see a few size classes
+    private final AtomicReferenceArray<LatencyHistogram> histograms =
+            new AtomicReferenceArray<>(Operation.values().length * SIZE_CLASSES);
+
+    /**
+     * @param operation    the S3 operation of the request
+     * @param fileSize     the size of the file uploaded, or of the bundle for bundled files
+     * @param latencyNanos how long the request took
+     */
+    public void record(Operation operation, long fileSize, long latencyNanos) {
+        final int index = operation.ordinal() * SIZE_CLASSES + SizeClass.of(fileSize).ordinal();
+        LatencyHistogram histogram = histograms.get(index);
+        if (histogram == null) {
+            histograms.compareAndSet(index, null, new LatencyHistogram());
+            histogram = histograms.get(index);
+        }
+        histogram.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return the latencies of the combinations of operation and size class which were recorded, by operation
+     */
+    public List<Summary> summarise() {
+        final List<Summary> summaries = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            for (SizeClass sizeClass : SizeClass.values()) {
+                final LatencyHistogram histogram = histograms.get(operation.ordinal() * SIZE_CLASSES + sizeClass.ordinal());
+                if (histogram != null) {
+                    summaries.add(new Summary(operation, sizeClass, histogram.snapshot()));
+                }
+            }
+        }
+        return summaries;
+    }
+
+    /**
+     * Forgets all latencies, e.g. when a new migration starts.
+     */
+    public void reset() {
+        for (int i = 0; i < histograms.length(); i++) {
+            histograms.set(i, null);
+        }
+    }
+
+    public static final class Summary {
+        private final Operation operation;
+        private final SizeClass sizeClass;
+        private final LatencyHistogram.Snapshot snapshot;
+
+        Summary(Operation operation, SizeClass sizeClass, LatencyHistogram.Snapshot snapshot) {
+            this.operation = operation;
+            this.sizeClass = sizeClass;
+            this.snapshot = snapshot;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public SizeClass getSizeClass() {
+            return sizeClass;
+        }
+
+        public long getCount() {
+            return snapshot.getCount();
+        }
+
+        public long getP50Micros() {
+            return snapshot.getPercentileMicros(50);
+        }
+
+        public long getP90Micros() {
+            return snapshot.getPercentileMicros(90);
+        }
+
+        public long getP99Micros() {
+            return snapshot.getPercentileMicros(99);
+        }
+
+        public long getMaxMicros() {
+            return snapshot.getMaxMicros();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether and when a failed upload request is retried.
+ * <p>
+ * Retries are delayed by an exponential backoff with full jitter, i.e. a random delay up to a cap which doubles with
+ * every attempt, so that requests failing together don't hit S3 again together.
+ * <p>
+ * On top of the attempts per file, all retries draw from a shared budget which every first attempt tops up by a
+ * tenth of a retry. When S3 fails most requests, the budget runs out and files fail after their first attempt instead
+ * of multiplying the load on S3 by the number of attempts. A reserve lets the first retries through before much
+ * traffic has been sent.
+ * <p>
+ * The number of attempts per file is read from the {@value #MAX_ATTEMPTS_PROPERTY} system property. Thread safe.
+ */
+public class UploadRetryPolicy {
+    public static final String MAX_ATTEMPTS_PROPERTY = "com.atlassian.migration.datacenter.fs.uploadMaxAttempts";
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+
+    private static final long DEFAULT_BASE_DELAY_MILLIS = 200;
+    private static final long DEFAULT_MAX_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(20);
+
+    // The budget is kept in tenths of a retry, so that a first attempt can deposit a fraction of one
+    private static final long REQUEST_DEPOSIT = 1;
+    private static final long RETRY_COST = 10;
+    private static final long INITIAL_BUDGET = 100 * RETRY_COST;
+    private static final long MAX_BUDGET = 1000 * RETRY_COST;
+
+    private final int maxAttempts;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final AtomicLong budget = new AtomicLong(INITIAL_BUDGET);
+
+    public UploadRetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Upload must be attempted at least once, max attempts were " + maxAttempts);
+        }
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    public static UploadRetryPolicy fromSystemProperties() {
+        return new UploadRetryPolicy(
+                Integer.getInteger(MAX_ATTEMPTS_PROPERTY, DEFAULT_MAX_ATTEMPTS),
+                DEFAULT_BASE_DELAY_MILLIS,
+                DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * Policy which never retries.
+     */
+    public static UploadRetryPolicy noRetries() {
+        return new UploadRetryPolicy(1, 0, 0);
+    }
+
+    /**
+     * Records the first attempt of a request, which tops up the retry budget.
+     */
+    public void recordRequest() {
+        budget.updateAndGet(balance -> Math.min(MAX_BUDGET, balance + REQUEST_DEPOSIT));
+    }
+
+    /**
+     * Takes a retry from the budget and picks its delay.
+     *
+     * @param failedAttempt the number of the attempt which failed, starting at 1
+     * @return the delay before the next attempt in milliseconds, or -1 if the request must not be retried because it
+     * has used up its attempts or the retry budget is exhausted
+     */
+    public long nextRetryDelayMillis(int failedAttempt) {
+        if (failedAttempt >= maxAttempts || !takeFromBudget()) {
+            return -1;
+        }
+        final long cap = Math.min(maxDelayMillis, baseDelayMillis << Math.min(failedAttempt - 1, 30));
+        return cap <= 0 ? 0 : ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    private boolean takeFromBudget() {
+        while (true) {
+            final long balance = budget.get();
+            if (balance < RETRY_COST) {
+                return false;
+            }
+            if (budget.compareAndSet(balance, balance - RETRY_COST)) {
+                return true;
+            }
+        }
+    }
+}
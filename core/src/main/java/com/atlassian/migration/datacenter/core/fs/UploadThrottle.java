@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.ZonedDateTime;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Caps the bandwidth and the request rate of uploads, so that a migration running on a live Jira node leaves enough
+ * of the network and the shared home for its users.
+ * <p>
+ * Bytes and requests are paced by a {@link TokenBucket} each, shared by all uploads using the throttle. Whether the
+ * business hours or the off-hours limits of the {@link UploadThrottleSettings} apply is re-evaluated at most once a
+ * second, and the settings can be replaced at any time, e.g. from the REST API, with uploads in flight picking up the
+ * new limits right away.
+ */
+public class UploadThrottle {
+    private static final Logger logger = LoggerFactory.getLogger(UploadThrottle.class);
+    private static final long PERIOD_CHECK_INTERVAL_MILLIS = 1000;
+
+    private final TokenBucket bytes = new TokenBucket(TokenBucket.UNLIMITED);
+    private final TokenBucket requests = new TokenBucket(TokenBucket.UNLIMITED);
+    private final Clock clock;
+    // Resumes request bodies waiting for bandwidth, which must not block the threads of the HTTP client
+    private final ScheduledThreadPoolExecutor scheduler;
+
+    private volatile UploadThrottleSettings settings;
+    private volatile long periodCheckedAt = Long.MIN_VALUE;
+    private volatile boolean businessHours;
+
+    public UploadThrottle(UploadThrottleSettings settings) {
+        this(settings, Clock.systemDefaultZone());
+    }
+
+    UploadThrottle(UploadThrottleSettings settings, Clock clock) {
+        this.clock = clock;
+        this.settings = settings;
+        this.scheduler = new ScheduledThreadPoolExecutor(1, schedulerThreadFactory());
+        // The thread goes away while nothing is throttled, so an idle throttle doesn't hold on to it
+        this.scheduler.setKeepAliveTime(1, TimeUnit.MINUTES);
+        this.scheduler.allowCoreThreadTimeOut(true);
+        applyLimits(true);
+    }
+
+    /**
+     * @return a throttle which never holds anything back
+     */
+    public static UploadThrottle unlimited() {
+        return new UploadThrottle(UploadThrottleSettings.unlimited());
+    }
+
+    public static UploadThrottle fromSystemProperties() {
+        return new UploadThrottle(UploadThrottleSettings.fromSystemProperties());
+    }
+
+    public UploadThrottleSettings getSettings() {
+        return settings;
+    }
+
+    /**
+     * Replaces the limits, taking effect for the bytes and requests sent from now on.
+     */
+    public void setSettings(UploadThrottleSettings settings) {
+        this.settings = settings;
+        logger.info("Changed upload limits to {}", settings);
+        applyLimits(true);
+    }
+
+    /**
+     * @return true if the business hours limits apply at the moment
+     */
+    public boolean isBusinessHours() {
+        applyLimits(false);
+        return businessHours;
+    }
+
+    public long getBytesPerSecond() {
+        applyLimits(false);
+        return bytes.getRate();
+    }
+
+    public long getRequestsPerSecond() {
+        applyLimits(false);
+        return requests.getRate();
+    }
+
+    /**
+     * Takes bandwidth for bytes about to be sent, without blocking.
+     *
+     * @param count the number of bytes
+     * @return how many nanoseconds to wait before sending the bytes, see {@link #schedule(Runnable, long)}
+     */
+    public long reserveBytes(long count) {
+        applyLimits(false);
+        return bytes.reserve(count);
+    }
+
+    /**
+     * Blocks until another request may be sent.
+     *
+     * @throws InterruptedException
+     */
+    public void acquireRequest() throws InterruptedException {
+        applyLimits(false);
+        requests.acquire(1);
+    }
+
+    /**
+     * Runs a task once the delay returned by {@link #reserveBytes(long)} has passed.
+     */
+    public void schedule(Runnable task, long delayNanos) {
+        scheduler.schedule(task, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void applyLimits(boolean force) {
+        final long now = clock.millis();
+        if (!force && now - periodCheckedAt < PERIOD_CHECK_INTERVAL_MILLIS) {
+            return;
+        }
+        synchronized (this) {
+            if (!force && now - periodCheckedAt < PERIOD_CHECK_INTERVAL_MILLIS) {
+                return;
+            }
+            final UploadThrottleSettings current = settings;
+            final boolean wasBusinessHours = businessHours;
+            businessHours = current.isBusinessHours(ZonedDateTime.now(clock));
+            bytes.setRate(businessHours ? current.getBusinessHoursBytesPerSecond() : current.getOffHoursBytesPerSecond());
+            requests.setRate(businessHours ? current.getBusinessHoursRequestsPerSecond() : current.getOffHoursRequestsPerSecond());
+            if (!force && businessHours != wasBusinessHours) {
+                logger.info("Switched to the upload limits of {}: {} B/s, {} req/s",
+                        businessHours ? "business hours" : "off-hours", bytes.getRate(), requests.getRate());
+            }
+            periodCheckedAt = now;
+        }
+    }
+
+    private static ThreadFactory schedulerThreadFactory() {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "s3-upload-throttle");
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
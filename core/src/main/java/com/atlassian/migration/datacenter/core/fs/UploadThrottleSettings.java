@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import java.time.DayOfWeek;
+import java.time.ZonedDateTime;
+
+/**
+ * Limits on how fast files are uploaded, with separate limits for business hours and off-hours. Business hours are
+ * between the start and end hour on weekdays, in the time zone of the Jira node. A limit of 0 means unlimited.
+ * <p>
+ * The limits applied when Jira starts are read from system properties, e.g.
+ * {@value #BUSINESS_HOURS_BYTES_PROPERTY}.
+ */
+public final class UploadThrottleSettings {
+    public static final String BUSINESS_HOURS_BYTES_PROPERTY = "com.atlassian.migration.datacenter.fs.businessHoursBytesPerSecond";
+    public static final String BUSINESS_HOURS_REQUESTS_PROPERTY = "com.atlassian.migration.datacenter.fs.businessHoursRequestsPerSecond";
+    public static final String OFF_HOURS_BYTES_PROPERTY = "com.atlassian.migration.datacenter.fs.offHoursBytesPerSecond";
+    public static final String OFF_HOURS_REQUESTS_PROPERTY = "com.atlassian.migration.datacenter.fs.offHoursRequestsPerSecond";
+    public static final String BUSINESS_HOURS_START_PROPERTY = "com.atlassian.migration.datacenter.fs.businessHoursStart";
+    public static final String BUSINESS_HOURS_END_PROPERTY = "com.atlassian.migration.datacenter.fs.businessHoursEnd";
+    public static final long UNLIMITED = 0;
+    private static final int DEFAULT_BUSINESS_HOURS_START = 8;
+    private static final int DEFAULT_BUSINESS_HOURS_END = 18;
+    private static final int HOURS_PER_DAY = 24;
+
+    private final long businessHoursBytesPerSecond;
+    private final long businessHoursRequestsPerSecond;
+    private final long offHoursBytesPerSecond;
+    private final long offHoursRequestsPerSecond;
+    private final int businessHoursStart;
+    private final int businessHoursEnd;
+
+    public UploadThrottleSettings(long businessHoursBytesPerSecond, long businessHoursRequestsPerSecond,
+                                  long offHoursBytesPerSecond, long offHoursRequestsPerSecond,
+                                  int businessHoursStart, int businessHoursEnd) {
+        if (businessHoursBytesPerSecond < 0 || businessHoursRequestsPerSecond < 0 || offHoursBytesPerSecond < 0 || offHoursRequestsPerSecond < 0) {
+            throw new IllegalArgumentException("Upload limits must not be negative");
+        }
+        if (businessHoursStart < 0 || businessHoursStart > businessHoursEnd || businessHoursEnd > HOURS_PER_DAY) {
+            throw new IllegalArgumentException(String.format(
+                    "Business hours must satisfy 0 <= start <= end <= 24, were start=%d, end=%d", businessHoursStart, businessHoursEnd));
+        }
+        this.businessHoursBytesPerSecond = businessHoursBytesPerSecond;
+        this.businessHoursRequestsPerSecond = businessHoursRequestsPerSecond;
+        this.offHoursBytesPerSecond = offHoursBytesPerSecond;
+        this.offHoursRequestsPerSecond = offHoursRequestsPerSecond;
+        this.businessHoursStart = businessHoursStart;
+        this.businessHoursEnd = businessHoursEnd;
+    }
+
+    public static UploadThrottleSettings unlimited() {
+        return new UploadThrottleSettings(UNLIMITED, UNLIMITED, UNLIMITED, UNLIMITED, DEFAULT_BUSINESS_HOURS_START, DEFAULT_BUSINESS_HOURS_END);
+    }
+
+    public static UploadThrottleSettings fromSystemProperties() {
+        final int start = Math.min(HOURS_PER_DAY, Math.max(0, Integer.getInteger(BUSINESS_HOURS_START_PROPERTY, DEFAULT_BUSINESS_HOURS_START)));
+        final int end = Math.min(HOURS_PER_DAY, Math.max(start, Integer.getInteger(BUSINESS_HOURS_END_PROPERTY, DEFAULT_BUSINESS_HOURS_END)));
+        return new UploadThrottleSettings(
+                Math.max(UNLIMITED, Long.getLong(BUSINESS_HOURS_BYTES_PROPERTY, UNLIMITED)),
+                Math.max(UNLIMITED, Long.getLong(BUSINESS_HOURS_REQUESTS_PROPERTY, UNLIMITED)),
+                Math.max(UNLIMITED, Long.getLong(OFF_HOURS_BYTES_PROPERTY, UNLIMITED)),
+                Math.max(UNLIMITED, Long.getLong(OFF_HOURS_REQUESTS_PROPERTY, UNLIMITED)),
+                start,
+                end);
+    }
+
+    /**
+     * @param time a point in time in the time zone the business hours refer to
+     * @return true if the time is within business hours
+     */
+    public boolean isBusinessHours(ZonedDateTime time) {
+        final DayOfWeek day = time.getDayOfWeek();
+        if (day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY) {
+            return false;
+        }
+        return time.getHour() >= businessHoursStart && time.getHour() < businessHoursEnd;
+    }
+
+    public long getBusinessHoursBytesPerSecond() {
+        return businessHoursBytesPerSecond;
+    }
+
+    public long getBusinessHoursRequestsPerSecond() {
+        return businessHoursRequestsPerSecond;
+    }
+
+    public long getOffHoursBytesPerSecond() {
+        return offHoursBytesPerSecond;
+    }
+
+    public long getOffHoursRequestsPerSecond() {
+        return offHoursRequestsPerSecond;
+    }
+
+    public int getBusinessHoursStart() {
+        return businessHoursStart;
+    }
+
+    public int getBusinessHoursEnd() {
+        return businessHoursEnd;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("business hours %02d-%02d: %d B/s, %d req/s; off-hours: %d B/s, %d req/s",
+                businessHoursStart, businessHoursEnd, businessHoursBytesPerSecond, businessHoursRequestsPerSecond,
+                offHoursBytesPerSecond, offHoursRequestsPerSecond);
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.http.nio.netty.SdkEventLoopGroup;
+
+import java.time.Duration;
+
+/**
+ * Settings of the HTTP transport of the S3 client used for uploads.
+ * <p>
+ * The SDK defaults are sized for a handful of concurrent requests. The uploader keeps up to
+ * {@value S3Uploader#MAX_CONCURRENCY_PROPERTY} uploads in flight, each multipart upload with up to
+ * {@value S3MultiPartUploader#PARTS_IN_FLIGHT_PROPERTY} parts at a time, so with the defaults requests would queue
+ * for a connection and fail with "Acquire operation took longer than..." errors. Unless overridden by system
+ * properties, the settings are derived from that concurrency:
+ * <ul>
+ * <li>{@value #MAX_CONNECTIONS_PROPERTY}: upload concurrency times parts in flight (800 with the defaults), so every
+ * request the uploader may send has a connection</li>
+ * <li>{@value #MAX_PENDING_ACQUIRES_PROPERTY}: twice the connections, for requests sent outside of the upload
+ * concurrency, e.g. to complete a multipart upload</li>
+ * <li>{@value #ACQUISITION_TIMEOUT_PROPERTY}: 60 seconds</li>
+ * <li>{@value #CONNECTION_TTL_PROPERTY}: 5 minutes, so a long migration spreads over the S3 front ends DNS hands
+ * out rather than sticking to the first ones</li>
+ * <li>{@value #READ_TIMEOUT_PROPERTY} and {@value #WRITE_TIMEOUT_PROPERTY}: 60 seconds each, as a busy node or a
+ * throttled upload may stall a part for longer than the SDK default of 30 seconds</li>
+ * <li>{@value #EVENT_LOOP_THREADS_PROPERTY}: one thread per 100 connections, at least 2 and at most twice the
+ * number of processors</li>
+ * </ul>
+ * Durations are given in seconds.
+ */
+public final class UploadTransportSettings {
+    private static final Logger logger = LoggerFactory.getLogger(UploadTransportSettings.class);
+    public static final String MAX_CONNECTIONS_PROPERTY = "com.atlassian.migration.datacenter.fs.httpMaxConnections";
+    public static final String MAX_PENDING_ACQUIRES_PROPERTY = "com.atlassian.migration.datacenter.fs.httpMaxPendingAcquires";
+    public static final String ACQUISITION_TIMEOUT_PROPERTY = "com.atlassian.migration.datacenter.fs.httpAcquisitionTimeoutSeconds";
+    public static final String CONNECTION_TTL_PROPERTY = "com.atlassian.migration.datacenter.fs.httpConnectionTtlSeconds";
+    public static final String READ_TIMEOUT_PROPERTY = "com.atlassian.migration.datacenter.fs.httpReadTimeoutSeconds";
+    public static final String WRITE_TIMEOUT_PROPERTY = "com.atlassian.migration.datacenter.fs.httpWriteTimeoutSeconds";
+    public static final String EVENT_LOOP_THREADS_PROPERTY = "com.atlassian.migration.datacenter.fs.httpEventLoopThreads";
+    private static final long DEFAULT_ACQUISITION_TIMEOUT_SECONDS = 60;
+    private static final long DEFAULT_CONNECTION_TTL_SECONDS = 5 * 60;
+    private static final long DEFAULT_IO_TIMEOUT_SECONDS = 60;
+    private static final int CONNECTIONS_PER_EVENT_LOOP_THREAD = 100;
+    private static final int MIN_EVENT_LOOP_THREADS = 2;
+
+    private final int maxConnections;
+    private final int maxPendingAcquires;
+    private final Duration acquisitionTimeout;
+    private final Duration connectionTimeToLive;
+    private final Duration readTimeout;
+    private final Duration writeTimeout;
+    private final int eventLoopThreads;
+
+    UploadTransportSettings(int maxConnections, int maxPendingAcquires, Duration acquisitionTimeout, Duration connectionTimeToLive,
+                            Duration readTimeout, Duration writeTimeout, int eventLoopThreads) {
+        this.maxConnections = maxConnections;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.acquisitionTimeout = acquisitionTimeout;
+        this.connectionTimeToLive = connectionTimeToLive;
+        this.readTimeout = readTimeout;
+        this.writeTimeout = writeTimeout;
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    public static UploadTransportSettings fromSystemProperties() {
+        final UploadTransportSettings settings = forConcurrency(S3Uploader.configuredMaxConcurrency(),
+                S3MultiPartUploader.configuredPartsInFlight(), Runtime.getRuntime().availableProcessors());
+        logger.info("Upload transport: {}", settings);
+        return settings;
+    }
+
+    static UploadTransportSettings forConcurrency(int uploadConcurrency, int partsInFlight, int processors) {
+        final int maxConnections = Math.max(1, Integer.getInteger(MAX_CONNECTIONS_PROPERTY, uploadConcurrency * partsInFlight));
+        final int defaultEventLoopThreads = Math.min(Math.max(MIN_EVENT_LOOP_THREADS, 2 * processors),
+                Math.max(MIN_EVENT_LOOP_THREADS, maxConnections / CONNECTIONS_PER_EVENT_LOOP_THREAD));
+        return new UploadTransportSettings(
+                maxConnections,
+                Math.max(1, Integer.getInteger(MAX_PENDING_ACQUIRES_PROPERTY, 2 * maxConnections)),
+                secondsProperty(ACQUISITION_TIMEOUT_PROPERTY, DEFAULT_ACQUISITION_TIMEOUT_SECONDS),
+                secondsProperty(CONNECTION_TTL_PROPERTY, DEFAULT_CONNECTION_TTL_SECONDS),
+                secondsProperty(READ_TIMEOUT_PROPERTY, DEFAULT_IO_TIMEOUT_SECONDS),
+                secondsProperty(WRITE_TIMEOUT_PROPERTY, DEFAULT_IO_TIMEOUT_SECONDS),
+                Math.max(1, Integer.getInteger(EVENT_LOOP_THREADS_PROPERTY, defaultEventLoopThreads)));
+    }
+
+    private static Duration secondsProperty(String property, long defaultSeconds) {
+        return Duration.ofSeconds(Math.max(1, Long.getLong(property, defaultSeconds)));
+    }
+
+    /**
+     * @return a builder of the HTTP client of the upload S3 client, to be handed to the builder of the S3 client so
+     * that the HTTP client is closed along with it
+     */
+    public NettyNioAsyncHttpClient.Builder httpClientBuilder() {
+        return NettyNioAsyncHttpClient.builder()
+                .maxConcurrency(maxConnections)
+                .maxPendingConnectionAcquires(maxPendingAcquires)
+                .connectionAcquisitionTimeout(acquisitionTimeout)
+                .connectionTimeToLive(connectionTimeToLive)
+                .readTimeout(readTimeout)
+                .writeTimeout(writeTimeout)
+                .eventLoopGroupBuilder(SdkEventLoopGroup.builder().numberOfThreads(eventLoopThreads));
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public int getMaxPendingAcquires() {
+        return maxPendingAcquires;
+    }
+
+    public Duration getAcquisitionTimeout() {
+        return acquisitionTimeout;
+    }
+
+    public Duration getConnectionTimeToLive() {
+        return connectionTimeToLive;
+    }
+
+    public Duration getReadTimeout() {
+        return readTimeout;
+    }
+
+    public Duration getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d connections, %d pending acquires, %ds acquisition timeout, %ds connection TTL, %ds read and %ds write timeout, %d event loop threads",
+                maxConnections, maxPendingAcquires, acquisitionTimeout.getSeconds(), connectionTimeToLive.getSeconds(),
+                readTimeout.getSeconds(), writeTimeout.getSeconds(), eventLoopThreads);
+    }
+}
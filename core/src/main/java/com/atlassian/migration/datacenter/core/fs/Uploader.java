@@ -18,10 +18,8 @@ package com.atlassian.migration.datacenter.core.fs;
 
 import com.atlassian.migration.datacenter.core.util.UploadQueue;
 
-import java.nio.file.Path;
-
 public interface Uploader {
-    void upload(UploadQueue<Path> queue) throws FileUploadException;
+    void upload(UploadQueue<FileEntry> queue) throws FileUploadException;
 
     Integer maxConcurrent();
 }
@@ -21,10 +21,19 @@ import com.atlassian.migration.datacenter.core.fs.FileUploadException;
 import com.atlassian.migration.datacenter.core.fs.FilesystemUploader;
 import com.atlassian.migration.datacenter.core.fs.FilesystemUploaderFactory;
 import com.atlassian.migration.datacenter.core.fs.ReportType;
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
+import com.atlassian.migration.datacenter.core.fs.manifest.FileMultipartUploadStore;
+import com.atlassian.migration.datacenter.core.fs.manifest.MappedCrawlManifest;
+import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationReport;
+import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFilesystemMigrationProgress;
+import com.atlassian.migration.datacenter.spi.MigrationService;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 
@@ -35,21 +44,43 @@ public class S3BulkCopy {
     private static final Logger logger = LoggerFactory.getLogger(S3BulkCopy.class);
     private static final String OVERRIDE_UPLOAD_DIRECTORY = System
             .getProperty("com.atlassian.migration.datacenter.fs.overrideJiraHome", "");
+    private static final String MANIFEST_PREFIX = "fs-manifest-";
 
     private final Path home;
     private final FileSystemMigrationReportManager reportManager;
     private final FilesystemUploaderFactory filesystemUploaderFactory;
+    private final MigrationService migrationService;
+    private final Path manifestDirectory;
 
     private FilesystemUploader fsUploader;
 
+    /**
+     * Creates a bulk copy which uploads the whole home directory on every run.
+     */
     public S3BulkCopy(
         Path home,
         FilesystemUploaderFactory filesystemUploaderFactory,
         FileSystemMigrationReportManager reportManager)
+    {
+        this(home, filesystemUploaderFactory, reportManager, null, null);
+    }
+
+    /**
+     * Creates a bulk copy which records uploaded files in a manifest under the given directory, so that a restarted
+     * migration skips the files uploaded by an earlier run. The manifest is kept per migration.
+     */
+    public S3BulkCopy(
+        Path home,
+        FilesystemUploaderFactory filesystemUploaderFactory,
+        FileSystemMigrationReportManager reportManager,
+        MigrationService migrationService,
+        Path manifestDirectory)
     {
         this.home = home;
         this.reportManager = reportManager;
         this.filesystemUploaderFactory = filesystemUploaderFactory;
+        this.migrationService = migrationService;
+        this.manifestDirectory = manifestDirectory;
     }
 
     public void copySharedHomeToS3() throws FileUploadException
@@ -61,15 +92,51 @@ public class S3BulkCopy {
         }
         report.setStatus(UPLOADING);
 
-        fsUploader = filesystemUploaderFactory.newUploader(report);
-
         logger.info("Commencing upload of shared home");
 
-        fsUploader.uploadDirectory(getSharedHomeDir());
+        uploadSharedHome(report);
 
         logger.info("Upload of shared home complete.");
     }
 
+    /**
+     * Crawls the shared home again and uploads only the files which were added or changed since they were recorded
+     * in the manifest, e.g. while {@link #copySharedHomeToS3()} was running. Does nothing without a manifest.
+     * <p>
+     * The pass keeps its own progress, so the counters of the current report aren't inflated by files that were
+     * already counted; failures are still recorded in the current report.
+     */
+    public void copyChangedFilesToS3() throws FileUploadException
+    {
+        if (manifestDirectory == null) {
+            logger.info("No crawl manifest configured, skipping upload of changed files");
+            return;
+        }
+
+        FileSystemMigrationReport report = reportManager.getCurrentReport(ReportType.Filesystem);
+
+        if (report == null) {
+            throw new FileUploadException("No files system migration report bound to bulk copy operation");
+        }
+
+        final FileSystemMigrationReport catchUpReport = new DefaultFileSystemMigrationReport(report, new DefaultFilesystemMigrationProgress());
+        catchUpReport.setStatus(UPLOADING);
+
+        logger.info("Commencing upload of files changed in shared home");
+
+        uploadSharedHome(catchUpReport);
+
+        logger.info("Upload of changed files complete. Checked {} files.", catchUpReport.getNumberOfFilesFound());
+    }
+
+    private void uploadSharedHome(FileSystemMigrationReport report) throws FileUploadException {
+        try (CrawlManifest manifest = openManifest()) {
+            fsUploader = filesystemUploaderFactory.newUploader(report, manifest);
+
+            fsUploader.uploadDirectory(getSharedHomeDir());
+        }
+    }
+
     public void abortCopy() {
         if (fsUploader == null) {
             return;
@@ -80,6 +147,50 @@ public class S3BulkCopy {
     }
 
 
+    private CrawlManifest openManifest() {
+        if (manifestDirectory == null) {
+            return CrawlManifest.NONE;
+        }
+
+        final Path manifestFile = manifestFile(manifestDirectory, migrationService.getCurrentMigration().getID());
+        try {
+            deleteStaleManifests(manifestFile.getFileName().toString());
+            return MappedCrawlManifest.open(manifestFile);
+        } catch (IOException e) {
+            logger.warn("Unable to open crawl manifest in {}, all files will be uploaded", manifestDirectory, e);
+            return CrawlManifest.NONE;
+        }
+    }
+
+    private void deleteStaleManifests(String currentManifestName) throws IOException {
+        if (!Files.isDirectory(manifestDirectory)) {
+            return;
+        }
+        try (DirectoryStream<Path> manifests = Files.newDirectoryStream(manifestDirectory, MANIFEST_PREFIX + "*")) {
+            for (Path manifest : manifests) {
+                final String name = manifest.getFileName().toString();
+                if (name.equals(currentManifestName) || name.startsWith(currentManifestName + ".")) {
+                    continue;
+                }
+                if (Files.isDirectory(manifest)) {
+                    // Normally aborted and deleted when the migration is reset, e.g. unless the node was down
+                    logger.warn("Deleting multipart uploads {} of a previous migration, their parts may be left in S3", manifest);
+                    FileMultipartUploadStore.delete(manifest);
+                } else {
+                    logger.info("Deleting crawl manifest {} of a previous migration", manifest);
+                    Files.deleteIfExists(manifest);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the file of the crawl manifest kept for the given migration
+     */
+    public static Path manifestFile(Path manifestDirectory, int migrationId) {
+        return manifestDirectory.resolve(MANIFEST_PREFIX + migrationId);
+    }
+
     private Path getSharedHomeDir() {
         if (!OVERRIDE_UPLOAD_DIRECTORY.equals("")) {
             return Paths.get(OVERRIDE_UPLOAD_DIRECTORY);
@@ -42,6 +42,7 @@ public class S3SyncCommandStatus {
     private double progress;
     private double total;
     private int filesRemaining;
+    private long filesDownloaded = -1;
     private boolean calculating;
     private List<String> errors;
 
@@ -55,6 +56,7 @@ public class S3SyncCommandStatus {
         total = (double) status.getOrDefault("total", -1d);
         filesRemaining = (int) status.getOrDefault("files_remaining", -1);
         calculating = (boolean) status.getOrDefault("isCalculating", false);
+        filesDownloaded = ((Number) status.getOrDefault("files_downloaded", -1)).longValue();
     }
 
     public boolean isComplete() {
@@ -85,6 +87,14 @@ public class S3SyncCommandStatus {
         return filesRemaining;
     }
 
+    /**
+     * @return the number of files downloaded so far, including the files extracted from bundles, or -1 if the status
+     * command didn't count them
+     */
+    public long getFilesDownloaded() {
+        return filesDownloaded;
+    }
+
     public boolean hasErrors() {
         return errors != null && errors.size() > 0;
     }
@@ -101,6 +111,7 @@ public class S3SyncCommandStatus {
                 ", progress=" + progress +
                 ", total=" + total +
                 ", filesRemaining=" + filesRemaining +
+                ", filesDownloaded=" + filesDownloaded +
                 ", calculating=" + calculating +
                 ", errors=" + Arrays.toString(errors.toArray()) +
                 '}';
@@ -53,10 +53,8 @@ public class S3SyncFileSystemDownloadManager {
                 return;
             }
 
-            long remaining = status.getFilesRemainingToDownload();
-            long downloadedFiles = progress.getCountOfUploadedFiles() - remaining;
-
-            progress.setNumberOfFilesDownloaded(downloadedFiles);
+            progress.setNumberOfFilesDownloaded(filesDownloaded(status, progress));
+            progress.setNumberOfBytesDownloaded(bytesDownloaded(status, progress));
 
             logger.debug("got status of file system download: " + status.toString());
 
@@ -76,4 +74,22 @@ public class S3SyncFileSystemDownloadManager {
             throw new S3SyncFileSystemDownloader.CannotLaunchCommandException(errorMessage, e);
         }
     }
+
+    private static long filesDownloaded(S3SyncCommandStatus status, FileSystemMigrationProgress progress) {
+        final long downloaded = status.getFilesDownloaded();
+        if (downloaded >= 0) {
+            // Files bundled on upload aren't objects the sync counts as remaining, so only a count of the files is exact
+            return downloaded;
+        }
+        return progress.getCountOfUploadedFiles() - status.getFilesRemainingToDownload();
+    }
+
+    private static long bytesDownloaded(S3SyncCommandStatus status, FileSystemMigrationProgress progress) {
+        if (status.isComplete() && status.getExitCode() == 0) {
+            // The finished command doesn't report progress, everything which was uploaded has been downloaded
+            return progress.getBytesUploaded();
+        }
+        final double downloaded = status.getBytesDownloaded();
+        return downloaded >= 0 ? (long) downloaded : progress.getBytesDownloaded();
+    }
 }
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import com.atlassian.migration.datacenter.core.fs.FileEntry;
+
+/**
+ * Records which files of the home directory have been uploaded, so that an interrupted filesystem migration can
+ * resume instead of starting over. Files are checked by the crawler before they are queued and recorded by the
+ * uploader once uploaded. Implementations must be thread safe as they are called from the crawler threads and every
+ * upload thread.
+ */
+public interface CrawlManifest extends AutoCloseable {
+
+    /**
+     * Manifest which doesn't remember anything, i.e. every file is uploaded.
+     */
+    CrawlManifest NONE = new CrawlManifest() {
+        @Override
+        public boolean shouldUpload(String key, FileEntry entry) {
+            return true;
+        }
+
+        @Override
+        public void markUploaded(String key, FileEntry entry) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * Checks the file against the manifest and records it as queued if it is new, or if its size or modification
+     * time differ from the ones recorded when it was last uploaded.
+     *
+     * @param key   the S3 key of the file, i.e. its path relative to the home directory
+     * @param entry the file as found by the crawler
+     * @return false if the same version of the file was already uploaded by a previous run and can be skipped
+     */
+    boolean shouldUpload(String key, FileEntry entry);
+
+    /**
+     * Records that the file was uploaded successfully.
+     *
+     * @param key   the S3 key of the file
+     * @param entry the uploaded file
+     */
+    void markUploaded(String key, FileEntry entry);
+
+    /**
+     * @return the multipart uploads in progress, which are kept for as long as the manifest
+     */
+    default MultipartUploadStore multipartUploads() {
+        return MultipartUploadStore.NONE;
+    }
+
+    @Override
+    void close();
+}
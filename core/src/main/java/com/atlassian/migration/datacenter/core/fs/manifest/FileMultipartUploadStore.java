@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * {@link MultipartUploadStore} keeping a small journal file per upload in a directory.
+ * <p>
+ * A journal starts with the upload and the version of the file it uploads, followed by a record per uploaded part:
+ * <pre>
+ * | magic (4) | bucket | key | upload id | size (8) | mtime (8) | part size (4) | part number (4) | etag | ...
+ * </pre>
+ * Strings are stored in modified UTF-8 as written by {@link DataOutputStream#writeUTF(String)}. Part records are
+ * appended, so a part torn by a crash is simply missing when the journal is read back; S3 is asked for the parts of
+ * an upload before it is resumed anyway.
+ */
+public class FileMultipartUploadStore implements MultipartUploadStore {
+    private static final Logger logger = LoggerFactory.getLogger(FileMultipartUploadStore.class);
+
+    private static final int MAGIC = 0x44434d50; // "DCMP"
+    private static final String JOURNAL_SUFFIX = ".upload";
+
+    private final Path directory;
+    private final Map<String, MultipartUploadRecord> uploads = new HashMap<>();
+
+    private FileMultipartUploadStore(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Opens the store kept in the given directory, creating it if it doesn't exist yet.
+     */
+    public static FileMultipartUploadStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        final FileMultipartUploadStore store = new FileMultipartUploadStore(directory);
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory, "*" + JOURNAL_SUFFIX)) {
+            for (Path journal : journals) {
+                final MultipartUploadRecord upload = read(journal);
+                if (upload == null) {
+                    logger.warn("Multipart upload journal {} is unreadable, discarding it", journal);
+                    Files.deleteIfExists(journal);
+                } else {
+                    store.uploads.put(upload.getKey(), upload);
+                }
+            }
+        }
+        if (!store.uploads.isEmpty()) {
+            logger.info("Found {} unfinished multipart uploads in {}", store.uploads.size(), directory);
+        }
+        return store;
+    }
+
+    /**
+     * Deletes the store and all of its journals.
+     */
+    public static void delete(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            FileUtils.deleteDirectory(directory.toFile());
+        }
+    }
+
+    @Override
+    public synchronized Optional<MultipartUploadRecord> find(String key) {
+        return Optional.ofNullable(uploads.get(key));
+    }
+
+    @Override
+    public synchronized void started(MultipartUploadRecord upload) {
+        uploads.put(upload.getKey(), upload);
+        final Path journal = journalOf(upload.getKey());
+        final Path temporary = journal.resolveSibling(journal.getFileName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF(upload.getBucket());
+                out.writeUTF(upload.getKey());
+                out.writeUTF(upload.getUploadId());
+                out.writeLong(upload.getSize());
+                out.writeLong(upload.getLastModified());
+                out.writeInt(upload.getPartSize());
+            }
+            // The journal of a previous upload of the key is replaced as a whole, never mixed with this one
+            Files.move(temporary, journal, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("Unable to record {}, it won't be resumed after a restart", upload, e);
+        }
+    }
+
+    @Override
+    public synchronized void partUploaded(String key, int partNumber, String etag) {
+        final MultipartUploadRecord upload = uploads.get(key);
+        if (upload == null) {
+            return;
+        }
+        upload.addPart(partNumber, etag);
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(journalOf(key), StandardOpenOption.APPEND))) {
+            out.writeInt(partNumber);
+            out.writeUTF(etag);
+        } catch (IOException e) {
+            logger.warn("Unable to record part {} of {}", partNumber, upload, e);
+        }
+    }
+
+    @Override
+    public synchronized void finished(String key) {
+        if (uploads.remove(key) == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(journalOf(key));
+        } catch (IOException e) {
+            logger.warn("Unable to delete multipart upload journal of {}", key, e);
+        }
+    }
+
+    @Override
+    public synchronized Collection<MultipartUploadRecord> all() {
+        return new ArrayList<>(uploads.values());
+    }
+
+    private Path journalOf(String key) {
+        return directory.resolve(digest(key) + JOURNAL_SUFFIX);
+    }
+
+    private static MultipartUploadRecord read(Path journal) throws IOException {
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(journal));
+             DataInputStream in = new DataInputStream(stream)) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final MultipartUploadRecord upload = new MultipartUploadRecord(
+                    in.readUTF(), in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+            try {
+                while (true) {
+                    upload.addPart(in.readInt(), in.readUTF());
+                }
+            } catch (EOFException e) {
+                // The end of the journal, possibly in the middle of a part torn by a crash
+            }
+            return upload;
+        } catch (EOFException e) {
+            // The header itself is incomplete
+            return null;
+        }
+    }
+
+    // Keys may be longer than a file name allows and contain any character, so journals are named by a digest
+    private static String digest(String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder name = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                name.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return name.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by the JVM", e);
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import com.atlassian.migration.datacenter.core.fs.FileEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * {@link CrawlManifest} stored in an append-only, memory-mapped file, so that tens of millions of entries can be
+ * tracked without growing the heap.
+ * <p>
+ * Each record holds the state, the key, the size and the modification time of a file:
+ * <pre>
+ * | state (1) | key length (2) | size (8) | mtime (8) | key bytes (key length) |
+ * </pre>
+ * A new record is appended with its state byte written last, so a record torn by a crash is never read back. An
+ * existing record is queued by writing its state first and marked uploaded by writing its state last, so a crash in
+ * the middle of an update leaves the file to be uploaded again rather than skipped. Records are looked up through an
+ * open addressing hash index, which lives in a second mapped file and is rebuilt from the records on open.
+ * <p>
+ * Writes reach the page cache immediately, so the manifest survives the JVM being killed; {@link #close()} also
+ * flushes it to disk.
+ * <p>
+ * Multipart uploads in progress are kept next to the manifest in a {@link FileMultipartUploadStore}.
+ */
+public class MappedCrawlManifest implements CrawlManifest {
+    private static final Logger logger = LoggerFactory.getLogger(MappedCrawlManifest.class);
+
+    private static final long MAGIC = 0x44434d4d414e4946L; // "DCMMANIF"
+    private static final long VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    static final byte EMPTY = 0;
+    static final byte QUEUED = 1;
+    static final byte UPLOADED = 2;
+    // Marks the unused tail of a segment; the next record starts in the next segment
+    private static final byte SEGMENT_END = 0x7F;
+
+    private static final int STATE_OFFSET = 0;
+    private static final int KEY_LENGTH_OFFSET = 1;
+    private static final int SIZE_OFFSET = 3;
+    private static final int MTIME_OFFSET = 11;
+    private static final int RECORD_HEADER_SIZE = 19;
+    private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+    static final int RECORDS_SEGMENT_SHIFT = 26; // 64MB
+    private static final int INDEX_SEGMENT_SHIFT = 26;
+    private static final long INITIAL_INDEX_CAPACITY = 1 << 16;
+    private static final double MAX_LOAD_FACTOR = 0.7;
+
+    // Index slots hold the top 24 bits of the key hash and the record offset + 1, 0 marks an empty slot
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Path file;
+    private final MappedFile records;
+    private final FileMultipartUploadStore multipartUploads;
+
+    private MappedFile index;
+    private int indexGeneration;
+    private long indexCapacity;
+    private long entries;
+    private long appendOffset;
+    private boolean closed;
+
+    private MappedCrawlManifest(Path file, MappedFile records, FileMultipartUploadStore multipartUploads) {
+        this.file = file;
+        this.records = records;
+        this.multipartUploads = multipartUploads;
+    }
+
+    /**
+     * Opens the manifest stored in the given file, creating it if it doesn't exist yet.
+     */
+    public static MappedCrawlManifest open(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        MappedFile records = new MappedFile(file, RECORDS_SEGMENT_SHIFT);
+        if (!hasHeader(records) && records.getByte(HEADER_SIZE) != EMPTY) {
+            logger.warn("Crawl manifest {} has an unknown format, discarding it", file);
+            records.close();
+            delete(file);
+            records = new MappedFile(file, RECORDS_SEGMENT_SHIFT);
+        }
+        return open(file, records);
+    }
+
+    /**
+     * Opens the manifest stored in the given records, which are known to be empty or in the current format.
+     */
+    static MappedCrawlManifest open(Path file, MappedFile records) throws IOException {
+        records.putLong(0, MAGIC);
+        records.putLong(8, VERSION);
+
+        final MappedCrawlManifest manifest = new MappedCrawlManifest(file, records, FileMultipartUploadStore.open(multipartUploadsDirectory(file)));
+        manifest.rebuildIndex(INITIAL_INDEX_CAPACITY);
+        logger.info("Opened crawl manifest {} with {} entries", file, manifest.entries);
+        return manifest;
+    }
+
+    /**
+     * Deletes the manifest and its index. The multipart uploads are left alone, as they need to be aborted first.
+     */
+    public static void delete(Path file) throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(indexFile(file, 0));
+        Files.deleteIfExists(indexFile(file, 1));
+    }
+
+    /**
+     * @return the directory of the {@link FileMultipartUploadStore} kept with the manifest in the given file
+     */
+    public static Path multipartUploadsDirectory(Path file) {
+        return Paths.get(file.toString() + ".multipart");
+    }
+
+    @Override
+    public synchronized boolean shouldUpload(String key, FileEntry entry) {
+        if (closed) {
+            return true;
+        }
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            return true;
+        }
+
+        final long record = find(keyBytes, hash(keyBytes));
+        if (record < 0) {
+            append(keyBytes, entry, QUEUED);
+            return true;
+        }
+        if (records.getByte(record + STATE_OFFSET) == UPLOADED && isUnchanged(record, entry)) {
+            return false;
+        }
+        // Changed since the last upload, or still queued. The state is written before the new size and mtime, so that a
+        // crash in between can't leave the old upload looking current
+        records.putByte(record + STATE_OFFSET, QUEUED);
+        records.putLong(record + SIZE_OFFSET, entry.getSize());
+        records.putLong(record + MTIME_OFFSET, entry.getLastModified());
+        return true;
+    }
+
+    @Override
+    public synchronized void markUploaded(String key, FileEntry entry) {
+        if (closed) {
+            return;
+        }
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > MAX_KEY_LENGTH) {
+            return;
+        }
+
+        final long record = find(keyBytes, hash(keyBytes));
+        if (record < 0) {
+            append(keyBytes, entry, UPLOADED);
+        } else {
+            // The state byte is written last, a crash before it leaves the file queued
+            records.putLong(record + SIZE_OFFSET, entry.getSize());
+            records.putLong(record + MTIME_OFFSET, entry.getLastModified());
+            records.putByte(record + STATE_OFFSET, UPLOADED);
+        }
+    }
+
+    /**
+     * @return the number of files recorded in the manifest
+     */
+    public synchronized long size() {
+        return entries;
+    }
+
+    @Override
+    public MultipartUploadStore multipartUploads() {
+        return multipartUploads;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            records.close();
+            index.close();
+            Files.deleteIfExists(indexFile(file, indexGeneration));
+        } catch (IOException e) {
+            logger.warn("Error when closing crawl manifest {}", file, e);
+        }
+    }
+
+    private boolean isUnchanged(long record, FileEntry entry) {
+        return records.getLong(record + SIZE_OFFSET) == entry.getSize()
+                && records.getLong(record + MTIME_OFFSET) == entry.getLastModified();
+    }
+
+    private static boolean hasHeader(MappedFile records) {
+        return records.getLong(0) == MAGIC && records.getLong(8) == VERSION;
+    }
+
+    /**
+     * Scans all records into a fresh index. Used both on open and when the index needs to grow.
+     */
+    private void rebuildIndex(long minimumCapacity) throws IOException {
+        final MappedFile oldIndex = index;
+        final int oldGeneration = indexGeneration;
+
+        indexGeneration = oldIndex == null ? 0 : 1 - oldGeneration;
+        indexCapacity = minimumCapacity;
+        while (!scanIntoIndex()) {
+            // More records than the index can hold at the target load factor; retry with a bigger one
+            index.close();
+            indexCapacity <<= 1;
+        }
+
+        if (oldIndex != null) {
+            oldIndex.close();
+            Files.deleteIfExists(indexFile(file, oldGeneration));
+        }
+    }
+
+    private boolean scanIntoIndex() throws IOException {
+        Files.deleteIfExists(indexFile(file, indexGeneration));
+        index = new MappedFile(indexFile(file, indexGeneration), INDEX_SEGMENT_SHIFT);
+        entries = 0;
+
+        long offset = HEADER_SIZE;
+        while (true) {
+            final byte state = records.getByte(offset);
+            if (state == EMPTY) {
+                break;
+            }
+            if (state == SEGMENT_END) {
+                offset += records.remainingInSegment(offset);
+                continue;
+            }
+            if (entries + 1 > indexCapacity * MAX_LOAD_FACTOR) {
+                return false;
+            }
+            final int keyLength = records.getUnsignedShort(offset + KEY_LENGTH_OFFSET);
+            insert(hashRecord(offset, keyLength), offset);
+            entries++;
+            offset += RECORD_HEADER_SIZE + keyLength;
+        }
+        appendOffset = offset;
+        return true;
+    }
+
+    private void append(byte[] keyBytes, FileEntry entry, byte state) {
+        if (entries + 1 > indexCapacity * MAX_LOAD_FACTOR) {
+            try {
+                rebuildIndex(indexCapacity << 1);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to grow crawl manifest index", e);
+            }
+        }
+
+        final int recordSize = RECORD_HEADER_SIZE + keyBytes.length;
+        if (records.remainingInSegment(appendOffset) < recordSize + 1) {
+            records.putByte(appendOffset, SEGMENT_END);
+            appendOffset += records.remainingInSegment(appendOffset);
+        }
+
+        final long record = appendOffset;
+        // Terminates the scan on open even if a torn record from a crash is lying past this one
+        records.putByte(record + recordSize, EMPTY);
+        records.putUnsignedShort(record + KEY_LENGTH_OFFSET, keyBytes.length);
+        records.putLong(record + SIZE_OFFSET, entry.getSize());
+        records.putLong(record + MTIME_OFFSET, entry.getLastModified());
+        for (int i = 0; i < keyBytes.length; i++) {
+            records.putByte(record + RECORD_HEADER_SIZE + i, keyBytes[i]);
+        }
+        records.putByte(record + STATE_OFFSET, state);
+        appendOffset += recordSize;
+
+        insert(hash(keyBytes), record);
+        entries++;
+    }
+
+    private long find(byte[] keyBytes, long hash) {
+        final long mask = indexCapacity - 1;
+        for (long slot = hash & mask; ; slot = (slot + 1) & mask) {
+            final long value = index.getLong(slot * Long.BYTES);
+            if (value == 0) {
+                return -1;
+            }
+            if ((value >>> OFFSET_BITS) == (hash >>> OFFSET_BITS)) {
+                final long record = (value & OFFSET_MASK) - 1;
+                if (keyEquals(record, keyBytes)) {
+                    return record;
+                }
+            }
+        }
+    }
+
+    private void insert(long hash, long record) {
+        final long mask = indexCapacity - 1;
+        long slot = hash & mask;
+        while (index.getLong(slot * Long.BYTES) != 0) {
+            slot = (slot + 1) & mask;
+        }
+        index.putLong(slot * Long.BYTES, ((hash >>> OFFSET_BITS) << OFFSET_BITS) | (record + 1));
+    }
+
+    private boolean keyEquals(long record, byte[] keyBytes) {
+        if (records.getUnsignedShort(record + KEY_LENGTH_OFFSET) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (records.getByte(record + RECORD_HEADER_SIZE + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long hashRecord(long record, int keyLength) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < keyLength; i++) {
+            hash = (hash ^ (records.getByte(record + RECORD_HEADER_SIZE + i) & 0xff)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    private static long hash(byte[] keyBytes) {
+        long hash = FNV_OFFSET_BASIS;
+        for (byte b : keyBytes) {
+            hash = (hash ^ (b & 0xff)) * FNV_PRIME;
+        }
+        return mix(hash);
+    }
+
+    // Spreads the FNV hash so that both the low bits (slot) and the high bits (fingerprint) are well distributed
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static Path indexFile(Path file, int generation) {
+        return Paths.get(file.toString() + ".index." + generation);
+    }
+}
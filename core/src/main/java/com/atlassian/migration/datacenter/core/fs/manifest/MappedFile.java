@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A file mapped into memory in fixed size segments, so that it can grow beyond the 2GB limit of a single
+ * {@link MappedByteBuffer}. Segments are mapped on first access; mapping past the end of the file extends it.
+ * <p>
+ * Callers must make sure that a single value never crosses a segment boundary. Not thread safe.
+ */
+class MappedFile implements Closeable {
+    private final FileChannel channel;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    MappedFile(Path file, int segmentShift) throws IOException {
+        this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+    }
+
+    long segmentSize() {
+        return 1L << segmentShift;
+    }
+
+    /**
+     * @return the number of bytes left in the segment containing the offset
+     */
+    long remainingInSegment(long offset) {
+        return segmentSize() - (offset & segmentMask);
+    }
+
+    byte getByte(long offset) {
+        return segment(offset).get(position(offset));
+    }
+
+    void putByte(long offset, byte value) {
+        segment(offset).put(position(offset), value);
+    }
+
+    int getUnsignedShort(long offset) {
+        return segment(offset).getChar(position(offset));
+    }
+
+    void putUnsignedShort(long offset, int value) {
+        segment(offset).putChar(position(offset), (char) value);
+    }
+
+    long getLong(long offset) {
+        return segment(offset).getLong(position(offset));
+    }
+
+    void putLong(long offset, long value) {
+        segment(offset).putLong(position(offset), value);
+    }
+
+    void force() {
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        segments.clear();
+        channel.close();
+    }
+
+    private int position(long offset) {
+        return (int) (offset & segmentMask);
+    }
+
+    private MappedByteBuffer segment(long offset) {
+        final int index = (int) (offset >>> segmentShift);
+        while (segments.size() <= index) {
+            try {
+                segments.add(channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentSize(), segmentSize()));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to map manifest segment " + segments.size(), e);
+            }
+        }
+        return segments.get(index);
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A multipart upload in progress: where it goes, which version of the file it uploads and the parts S3 has accepted.
+ */
+public final class MultipartUploadRecord {
+    private final String bucket;
+    private final String key;
+    private final String uploadId;
+    private final long size;
+    private final long lastModified;
+    private final int partSize;
+    private final Map<Integer, String> etags = new TreeMap<>();
+
+    public MultipartUploadRecord(String bucket, String key, String uploadId, long size, long lastModified, int partSize) {
+        this.bucket = bucket;
+        this.key = key;
+        this.uploadId = uploadId;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.partSize = partSize;
+    }
+
+    /**
+     * @return true if the upload can be resumed for the given version of the file, i.e. S3 holds parts of the same
+     * content cut at the same boundaries
+     */
+    public boolean isResumableFor(String bucket, long size, long lastModified, int partSize) {
+        return this.bucket.equals(bucket) && this.size == size && this.lastModified == lastModified && this.partSize == partSize;
+    }
+
+    public String getBucket() {
+        return bucket;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getPartSize() {
+        return partSize;
+    }
+
+    /**
+     * @return the ETags of the parts recorded as uploaded, by part number
+     */
+    public synchronized Map<Integer, String> getEtags() {
+        return Collections.unmodifiableMap(new TreeMap<>(etags));
+    }
+
+    synchronized void addPart(int partNumber, String etag) {
+        etags.put(partNumber, etag);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("multipart upload %s of %s to %s", uploadId, key, bucket);
+    }
+}
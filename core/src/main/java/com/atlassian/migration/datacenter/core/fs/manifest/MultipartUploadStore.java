@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+
+/**
+ * Records the multipart uploads in progress, so that an upload interrupted by a restart can carry on from the parts
+ * S3 already has instead of starting over. Implementations must be thread safe as they are called from every upload
+ * thread.
+ */
+public interface MultipartUploadStore {
+
+    /**
+     * Store which doesn't remember anything, i.e. every multipart upload starts from the first part.
+     */
+    MultipartUploadStore NONE = new MultipartUploadStore() {
+        @Override
+        public Optional<MultipartUploadRecord> find(String key) {
+            return Optional.empty();
+        }
+
+        @Override
+        public void started(MultipartUploadRecord upload) {
+        }
+
+        @Override
+        public void partUploaded(String key, int partNumber, String etag) {
+        }
+
+        @Override
+        public void finished(String key) {
+        }
+
+        @Override
+        public Collection<MultipartUploadRecord> all() {
+            return Collections.emptyList();
+        }
+    };
+
+    /**
+     * @param key the S3 key of the file
+     * @return the upload of the file which was started but neither completed nor aborted
+     */
+    Optional<MultipartUploadRecord> find(String key);
+
+    /**
+     * Records that a multipart upload was initiated, replacing any earlier upload of the same key.
+     */
+    void started(MultipartUploadRecord upload);
+
+    /**
+     * Records that a part of the upload of the key was accepted by S3.
+     */
+    void partUploaded(String key, int partNumber, String etag);
+
+    /**
+     * Forgets the upload of the key, once it was completed or aborted.
+     */
+    void finished(String key);
+
+    /**
+     * @return all uploads which were started but neither completed nor aborted
+     */
+    Collection<MultipartUploadRecord> all();
+}
@@ -17,43 +17,132 @@
 package com.atlassian.migration.datacenter.core.fs.reporting;
 
 import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFilePage;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationErrorReport;
-import com.google.common.collect.ImmutableSet;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Manages files which have had an error throughout the file migration
  * This class is threadsafe and is intended to be added to by any agents which
  * are a part of the file system migration
+ * <p>
+ * Every failure is written to a {@link FailedFileLog} on disk, which is paged through with
+ * {@link #readFailedFiles(long, int)}. Only the first 100 failures and the number of failures per reason are kept in
+ * memory. The log is kept in the directory given by the {@value #LOG_DIRECTORY_PROPERTY} system property, or in the
+ * directory it is created with, and is left there for administrators after the migration. Closing the report stops
+ * writing to the log, which stays readable.
  */
-public class DefaultFileSystemMigrationErrorReport implements FileSystemMigrationErrorReport {
+public class DefaultFileSystemMigrationErrorReport implements FileSystemMigrationErrorReport, Closeable {
+    public static final String LOG_DIRECTORY_PROPERTY = "com.atlassian.migration.datacenter.fs.failedFilesDirectory";
+    static final String OTHER_REASONS = "Other reasons";
+    private static final String PATH_PLACEHOLDER = "<file>";
+    private static final int MAX_FAILED_FILES_KEPT = 100;
+    private static final int MAX_REASONS = 100;
 
     private final Set<FailedFileMigration> failedMigrations;
+    private final AtomicLong failedFilesCount = new AtomicLong();
+    private final Map<String, LongAdder> countsByReason = new ConcurrentHashMap<>();
+    private final FailedFileLog log;
 
     public DefaultFileSystemMigrationErrorReport() {
+        this(defaultLogDirectory());
+    }
+
+    public DefaultFileSystemMigrationErrorReport(Path logDirectory) {
         this.failedMigrations = ConcurrentHashMap.newKeySet();
+        this.log = new FailedFileLog(logDirectory);
     }
 
     /**
-     * tries to report a failed file migration. If 100 files have failed already the report will be dropped to save memory.
-     * In this scenario it is likely the migration will fail and that the lost errors will have the same cause.
+     * Reports a failed file migration. The failure is queued to be written to the log on disk and counted by its
+     * reason. If the log can't be written, e.g. because the disk is full, only the first 100 failures are kept.
      *
      * @param failedFileMigration the failed file migration to report
      */
     public void reportFileNotMigrated(FailedFileMigration failedFileMigration) {
-        if (failedMigrations.size() >= 100) {
-            return;
+        failedFilesCount.incrementAndGet();
+        countReason(failedFileMigration);
+        if (failedMigrations.size() < MAX_FAILED_FILES_KEPT) {
+            failedMigrations.add(failedFileMigration);
         }
-        failedMigrations.add(failedFileMigration);
+        log.append(failedFileMigration);
     }
 
     /**
-     * @return an immutable copy of the FailedFileMigrations in this report. Note the returned value
-     * is not backed by the underlying collection so will not be updated as other producers add to it.
+     * @return a read-only view of the first 100 FailedFileMigrations in this report, which is updated as other
+     * producers add to it
      */
     public Set<FailedFileMigration> getFailedFiles() {
-        return ImmutableSet.copyOf(failedMigrations);
+        return Collections.unmodifiableSet(failedMigrations);
+    }
+
+    @Override
+    public long getFailedFilesCount() {
+        return failedFilesCount.get();
+    }
+
+    @Override
+    public Map<String, Long> getFailedFilesCountByReason() {
+        final Map<String, Long> counts = new HashMap<>();
+        countsByReason.forEach((reason, count) -> counts.put(reason, count.sum()));
+        return counts;
+    }
+
+    @Override
+    public FailedFilePage readFailedFiles(long cursor, int limit) {
+        try {
+            return log.read(cursor, limit);
+        } catch (IOException e) {
+            throw new UncheckedIOException(String.format("Unable to read failed files from %s", log.getFile()), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Counts the failure by its reason. Reasons often name the file, so the path is taken out of them for the failures
+     * of different files to be counted together. The number of distinct reasons is limited, any further ones are
+     * counted as {@value #OTHER_REASONS}.
+     */
+    private void countReason(FailedFileMigration failedFileMigration) {
+        final String path = failedFileMigration.getFilePath().toString();
+        String reason = path.isEmpty() ? failedFileMigration.getReason() : failedFileMigration.getReason().replace(path, PATH_PLACEHOLDER);
+        if (countsByReason.size() >= MAX_REASONS && !countsByReason.containsKey(reason)) {
+            reason = OTHER_REASONS;
+        }
+        countsByReason.computeIfAbsent(reason, r -> new LongAdder()).increment();
+    }
+
+    /**
+     * @param stateDirectory the directory of the migration state which survives a restart
+     * @return the directory of the failed file logs, from the {@value #LOG_DIRECTORY_PROPERTY} system property or
+     * within the state directory
+     */
+    public static Path logDirectory(Path stateDirectory) {
+        final String directory = System.getProperty(LOG_DIRECTORY_PROPERTY);
+        return directory != null ? Paths.get(directory) : stateDirectory.resolve("failed-files");
+    }
+
+    /**
+     * Only meant for reports which aren't created by the plugin, e.g. in tests, as the temporary directory may be
+     * wiped on reboot.
+     */
+    public static Path defaultLogDirectory() {
+        return logDirectory(Paths.get(System.getProperty("java.io.tmpdir"), "dc-migration-assistant"));
     }
 }
@@ -16,15 +16,21 @@
 
 package com.atlassian.migration.datacenter.core.fs.reporting;
 
+import com.atlassian.migration.datacenter.spi.fs.reporting.ConcurrencyAdjustment;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFilePage;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationErrorReport;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationProgress;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus;
 
+import java.io.Closeable;
+import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus.DONE;
@@ -33,7 +39,7 @@ import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigr
 import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus.NOT_STARTED;
 import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus.UPLOADING;
 
-public class DefaultFileSystemMigrationReport implements FileSystemMigrationReport {
+public class DefaultFileSystemMigrationReport implements FileSystemMigrationReport, Closeable {
 
     private Clock clock;
 
@@ -104,7 +110,7 @@ public class DefaultFileSystemMigrationReport implements FileSystemMigrationRepo
         return String.format("Filesystem migration report = { status: %s, migratedFiles: %d, erroredFiles: %d }",
                 currentStatus,
                 progress.getCountOfUploadedFiles(),
-                errorReport.getFailedFiles().size()
+                errorReport.getFailedFilesCount()
         );
     }
 
@@ -122,6 +128,21 @@ public class DefaultFileSystemMigrationReport implements FileSystemMigrationRepo
         errorReport.reportFileNotMigrated(failedFileMigration);
     }
 
+    @Override
+    public long getFailedFilesCount() {
+        return errorReport.getFailedFilesCount();
+    }
+
+    @Override
+    public Map<String, Long> getFailedFilesCountByReason() {
+        return errorReport.getFailedFilesCountByReason();
+    }
+
+    @Override
+    public FailedFilePage readFailedFiles(long cursor, int limit) {
+        return errorReport.readFailedFiles(cursor, limit);
+    }
+
     @Override
     public Long getNumberOfFilesFound() {
         return progress.getNumberOfFilesFound();
@@ -132,6 +153,16 @@ public class DefaultFileSystemMigrationReport implements FileSystemMigrationRepo
         progress.reportFileFound();
     }
 
+    @Override
+    public long getBytesFound() {
+        return progress.getBytesFound();
+    }
+
+    @Override
+    public void reportBytesFound(long bytes) {
+        progress.reportBytesFound(bytes);
+    }
+
     @Override
     public boolean isCrawlingFinished() {
         return progress.isCrawlingFinished();
@@ -162,6 +193,21 @@ public class DefaultFileSystemMigrationReport implements FileSystemMigrationRepo
         progress.reportFileUploaded();
     }
 
+    @Override
+    public long getBytesUploaded() {
+        return progress.getBytesUploaded();
+    }
+
+    @Override
+    public void reportBytesUploaded(long bytes) {
+        progress.reportBytesUploaded(bytes);
+    }
+
+    @Override
+    public void reportFileSkipped(long bytes) {
+        progress.reportFileSkipped(bytes);
+    }
+
     @Override
     public Long getCountOfDownloadFiles() {
         return progress.getCountOfDownloadFiles();
@@ -171,5 +217,59 @@ public class DefaultFileSystemMigrationReport implements FileSystemMigrationRepo
     public void setNumberOfFilesDownloaded(long downloadedFiles) {
         progress.setNumberOfFilesDownloaded(downloadedFiles);
     }
-}
 
+    @Override
+    public long getBytesDownloaded() {
+        return progress.getBytesDownloaded();
+    }
+
+    @Override
+    public void setNumberOfBytesDownloaded(long downloadedBytes) {
+        progress.setNumberOfBytesDownloaded(downloadedBytes);
+    }
+
+    @Override
+    public double getUploadBytesPerSecond() {
+        return progress.getUploadBytesPerSecond();
+    }
+
+    @Override
+    public double getUploadFilesPerSecond() {
+        return progress.getUploadFilesPerSecond();
+    }
+
+    @Override
+    public double getDownloadBytesPerSecond() {
+        return progress.getDownloadBytesPerSecond();
+    }
+
+    @Override
+    public Long getEstimatedSecondsRemaining() {
+        return progress.getEstimatedSecondsRemaining();
+    }
+
+    @Override
+    public int getUploadConcurrency() {
+        return progress.getUploadConcurrency();
+    }
+
+    @Override
+    public List<ConcurrencyAdjustment> getUploadConcurrencyAdjustments() {
+        return progress.getUploadConcurrencyAdjustments();
+    }
+
+    @Override
+    public void reportUploadConcurrencyAdjusted(ConcurrencyAdjustment adjustment) {
+        progress.reportUploadConcurrencyAdjusted(adjustment);
+    }
+
+    /**
+     * Releases what the error report holds on to, e.g. its open log, once the report is replaced by a new one.
+     */
+    @Override
+    public void close() throws IOException {
+        if (errorReport instanceof Closeable) {
+            ((Closeable) errorReport).close();
+        }
+    }
+}
@@ -16,13 +16,25 @@
 
 package com.atlassian.migration.datacenter.core.fs.reporting;
 
+import com.atlassian.migration.datacenter.core.util.ThroughputMeter;
+import com.atlassian.migration.datacenter.spi.fs.reporting.ConcurrencyAdjustment;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationProgress;
+import com.google.common.collect.ImmutableList;
 
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 public class DefaultFilesystemMigrationProgress implements FileSystemMigrationProgress {
 
+    private static final int MAX_CONCURRENCY_ADJUSTMENTS = 50;
+    private static final Duration RATE_WINDOW = Duration.ofMinutes(5);
+
     private AtomicLong numFilesUploaded = new AtomicLong(0);
 
     private AtomicLong filesFound = new AtomicLong(0);
@@ -33,6 +45,32 @@ public class DefaultFilesystemMigrationProgress implements FileSystemMigrationPr
 
     private AtomicLong fileDownloadsCompleted = new AtomicLong(0);
 
+    private AtomicInteger uploadConcurrency = new AtomicInteger(0);
+
+    private final Deque<ConcurrencyAdjustment> concurrencyAdjustments = new ArrayDeque<>();
+
+    private AtomicLong bytesFound = new AtomicLong(0);
+
+    private AtomicLong bytesUploaded = new AtomicLong(0);
+
+    private AtomicLong bytesDownloaded = new AtomicLong(0);
+
+    private final ThroughputMeter uploadedBytesRate;
+
+    private final ThroughputMeter uploadedFilesRate;
+
+    private final ThroughputMeter downloadedBytesRate;
+
+    public DefaultFilesystemMigrationProgress() {
+        this(System::nanoTime);
+    }
+
+    DefaultFilesystemMigrationProgress(LongSupplier nanoTime) {
+        this.uploadedBytesRate = new ThroughputMeter(RATE_WINDOW, nanoTime);
+        this.uploadedFilesRate = new ThroughputMeter(RATE_WINDOW, nanoTime);
+        this.downloadedBytesRate = new ThroughputMeter(RATE_WINDOW, nanoTime);
+    }
+
     @Override
     public Long getNumberOfFilesFound() {
         return filesFound.get();
@@ -43,6 +81,16 @@ public class DefaultFilesystemMigrationProgress implements FileSystemMigrationPr
         filesFound.incrementAndGet();
     }
 
+    @Override
+    public long getBytesFound() {
+        return bytesFound.get();
+    }
+
+    @Override
+    public void reportBytesFound(long bytes) {
+        bytesFound.addAndGet(bytes);
+    }
+
     @Override
     public boolean isCrawlingFinished() {
         return allFilesFound.get();
@@ -71,6 +119,25 @@ public class DefaultFilesystemMigrationProgress implements FileSystemMigrationPr
     @Override
     public void reportFileUploaded() {
         numFilesUploaded.incrementAndGet();
+        uploadedFilesRate.mark(1);
+    }
+
+    @Override
+    public long getBytesUploaded() {
+        return bytesUploaded.get();
+    }
+
+    @Override
+    public void reportBytesUploaded(long bytes) {
+        bytesUploaded.addAndGet(bytes);
+        uploadedBytesRate.mark(bytes);
+    }
+
+    @Override
+    public void reportFileSkipped(long bytes) {
+        fileUploadsCommenced.incrementAndGet();
+        numFilesUploaded.incrementAndGet();
+        bytesUploaded.addAndGet(bytes);
     }
 
     @Override
@@ -82,4 +149,99 @@ public class DefaultFilesystemMigrationProgress implements FileSystemMigrationPr
     public void setNumberOfFilesDownloaded(long downloadedFiles) {
         fileDownloadsCompleted.set(downloadedFiles);
     }
+
+    @Override
+    public long getBytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+
+    /**
+     * Sets the bytes downloaded so far. The download rate is measured from the increase since the last call, as the
+     * remote application only reports the total.
+     *
+     * @param downloadedBytes the number of bytes downloaded so far
+     */
+    @Override
+    public void setNumberOfBytesDownloaded(long downloadedBytes) {
+        final long previous = bytesDownloaded.getAndSet(downloadedBytes);
+        if (downloadedBytes > previous) {
+            downloadedBytesRate.mark(downloadedBytes - previous);
+        }
+    }
+
+    @Override
+    public double getUploadBytesPerSecond() {
+        return uploadedBytesRate.getRatePerSecond();
+    }
+
+    @Override
+    public double getUploadFilesPerSecond() {
+        return uploadedFilesRate.getRatePerSecond();
+    }
+
+    @Override
+    public double getDownloadBytesPerSecond() {
+        return downloadedBytesRate.getRatePerSecond();
+    }
+
+    /**
+     * Estimates the time left from the bytes which remain to be uploaded and downloaded and the current rates. The
+     * download follows the upload, so the estimate is the sum of both. It is unknown until there is a rate for
+     * everything which remains, as leaving out the download would make it look far shorter than it is.
+     */
+    @Override
+    public Long getEstimatedSecondsRemaining() {
+        final long found = bytesFound.get();
+        final long toUpload = Math.max(0, found - bytesUploaded.get());
+        final long toDownload = Math.max(0, found - bytesDownloaded.get());
+        if (found == 0) {
+            return allFilesFound.get() ? 0L : null;
+        }
+
+        double seconds = 0;
+        if (toUpload > 0) {
+            final double uploadRate = getUploadBytesPerSecond();
+            if (uploadRate <= 0) {
+                return null;
+            }
+            seconds += toUpload / uploadRate;
+        }
+        if (toDownload > 0) {
+            final double downloadRate = getDownloadBytesPerSecond();
+            if (downloadRate <= 0) {
+                return null;
+            }
+            seconds += toDownload / downloadRate;
+        }
+        return (long) Math.ceil(seconds);
+    }
+
+    @Override
+    public int getUploadConcurrency() {
+        return uploadConcurrency.get();
+    }
+
+    @Override
+    public List<ConcurrencyAdjustment> getUploadConcurrencyAdjustments() {
+        synchronized (concurrencyAdjustments) {
+            return ImmutableList.copyOf(concurrencyAdjustments);
+        }
+    }
+
+    /**
+     * Records the new upload concurrency. Only the latest 50 adjustments are kept, as the limit may change every few
+     * seconds over a migration lasting hours.
+     *
+     * @param adjustment the change of the upload concurrency
+     */
+    @Override
+    public void reportUploadConcurrencyAdjusted(ConcurrencyAdjustment adjustment) {
+        synchronized (concurrencyAdjustments) {
+            uploadConcurrency.set(adjustment.getNewLimit());
+            if (concurrencyAdjustments.size() >= MAX_CONCURRENCY_ADJUSTMENTS) {
+                concurrencyAdjustments.removeFirst();
+            }
+            concurrencyAdjustments.addLast(adjustment);
+        }
+    }
 }
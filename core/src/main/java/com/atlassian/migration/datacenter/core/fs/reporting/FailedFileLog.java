@@ -0,0 +1,265 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs.reporting;
+
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFilePage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Append-only log of the files which failed to migrate, kept on disk so that any number of failures can be reported
+ * without holding them in memory.
+ * <p>
+ * Every failure is a line of the path and the reason, separated by a tab:
+ * <pre>
+ * /var/atlassian/jira/data/attachments/1/image.png	/var/atlassian/jira/data/attachments/1/image.png: Permission denied
+ * </pre>
+ * Backslashes, tabs and line breaks within the path or the reason are escaped with a backslash, so the log can also
+ * be read by an administrator. The file is only created when the first failure is appended.
+ * <p>
+ * Pages are read by cursor, which is the byte offset of the next line to read. Only lines which were completely
+ * written are read, so a page never ends with a torn line.
+ * <p>
+ * Failures are mostly appended from the threads handling S3 responses, so lines are handed to a single writer thread
+ * instead of being written by the caller. The writer keeps the file open until the log is closed, i.e. until the
+ * report it belongs to is replaced. A read waits for the lines appended before it to be written.
+ */
+class FailedFileLog implements Closeable {
+    private static final Logger logger = LoggerFactory.getLogger(FailedFileLog.class);
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private final Path directory;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(writerThreadFactory());
+
+    // Only touched by the writer thread, apart from the file which is published for reads
+    private volatile Path file;
+    private FileChannel channel;
+    private boolean unavailable;
+    private volatile long written;
+
+    FailedFileLog(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return the file of the log, or null if nothing was written yet
+     */
+    Path getFile() {
+        return file;
+    }
+
+    /**
+     * Queues the failure to be written. If the log can't be written, e.g. because the disk is full, the error is
+     * logged once and the failures are only counted by the report.
+     */
+    void append(FailedFileMigration failure) {
+        final byte[] line = (escape(failure.getFilePath().toString()) + '\t' + escape(failure.getReason()) + '\n')
+                .getBytes(StandardCharsets.UTF_8);
+        try {
+            writer.execute(() -> write(line));
+        } catch (RejectedExecutionException e) {
+            logger.debug("Failed file log is closed, not logging {}", failure.getFilePath());
+        }
+    }
+
+    private void write(byte[] line) {
+        if (unavailable) {
+            return;
+        }
+        try {
+            if (channel == null) {
+                Files.createDirectories(directory);
+                file = Files.createTempFile(directory, "failed-files-", ".log");
+                channel = FileChannel.open(file, StandardOpenOption.WRITE);
+                logger.info("Files which failed to migrate are listed in {}", file);
+            }
+            // Written after the last complete line rather than appended, so a line torn by an error is overwritten
+            final ByteBuffer buffer = ByteBuffer.wrap(line);
+            long position = written;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            written += line.length;
+        } catch (IOException e) {
+            unavailable = true;
+            logger.error("Unable to write failed files to {}, further failures are only counted", file != null ? file : directory, e);
+        }
+    }
+
+    /**
+     * Stops the writer once the queued lines are written and closes the file. Lines appended afterwards are dropped.
+     */
+    @Override
+    public void close() throws IOException {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                logger.warn("Failed file log {} didn't finish writing within {} seconds", file, CLOSE_TIMEOUT_SECONDS);
+                writer.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            writer.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // Closed on the calling thread, the writer won't touch the channel anymore once terminated or interrupted
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    FailedFilePage read(long cursor, int limit) throws IOException {
+        if (cursor < 0 || limit < 0) {
+            throw new IllegalArgumentException(String.format("Cursor and limit must not be negative, were %d and %d", cursor, limit));
+        }
+        awaitAppended();
+        final long end = written;
+        final Path logFile = getFile();
+        if (logFile == null || cursor >= end || limit == 0) {
+            return new FailedFilePage(Collections.emptyList(), Math.min(cursor, end));
+        }
+
+        final List<FailedFileMigration> failures = new ArrayList<>(Math.min(limit, 1000));
+        long position = cursor;
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ)) {
+            channel.position(cursor);
+            final InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while (failures.size() < limit && position < end && (b = in.read()) >= 0) {
+                position++;
+                if (b == '\n') {
+                    failures.add(parse(new String(line.toByteArray(), StandardCharsets.UTF_8)));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+        return new FailedFilePage(failures, position);
+    }
+
+    /**
+     * Waits for the lines appended so far to be written, the writer runs its tasks in order.
+     */
+    private void awaitAppended() throws IOException {
+        try {
+            writer.submit(() -> {
+            }).get();
+        } catch (RejectedExecutionException e) {
+            // Closed, so everything which will ever be written is
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for failed files to be written");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to wait for failed files to be written", e.getCause());
+        }
+    }
+
+    private static ThreadFactory writerThreadFactory() {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, "failed-file-log");
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static FailedFileMigration parse(String line) {
+        final int separator = line.indexOf('\t');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Not a line of the failed file log, is the cursor at the start of a line?");
+        }
+        return new FailedFileMigration(
+                Paths.get(unescape(line.substring(0, separator))),
+                unescape(line.substring(separator + 1)));
+    }
+
+    static String escape(String value) {
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    static String unescape(String value) {
+        final StringBuilder unescaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c != '\\' || i == value.length() - 1) {
+                unescaped.append(c);
+                continue;
+            }
+            final char escapedChar = value.charAt(++i);
+            switch (escapedChar) {
+                case 't':
+                    unescaped.append('\t');
+                    break;
+                case 'n':
+                    unescaped.append('\n');
+                    break;
+                case 'r':
+                    unescaped.append('\r');
+                    break;
+                default:
+                    unescaped.append(escapedChar);
+            }
+        }
+        return unescaped.toString();
+    }
+}
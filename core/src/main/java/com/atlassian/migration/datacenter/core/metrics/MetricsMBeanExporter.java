@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Publishes a {@link MetricsRegistry} as a read-only MBean, with one attribute per value of its snapshot, so that JMX
+ * based monitoring can scrape the pipeline while a migration runs.
+ * <p>
+ * The bean is registered when the plugin starts and unregistered when it stops. A bean left behind by a previous
+ * instance of the plugin, e.g. one which was upgraded without a restart, is replaced.
+ */
+public class MetricsMBeanExporter implements InitializingBean, DisposableBean {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsMBeanExporter.class);
+    public static final String OBJECT_NAME = "com.atlassian.migration.datacenter:type=Metrics";
+
+    private final MetricsRegistry registry;
+    private final MBeanServer server;
+    private final ObjectName name;
+
+    public MetricsMBeanExporter(MetricsRegistry registry) {
+        this(registry, ManagementFactory.getPlatformMBeanServer());
+    }
+
+    MetricsMBeanExporter(MetricsRegistry registry, MBeanServer server) {
+        this.registry = registry;
+        this.server = server;
+        try {
+            this.name = new ObjectName(OBJECT_NAME);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new MetricsMBean(registry), name);
+        logger.debug("Registered migration metrics as {}", name);
+    }
+
+    @Override
+    public void destroy() {
+        try {
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to unregister migration metrics {}", name, e);
+        }
+    }
+
+    static class MetricsMBean implements DynamicMBean {
+        private final MetricsRegistry registry;
+
+        MetricsMBean(MetricsRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            final Long value = registry.snapshot().get(attribute);
+            if (value == null) {
+                throw new AttributeNotFoundException("No migration metric named " + attribute);
+            }
+            return value;
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            // Read from a single snapshot, so that the values are consistent with each other
+            final SortedMap<String, Long> snapshot = registry.snapshot();
+            final AttributeList values = new AttributeList();
+            for (String attribute : attributes) {
+                if (snapshot.containsKey(attribute)) {
+                    values.add(new Attribute(attribute, snapshot.get(attribute)));
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException("Migration metrics are read-only"));
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            // Per the contract of DynamicMBean, the attributes which were set are returned, which are none
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        /**
+         * Describes the metrics registered at the time, so that metrics created during a migration show up once a
+         * client refreshes the bean.
+         */
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            final SortedMap<String, Long> snapshot = registry.snapshot();
+            final MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+            int i = 0;
+            for (Map.Entry<String, Long> entry : snapshot.entrySet()) {
+                attributes[i++] = new MBeanAttributeInfo(entry.getKey(), Long.class.getName(), entry.getKey(), true, false, false);
+            }
+            return new MBeanInfo(getClass().getName(), "Metrics of the data center migration pipeline", attributes, null, null, null);
+        }
+    }
+}
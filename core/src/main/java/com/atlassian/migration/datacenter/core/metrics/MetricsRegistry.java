@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.metrics;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named counters, gauges and timers of the migration pipeline, e.g. {@code crawler.files} or {@code queue.depth}.
+ * <p>
+ * Metrics are created on first use and live as long as the registry, so a stage can look them up once and keep them
+ * in a field. Names are dotted, starting with the stage they belong to. The registry is read as a flat {@link #snapshot()},
+ * which is what the JMX bean and the REST endpoint expose. The plugin has one registry, which is handed to the stages
+ * like their other collaborators.
+ */
+public final class MetricsRegistry {
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * @throws IllegalArgumentException if the name is already used by a metric of another type
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the name is already used by a metric of another type
+     */
+    public Timer timer(String name) {
+        return get(name, Timer.class);
+    }
+
+    /**
+     * Registers a value which is read whenever the metrics are, e.g. the depth of a queue. A gauge registered under the
+     * same name before is replaced, as the object it reads from may have been replaced by a new run of the stage.
+     * <p>
+     * The gauge holds on to what it reads from, so it should be removed once the stage is done with it.
+     *
+     * @return the registration which removes the gauge again, unless it has been replaced in the meantime
+     * @throws IllegalArgumentException if the name is already used by a metric of another type
+     */
+    public Registration gauge(String name, LongSupplier value) {
+        final Gauge gauge = new Gauge(value);
+        metrics.merge(name, gauge, (existing, replacement) -> {
+            checkType(name, existing, Gauge.class);
+            return replacement;
+        });
+        return () -> metrics.remove(name, gauge);
+    }
+
+    /**
+     * Reads all metrics. Timers are flattened into their count, total, percentiles and maximum, e.g.
+     * {@code queue.putBlocked.p99Micros}.
+     *
+     * @return the values of the metrics, by name
+     */
+    public SortedMap<String, Long> snapshot() {
+        final SortedMap<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, Object> entry : metrics.entrySet()) {
+            final String name = entry.getKey();
+            final Object metric = entry.getValue();
+            if (metric instanceof Counter) {
+                values.put(name, ((Counter) metric).getCount());
+            } else if (metric instanceof Gauge) {
+                values.put(name, ((Gauge) metric).value.getAsLong());
+            } else {
+                final Timer.Snapshot timer = ((Timer) metric).snapshot();
+                values.put(name + ".count", timer.getCount());
+                values.put(name + ".totalMicros", timer.getTotalMicros());
+                values.put(name + ".p50Micros", timer.getPercentileMicros(50));
+                values.put(name + ".p99Micros", timer.getPercentileMicros(99));
+                values.put(name + ".maxMicros", timer.getMaxMicros());
+            }
+        }
+        return values;
+    }
+
+    private <T> T get(String name, Class<T> type) {
+        final Object metric = metrics.computeIfAbsent(name, key -> newMetric(type));
+        checkType(name, metric, type);
+        return type.cast(metric);
+    }
+
+    private static Object newMetric(Class<?> type) {
+        return type == Counter.class ? new Counter() : new Timer();
+    }
+
+    private static void checkType(String name, Object metric, Class<?> type) {
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(String.format(
+                    "Metric %s is a %s, not a %s", name, metric.getClass().getSimpleName(), type.getSimpleName()));
+        }
+    }
+
+    private static final class Gauge {
+        final LongSupplier value;
+
+        Gauge(LongSupplier value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * A metric which is only registered while a stage runs, removed when the registration is closed.
+     */
+    @FunctionalInterface
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.metrics;
+
+import com.atlassian.migration.datacenter.core.util.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of the durations of an event, e.g. how long producers were blocked on a full queue, together with the
+ * total time spent in it.
+ */
+public final class Timer {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final LongAdder totalMicros = new LongAdder();
+
+    public void record(long duration, TimeUnit unit) {
+        histogram.record(duration, unit);
+        totalMicros.add(Math.max(0, unit.toMicros(duration)));
+    }
+
+    /**
+     * @return the durations recorded so far. Durations recorded while the snapshot is taken may or may not be part of it.
+     */
+    public Snapshot snapshot() {
+        return new Snapshot(histogram.snapshot(), totalMicros.sum());
+    }
+
+    public static final class Snapshot {
+        private final LatencyHistogram.Snapshot histogram;
+        private final long totalMicros;
+
+        private Snapshot(LatencyHistogram.Snapshot histogram, long totalMicros) {
+            this.histogram = histogram;
+            this.totalMicros = totalMicros;
+        }
+
+        public long getCount() {
+            return histogram.getCount();
+        }
+
+        public long getTotalMicros() {
+            return totalMicros;
+        }
+
+        public long getMaxMicros() {
+            return histogram.getMaxMicros();
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        public long getPercentileMicros(double percentile) {
+            return histogram.getPercentileMicros(percentile);
+        }
+    }
+}
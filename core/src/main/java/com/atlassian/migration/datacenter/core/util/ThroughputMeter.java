@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.util;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Exponentially weighted moving average of a rate, e.g. bytes or files uploaded per second.
+ * <p>
+ * Marks are only added up when they happen, the average is updated every {@value #TICK_SECONDS} seconds with the
+ * rate over the last tick, so marking is cheap enough for every upload thread. Ticks are caught up lazily by whoever
+ * marks or reads the meter next; ticks without any marks pull the average towards 0. The first tick replaces the
+ * average instead of being weighted into it, so the meter doesn't take a whole window to warm up.
+ */
+public final class ThroughputMeter {
+    static final int TICK_SECONDS = 5;
+    private static final long TICK_NANOS = TimeUnit.SECONDS.toNanos(TICK_SECONDS);
+
+    private final double alpha;
+    private final LongSupplier nanoTime;
+    private final LongAdder uncounted = new LongAdder();
+
+    private volatile long lastTick;
+    private volatile double ratePerSecond;
+    private boolean initialised;
+
+    /**
+     * @param window how far back the average looks; a mark older than the window weighs about a third of a mark
+     *               made just now
+     */
+    public ThroughputMeter(Duration window) {
+        this(window, System::nanoTime);
+    }
+
+    /**
+     * @param window   how far back the average looks
+     * @param nanoTime source of {@link System#nanoTime()} like timestamps
+     */
+    public ThroughputMeter(Duration window, LongSupplier nanoTime) {
+        if (window.compareTo(Duration.ofSeconds(TICK_SECONDS)) < 0) {
+            throw new IllegalArgumentException(String.format("Window must be at least %d seconds, was %s", TICK_SECONDS, window));
+        }
+        this.alpha = 1 - Math.exp(-(double) TICK_SECONDS / window.getSeconds());
+        this.nanoTime = nanoTime;
+        this.lastTick = nanoTime.getAsLong();
+    }
+
+    public void mark(long count) {
+        tickIfNecessary();
+        uncounted.add(count);
+    }
+
+    /**
+     * @return the average rate per second, 0 until the first tick has passed
+     */
+    public double getRatePerSecond() {
+        tickIfNecessary();
+        return ratePerSecond;
+    }
+
+    private void tickIfNecessary() {
+        if (nanoTime.getAsLong() - lastTick < TICK_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            final long ticks = (nanoTime.getAsLong() - lastTick) / TICK_NANOS;
+            if (ticks < 1) {
+                return;
+            }
+            // Everything marked since the last tick is put into the oldest of the pending ticks
+            final double instantRate = (double) uncounted.sumThenReset() / TICK_SECONDS;
+            double rate;
+            if (initialised) {
+                rate = ratePerSecond + alpha * (instantRate - ratePerSecond);
+            } else {
+                rate = instantRate;
+                initialised = true;
+            }
+            // The remaining ticks had nothing marked
+            rate *= Math.pow(1 - alpha, ticks - 1);
+            ratePerSecond = rate;
+            lastTick += ticks * TICK_NANOS;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Rate limit refilling a budget of permits continuously, e.g. bytes or requests per second.
+ * <p>
+ * The bucket holds at most one second worth of permits, which is the largest burst it lets through. Permits are
+ * reserved rather than waited for: a reservation larger than what the bucket holds leaves it in debt, and the caller
+ * is told how long to wait until the debt is paid off. That way a caller which must not block, e.g. a thread of the
+ * HTTP client, can schedule the rest of its work instead of sleeping, and large reservations aren't starved by small
+ * ones.
+ * <p>
+ * A rate of 0 or less means unlimited. The rate can be changed at any time, reservations made afterwards are paced at
+ * the new rate.
+ */
+public final class TokenBucket {
+    public static final long UNLIMITED = 0;
+
+    private final LongSupplier nanoTime;
+
+    private long permitsPerSecond;
+    private double available;
+    private long refilledAt;
+
+    public TokenBucket(long permitsPerSecond) {
+        this(permitsPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(long permitsPerSecond, LongSupplier nanoTime) {
+        this.nanoTime = nanoTime;
+        this.refilledAt = nanoTime.getAsLong();
+        setRate(permitsPerSecond);
+    }
+
+    /**
+     * Changes the rate. The permits available at the time are kept, up to the burst allowed at the new rate, so
+     * lowering the rate takes effect right away. A bucket which wasn't limited before starts out full.
+     *
+     * @param permitsPerSecond the new rate, {@link #UNLIMITED} or less to stop limiting
+     */
+    public synchronized void setRate(long permitsPerSecond) {
+        refill();
+        final boolean wasUnlimited = this.permitsPerSecond == UNLIMITED;
+        this.permitsPerSecond = Math.max(UNLIMITED, permitsPerSecond);
+        if (this.permitsPerSecond == UNLIMITED) {
+            available = 0;
+        } else {
+            available = wasUnlimited ? this.permitsPerSecond : Math.min(available, this.permitsPerSecond);
+        }
+    }
+
+    public synchronized long getRate() {
+        return permitsPerSecond;
+    }
+
+    /**
+     * Takes permits out of the bucket, going into debt if there aren't enough of them.
+     *
+     * @param permits the number of permits to take
+     * @return how many nanoseconds the caller has to wait until it may act on the permits, 0 if it may act right away
+     */
+    public synchronized long reserve(long permits) {
+        if (permitsPerSecond == UNLIMITED || permits <= 0) {
+            return 0;
+        }
+        refill();
+        available -= permits;
+        if (available >= 0) {
+            return 0;
+        }
+        return (long) Math.ceil(-available * TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    }
+
+    /**
+     * Takes permits out of the bucket and sleeps until the caller may act on them.
+     *
+     * @param permits the number of permits to take
+     * @throws InterruptedException
+     */
+    public void acquire(long permits) throws InterruptedException {
+        final long delay = reserve(permits);
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        }
+    }
+
+    private void refill() {
+        final long now = nanoTime.getAsLong();
+        final long elapsed = now - refilledAt;
+        refilledAt = now;
+        if (permitsPerSecond != UNLIMITED && elapsed > 0) {
+            available = Math.min(permitsPerSecond, available + (double) elapsed * permitsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+    }
+}
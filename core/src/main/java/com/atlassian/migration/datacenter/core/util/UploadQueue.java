@@ -16,55 +16,324 @@
 
 package com.atlassian.migration.datacenter.core.util;
 
+import com.atlassian.migration.datacenter.core.metrics.Timer;
+
+import java.util.Collection;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Bounded queue handing files over from the crawler to the uploaders.
+ * <p>
+ * Backed by a lock-free ring buffer which supports any number of producers and consumers: each slot carries a
+ * sequence number telling whether it is ready to be written or read, so producers and consumers only contend on a
+ * CAS of their own cursor. Blocked threads back off from spinning to parking instead of waiting on a lock. Before
+ * parking for longer they register themselves, so that the other side wakes them up as soon as it has put a value or
+ * freed a slot; the park timeout is only a safety net, and idle consumers don't keep polling the queue.
+ * <p>
+ * The end of the stream is a flag rather than an element in the queue, so every consumer sees it once the queue
+ * has been drained.
+ * <p>
+ * How long producers are blocked on a full queue can be recorded in a {@link Timer}, which tells whether the crawler
+ * or the uploaders hold up the migration.
+ */
 public class UploadQueue<T> {
-    private BlockingQueue<Optional<T>> queue;
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 200;
+    private static final int MAX_PARK_SHIFT = 16;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> buffer;
+    private final AtomicLongArray sequences;
+    private final AtomicLong putCursor = new AtomicLong();
+    private final AtomicLong takeCursor = new AtomicLong();
+    private final Timer putBlockTime;
+    // Threads which were blocked long enough to park, woken up by the opposite side
+    private final Queue<Thread> parkedProducers = new ConcurrentLinkedQueue<>();
+    private final Queue<Thread> parkedConsumers = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean finished;
 
     public UploadQueue(Integer max) {
-        this.queue = new LinkedBlockingQueue<>(max);
+        this(max, new Timer());
     }
 
     /**
-     * Put a value on the queue to be consumed; blocks if the consumer is saturated.
+     * @param max          the capacity of the queue
+     * @param putBlockTime records how long every {@link #put(Object)} which found the queue full was blocked
+     */
+    public UploadQueue(Integer max, Timer putBlockTime) {
+        if (max < 1) {
+            throw new IllegalArgumentException("Queue capacity must be at least 1, was " + max);
+        }
+        this.capacity = max;
+        this.putBlockTime = putBlockTime;
+        final int slots = Integer.highestOneBit(max) == max ? max : Integer.highestOneBit(max) << 1;
+        this.mask = slots - 1;
+        this.buffer = new AtomicReferenceArray<>(slots);
+        this.sequences = new AtomicLongArray(slots);
+        for (int i = 0; i < slots; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Put a value on the queue to be consumed; blocks if the consumers are saturated.
      *
      * @param v
      * @throws InterruptedException
+     * @throws IllegalStateException if the queue was finished, e.g. because the consumers were aborted
      */
     public void put(T v) throws InterruptedException {
-        queue.put(Optional.of(v));
+        if (v == null) {
+            throw new NullPointerException("Queued value must not be null");
+        }
+        if (offer(v)) {
+            wakeUp(parkedConsumers);
+            return;
+        }
+        final long blockedSince = System.nanoTime();
+        int idle = 0;
+        try {
+            for (; !offer(v); idle++) {
+                if (finished) {
+                    throw new IllegalStateException("Upload queue is already finished");
+                }
+                backOff(idle, parkedProducers, MAX_PARK_NANOS);
+            }
+            wakeUp(parkedConsumers);
+        } finally {
+            stopWaiting(idle, parkedProducers);
+            putBlockTime.record(System.nanoTime() - blockedSince, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
-     * Similar to BlockingQueue.take(), except returns Optional.empty() if the producer is finished.
+     * Similar to BlockingQueue.take(), except returns Optional.empty() once the producer is finished and the queue
+     * is drained. Every consumer gets Optional.empty() at the end of the stream.
      *
      * @return Optional of value, or Optional.empty() if the producer is finished.
      * @throws InterruptedException
      */
     public Optional<T> take() throws InterruptedException {
-        return queue.take();
+        int idle = 0;
+        try {
+            for (; ; idle++) {
+                T value = poll();
+                if (value == null && finished) {
+                    // Values put before finish() must still be handed out
+                    value = poll();
+                    if (value == null) {
+                        return Optional.empty();
+                    }
+                }
+                if (value != null) {
+                    wakeUp(parkedProducers);
+                    return Optional.of(value);
+                }
+                backOff(idle, parkedConsumers, MAX_PARK_NANOS);
+            }
+        } finally {
+            stopWaiting(idle, parkedConsumers);
+        }
     }
 
     /**
-     * Signal to the consumer that the producer is finished.
+     * Moves up to maxElements values into the sink, blocking until at least one is available or the producer is
+     * finished.
+     *
+     * @param sink        collection receiving the values
+     * @param maxElements the maximum number of values to move
+     * @return the number of values moved, 0 only once the producer is finished and the queue is drained
+     * @throws InterruptedException
+     */
+    public int drainTo(Collection<? super T> sink, int maxElements) throws InterruptedException {
+        int idle = 0;
+        try {
+            for (; ; idle++) {
+                final int drained = drainAvailable(sink, maxElements);
+                if (drained > 0) {
+                    return drained;
+                }
+                if (finished) {
+                    return drainAvailable(sink, maxElements);
+                }
+                backOff(idle, parkedConsumers, MAX_PARK_NANOS);
+            }
+        } finally {
+            stopWaiting(idle, parkedConsumers);
+        }
+    }
+
+    /**
+     * Like {@link #drainTo(Collection, int)}, but gives up once the timeout has elapsed, so that the consumer can do
+     * other work in between.
+     *
+     * @return the number of values moved, 0 if none became available in time or the producer is finished and the
+     * queue is drained, see {@link #isDrained()}
+     * @throws InterruptedException
+     */
+    public int drainTo(Collection<? super T> sink, int maxElements, long timeout, TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        int idle = 0;
+        try {
+            for (; ; idle++) {
+                final int drained = drainAvailable(sink, maxElements);
+                if (drained > 0) {
+                    return drained;
+                }
+                final long remaining = deadline - System.nanoTime();
+                if (finished || remaining <= 0) {
+                    return drainAvailable(sink, maxElements);
+                }
+                backOff(idle, parkedConsumers, remaining);
+            }
+        } finally {
+            stopWaiting(idle, parkedConsumers);
+        }
+    }
+
+    /**
+     * @return true once the producer is finished and every value has been taken
+     */
+    public boolean isDrained() {
+        return finished && isEmpty();
+    }
+
+    /**
+     * Signal to the consumers that the producer is finished. Also releases a producer blocked on a full queue, which
+     * is how the consumers abort the producer.
      *
      * @throws InterruptedException
      */
     public void finish() throws InterruptedException {
-        queue.put(Optional.empty());
+        finished = true;
+        wakeUp(parkedProducers);
+        wakeUp(parkedConsumers);
     }
 
+    /**
+     * Checks the values currently in the queue. Only meant for diagnostics and tests, as the result is stale as soon
+     * as it is returned when the queue is in use.
+     */
     public boolean contains(T o) {
-        return queue.contains(Optional.of(o));
+        final long end = putCursor.get();
+        for (long position = takeCursor.get(); position < end; position++) {
+            final T value = buffer.get((int) position & mask);
+            if (value != null && value.equals(o)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public boolean isEmpty() {
-        return queue.isEmpty();
+        return size() == 0;
     }
 
     public int size() {
-        return queue.size();
+        final long size = putCursor.get() - takeCursor.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    private boolean offer(T v) {
+        while (true) {
+            final long position = putCursor.get();
+            if (position - takeCursor.get() >= capacity) {
+                return false;
+            }
+            final int slot = (int) position & mask;
+            final long sequence = sequences.get(slot);
+            if (sequence == position) {
+                if (putCursor.compareAndSet(position, position + 1)) {
+                    buffer.lazySet(slot, v);
+                    // Publishes the value to consumers
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+            } else if (sequence < position) {
+                // The slot still holds a value which hasn't been taken yet
+                return false;
+            }
+        }
+    }
+
+    private T poll() {
+        while (true) {
+            final long position = takeCursor.get();
+            final int slot = (int) position & mask;
+            final long sequence = sequences.get(slot);
+            if (sequence == position + 1) {
+                if (takeCursor.compareAndSet(position, position + 1)) {
+                    final T value = buffer.get(slot);
+                    buffer.lazySet(slot, null);
+                    // Hands the slot back to producers for the next lap
+                    sequences.set(slot, position + mask + 1);
+                    return value;
+                }
+            } else if (sequence < position + 1) {
+                return null;
+            }
+        }
+    }
+
+    private int drainAvailable(Collection<? super T> sink, int maxElements) {
+        int drained = 0;
+        T value;
+        while (drained < maxElements && (value = poll()) != null) {
+            sink.add(value);
+            drained++;
+        }
+        if (drained > 0) {
+            wakeUp(parkedProducers);
+        }
+        return drained;
+    }
+
+    /**
+     * Spins, then yields, then parks for longer and longer. A thread registers itself in parked before it parks for
+     * the first time and checks the queue again after every park, so a wake-up from {@link #wakeUp(Queue)} can't be
+     * missed once it is registered.
+     *
+     * @param maxParkNanos how long the thread may park at most, e.g. the time left until a timeout
+     */
+    private static void backOff(int idle, Queue<Thread> parked, long maxParkNanos) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        if (idle < SPIN_TRIES) {
+            return;
+        }
+        if (idle < YIELD_TRIES) {
+            Thread.yield();
+            return;
+        }
+        if (idle == YIELD_TRIES) {
+            parked.add(Thread.currentThread());
+        }
+        final long parkNanos = Math.min(MAX_PARK_NANOS, 1000L << Math.min(idle - YIELD_TRIES, MAX_PARK_SHIFT));
+        LockSupport.parkNanos(Math.min(parkNanos, maxParkNanos));
+    }
+
+    private static void stopWaiting(int idle, Queue<Thread> parked) {
+        if (idle >= YIELD_TRIES) {
+            parked.remove(Thread.currentThread());
+        }
+    }
+
+    private static void wakeUp(Queue<Thread> parked) {
+        if (!parked.isEmpty()) {
+            for (Thread thread : parked) {
+                LockSupport.unpark(thread);
+            }
+        }
     }
 }
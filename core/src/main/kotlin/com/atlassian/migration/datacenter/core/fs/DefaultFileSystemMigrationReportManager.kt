@@ -1,26 +1,46 @@
 package com.atlassian.migration.datacenter.core.fs
 
+import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationErrorReport
 import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationReport
+import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFilesystemMigrationProgress
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport
 import org.slf4j.LoggerFactory
+import java.io.Closeable
+import java.io.IOException
 import org.springframework.stereotype.Component
+import java.nio.file.Path
 
 @Component
-class DefaultFileSystemMigrationReportManager : FileSystemMigrationReportManager {
+class DefaultFileSystemMigrationReportManager(private val failedFilesDirectory: Path) : FileSystemMigrationReportManager {
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(DefaultFileSystemMigrationReportManager::class.java)
+    }
+
+    constructor() : this(DefaultFileSystemMigrationErrorReport.defaultLogDirectory())
 
     val reports: HashMap<ReportType, FileSystemMigrationReport> = hashMapOf(
-            ReportType.Filesystem to DefaultFileSystemMigrationReport(),
-            ReportType.Database to DefaultFileSystemMigrationReport(),
-            ReportType.Final to DefaultFileSystemMigrationReport()
+            ReportType.Filesystem to newReport(),
+            ReportType.Database to newReport(),
+            ReportType.Final to newReport()
     )
 
     override fun resetReport(type: ReportType): FileSystemMigrationReport {
-        val report = DefaultFileSystemMigrationReport()
-        reports[type] = report
+        val report = newReport()
+        val replaced = reports.put(type, report)
+        try {
+            (replaced as? Closeable)?.close()
+        } catch (e: IOException) {
+            logger.warn("Unable to close the replaced {} report", type, e)
+        }
         return report
     }
 
     override fun getCurrentReport(type: ReportType): FileSystemMigrationReport? {
         return reports[type]
     }
+
+    private fun newReport(): FileSystemMigrationReport {
+        return DefaultFileSystemMigrationReport(DefaultFileSystemMigrationErrorReport(failedFilesDirectory), DefaultFilesystemMigrationProgress())
+    }
 }
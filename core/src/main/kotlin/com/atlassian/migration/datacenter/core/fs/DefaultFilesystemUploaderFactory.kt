@@ -16,16 +16,36 @@
 
 package com.atlassian.migration.datacenter.core.fs
 
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport
 
-class DefaultFilesystemUploaderFactory(private val uploaderFactory: UploaderFactory)
+class DefaultFilesystemUploaderFactory(private val uploaderFactory: UploaderFactory,
+                                       private val metrics: MetricsRegistry = MetricsRegistry())
     : FilesystemUploaderFactory
 {
-    override fun newUploader(report: FileSystemMigrationReport): FilesystemUploader {
-        // TODO: Should probably be a factory too
-        val crawler: Crawler = DirectoryStreamCrawler(report)
-        val uploader = uploaderFactory.newUploader(report)
+    companion object {
+        const val CRAWLER_PROPERTY = "com.atlassian.migration.datacenter.fs.crawler"
+        const val CRAWLER_PARALLELISM_PROPERTY = "com.atlassian.migration.datacenter.fs.crawler.parallelism"
+        const val PARALLEL_CRAWLER = "parallel"
+        const val UPLOAD_WORKERS_PROPERTY = "com.atlassian.migration.datacenter.fs.uploadWorkers"
+    }
+
+    override fun newUploader(report: FileSystemMigrationReport, manifest: CrawlManifest): FilesystemUploader {
+        val crawler = newCrawler(report, manifest)
+        val uploader = uploaderFactory.newUploader(report, manifest)
+
+        val uploadWorkers = Integer.getInteger(UPLOAD_WORKERS_PROPERTY, 1)
+
+        return DefaultFilesystemUploader(crawler, uploader, uploadWorkers, metrics)
+    }
 
-        return DefaultFilesystemUploader(crawler, uploader)
+    private fun newCrawler(report: FileSystemMigrationReport, manifest: CrawlManifest): Crawler {
+        return if (System.getProperty(CRAWLER_PROPERTY, "") == PARALLEL_CRAWLER) {
+            val parallelism = Integer.getInteger(CRAWLER_PARALLELISM_PROPERTY, Runtime.getRuntime().availableProcessors())
+            ParallelDirectoryCrawler(report, parallelism, PathIgnoreList.fromSystemProperties(), metrics, manifest)
+        } else {
+            DirectoryStreamCrawler(report, PathIgnoreList.fromSystemProperties(), metrics, manifest)
+        }
     }
 }
\ No newline at end of file
@@ -16,8 +16,9 @@
 
 package com.atlassian.migration.datacenter.core.fs
 
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport
 
 interface FilesystemUploaderFactory {
-    fun newUploader(report: FileSystemMigrationReport): FilesystemUploader
+    fun newUploader(report: FileSystemMigrationReport, manifest: CrawlManifest): FilesystemUploader
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs
+
+import com.atlassian.event.api.EventListener
+import com.atlassian.event.api.EventPublisher
+import com.atlassian.migration.datacenter.core.fs.copy.S3BulkCopy
+import com.atlassian.migration.datacenter.core.fs.manifest.FileMultipartUploadStore
+import com.atlassian.migration.datacenter.core.fs.manifest.MappedCrawlManifest
+import com.atlassian.migration.datacenter.events.MigrationResetEvent
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.DisposableBean
+import org.springframework.beans.factory.InitializingBean
+import software.amazon.awssdk.services.s3.S3AsyncClient
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.TimeUnit
+import java.util.function.Supplier
+
+/**
+ * Aborts the multipart uploads left unfinished by a migration when it is reset, so that their parts don't keep
+ * costing storage in the migration bucket.
+ */
+class MultipartUploadCleaner(private val eventPublisher: EventPublisher,
+                             private val clientSupplier: Supplier<S3AsyncClient>,
+                             private val manifestDirectory: Path
+) : InitializingBean, DisposableBean {
+
+    @Throws(Exception::class)
+    override fun afterPropertiesSet() {
+        eventPublisher.register(this)
+    }
+
+    @EventListener
+    fun onMigrationResetEvent(event: MigrationResetEvent) {
+        val directory = MappedCrawlManifest.multipartUploadsDirectory(S3BulkCopy.manifestFile(manifestDirectory, event.migrationId))
+        if (!Files.isDirectory(directory)) {
+            return
+        }
+        try {
+            val uploads = FileMultipartUploadStore.open(directory).all()
+            if (uploads.isNotEmpty()) {
+                logger.info("Aborting {} unfinished multipart uploads of migration {}", uploads.size, event.migrationId)
+                val client = clientSupplier.get()
+                val aborts = uploads.map { S3MultiPartUploader.abort(client, it) }
+                CompletableFuture.allOf(*aborts.toTypedArray()).get(ABORT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+            }
+        } catch (e: Exception) {
+            logger.warn("Unable to abort the multipart uploads of migration {}, their parts may be left in S3", event.migrationId, e)
+        } finally {
+            FileMultipartUploadStore.delete(directory)
+        }
+    }
+
+    @Throws(Exception::class)
+    override fun destroy() {
+        eventPublisher.unregister(this)
+    }
+
+    companion object {
+        private val logger = LoggerFactory.getLogger(MultipartUploadCleaner::class.java)
+        private const val ABORT_TIMEOUT_SECONDS = 30L
+    }
+}
@@ -17,6 +17,8 @@
 package com.atlassian.migration.datacenter.core.fs
 
 import com.atlassian.migration.datacenter.core.aws.infrastructure.AWSMigrationHelperDeploymentService
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport
 import software.amazon.awssdk.services.s3.S3AsyncClient
 import java.nio.file.Path
@@ -25,17 +27,21 @@ import java.util.function.Supplier
 
 class S3UploaderFactory(private val deploymentService: AWSMigrationHelperDeploymentService,
                         private val clientSupplier: Supplier<S3AsyncClient>,
-                        private val home: Path)
+                        private val home: Path,
+                        private val throttle: UploadThrottle = UploadThrottle.unlimited(),
+                        private val latencies: UploadLatencies = UploadLatencies(),
+                        private val metrics: MetricsRegistry = MetricsRegistry(),
+                        private val fileReads: FileReadExecutor = FileReadExecutor.fromSystemProperties())
     : UploaderFactory
 {
     private val OVERRIDE_UPLOAD_DIRECTORY = System
             .getProperty("com.atlassian.migration.datacenter.fs.overrideJiraHome", "")
 
-    override fun newUploader(report: FileSystemMigrationReport): Uploader {
+    override fun newUploader(report: FileSystemMigrationReport, manifest: CrawlManifest): Uploader {
         val s3Bucket = deploymentService.getMigrationS3BucketName()
 
-        val s3UploadConfig = S3UploadConfig(s3Bucket, clientSupplier.get(), getSharedHomeDir())
-        val s3Uploader: Uploader = S3Uploader(s3UploadConfig, report)
+        val s3UploadConfig = S3UploadConfig(s3Bucket, clientSupplier.get(), getSharedHomeDir(), throttle, latencies, metrics, fileReads)
+        val s3Uploader: Uploader = S3Uploader(s3UploadConfig, report, manifest)
 
         return s3Uploader
     }
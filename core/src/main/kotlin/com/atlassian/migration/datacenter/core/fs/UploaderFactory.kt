@@ -16,8 +16,9 @@
 
 package com.atlassian.migration.datacenter.core.fs
 
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport
 
 interface UploaderFactory {
-    fun newUploader(report: FileSystemMigrationReport): Uploader
+    fun newUploader(report: FileSystemMigrationReport, manifest: CrawlManifest): Uploader
 }
\ No newline at end of file
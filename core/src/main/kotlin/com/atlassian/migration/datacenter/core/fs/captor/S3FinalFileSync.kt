@@ -16,18 +16,20 @@
 
 package com.atlassian.migration.datacenter.core.fs.captor
 
+import com.atlassian.migration.datacenter.core.fs.FileEntry
 import com.atlassian.migration.datacenter.core.fs.Uploader
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry
 import com.atlassian.migration.datacenter.core.util.UploadQueue
-import java.nio.file.Path
 import java.nio.file.Paths
 
-class S3FinalFileSync(private val attachmentSyncManager: AttachmentSyncManager, private val uploader: Uploader) {
+class S3FinalFileSync(private val attachmentSyncManager: AttachmentSyncManager, private val uploader: Uploader, private val metrics: MetricsRegistry = MetricsRegistry()) {
 
     fun uploadCapturedFiles() {
         val capturedAttachments = attachmentSyncManager.capturedAttachments
-        val uploadQueue = UploadQueue<Path>(capturedAttachments.size + 1)
+        val uploadQueue = UploadQueue<FileEntry>(capturedAttachments.size + 1)
+        metrics.counter("finalSync.files").add(capturedAttachments.size.toLong())
 
-        capturedAttachments.forEach { uploadQueue.put(Paths.get(it.filePath)) }
+        capturedAttachments.forEach { uploadQueue.put(FileEntry.unresolved(Paths.get(it.filePath))) }
         uploadQueue.finish()
 
         uploader.upload(uploadQueue)
@@ -18,12 +18,16 @@ package com.atlassian.migration.datacenter.core.fs.captor
 
 import com.atlassian.migration.datacenter.core.aws.SqsApi
 import com.atlassian.migration.datacenter.core.aws.infrastructure.AWSMigrationHelperDeploymentService
+import com.atlassian.migration.datacenter.core.fs.FileReadExecutor
 import com.atlassian.migration.datacenter.core.fs.FileSystemMigrationReportManager
 import com.atlassian.migration.datacenter.core.fs.ReportType
 import com.atlassian.migration.datacenter.core.fs.S3UploadConfig
 import com.atlassian.migration.datacenter.core.fs.S3Uploader
+import com.atlassian.migration.datacenter.core.fs.UploadLatencies
+import com.atlassian.migration.datacenter.core.fs.UploadThrottle
 import com.atlassian.migration.datacenter.core.fs.jira.listener.JiraIssueAttachmentListener
 import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationReport
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry
 import com.atlassian.migration.datacenter.core.util.MigrationJobRunner
 import com.atlassian.migration.datacenter.spi.infrastructure.InfrastructureDeploymentError
 import com.atlassian.scheduler.JobRunnerRequest
@@ -31,6 +35,7 @@ import com.atlassian.scheduler.JobRunnerResponse
 import org.slf4j.LoggerFactory
 import software.amazon.awssdk.services.s3.S3AsyncClient
 import java.nio.file.Path
+import java.util.concurrent.TimeUnit
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.function.Supplier
 
@@ -42,7 +47,11 @@ class S3FinalSyncRunner(
         private val queueWatcher: QueueWatcher,
         private val attachmentListener: JiraIssueAttachmentListener,
         private val reportManager: FileSystemMigrationReportManager,
-        private val sqsApi: SqsApi)
+        private val sqsApi: SqsApi,
+        private val throttle: UploadThrottle = UploadThrottle.unlimited(),
+        private val latencies: UploadLatencies = UploadLatencies(),
+        private val metrics: MetricsRegistry = MetricsRegistry(),
+        private val fileReads: FileReadExecutor = FileReadExecutor.fromSystemProperties())
     : MigrationJobRunner {
 
     companion object {
@@ -50,6 +59,8 @@ class S3FinalSyncRunner(
     }
 
     private val isRunning = AtomicBoolean(false)
+    private val uploadTime = metrics.timer("finalSync.upload")
+    private val queueDrainTime = metrics.timer("finalSync.queueDrain")
 
     override fun getKey(): String {
         return S3FinalSyncRunner::class.java.name
@@ -69,22 +80,26 @@ class S3FinalSyncRunner(
         log.info("Stopping attachment event listener. Attachments created from this point onwards will not be migrated.")
         attachmentListener.stop()
 
-        val config = S3UploadConfig(migrationHelperDeploymentService.migrationS3BucketName, client.get(), home)
+        val config = S3UploadConfig(migrationHelperDeploymentService.migrationS3BucketName, client.get(), home, throttle, latencies, metrics, fileReads)
         val report = reportManager.resetReport(ReportType.Final)
         val uploader = S3Uploader(config, report)
 
         log.info("Starting final file sync migration job")
-        val finalSyncUploader = S3FinalFileSync(attachmentSyncManager, uploader)
+        val finalSyncUploader = S3FinalFileSync(attachmentSyncManager, uploader, metrics)
+        val uploadStarted = System.nanoTime()
         finalSyncUploader.uploadCapturedFiles()
+        uploadTime.record(System.nanoTime() - uploadStarted, TimeUnit.NANOSECONDS)
 
-        if (report.failedFiles.isNotEmpty()) {
-            log.error("Some files failed to upload during final sync")
+        if (report.getFailedFilesCount() > 0) {
+            log.error("${report.getFailedFilesCount()} files failed to upload during final sync, the first of them are:")
             report.failedFiles.forEach {
                 log.error("${it.filePath} - ${it.reason}")
             }
         }
 
+        val drainStarted = System.nanoTime()
         val queueDrainResult = queueWatcher.awaitQueueDrain()
+        queueDrainTime.record(System.nanoTime() - drainStarted, TimeUnit.NANOSECONDS)
 
         if (queueDrainResult) {
             log.debug("Processed all items from remote queue.")
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.aws;
+
+import com.atlassian.migration.datacenter.core.aws.auth.ReadCredentialsService;
+import com.atlassian.migration.datacenter.core.aws.region.RegionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AwsClientRegistryTest {
+    @Mock
+    private RegionService regionService;
+    @Mock
+    private ReadCredentialsService readCredentialsService;
+
+    private final List<Region> createdFor = new ArrayList<>();
+    private AwsClientRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new AwsClientRegistry(new StubAwsCredentialsProvider(), regionService, readCredentialsService);
+        when(readCredentialsService.getAccessKeyId()).thenReturn("accessKeyId");
+        when(readCredentialsService.getSecretAccessKey()).thenReturn("secretAccessKey");
+    }
+
+    @Test
+    void shouldReuseClientWhileRegionAndCredentialsAreUnchanged() {
+        when(regionService.getRegion()).thenReturn("us-east-1");
+        final Supplier<S3Client> supplier = registry.supplier(S3Client.class, this::createClient);
+
+        final S3Client client = supplier.get();
+
+        assertSame(client, supplier.get());
+        assertEquals(1, createdFor.size());
+        verify(client, never()).close();
+    }
+
+    @Test
+    void shouldReplaceAndCloseClientWhenRegionChanges() {
+        when(regionService.getRegion()).thenReturn("us-east-1", "eu-west-1");
+        final Supplier<S3Client> supplier = registry.supplier(S3Client.class, this::createClient);
+
+        final S3Client first = supplier.get();
+        final S3Client second = supplier.get();
+
+        assertNotSame(first, second);
+        assertEquals(Region.EU_WEST_1, createdFor.get(1));
+        verify(first).close();
+    }
+
+    @Test
+    void shouldReplaceAndCloseClientWhenCredentialsChange() {
+        when(regionService.getRegion()).thenReturn("us-east-1");
+        final Supplier<S3Client> supplier = registry.supplier(S3Client.class, this::createClient);
+
+        final S3Client first = supplier.get();
+        when(readCredentialsService.getSecretAccessKey()).thenReturn("rotatedSecretAccessKey");
+        final S3Client second = supplier.get();
+
+        assertNotSame(first, second);
+        verify(first).close();
+    }
+
+    @Test
+    void shouldKeepClientsOfExplicitRegionsApart() {
+        final S3Client east = registry.get(S3Client.class, Region.US_EAST_1, this::createClient);
+        final S3Client west = registry.get(S3Client.class, Region.US_WEST_2, this::createClient);
+
+        assertNotSame(east, west);
+        assertSame(east, registry.get(S3Client.class, Region.US_EAST_1, this::createClient));
+        verify(east, never()).close();
+    }
+
+    @Test
+    void shouldCloseAllClientsWhenDestroyed() {
+        final S3Client east = registry.get(S3Client.class, Region.US_EAST_1, this::createClient);
+        final S3Client west = registry.get(S3Client.class, Region.US_WEST_2, this::createClient);
+
+        registry.destroy();
+
+        verify(east).close();
+        verify(west).close();
+        assertNotSame(east, registry.get(S3Client.class, Region.US_EAST_1, this::createClient));
+    }
+
+    private S3Client createClient(AwsCredentialsProvider credentialsProvider, Region region) {
+        createdFor.add(region);
+        return mock(S3Client.class);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.aws;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.SdkHttpResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class AwsRequestMetricsTest {
+    private final AwsRequestMetrics metrics = new AwsRequestMetrics();
+
+    @Test
+    void shouldCountCallsAndRetriesPerServiceAndOperation() {
+        ExecutionAttributes putObject = call("S3", "PutObject");
+        attempt(putObject, 503);
+        attempt(putObject, 200);
+        succeed(putObject);
+        ExecutionAttributes receiveMessage = call("SQS", "ReceiveMessage");
+        attempt(receiveMessage, 200);
+        succeed(receiveMessage);
+
+        List<AwsRequestMetrics.Summary> summaries = metrics.summarise();
+
+        assertEquals(2, summaries.size());
+        AwsRequestMetrics.Summary s3 = summaries.get(0);
+        assertEquals("S3", s3.getService());
+        assertEquals("PutObject", s3.getOperation());
+        assertEquals(1, s3.getCalls());
+        assertEquals(1, s3.getRetries());
+        assertEquals(1, s3.getThrottled());
+        assertEquals(0, s3.getFailures());
+        assertEquals(1L, s3.getStatusCodes().get(503));
+        assertEquals(1L, s3.getStatusCodes().get(200));
+        assertTrue(s3.getMaxMicros() >= s3.getP50Micros());
+        assertEquals("SQS", summaries.get(1).getService());
+        assertEquals(0, summaries.get(1).getRetries());
+    }
+
+    @Test
+    void shouldCountFailureWithoutResponseAsClientFailure() {
+        ExecutionAttributes putObject = call("S3", "PutObject");
+        attempt(putObject, 500);
+        metrics.beforeTransmission(mock(Context.BeforeTransmission.class), putObject);
+        metrics.onExecutionFailure(mock(Context.FailedExecution.class), putObject);
+
+        AwsRequestMetrics.Summary summary = metrics.summarise().get(0);
+
+        assertEquals(1, summary.getFailures());
+        assertEquals(1, summary.getClientFailures());
+        assertEquals(1, summary.getRetries());
+        assertEquals(0, summary.getThrottled());
+    }
+
+    @Test
+    void shouldCountThrottlingReportedByErrorCode() {
+        ExecutionAttributes sendCommand = call("SSM", "SendCommand");
+        attempt(sendCommand, 400);
+        SdkServiceException throttling = mock(SdkServiceException.class);
+        when(throttling.isThrottlingException()).thenReturn(true);
+        Context.FailedExecution failure = mock(Context.FailedExecution.class);
+        when(failure.exception()).thenReturn(throttling);
+        metrics.onExecutionFailure(failure, sendCommand);
+
+        AwsRequestMetrics.Summary summary = metrics.summarise().get(0);
+
+        assertEquals(1, summary.getFailures());
+        assertEquals(0, summary.getClientFailures());
+        assertEquals(1, summary.getThrottled());
+    }
+
+    @Test
+    void shouldNotCountThrottledResponseTwice() {
+        ExecutionAttributes putObject = call("S3", "PutObject");
+        attempt(putObject, 503);
+        metrics.onExecutionFailure(mock(Context.FailedExecution.class), putObject);
+
+        assertEquals(1, metrics.summarise().get(0).getThrottled());
+    }
+
+    @Test
+    void shouldForgetRequestsWhenReset() {
+        ExecutionAttributes putObject = call("S3", "PutObject");
+        attempt(putObject, 200);
+        succeed(putObject);
+
+        metrics.reset();
+
+        assertTrue(metrics.summarise().isEmpty());
+    }
+
+    private ExecutionAttributes call(String service, String operation) {
+        ExecutionAttributes attributes = new ExecutionAttributes();
+        attributes.putAttribute(SdkExecutionAttribute.SERVICE_NAME, service);
+        attributes.putAttribute(SdkExecutionAttribute.OPERATION_NAME, operation);
+        metrics.beforeExecution(mock(Context.BeforeExecution.class), attributes);
+        return attributes;
+    }
+
+    private void attempt(ExecutionAttributes attributes, int status) {
+        metrics.beforeTransmission(mock(Context.BeforeTransmission.class), attributes);
+        Context.AfterTransmission response = mock(Context.AfterTransmission.class);
+        when(response.httpResponse()).thenReturn(SdkHttpResponse.builder().statusCode(status).build());
+        metrics.afterTransmission(response, attributes);
+    }
+
+    private void succeed(ExecutionAttributes attributes) {
+        metrics.afterExecution(mock(Context.AfterExecution.class), attributes);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.fs.AdaptiveConcurrencyLimiter.Outcome;
+import com.atlassian.migration.datacenter.spi.fs.reporting.ConcurrencyAdjustment;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private List<ConcurrencyAdjustment> adjustments;
+    private AdaptiveConcurrencyLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        adjustments = new ArrayList<>();
+        limiter = new AdaptiveConcurrencyLimiter(4, 1, 8, adjustments::add);
+    }
+
+    @Test
+    void shouldReportInitialLimit() {
+        assertEquals(1, adjustments.size());
+        assertEquals(0, adjustments.get(0).getPreviousLimit());
+        assertEquals(4, adjustments.get(0).getNewLimit());
+    }
+
+    @Test
+    void shouldIncreaseLimitAfterAWindowOfHealthySuccesses() throws InterruptedException {
+        completeRequests(4, LATENCY, Outcome.SUCCESS);
+
+        assertEquals(5, limiter.getLimit());
+        assertEquals(4, adjustments.get(1).getPreviousLimit());
+        assertEquals(5, adjustments.get(1).getNewLimit());
+    }
+
+    @Test
+    void shouldNotIncreaseLimitBeyondMaximum() throws InterruptedException {
+        for (int i = 0; i < 20; i++) {
+            completeRequests(limiter.getLimit(), LATENCY, Outcome.SUCCESS);
+        }
+
+        assertEquals(8, limiter.getLimit());
+    }
+
+    @Test
+    void shouldNotIncreaseLimitWhichIsNotUsed() throws InterruptedException {
+        for (int i = 0; i < 8; i++) {
+            limiter.acquire();
+            limiter.release(LATENCY, Outcome.SUCCESS);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void shouldNotIncreaseLimitWhileLatencyRises() throws InterruptedException {
+        completeRequests(4, LATENCY, Outcome.SUCCESS);
+        assertEquals(5, limiter.getLimit());
+
+        completeRequests(5, LATENCY * 10, Outcome.SUCCESS);
+
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void shouldHalveLimitWhenThrottled() throws InterruptedException {
+        limiter.acquire();
+        limiter.release(LATENCY, Outcome.THROTTLED);
+
+        assertEquals(2, limiter.getLimit());
+        assertEquals("Throttled by S3", adjustments.get(1).getReason());
+    }
+
+    @Test
+    void shouldHalveLimitOnlyOnceForRequestsSentUnderTheOldLimit() throws InterruptedException {
+        completeRequests(4, LATENCY, Outcome.THROTTLED);
+
+        assertEquals(2, limiter.getLimit());
+
+        completeRequests(2, LATENCY, Outcome.THROTTLED);
+
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void shouldNotAdjustLimitOnUnrelatedFailures() throws InterruptedException {
+        completeRequests(4, LATENCY, Outcome.FAILED);
+
+        assertEquals(4, limiter.getLimit());
+        assertEquals(1, adjustments.size());
+    }
+
+    @Test
+    void shouldBlockWhileLimitIsReached() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            limiter.acquire();
+        }
+        final CountDownLatch acquired = new CountDownLatch(1);
+        final Thread waiting = new Thread(() -> {
+            try {
+                limiter.acquire();
+                acquired.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiting.start();
+
+        assertFalse(acquired.await(200, TimeUnit.MILLISECONDS));
+
+        limiter.release(LATENCY, Outcome.SUCCESS);
+
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiting.join();
+    }
+
+    private void completeRequests(int count, long latencyNanos, Outcome outcome) throws InterruptedException {
+        for (int i = 0; i < count; i++) {
+            limiter.acquire();
+        }
+        for (int i = 0; i < count; i++) {
+            limiter.release(latencyNanos, outcome);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.util.UploadQueue;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.time.Duration.ofSeconds;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DefaultFilesystemUploaderTest {
+    private static final int FILES = 10_000;
+
+    private final Crawler crawler = (start, queue) -> {
+        try {
+            for (int i = 0; i < FILES; i++) {
+                queue.put(FileEntry.unresolved(start.resolve("file-" + i)));
+            }
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            try {
+                queue.finish();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    @Test
+    void allWorkersShouldConsumeTheSameQueue() throws Exception {
+        final Set<Path> uploaded = ConcurrentHashMap.newKeySet();
+        final Uploader uploader = new TestUploader() {
+            @Override
+            public void upload(UploadQueue<FileEntry> queue) throws FileUploadException {
+                try {
+                    for (Optional<FileEntry> entry = queue.take(); entry.isPresent(); entry = queue.take()) {
+                        assertTrue(uploaded.add(entry.get().getPath()), "File was uploaded twice: " + entry.get());
+                    }
+                } catch (InterruptedException e) {
+                    throw new FileUploadException("interrupted", e);
+                }
+            }
+        };
+
+        assertTimeoutPreemptively(ofSeconds(30), () -> new DefaultFilesystemUploader(crawler, uploader, 4).uploadDirectory(Paths.get("home")));
+
+        assertEquals(FILES, uploaded.size());
+    }
+
+    @Test
+    void shouldReleaseCrawlerWhenWorkerFails() {
+        final Uploader uploader = new TestUploader() {
+            @Override
+            public void upload(UploadQueue<FileEntry> queue) throws FileUploadException {
+                throw new FileUploadException("Upload failed");
+            }
+        };
+
+        assertTimeoutPreemptively(ofSeconds(30), () -> {
+            assertThrows(FileUploadException.class, () -> new DefaultFilesystemUploader(crawler, uploader, 2).uploadDirectory(Paths.get("home")));
+        });
+    }
+
+    @Test
+    void shouldRejectInvalidNumberOfWorkers() {
+        assertThrows(IllegalArgumentException.class, () -> new DefaultFilesystemUploader(crawler, new TestUploader(), 0));
+    }
+
+    private static class TestUploader implements Uploader {
+        @Override
+        public void upload(UploadQueue<FileEntry> queue) throws FileUploadException {
+            final List<FileEntry> ignored = new ArrayList<>();
+            try {
+                while (queue.drainTo(ignored, 16) > 0) {
+                    ignored.clear();
+                }
+            } catch (InterruptedException e) {
+                throw new FileUploadException("interrupted", e);
+            }
+        }
+
+        @Override
+        public Integer maxConcurrent() {
+            return 10;
+        }
+    }
+}
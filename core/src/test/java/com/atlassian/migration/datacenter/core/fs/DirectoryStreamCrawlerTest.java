@@ -16,7 +16,9 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
 import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationReport;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.core.util.UploadQueue;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
 import org.junit.jupiter.api.BeforeEach;
@@ -30,6 +32,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermissions;
 import java.util.HashSet;
+import java.util.Optional;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -42,7 +45,7 @@ class DirectoryStreamCrawlerTest {
     Path tempDir;
 
     private Crawler directoryStreamCrawler;
-    private UploadQueue<Path> queue;
+    private UploadQueue<FileEntry> queue;
     private Set<Path> expectedPaths;
     private Set<Path> ignoredPaths;
     private FileSystemMigrationReport report;
@@ -80,8 +83,46 @@ class DirectoryStreamCrawlerTest {
         directoryStreamCrawler = new DirectoryStreamCrawler(report);
         directoryStreamCrawler.crawlDirectory(tempDir, queue);
 
-        expectedPaths.forEach(path -> assertTrue(queue.contains(path), String.format("Expected %s is absent from crawler queue", path)));
-        ignoredPaths.forEach(path -> assertFalse(queue.contains(path), String.format("Expected %s should have been ignored", path)));
+        expectedPaths.forEach(path -> assertTrue(queue.contains(FileEntry.unresolved(path)), String.format("Expected %s is absent from crawler queue", path)));
+        ignoredPaths.forEach(path -> assertFalse(queue.contains(FileEntry.unresolved(path)), String.format("Expected %s should have been ignored", path)));
+    }
+
+    @Test
+    void shouldApplyConfiguredIgnoreList() throws Exception {
+        directoryStreamCrawler = new DirectoryStreamCrawler(report, PathIgnoreList.of("subdirectory/import, newfile.txt"));
+        directoryStreamCrawler.crawlDirectory(tempDir, queue);
+
+        assertTrue(queue.contains(FileEntry.unresolved(tempDir.resolve("subdirectory/subfile.txt"))));
+        assertTrue(queue.contains(FileEntry.unresolved(tempDir.resolve("dbconfig.xml"))));
+        assertFalse(queue.contains(FileEntry.unresolved(tempDir.resolve("subdirectory/import/subfile2.txt"))));
+        assertFalse(queue.contains(FileEntry.unresolved(tempDir.resolve("newfile.txt"))));
+    }
+
+    @Test
+    void shouldNotQueueFilesUploadedByPreviousRun() throws Exception {
+        final Path uploaded = tempDir.resolve("subdirectory/subfile.txt");
+        final Crawler crawler = new DirectoryStreamCrawler(report, PathIgnoreList.fromSystemProperties(), new MetricsRegistry(),
+                manifestWithUploaded(tempDir.relativize(uploaded).toString()));
+        crawler.crawlDirectory(tempDir, queue);
+
+        assertFalse(queue.contains(FileEntry.unresolved(uploaded)));
+        assertTrue(queue.contains(FileEntry.unresolved(tempDir.resolve("newfile.txt"))));
+        assertEquals(expectedPaths.size() - 1, queue.size());
+        // Still counted as found, and as done straight away
+        assertEquals(expectedPaths.size(), report.getNumberOfFilesFound());
+        assertEquals(1, report.getCountOfUploadedFiles());
+    }
+
+    @Test
+    void shouldQueueFilesWithAttributesReadDuringCrawl() throws Exception {
+        directoryStreamCrawler.crawlDirectory(tempDir, queue);
+
+        for (Optional<FileEntry> entry = queue.take(); entry.isPresent(); entry = queue.take()) {
+            final FileEntry file = entry.get();
+            assertTrue(file.isResolved());
+            assertEquals(Files.size(file.getPath()), file.getSize());
+            assertEquals(Files.getLastModifiedTime(file.getPath()).toMillis(), file.getLastModified());
+        }
     }
 
     @Test
@@ -105,6 +146,23 @@ class DirectoryStreamCrawlerTest {
         assertTrue(report.isCrawlingFinished());
     }
 
+    @Test
+    void shouldStopCrawlAndOnlyCountQueuedFilesWhenInterrupted() throws Exception {
+        // The first file fits in the queue, putting the second one finds the queue full and notices the interrupt
+        final UploadQueue<FileEntry> fullQueue = new UploadQueue<>(1);
+        Thread.currentThread().interrupt();
+        try {
+            directoryStreamCrawler.crawlDirectory(tempDir, fullQueue);
+        } finally {
+            assertTrue(Thread.interrupted(), "Interrupt should be kept for the caller");
+        }
+
+        assertEquals(1, fullQueue.size());
+        assertEquals(1, report.getNumberOfFilesFound(), "Only files which were queued should count as found");
+        assertEquals(1, report.getFailedFiles().size());
+        assertTrue(report.isCrawlingFinished());
+    }
+
     @Test
     @Disabled("Simulating AccessDenied permission proved complicated in an unit test")
     void inaccessibleSubdirectoryIsReportedAsFailed() throws IOException {
@@ -115,4 +173,21 @@ class DirectoryStreamCrawlerTest {
 
         assertEquals(report.getFailedFiles().size(), 1);
     }
+
+    private static CrawlManifest manifestWithUploaded(String uploadedKey) {
+        return new CrawlManifest() {
+            @Override
+            public boolean shouldUpload(String key, FileEntry entry) {
+                return !key.equals(uploadedKey);
+            }
+
+            @Override
+            public void markUploaded(String key, FileEntry entry) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
 }
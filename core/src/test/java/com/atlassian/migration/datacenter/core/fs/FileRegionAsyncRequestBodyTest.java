@@ -0,0 +1,181 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileRegionAsyncRequestBodyTest {
+    @TempDir
+    Path tempDir;
+
+    private Path file;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        content = new byte[3 * FileRegionAsyncRequestBody.CHUNK_SIZE + 100];
+        new Random(42).nextBytes(content);
+        file = Files.write(tempDir.resolve("part"), content);
+    }
+
+    @Test
+    void shouldReportRegionLength() {
+        assertEquals(1000L, new FileRegionAsyncRequestBody(file, 10, 1000, Runnable::run).contentLength().get());
+    }
+
+    @Test
+    void shouldStreamRegionOfFile() {
+        final int position = 1000;
+        final int length = 2 * FileRegionAsyncRequestBody.CHUNK_SIZE + 50;
+        final CollectingSubscriber subscriber = new CollectingSubscriber(1);
+
+        new FileRegionAsyncRequestBody(file, position, length, Runnable::run).subscribe(subscriber);
+
+        assertTrue(subscriber.completed);
+        assertArrayEquals(Arrays.copyOfRange(content, position, position + length), subscriber.bytes.toByteArray());
+    }
+
+    @Test
+    void shouldStreamRegionAgainForEverySubscriber() {
+        final FileRegionAsyncRequestBody body = new FileRegionAsyncRequestBody(file, 0, content.length, Runnable::run);
+        final CollectingSubscriber first = new CollectingSubscriber(Long.MAX_VALUE);
+        final CollectingSubscriber second = new CollectingSubscriber(2);
+
+        body.subscribe(first);
+        body.subscribe(second);
+
+        assertArrayEquals(content, first.bytes.toByteArray());
+        assertArrayEquals(content, second.bytes.toByteArray());
+    }
+
+    @Test
+    void shouldFailWhenFileIsShorterThanRegion() {
+        final CollectingSubscriber subscriber = new CollectingSubscriber(1);
+
+        new FileRegionAsyncRequestBody(file, content.length - 10, 20, Runnable::run).subscribe(subscriber);
+
+        assertFalse(subscriber.completed);
+        assertTrue(subscriber.error instanceof EOFException);
+    }
+
+    @Test
+    void shouldEmitChunksOnlyOnceTheirReadsHaveRun() {
+        final Queue<Runnable> reads = new ArrayDeque<>();
+        final CollectingSubscriber subscriber = new CollectingSubscriber(2);
+
+        new FileRegionAsyncRequestBody(file, 0, content.length, reads::add).subscribe(subscriber);
+
+        // Requested on the subscriber's thread, which only hands out the read
+        assertEquals(0, subscriber.bytes.size());
+        assertEquals(1, reads.size());
+
+        reads.poll().run();
+
+        // One read at a time, the next one is handed out once the previous one is emitted
+        assertEquals(FileRegionAsyncRequestBody.CHUNK_SIZE, subscriber.bytes.size());
+        assertEquals(1, reads.size());
+
+        while (!reads.isEmpty()) {
+            reads.poll().run();
+        }
+
+        assertTrue(subscriber.completed);
+        assertArrayEquals(content, subscriber.bytes.toByteArray());
+    }
+
+    @Test
+    void shouldHoldChunksBackUntilThrottleHasBandwidth() throws Exception {
+        final long bytesPerSecond = 2 * FileRegionAsyncRequestBody.CHUNK_SIZE;
+        final UploadThrottle throttle = new UploadThrottle(new UploadThrottleSettings(bytesPerSecond, 0, bytesPerSecond, 0, 8, 18));
+        final CollectingSubscriber subscriber = new CollectingSubscriber(1);
+        final long started = System.nanoTime();
+
+        new FileRegionAsyncRequestBody(file, 0, content.length, Runnable::run).throttledBy(throttle).subscribe(subscriber);
+
+        // Two chunks fit into the first second, the third one waits for half a second without blocking the subscriber
+        assertFalse(subscriber.completed);
+        assertEquals(bytesPerSecond, subscriber.bytes.size());
+        assertTrue(subscriber.finished.await(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(400));
+        assertTrue(subscriber.completed);
+        assertArrayEquals(content, subscriber.bytes.toByteArray());
+    }
+
+    private static class CollectingSubscriber implements Subscriber<ByteBuffer> {
+        private final long batch;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private Subscription subscription;
+        private long received;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile boolean completed;
+        private volatile Throwable error;
+
+        CollectingSubscriber(long batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batch);
+        }
+
+        @Override
+        public void onNext(ByteBuffer chunk) {
+            final byte[] array = new byte[chunk.remaining()];
+            chunk.get(array);
+            bytes.write(array, 0, array.length);
+            // Requests more from within onNext, as the SDK does
+            if (++received % batch == 0) {
+                subscription.request(batch);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+            finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
+import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationReport;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
+import com.atlassian.migration.datacenter.core.util.UploadQueue;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelDirectoryCrawlerTest {
+    @TempDir
+    Path tempDir;
+
+    private Crawler crawler;
+    private UploadQueue<FileEntry> queue;
+    private Set<Path> expectedPaths;
+    private Set<Path> ignoredPaths;
+    private FileSystemMigrationReport report;
+
+    @BeforeEach
+    void createFiles() throws Exception {
+        queue = new UploadQueue<>(100);
+        expectedPaths = new HashSet<>();
+        ignoredPaths = new HashSet<>();
+        report = new DefaultFileSystemMigrationReport();
+        crawler = new ParallelDirectoryCrawler(report, 4);
+
+        final Path sub1 = Files.createDirectory(tempDir.resolve("subdirectory"));
+        final Path sub2 = Files.createDirectory(tempDir.resolve("subdirectory/import"));
+        expectedPaths.add(Files.write(tempDir.resolve("newfile.txt"), "newfile content".getBytes()));
+        expectedPaths.add(Files.write(sub1.resolve("subfile.txt"), "subfile content in the subdirectory".getBytes()));
+        expectedPaths.add(Files.write(sub2.resolve("subfile2.txt"), "subfile content in the subdirectory".getBytes()));
+        for (int i = 0; i < 10; i++) {
+            final Path nested = Files.createDirectories(tempDir.resolve("data/attachments/PROJ-" + i));
+            expectedPaths.add(Files.write(nested.resolve("attachment"), "attachment".getBytes()));
+        }
+
+        final Path ignored1 = Files.createDirectory(tempDir.resolve("import"));
+        final Path ignored2 = Files.createDirectories(tempDir.resolve("plugins/.osgi-plugins"));
+        final Path ignored3 = Files.createDirectories(tempDir.resolve("export"));
+        final Path ignored4 = Files.createDirectories(tempDir.resolve("log"));
+        ignoredPaths.add(Files.write(tempDir.resolve("dbconfig.xml"), "subfile".getBytes()));
+        ignoredPaths.add(Files.write(tempDir.resolve("keyFile"), "keyfile".getBytes()));
+        ignoredPaths.add(Files.write(tempDir.resolve("saltFile"), "saltfile".getBytes()));
+        ignoredPaths.add(Files.write(tempDir.resolve("cluster.properties"), "subfile".getBytes()));
+        ignoredPaths.add(Files.write(ignored1.resolve("ignore1.txt"), "subfile".getBytes()));
+        ignoredPaths.add(Files.write(ignored2.resolve("ignore2.txt"), "subfile".getBytes()));
+        ignoredPaths.add(Files.write(ignored3.resolve("export-file.zip"), "subfile".getBytes()));
+        ignoredPaths.add(Files.write(ignored4.resolve("atlassian-jira.log"), "subfile".getBytes()));
+    }
+
+    @Test
+    void shouldListAllSubdirectories() throws Exception {
+        crawler.crawlDirectory(tempDir, queue);
+
+        expectedPaths.forEach(path -> assertTrue(queue.contains(FileEntry.unresolved(path)), String.format("Expected %s is absent from crawler queue", path)));
+        ignoredPaths.forEach(path -> assertFalse(queue.contains(FileEntry.unresolved(path)), String.format("Expected %s should have been ignored", path)));
+    }
+
+    @Test
+    void shouldQueueEveryFileExactlyOnceAndFinishOnce() throws Exception {
+        crawler.crawlDirectory(tempDir, queue);
+
+        Set<Path> queued = new HashSet<>();
+        for (Optional<FileEntry> entry = queue.take(); entry.isPresent(); entry = queue.take()) {
+            assertTrue(queued.add(entry.get().getPath()), String.format("%s was queued more than once", entry.get()));
+        }
+
+        assertEquals(expectedPaths, queued);
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void incorrectStartDirectoryShouldReport() {
+        assertThrows(IOException.class, () -> crawler.crawlDirectory(Paths.get("nonexistent-directory-2010"), queue));
+        assertEquals(1, report.getFailedFiles().size());
+    }
+
+    @Test
+    void shouldReportFileAsFoundWhenCrawled() throws Exception {
+        crawler.crawlDirectory(tempDir, queue);
+
+        assertEquals(expectedPaths.size(), report.getNumberOfFilesFound());
+    }
+
+    @Test
+    void shouldReportAllFilesFoundWhenComplete() throws IOException {
+        crawler.crawlDirectory(tempDir, queue);
+
+        assertTrue(report.isCrawlingFinished());
+    }
+
+    @Test
+    void shouldStopCrawlTasksBeforeFinishingQueueWhenInterrupted() throws Exception {
+        // Without consumers, the crawl blocks once the queue is full
+        final UploadQueue<FileEntry> fullQueue = new UploadQueue<>(1);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<?> crawl = executor.submit(() -> {
+                crawler.crawlDirectory(tempDir, fullQueue);
+                return null;
+            });
+            Thread.sleep(200);
+            executor.shutdownNow();
+            crawl.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        int queued = 0;
+        while (fullQueue.take().isPresent()) {
+            queued++;
+        }
+        assertTrue(report.isCrawlingFinished());
+        assertEquals(queued, report.getNumberOfFilesFound(), "Only files which were queued should count as found");
+    }
+
+    @Test
+    void shouldNotQueueFilesUploadedByPreviousRun() throws Exception {
+        final Path uploaded = tempDir.resolve("subdirectory/subfile.txt");
+        crawler = new ParallelDirectoryCrawler(report, 4, PathIgnoreList.fromSystemProperties(), new MetricsRegistry(),
+                manifestWithUploaded(tempDir.relativize(uploaded).toString()));
+        crawler.crawlDirectory(tempDir, queue);
+
+        assertFalse(queue.contains(FileEntry.unresolved(uploaded)));
+        assertTrue(queue.contains(FileEntry.unresolved(tempDir.resolve("newfile.txt"))));
+        assertEquals(expectedPaths.size() - 1, queue.size());
+        // Still counted as found, and as done straight away
+        assertEquals(expectedPaths.size(), report.getNumberOfFilesFound());
+        assertEquals(1, report.getCountOfUploadedFiles());
+    }
+
+    @Test
+    void shouldRejectInvalidParallelism() {
+        assertThrows(IllegalArgumentException.class, () -> new ParallelDirectoryCrawler(report, 0));
+    }
+
+    private static CrawlManifest manifestWithUploaded(String uploadedKey) {
+        return new CrawlManifest() {
+            @Override
+            public boolean shouldUpload(String key, FileEntry entry) {
+                return !key.equals(uploadedKey);
+            }
+
+            @Override
+            public void markUploaded(String key, FileEntry entry) {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.NoSuchFileException;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3ErrorsTest {
+
+    @Test
+    void shouldRetryServerErrorsAndThrottling() {
+        assertTrue(S3Errors.isRetryable(S3Exception.builder().statusCode(500).build()));
+        assertTrue(S3Errors.isRetryable(S3Exception.builder().statusCode(503).build()));
+        assertFalse(S3Errors.isRetryable(S3Exception.builder().statusCode(403).build()));
+    }
+
+    @Test
+    void shouldRetryConnectionFailures() {
+        assertTrue(S3Errors.isRetryable(clientException(new IOException("Connection reset by peer"))));
+    }
+
+    @Test
+    void shouldNotRetryWhenFileCantBeRead() {
+        assertFalse(S3Errors.isRetryable(clientException(new NoSuchFileException("/home/data/file"))));
+        assertFalse(S3Errors.isRetryable(clientException(new AccessDeniedException("/home/data/file"))));
+        assertFalse(S3Errors.isRetryable(new CompletionException(clientException(new EOFException("/home/data/file ended 10 bytes early")))));
+    }
+
+    private static SdkClientException clientException(Throwable cause) {
+        return SdkClientException.builder().message(cause.getMessage()).cause(cause).build();
+    }
+}
@@ -32,6 +32,7 @@ import com.atlassian.scheduler.config.JobId;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -108,6 +109,18 @@ class S3FilesystemMigrationServiceTest {
         verify(migrationService).error(exception);
     }
 
+    @Test
+    void shouldUploadChangedFilesAfterCopyingSharedHome() throws Exception {
+        when(this.migrationService.getCurrentStage()).thenReturn(FS_MIGRATION_COPY, FS_MIGRATION_COPY_WAIT);
+
+        fsService.startMigration();
+
+        InOrder inOrder = Mockito.inOrder(bulkCopy, downloadManager);
+        inOrder.verify(bulkCopy).copySharedHomeToS3();
+        inOrder.verify(bulkCopy).copyChangedFilesToS3();
+        inOrder.verify(downloadManager).downloadFileSystem(any());
+    }
+
     @Test
     void shouldFailToStartMigrationWhenMigrationStageIsInvalid() throws InvalidMigrationStageError {
         when(this.migrationService.getCurrentStage()).thenReturn(FS_MIGRATION_COPY);
@@ -16,6 +16,9 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.fs.manifest.FileMultipartUploadStore;
+import com.atlassian.migration.datacenter.core.fs.manifest.MultipartUploadRecord;
+import com.atlassian.migration.datacenter.core.fs.manifest.MultipartUploadStore;
 import org.hamcrest.Matchers;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -26,24 +29,39 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
 import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsResponse;
+import software.amazon.awssdk.services.s3.model.Part;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 import software.amazon.awssdk.services.s3.model.UploadPartRequest;
 import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
 import java.io.File;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assume.assumeThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -57,6 +75,8 @@ class S3MultiPartUploaderTest {
     S3AsyncClient client;
     @Captor
     ArgumentCaptor<AsyncRequestBody> valueCaptor;
+    @Captor
+    ArgumentCaptor<CompleteMultipartUploadRequest> completeRequestCaptor;
     private String content = "123";
 
     @Test
@@ -68,7 +88,11 @@ class S3MultiPartUploaderTest {
         S3UploadConfig config = new S3UploadConfig(bucket, client, tempDir);
         final S3MultiPartUploader uploader = new S3MultiPartUploader(config, file, key);
 
-        final CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder().key(key).bucket(bucket).build();
+        final CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
+                .key(key)
+                .bucket(bucket)
+                .metadata(Collections.singletonMap(S3MultiPartUploader.PART_SIZE_METADATA, String.valueOf(uploader.getSizeToUpload())))
+                .build();
         when(client.createMultipartUpload(createRequest))
                 .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().build()));
 
@@ -92,6 +116,19 @@ class S3MultiPartUploaderTest {
         verify(client).completeMultipartUpload(completeRequest);
     }
 
+    @Test
+    void shouldRetryTransientFailuresOfAbort() throws Exception {
+        final CompletableFuture<AbortMultipartUploadResponse> failedAbort = new CompletableFuture<>();
+        failedAbort.completeExceptionally(S3Exception.builder().statusCode(500).message("InternalError").build());
+        when(client.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+                .thenReturn(failedAbort)
+                .thenReturn(CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build()));
+
+        S3MultiPartUploader.abort(client, new MultipartUploadRecord("bucket", "key", "upload-id", 3, 0, 2)).get(5, TimeUnit.SECONDS);
+
+        verify(client, times(2)).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+    }
+
     @Test
     void lastChunkShouldHaveExactRemainingSize() throws Exception {
         File file = createFile();
@@ -120,6 +157,163 @@ class S3MultiPartUploaderTest {
         assertEquals(1, allValues.get(1).contentLength().get());
     }
 
+    @Test
+    void shouldReportBytesOfEveryUploadedPart() throws Exception {
+        File file = createFile();
+        final List<Long> reportedBytes = new CopyOnWriteArrayList<>();
+
+        S3UploadConfig config = new S3UploadConfig("bucket", client, tempDir);
+        final S3MultiPartUploader uploader = new S3MultiPartUploader(config, file, "file", UploadRetryPolicy.noRetries(), MultipartUploadStore.NONE, reportedBytes::add);
+        uploader.setSizeToUpload(2);
+
+        when(client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().build()));
+        when(client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(UploadPartResponse.builder().build()));
+        when(client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+
+        uploader.upload();
+
+        assertEquals(Arrays.asList(2L, 1L), reportedBytes);
+    }
+
+    @Test
+    void shouldRetryFailedPart() throws Exception {
+        File file = createFile();
+
+        S3UploadConfig config = new S3UploadConfig("bucket", client, tempDir);
+        final S3MultiPartUploader uploader = new S3MultiPartUploader(config, file, "file", new UploadRetryPolicy(3, 0, 0));
+
+        when(client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().build()));
+
+        final CompletableFuture<UploadPartResponse> failedPart = new CompletableFuture<>();
+        failedPart.completeExceptionally(S3Exception.builder().statusCode(503).message("SlowDown").build());
+        when(client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(failedPart)
+                .thenReturn(CompletableFuture.completedFuture(UploadPartResponse.builder().build()));
+
+        when(client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+
+        uploader.upload();
+
+        verify(client, times(2)).uploadPart(any(UploadPartRequest.class), valueCaptor.capture());
+        assertEquals(3, valueCaptor.getAllValues().get(1).contentLength().get());
+        verify(client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+
+    @Test
+    void shouldUploadPartsConcurrentlyAndCompleteThemInOrder() throws Exception {
+        File file = createFile();
+
+        S3UploadConfig config = new S3UploadConfig("bucket", client, tempDir);
+        final S3MultiPartUploader uploader = new S3MultiPartUploader(config, file, "file");
+        uploader.setSizeToUpload(1);
+        uploader.setMaxPartsInFlight(2);
+
+        when(client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().build()));
+
+        final List<CompletableFuture<UploadPartResponse>> pendingParts = new CopyOnWriteArrayList<>();
+        when(client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+            final CompletableFuture<UploadPartResponse> response = new CompletableFuture<>();
+            pendingParts.add(response);
+            return response;
+        });
+
+        when(client.completeMultipartUpload(completeRequestCaptor.capture()))
+                .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+
+        final Future<?> upload = Executors.newSingleThreadExecutor().submit(() -> {
+            uploader.upload();
+            return null;
+        });
+
+        awaitPendingParts(pendingParts, 2);
+        Thread.sleep(100);
+        assertEquals(2, pendingParts.size(), "Only two parts should be in flight");
+
+        pendingParts.get(1).complete(UploadPartResponse.builder().eTag("etag-2").build());
+        awaitPendingParts(pendingParts, 3);
+        pendingParts.get(2).complete(UploadPartResponse.builder().eTag("etag-3").build());
+        pendingParts.get(0).complete(UploadPartResponse.builder().eTag("etag-1").build());
+        upload.get(5, TimeUnit.SECONDS);
+
+        final List<CompletedPart> parts = completeRequestCaptor.getValue().multipartUpload().parts();
+        assertEquals(3, parts.size());
+        for (int i = 0; i < parts.size(); i++) {
+            assertEquals(i + 1, parts.get(i).partNumber());
+            assertEquals("etag-" + (i + 1), parts.get(i).eTag());
+        }
+    }
+
+    @Test
+    void shouldResumeUploadFromFirstMissingPart() throws Exception {
+        File file = createFile();
+
+        S3UploadConfig config = new S3UploadConfig("bucket", client, tempDir);
+        final FileMultipartUploadStore uploads = FileMultipartUploadStore.open(tempDir.resolve("uploads"));
+        uploads.started(new MultipartUploadRecord("bucket", "file", "upload-1", file.length(), file.lastModified(), 2));
+        uploads.partUploaded("file", 1, "etag-1");
+        final S3MultiPartUploader uploader = new S3MultiPartUploader(config, file, "file", UploadRetryPolicy.noRetries(), uploads);
+        uploader.setSizeToUpload(2);
+
+        when(client.listParts(any(ListPartsRequest.class))).thenReturn(CompletableFuture.completedFuture(ListPartsResponse.builder()
+                .parts(Part.builder().partNumber(1).size(2L).eTag("etag-1").build())
+                .isTruncated(false)
+                .build()));
+        when(client.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(UploadPartResponse.builder().eTag("etag-2").build()));
+        when(client.completeMultipartUpload(completeRequestCaptor.capture()))
+                .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+
+        uploader.upload();
+
+        verify(client, never()).createMultipartUpload(any(CreateMultipartUploadRequest.class));
+        verify(client).uploadPart(any(UploadPartRequest.class), valueCaptor.capture());
+        assertEquals(1, valueCaptor.getValue().contentLength().get());
+        final CompleteMultipartUploadRequest completeRequest = completeRequestCaptor.getValue();
+        assertEquals("upload-1", completeRequest.uploadId());
+        assertEquals(2, completeRequest.multipartUpload().parts().size());
+        assertEquals("etag-1", completeRequest.multipartUpload().parts().get(0).eTag());
+        assertFalse(uploads.find("file").isPresent(), "Completed upload should be forgotten");
+    }
+
+    @Test
+    void shouldUseConfiguredPartSizeWhenFileFitsInPartLimit() {
+        final int partSize = 25 * 1024 * 1024;
+
+        assertEquals(partSize, S3MultiPartUploader.partSizeFor(4900L * 1024 * 1024, partSize));
+        assertEquals(partSize, S3MultiPartUploader.partSizeFor(10_000L * partSize, partSize));
+    }
+
+    @Test
+    void shouldGrowPartSizeToStayWithinPartLimit() {
+        final int partSize = 25 * 1024 * 1024;
+        final long fileSize = 5L * 1024 * 1024 * 1024 * 1024; // 5TB, the largest object S3 allows
+
+        final int computed = S3MultiPartUploader.partSizeFor(fileSize, partSize);
+
+        assertTrue(computed > partSize);
+        assertTrue((long) computed * 10_000 >= fileSize);
+        assertEquals(0, computed % (1024 * 1024));
+    }
+
+    @Test
+    void shouldNotUsePartsSmallerThanS3Minimum() {
+        assertEquals(5 * 1024 * 1024, S3MultiPartUploader.partSizeFor(1024, 1024));
+    }
+
+    private void awaitPendingParts(List<CompletableFuture<UploadPartResponse>> pendingParts, int count) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (pendingParts.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, pendingParts.size());
+    }
+
     private File createFile() throws Exception {
         final String filename = "file_to_upload.txt";
         final Path file = tempDir.resolve(filename);
@@ -52,7 +52,7 @@ import static org.mockito.Mockito.when;
 class S3UploaderIT {
     private static final String LOCALSTACK_S3_ENDPOINT = "http://localhost:4572";
     private static final String TREBUCHET_LOCALSTACK_BUCKET = "trebuchet-localstack-bucket";
-    private UploadQueue<Path> queue;
+    private UploadQueue<FileEntry> queue;
     private S3Uploader uploader;
     private FileSystemMigrationReport report;
 
@@ -121,7 +121,7 @@ class S3UploaderIT {
     Path addFileToQueue(String fileName) throws IOException, InterruptedException {
         final Path file = tempDir.resolve(fileName);
         Files.write(file, "".getBytes());
-        queue.put(file);
+        queue.put(FileEntry.unresolved(file).resolve());
         return file;
     }
 }
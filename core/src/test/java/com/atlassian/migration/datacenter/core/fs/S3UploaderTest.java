@@ -16,48 +16,61 @@
 
 package com.atlassian.migration.datacenter.core.fs;
 
+import com.atlassian.migration.datacenter.core.fs.manifest.CrawlManifest;
 import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationReport;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.core.util.UploadQueue;
 import com.atlassian.migration.datacenter.spi.fs.reporting.FileSystemMigrationReport;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
 import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class S3UploaderTest {
+    private static final String EMPTY_FILE_MD5 = "d41d8cd98f00b204e9800998ecf8427e";
 
     @Mock
     private S3AsyncClient s3AsyncClient;
 
-    @Mock
-    private CompletableFuture<PutObjectResponse> s3response;
-
     @Mock
     private SdkHttpResponse sdkHttpResponse;
 
 
-    private UploadQueue<Path> queue;
+    private UploadQueue<FileEntry> queue;
     private S3Uploader uploader;
     private FileSystemMigrationReport report;
 
@@ -76,8 +89,7 @@ class S3UploaderTest {
     void uploadShouldConsumePathsWhileCrawlingIsRunning() throws IOException, InterruptedException, ExecutionException {
         PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
         when(sdkHttpResponse.isSuccessful()).thenReturn(true);
-        when(s3response.get()).thenReturn(putObjectResponse);
-        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(Path.class))).thenReturn(s3response);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
 
         addFileToQueue("file1");
 
@@ -111,8 +123,7 @@ class S3UploaderTest {
     void uploadShouldReportFileAsMigrated() throws IOException, ExecutionException, InterruptedException {
         PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
         when(sdkHttpResponse.isSuccessful()).thenReturn(true);
-        when(s3response.get()).thenReturn(putObjectResponse);
-        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(Path.class))).thenReturn(s3response);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
 
         Path testPath = addFileToQueue("file1");
         queue.finish();
@@ -133,7 +144,7 @@ class S3UploaderTest {
     void uploadNonExistentDirectoryShouldReturnFailedCollection() throws InterruptedException, FileUploadException
     {
         final Path nonExistentFile = tempDir.resolve("non-existent");
-        queue.put(nonExistentFile);
+        queue.put(FileEntry.unresolved(nonExistentFile));
         queue.finish();
 
         uploader.upload(queue);
@@ -145,8 +156,7 @@ class S3UploaderTest {
     void shouldReportFileAsInFlightWhenUploadStarts() throws Exception {
         PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
         when(sdkHttpResponse.isSuccessful()).thenReturn(true);
-        when(s3response.get()).thenReturn(putObjectResponse);
-        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(Path.class))).thenReturn(s3response);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
 
         addFileToQueue("file1");
 
@@ -167,10 +177,258 @@ class S3UploaderTest {
         submit.get();
     }
 
+    @Test
+    void slowUploadShouldNotHoldUpOtherUploads() throws Exception {
+        PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        CompletableFuture<PutObjectResponse> slowResponse = new CompletableFuture<>();
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(slowResponse)
+                .thenReturn(CompletableFuture.completedFuture(putObjectResponse));
+
+        addFileToQueue("slow");
+        for (int i = 0; i < 15; i++) {
+            addFileToQueue("file" + i);
+        }
+        queue.finish();
+
+        final Future<?> submit = Executors.newFixedThreadPool(1).submit(() -> {
+            try {
+                uploader.upload(queue);
+            } catch (FileUploadException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Thread.sleep(500);
+        assertEquals(15, report.getCountOfUploadedFiles());
+        assertFalse(submit.isDone(), "Upload should wait for the pending response");
+
+        slowResponse.complete(putObjectResponse);
+        submit.get();
+        assertEquals(16, report.getCountOfUploadedFiles());
+    }
+
+    @Test
+    void shouldReportFailedResponse() throws Exception {
+        CompletableFuture<PutObjectResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(new RuntimeException("Connection reset"));
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(failedResponse);
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        assertEquals(1, report.getFailedFiles().size());
+        assertEquals(0, report.getCountOfUploadedFiles());
+    }
+
+    @Test
+    void shouldReduceConcurrencyWhenThrottled() throws Exception {
+        CompletableFuture<PutObjectResponse> throttledResponse = new CompletableFuture<>();
+        throttledResponse.completeExceptionally(S3Exception.builder().statusCode(503).message("SlowDown").build());
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(throttledResponse);
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report, CrawlManifest.NONE, UploadRetryPolicy.noRetries());
+        assertEquals(50, report.getUploadConcurrency());
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        assertEquals(25, report.getUploadConcurrency());
+        assertEquals(2, report.getUploadConcurrencyAdjustments().size());
+        assertEquals(1, report.getFailedFiles().size());
+    }
+
+    @Test
+    void shouldRetryTransientFailures() throws Exception {
+        PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        CompletableFuture<PutObjectResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3Exception.builder().statusCode(500).message("InternalError").build());
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(failedResponse)
+                .thenReturn(CompletableFuture.completedFuture(putObjectResponse));
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report, CrawlManifest.NONE, new UploadRetryPolicy(3, 0, 0));
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        verify(s3AsyncClient, times(2)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        assertEquals(1, report.getCountOfUploadedFiles());
+        assertEquals(1, report.getNumberOfCommencedFileUploads());
+        assertTrue(report.getFailedFiles().isEmpty());
+    }
+
+    @Test
+    void shouldReportFileOnceRetriesAreExhausted() throws Exception {
+        CompletableFuture<PutObjectResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3Exception.builder().statusCode(500).message("InternalError").build());
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(failedResponse);
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report, CrawlManifest.NONE, new UploadRetryPolicy(3, 0, 0));
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        verify(s3AsyncClient, times(3)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        assertEquals(1, report.getFailedFiles().size());
+        assertTrue(report.getFailedFiles().iterator().next().getReason().contains("after 3 attempts"));
+    }
+
+    @Test
+    void shouldReportFilesWaitingForRetryWhenAborted() throws Exception {
+        CompletableFuture<PutObjectResponse> failedResponse = new CompletableFuture<>();
+        failedResponse.completeExceptionally(S3Exception.builder().statusCode(500).message("InternalError").build());
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(failedResponse);
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report, CrawlManifest.NONE, new UploadRetryPolicy(2, 60_000, 60_000));
+
+        addFileToQueue("file1");
+        queue.finish();
+        final AtomicReference<Exception> thrown = new AtomicReference<>();
+        final Thread worker = new Thread(() -> {
+            try {
+                uploader.upload(queue);
+            } catch (FileUploadException e) {
+                thrown.set(e);
+            }
+        });
+        worker.start();
+        verify(s3AsyncClient, timeout(5000)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        worker.interrupt();
+        worker.join(5000);
+
+        assertTrue(thrown.get() instanceof FileUploadException);
+        assertEquals(1, report.getFailedFiles().size());
+        assertTrue(report.getFailedFiles().iterator().next().getReason().contains("InternalError"));
+    }
+
+    @Test
+    void shouldRecordUploadedFilesInManifest() throws Exception {
+        PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
+
+        final CrawlManifest manifest = mock(CrawlManifest.class);
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report, manifest);
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        verify(manifest).markUploaded(eq("file1"), any());
+        assertEquals(1, report.getCountOfUploadedFiles());
+    }
+
+    @Test
+    void shouldRecordPutObjectLatency() throws Exception {
+        PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
+        final UploadLatencies latencies = new UploadLatencies();
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir, UploadThrottle.unlimited(), latencies), report);
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        assertEquals(1, latencies.summarise().size());
+        final UploadLatencies.Summary summary = latencies.summarise().get(0);
+        assertEquals(UploadLatencies.Operation.PUT_OBJECT, summary.getOperation());
+        assertEquals(UploadLatencies.SizeClass.UP_TO_64KB, summary.getSizeClass());
+        assertEquals(1, summary.getCount());
+    }
+
+    @Test
+    void shouldCountUploadsInInjectedMetricsAndRemoveGaugesOnceDone() throws Exception {
+        PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
+        final MetricsRegistry metrics = new MetricsRegistry();
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir, UploadThrottle.unlimited(), new UploadLatencies(), metrics), report);
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        final Map<String, Long> snapshot = metrics.snapshot();
+        assertEquals(1L, snapshot.get("upload.completions"));
+        assertFalse(snapshot.containsKey("upload.inFlight"));
+        assertFalse(snapshot.containsKey("upload.concurrencyLimit"));
+    }
+
+    @Test
+    void shouldBundleSmallFilesAndAccountForEachOfThem() throws Exception {
+        PutObjectResponse putObjectResponse = (PutObjectResponse) PutObjectResponse.builder().sdkHttpResponse(sdkHttpResponse).build();
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class))).thenReturn(CompletableFuture.completedFuture(putObjectResponse));
+        System.setProperty(S3Uploader.BUNDLE_THRESHOLD_PROPERTY, "1024");
+        try {
+            uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report);
+        } finally {
+            System.clearProperty(S3Uploader.BUNDLE_THRESHOLD_PROPERTY);
+        }
+
+        addFileToQueue("file1");
+        addFileToQueue("file2");
+        addFileToQueue("file3");
+        queue.finish();
+        uploader.upload(queue);
+
+        final ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(s3AsyncClient).putObject(request.capture(), any(AsyncRequestBody.class));
+        assertTrue(request.getValue().key().startsWith(SmallFileBundle.BUNDLE_PREFIX));
+        assertEquals(3, report.getNumberOfCommencedFileUploads());
+        assertEquals(3, report.getCountOfUploadedFiles());
+    }
+
+    @Test
+    void shouldRetryUploadWhenChecksumDoesNotMatch() throws Exception {
+        when(sdkHttpResponse.isSuccessful()).thenReturn(true);
+        when(s3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenAnswer(invocation -> sendBody(invocation.getArgument(1), "0123456789abcdef0123456789abcdef"))
+                .thenAnswer(invocation -> sendBody(invocation.getArgument(1), EMPTY_FILE_MD5));
+        uploader = new S3Uploader(new S3UploadConfig("bucket-name", s3AsyncClient, tempDir), report, CrawlManifest.NONE, new UploadRetryPolicy(3, 0, 0));
+
+        addFileToQueue("file1");
+        queue.finish();
+        uploader.upload(queue);
+
+        verify(s3AsyncClient, times(2)).putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class));
+        assertEquals(1, report.getCountOfUploadedFiles());
+        assertTrue(report.getFailedFiles().isEmpty());
+    }
+
+    private CompletableFuture<PutObjectResponse> sendBody(AsyncRequestBody body, String etag) {
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer chunk) {
+            }
+
+            @Override
+            public void onError(Throwable error) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return CompletableFuture.completedFuture((PutObjectResponse) PutObjectResponse.builder()
+                .eTag("\"" + etag + "\"")
+                .sdkHttpResponse(sdkHttpResponse)
+                .build());
+    }
+
     Path addFileToQueue(String fileName) throws IOException, InterruptedException {
         final Path file = tempDir.resolve(fileName);
         Files.write(file, "".getBytes());
-        queue.put(file);
+        queue.put(FileEntry.unresolved(file).resolve());
         return file;
     }
 
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SmallFileBundleTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void shouldStreamFilesWithHeadersAndIndex() throws IOException {
+        final FileEntry first = createFile("first", "first file");
+        final FileEntry second = createFile("second", "");
+        final SmallFileBundle bundle = new SmallFileBundle();
+        assertTrue(bundle.add("data/first", first));
+        assertTrue(bundle.add("data/second", second));
+
+        final AsyncRequestBody body = bundle.toRequestBody(Runnable::run);
+        final byte[] bytes = readFully(body);
+
+        assertEquals(bytes.length, (long) body.contentLength().get());
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        assertEquals(SmallFileBundle.MAGIC, in.readInt());
+        assertEquals(SmallFileBundle.VERSION, in.readInt());
+        final long firstOffset = assertEntry(in, bytes, "data/first", first, "first file");
+        final long secondOffset = assertEntry(in, bytes, "data/second", second, "");
+        assertEquals(0, in.readUnsignedShort());
+        assertEquals(2, in.readInt());
+        assertEquals(firstOffset, in.readLong());
+        assertEquals(secondOffset, in.readLong());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void shouldRejectKeysTooLongForHeader() throws IOException {
+        final StringBuilder key = new StringBuilder();
+        while (key.length() <= 0xFFFF) {
+            key.append("directory/");
+        }
+
+        assertFalse(new SmallFileBundle().add(key.toString(), createFile("file", "content")));
+    }
+
+    private long assertEntry(DataInputStream in, byte[] bytes, String key, FileEntry entry, String content) throws IOException {
+        final byte[] keyBytes = new byte[in.readUnsignedShort()];
+        in.readFully(keyBytes);
+        assertEquals(key, new String(keyBytes, StandardCharsets.UTF_8));
+        assertEquals(entry.getSize(), in.readLong());
+        assertEquals(entry.getLastModified(), in.readLong());
+        final long offset = bytes.length - in.available();
+        final byte[] contentBytes = new byte[(int) entry.getSize()];
+        in.readFully(contentBytes);
+        assertArrayEquals(content.getBytes(StandardCharsets.UTF_8), contentBytes);
+        return offset;
+    }
+
+    private FileEntry createFile(String name, String content) throws IOException {
+        final Path file = Files.write(tempDir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+        return FileEntry.unresolved(file).resolve();
+    }
+
+    private static byte[] readFully(AsyncRequestBody body) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        body.subscribe(new Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(ByteBuffer chunk) {
+                final byte[] chunkBytes = new byte[chunk.remaining()];
+                chunk.get(chunkBytes);
+                bytes.write(chunkBytes, 0, chunkBytes.length);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                throw new AssertionError(error);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return bytes.toByteArray();
+    }
+}
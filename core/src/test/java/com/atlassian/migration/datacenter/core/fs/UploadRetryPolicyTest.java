@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadRetryPolicyTest {
+
+    @Test
+    void shouldBackOffExponentiallyUpToTheMaximumDelay() {
+        final UploadRetryPolicy policy = new UploadRetryPolicy(10, 100, 1000);
+
+        for (int attempt = 1; attempt < 10; attempt++) {
+            final long delay = policy.nextRetryDelayMillis(attempt);
+            final long cap = Math.min(1000, 100L << (attempt - 1));
+            assertTrue(delay >= 0 && delay <= cap, "Delay " + delay + " of attempt " + attempt + " should be within " + cap);
+        }
+    }
+
+    @Test
+    void shouldNotRetryBeyondMaximumAttempts() {
+        final UploadRetryPolicy policy = new UploadRetryPolicy(3, 0, 0);
+
+        assertEquals(0, policy.nextRetryDelayMillis(1));
+        assertEquals(0, policy.nextRetryDelayMillis(2));
+        assertEquals(-1, policy.nextRetryDelayMillis(3));
+    }
+
+    @Test
+    void shouldStopRetryingWhenBudgetIsExhausted() {
+        final UploadRetryPolicy policy = new UploadRetryPolicy(2, 0, 0);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, policy.nextRetryDelayMillis(1));
+        }
+        assertEquals(-1, policy.nextRetryDelayMillis(1));
+
+        // Every first attempt earns a tenth of a retry
+        for (int i = 0; i < 10; i++) {
+            policy.recordRequest();
+        }
+        assertEquals(0, policy.nextRetryDelayMillis(1));
+        assertEquals(-1, policy.nextRetryDelayMillis(1));
+    }
+
+    @Test
+    void shouldNeverRetryWithoutRetries() {
+        assertEquals(-1, UploadRetryPolicy.noRetries().nextRetryDelayMillis(1));
+    }
+}
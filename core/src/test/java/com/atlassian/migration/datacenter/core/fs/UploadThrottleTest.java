@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadThrottleTest {
+    private static final UploadThrottleSettings SETTINGS = new UploadThrottleSettings(1000, 10, 5000, 50, 8, 18);
+
+    @Test
+    void shouldApplyBusinessHoursLimitsOnWeekdays() {
+        // A Monday
+        final UploadThrottle throttle = new UploadThrottle(SETTINGS, clockAt(LocalDateTime.of(2020, 6, 1, 10, 30)));
+
+        assertTrue(throttle.isBusinessHours());
+        assertEquals(1000, throttle.getBytesPerSecond());
+        assertEquals(10, throttle.getRequestsPerSecond());
+    }
+
+    @Test
+    void shouldApplyOffHoursLimitsOutsideBusinessHours() {
+        final UploadThrottle evening = new UploadThrottle(SETTINGS, clockAt(LocalDateTime.of(2020, 6, 1, 18, 0)));
+        final UploadThrottle saturday = new UploadThrottle(SETTINGS, clockAt(LocalDateTime.of(2020, 6, 6, 10, 30)));
+
+        assertFalse(evening.isBusinessHours());
+        assertEquals(5000, evening.getBytesPerSecond());
+        assertEquals(50, evening.getRequestsPerSecond());
+        assertFalse(saturday.isBusinessHours());
+        assertEquals(5000, saturday.getBytesPerSecond());
+    }
+
+    @Test
+    void shouldApplyNewSettingsRightAway() {
+        final UploadThrottle throttle = new UploadThrottle(SETTINGS, clockAt(LocalDateTime.of(2020, 6, 1, 10, 30)));
+
+        throttle.setSettings(new UploadThrottleSettings(UploadThrottleSettings.UNLIMITED, 20, 5000, 50, 8, 18));
+
+        assertEquals(UploadThrottleSettings.UNLIMITED, throttle.getBytesPerSecond());
+        assertEquals(20, throttle.getRequestsPerSecond());
+        assertEquals(0, throttle.reserveBytes(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void shouldRejectInvalidSettings() {
+        assertThrows(IllegalArgumentException.class, () -> new UploadThrottleSettings(-1, 0, 0, 0, 8, 18));
+        assertThrows(IllegalArgumentException.class, () -> new UploadThrottleSettings(0, 0, 0, 0, 18, 8));
+        assertThrows(IllegalArgumentException.class, () -> new UploadThrottleSettings(0, 0, 0, 0, 8, 25));
+    }
+
+    private static Clock clockAt(LocalDateTime time) {
+        return Clock.fixed(time.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+    }
+}
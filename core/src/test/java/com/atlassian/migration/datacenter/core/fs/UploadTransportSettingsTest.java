@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.fs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UploadTransportSettingsTest {
+
+    @AfterEach
+    void tearDown() {
+        System.clearProperty(UploadTransportSettings.MAX_CONNECTIONS_PROPERTY);
+        System.clearProperty(UploadTransportSettings.READ_TIMEOUT_PROPERTY);
+    }
+
+    @Test
+    void shouldDeriveDefaultsFromUploadConcurrency() {
+        final UploadTransportSettings settings = UploadTransportSettings.forConcurrency(200, 4, 8);
+
+        assertEquals(800, settings.getMaxConnections());
+        assertEquals(1600, settings.getMaxPendingAcquires());
+        assertEquals(Duration.ofSeconds(60), settings.getAcquisitionTimeout());
+        assertEquals(Duration.ofMinutes(5), settings.getConnectionTimeToLive());
+        assertEquals(Duration.ofSeconds(60), settings.getReadTimeout());
+        assertEquals(Duration.ofSeconds(60), settings.getWriteTimeout());
+        assertEquals(8, settings.getEventLoopThreads());
+    }
+
+    @Test
+    void shouldKeepEventLoopThreadsWithinProcessorCount() {
+        assertEquals(4, UploadTransportSettings.forConcurrency(200, 4, 2).getEventLoopThreads());
+        assertEquals(2, UploadTransportSettings.forConcurrency(50, 1, 8).getEventLoopThreads());
+    }
+
+    @Test
+    void shouldDeriveOtherDefaultsFromOverriddenConnections() {
+        System.setProperty(UploadTransportSettings.MAX_CONNECTIONS_PROPERTY, "300");
+        System.setProperty(UploadTransportSettings.READ_TIMEOUT_PROPERTY, "120");
+
+        final UploadTransportSettings settings = UploadTransportSettings.forConcurrency(200, 4, 8);
+
+        assertEquals(300, settings.getMaxConnections());
+        assertEquals(600, settings.getMaxPendingAcquires());
+        assertEquals(3, settings.getEventLoopThreads());
+        assertEquals(Duration.ofSeconds(120), settings.getReadTimeout());
+    }
+}
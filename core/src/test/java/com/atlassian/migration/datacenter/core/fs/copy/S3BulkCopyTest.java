@@ -34,6 +34,7 @@ import java.util.UUID;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -49,7 +50,7 @@ class S3BulkCopyTest {
 
     @BeforeEach
     void setup() {
-        when(filesystemUploaderFactory.newUploader(any())).thenReturn(filesystemUploader);
+        when(filesystemUploaderFactory.newUploader(any(), any())).thenReturn(filesystemUploader);
     }
 
 
@@ -65,6 +66,15 @@ class S3BulkCopyTest {
         verify(uploader).abort();
     }
 
+    @Test
+    void shouldNotUploadChangedFilesWithoutManifest() throws Exception {
+        S3BulkCopy sut = new S3BulkCopy(givenSharedHomeDoesNotExist(), filesystemUploaderFactory, reportManager);
+
+        sut.copyChangedFilesToS3();
+
+        verify(filesystemUploaderFactory, never()).newUploader(any(), any());
+    }
+
     private Path givenSharedHomeDoesNotExist() {
         Path nonexistentDir = Paths.get(UUID.randomUUID().toString());
         return nonexistentDir;
@@ -43,6 +43,7 @@ class S3SyncFileSystemDownloadManagerTest {
     void shouldSetDownloadedFiles() throws S3SyncFileSystemDownloader.CannotLaunchCommandException, InterruptedException {
         when(mockDownloader.getFileSystemDownloadStatus()).thenReturn(mockStatus);
         when(mockStatus.getFilesRemainingToDownload()).thenReturn(100);
+        when(mockStatus.getFilesDownloaded()).thenReturn(-1L);
 
         FileSystemMigrationProgress progress = new DefaultFilesystemMigrationProgress();
         for (int i = 0; i < 110; i++) {
@@ -57,4 +58,22 @@ class S3SyncFileSystemDownloadManagerTest {
         assertEquals(10, progress.getCountOfDownloadFiles());
     }
 
+    @Test
+    void shouldPreferFilesCountedByStatusCommand() throws S3SyncFileSystemDownloader.CannotLaunchCommandException, InterruptedException {
+        when(mockDownloader.getFileSystemDownloadStatus()).thenReturn(mockStatus);
+        when(mockStatus.getFilesDownloaded()).thenReturn(42L);
+
+        FileSystemMigrationProgress progress = new DefaultFilesystemMigrationProgress();
+        for (int i = 0; i < 110; i++) {
+            progress.reportFileUploaded();
+        }
+
+        when(mockStatus.isComplete()).thenReturn(true);
+        sut.downloadFileSystem(progress);
+
+        Thread.sleep(1000);
+
+        assertEquals(42, progress.getCountOfDownloadFiles());
+    }
+
 }
\ No newline at end of file
@@ -47,6 +47,7 @@ class S3SyncFileSystemDownloaderTest {
 
     private static final String SYNC_STATUS_SUCCESS_COMPLETE_JSON = "{\"finished\": true, \"code\": \"0\", \"status\": {}}\n";
     private static final String SYNC_STATUS_DETERMINED_PARTIAL_JSON = "{\"status\": {\"progress\": 49492787.2, \"files_remaining\": 528, \"total\": 451411968.0, \"isCalculating\": false}}\n";
+    private static final String SYNC_STATUS_COUNTED_PARTIAL_JSON = "{\"status\": {\"progress\": 49492787.2, \"files_remaining\": 528, \"total\": 451411968.0, \"isCalculating\": false, \"files_downloaded\": 2048}}\n";
     private static final String SYNC_STATUS_COMPLETE_ERROR_JSON = "{\"finished\": true, \"code\": \"1\", \"status\": {}, \"errors\": [\"fatal error: Unable to locate credentials\\n\"]}\n";
     private static final String SYNC_STATUS_PARTIAL_CALCULATING_WITH_ERROR_JSON = "{\"status\": {\"progress\": 4724464025.6, \"files_remaining\": 1004, \"total\": 4724464025.6, \"isCalculating\": true}, \"errors\": [\"Oh dang it broke\\n\"]}\n";
 
@@ -130,6 +131,19 @@ class S3SyncFileSystemDownloaderTest {
         assertEquals(49492787.2, status.getBytesDownloaded());
         assertEquals(451411968.0, status.getTotalBytesToDownload());
         assertEquals(528, status.getFilesRemainingToDownload());
+        assertEquals(-1, status.getFilesDownloaded());
+    }
+
+    @Test
+    void shouldGetCountOfDownloadedFilesWhenStatusCommandCountsThem() throws S3SyncFileSystemDownloader.CannotLaunchCommandException {
+        givenSyncCommandIsRunning();
+
+        givenStatusCommandCompletesSuccessfullyWithOutput(SYNC_STATUS_COUNTED_PARTIAL_JSON);
+
+        S3SyncCommandStatus status = whenStatusCommandIsInvoked();
+
+        assertEquals(528, status.getFilesRemainingToDownload());
+        assertEquals(2048, status.getFilesDownloaded());
     }
 
     @Test
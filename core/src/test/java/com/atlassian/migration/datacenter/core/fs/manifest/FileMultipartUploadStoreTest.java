@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileMultipartUploadStoreTest {
+    @TempDir
+    Path tempDir;
+
+    private Path directory;
+
+    @BeforeEach
+    void setup() {
+        directory = tempDir.resolve("uploads");
+    }
+
+    @Test
+    void shouldRememberUploadsAndPartsAcrossRestarts() throws IOException {
+        final FileMultipartUploadStore store = FileMultipartUploadStore.open(directory);
+        store.started(new MultipartUploadRecord("bucket", "data/file", "upload-1", 100, 42, 10));
+        store.partUploaded("data/file", 2, "etag-2");
+        store.partUploaded("data/file", 1, "etag-1");
+
+        final MultipartUploadRecord upload = FileMultipartUploadStore.open(directory).find("data/file").get();
+
+        assertEquals("upload-1", upload.getUploadId());
+        assertTrue(upload.isResumableFor("bucket", 100, 42, 10));
+        assertEquals(2, upload.getEtags().size());
+        assertEquals("etag-1", upload.getEtags().get(1));
+        assertEquals("etag-2", upload.getEtags().get(2));
+    }
+
+    @Test
+    void shouldForgetFinishedUploads() throws IOException {
+        final FileMultipartUploadStore store = FileMultipartUploadStore.open(directory);
+        store.started(new MultipartUploadRecord("bucket", "data/file", "upload-1", 100, 42, 10));
+        store.started(new MultipartUploadRecord("bucket", "data/other", "upload-2", 100, 42, 10));
+
+        store.finished("data/file");
+
+        assertFalse(store.find("data/file").isPresent());
+        assertEquals(1, FileMultipartUploadStore.open(directory).all().size());
+    }
+
+    @Test
+    void shouldReplacePartsOfPreviousUploadOfSameKey() throws IOException {
+        final FileMultipartUploadStore store = FileMultipartUploadStore.open(directory);
+        store.started(new MultipartUploadRecord("bucket", "data/file", "upload-1", 100, 42, 10));
+        store.partUploaded("data/file", 1, "etag-1");
+        store.started(new MultipartUploadRecord("bucket", "data/file", "upload-2", 200, 43, 10));
+
+        final MultipartUploadRecord upload = FileMultipartUploadStore.open(directory).find("data/file").get();
+
+        assertEquals("upload-2", upload.getUploadId());
+        assertTrue(upload.getEtags().isEmpty());
+    }
+
+    @Test
+    void shouldIgnorePartTornByCrash() throws IOException {
+        final FileMultipartUploadStore store = FileMultipartUploadStore.open(directory);
+        store.started(new MultipartUploadRecord("bucket", "data/file", "upload-1", 100, 42, 10));
+        store.partUploaded("data/file", 1, "etag-1");
+        try (DirectoryStream<Path> journals = Files.newDirectoryStream(directory)) {
+            for (Path journal : journals) {
+                Files.write(journal, new byte[]{0, 0, 0, 2, 0}, StandardOpenOption.APPEND);
+            }
+        }
+
+        final MultipartUploadRecord upload = FileMultipartUploadStore.open(directory).find("data/file").get();
+
+        assertEquals(1, upload.getEtags().size());
+    }
+
+    @Test
+    void shouldKeepMultipartUploadsWithManifest() throws IOException {
+        final Path manifestFile = tempDir.resolve("manifest");
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            manifest.multipartUploads().started(new MultipartUploadRecord("bucket", "data/file", "upload-1", 100, 42, 10));
+        }
+
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            assertTrue(manifest.multipartUploads().find("data/file").isPresent());
+        }
+    }
+}
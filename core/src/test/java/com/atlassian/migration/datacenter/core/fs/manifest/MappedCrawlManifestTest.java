@@ -0,0 +1,209 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.fs.manifest;
+
+import com.atlassian.migration.datacenter.core.fs.FileEntry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MappedCrawlManifestTest {
+    @TempDir
+    Path tempDir;
+
+    private Path manifestFile;
+    private FileEntry entry;
+
+    @BeforeEach
+    void setup() throws IOException {
+        manifestFile = tempDir.resolve("manifest");
+        entry = FileEntry.unresolved(Files.write(tempDir.resolve("file"), "content".getBytes())).resolve();
+    }
+
+    @Test
+    void shouldUploadNewFiles() throws IOException {
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            assertTrue(manifest.shouldUpload("data/file", entry));
+            assertTrue(manifest.shouldUpload("data/file", entry), "Queued but not uploaded files should be uploaded again");
+            assertEquals(1, manifest.size());
+        }
+    }
+
+    @Test
+    void shouldSkipUploadedFiles() throws IOException {
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            manifest.shouldUpload("data/file", entry);
+            manifest.markUploaded("data/file", entry);
+
+            assertFalse(manifest.shouldUpload("data/file", entry));
+            assertTrue(manifest.shouldUpload("data/other", entry));
+        }
+    }
+
+    @Test
+    void shouldUploadFilesChangedSinceTheyWereUploaded() throws IOException {
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            manifest.shouldUpload("data/file", entry);
+            manifest.markUploaded("data/file", entry);
+
+            Files.write(entry.getPath(), "changed content".getBytes());
+            final FileEntry changed = FileEntry.unresolved(entry.getPath()).resolve();
+
+            assertTrue(manifest.shouldUpload("data/file", changed));
+            assertTrue(manifest.shouldUpload("data/file", changed), "Changed files should stay queued until uploaded");
+
+            manifest.markUploaded("data/file", changed);
+            assertFalse(manifest.shouldUpload("data/file", changed));
+            assertEquals(1, manifest.size());
+        }
+    }
+
+    @Test
+    void shouldUploadChangedFileWhenCrashedWhileQueueingIt() throws IOException {
+        Files.write(entry.getPath(), "changed content".getBytes());
+        final FileEntry changed = FileEntry.unresolved(entry.getPath()).resolve();
+
+        // Queueing a changed file updates its state, size and mtime; a crash may stop after any of these writes
+        for (int writes = 0; writes < 3; writes++) {
+            MappedCrawlManifest.delete(manifestFile);
+            try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+                manifest.markUploaded("data/file", entry);
+            }
+
+            final CrashingMappedFile records = new CrashingMappedFile(manifestFile);
+            try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile, records)) {
+                records.crashAfter(writes);
+                assertThrows(Crash.class, () -> manifest.shouldUpload("data/file", changed));
+            }
+
+            try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+                assertTrue(manifest.shouldUpload("data/file", changed), "Changed file skipped after a crash following " + writes + " writes");
+            }
+        }
+    }
+
+    @Test
+    void shouldRememberUploadedFilesAfterReopening() throws IOException {
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            manifest.shouldUpload("uploaded", entry);
+            manifest.markUploaded("uploaded", entry);
+            manifest.shouldUpload("queued", entry);
+        }
+
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            assertEquals(2, manifest.size());
+            assertFalse(manifest.shouldUpload("uploaded", entry));
+            assertTrue(manifest.shouldUpload("queued", entry));
+        }
+    }
+
+    @Test
+    void shouldGrowIndexBeyondInitialCapacity() throws IOException {
+        final int files = 100_000;
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            for (int i = 0; i < files; i++) {
+                manifest.markUploaded("data/attachments/" + i, entry);
+            }
+        }
+
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            assertEquals(files, manifest.size());
+            for (int i = 0; i < files; i++) {
+                assertFalse(manifest.shouldUpload("data/attachments/" + i, entry));
+            }
+        }
+    }
+
+    @Test
+    void shouldDiscardManifestWithUnknownFormat() throws IOException {
+        Files.write(manifestFile, "not a manifest".getBytes());
+
+        try (MappedCrawlManifest manifest = MappedCrawlManifest.open(manifestFile)) {
+            assertEquals(0, manifest.size());
+            assertTrue(manifest.shouldUpload("data/file", entry));
+        }
+    }
+
+    @Test
+    void shouldDeleteManifestAndIndex() throws IOException {
+        MappedCrawlManifest.open(manifestFile).close();
+
+        MappedCrawlManifest.delete(manifestFile);
+
+        assertFalse(Files.exists(manifestFile));
+        assertEquals(2, Files.list(tempDir).count(), "Only the uploaded file and the multipart uploads should be left");
+        assertTrue(Files.isDirectory(MappedCrawlManifest.multipartUploadsDirectory(manifestFile)));
+    }
+
+    @Test
+    void noneShouldAlwaysUpload() {
+        CrawlManifest.NONE.markUploaded("data/file", entry);
+
+        assertTrue(CrawlManifest.NONE.shouldUpload("data/file", entry));
+    }
+
+    private static class Crash extends RuntimeException {
+    }
+
+    /**
+     * Records which stop taking writes, as if the JVM was killed, once the given number of writes went through.
+     */
+    private static class CrashingMappedFile extends MappedFile {
+        private int writesLeft = Integer.MAX_VALUE;
+
+        CrashingMappedFile(Path file) throws IOException {
+            super(file, MappedCrawlManifest.RECORDS_SEGMENT_SHIFT);
+        }
+
+        void crashAfter(int writes) {
+            writesLeft = writes;
+        }
+
+        @Override
+        void putByte(long offset, byte value) {
+            write();
+            super.putByte(offset, value);
+        }
+
+        @Override
+        void putUnsignedShort(long offset, int value) {
+            write();
+            super.putUnsignedShort(offset, value);
+        }
+
+        @Override
+        void putLong(long offset, long value) {
+            write();
+            super.putLong(offset, value);
+        }
+
+        private void write() {
+            if (writesLeft-- == 0) {
+                throw new Crash();
+            }
+        }
+    }
+}
@@ -17,22 +17,40 @@
 package com.atlassian.migration.datacenter.core.fs.reporting;
 
 import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFileMigration;
+import com.atlassian.migration.datacenter.spi.fs.reporting.FailedFilePage;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DefaultFileSystemMigrationErrorReportTest {
 
     private DefaultFileSystemMigrationErrorReport sut;
 
+    @TempDir
+    Path logDirectory;
+
     @BeforeEach
     void setUp() {
-        sut = new DefaultFileSystemMigrationErrorReport();
+        sut = new DefaultFileSystemMigrationErrorReport(logDirectory);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        sut.close();
     }
 
     @Test
@@ -50,4 +68,103 @@ public class DefaultFileSystemMigrationErrorReportTest {
 
         assertTrue(sut.getFailedFiles().contains(new FailedFileMigration(testFile, testReason)));
     }
+
+    @Test
+    void shouldNotCreateLogUntilFileFails() throws Exception {
+        assertFalse(Files.list(logDirectory).findAny().isPresent());
+        assertTrue(sut.readFailedFiles(0, 10).getFailedFiles().isEmpty());
+    }
+
+    @Test
+    void shouldKeepEveryFailureInLog() {
+        for (int i = 0; i < 250; i++) {
+            sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("file" + i), "it broke"));
+        }
+
+        assertEquals(100, sut.getFailedFiles().size());
+        assertEquals(250, sut.getFailedFilesCount());
+
+        final List<FailedFileMigration> read = new ArrayList<>();
+        long cursor = 0;
+        FailedFilePage page;
+        while (!(page = sut.readFailedFiles(cursor, 64)).getFailedFiles().isEmpty()) {
+            read.addAll(page.getFailedFiles());
+            cursor = page.getNextCursor();
+        }
+        assertEquals(250, read.size());
+        assertEquals(new FailedFileMigration(Paths.get("file0"), "it broke"), read.get(0));
+        assertEquals(new FailedFileMigration(Paths.get("file249"), "it broke"), read.get(249));
+    }
+
+    @Test
+    void shouldPickUpFailuresReportedAfterLastPage() {
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("first"), "it broke"));
+        final FailedFilePage first = sut.readFailedFiles(0, 10);
+
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("second"), "it broke"));
+        final FailedFilePage second = sut.readFailedFiles(first.getNextCursor(), 10);
+
+        assertEquals(1, second.getFailedFiles().size());
+        assertEquals(Paths.get("second"), second.getFailedFiles().get(0).getFilePath());
+    }
+
+    @Test
+    void shouldReadBackReasonsWithLineBreaksAndTabs() {
+        final FailedFileMigration failure = new FailedFileMigration(Paths.get("dir\twith tab"), "line one\n\tline two \\ end");
+        sut.reportFileNotMigrated(failure);
+
+        assertEquals(failure, sut.readFailedFiles(0, 10).getFailedFiles().get(0));
+    }
+
+    @Test
+    void shouldCountFailuresByReasonWithoutPath() {
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("/home/a"), "File doesn't exist: /home/a"));
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("/home/b"), "File doesn't exist: /home/b"));
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("/home/c"), "Access denied"));
+
+        final Map<String, Long> counts = sut.getFailedFilesCountByReason();
+        assertEquals(2, counts.size());
+        assertEquals(2L, counts.get("File doesn't exist: <file>"));
+        assertEquals(1L, counts.get("Access denied"));
+    }
+
+    @Test
+    void shouldCountFurtherReasonsAsOtherOnceLimitIsReached() {
+        for (int i = 0; i < 150; i++) {
+            sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("file"), "reason " + i));
+        }
+
+        final Map<String, Long> counts = sut.getFailedFilesCountByReason();
+        assertEquals(101, counts.size());
+        assertEquals(50L, counts.get(DefaultFileSystemMigrationErrorReport.OTHER_REASONS));
+    }
+
+    @Test
+    void shouldWriteQueuedFailuresBeforeClosing() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("file" + i), "it broke"));
+        }
+
+        sut.close();
+
+        assertEquals(10, sut.readFailedFiles(0, 64).getFailedFiles().size());
+    }
+
+    @Test
+    void shouldOnlyCountFailuresReportedAfterClosing() throws Exception {
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("first"), "it broke"));
+        sut.close();
+
+        sut.reportFileNotMigrated(new FailedFileMigration(Paths.get("second"), "it broke"));
+
+        assertEquals(2, sut.getFailedFilesCount());
+        final FailedFilePage page = sut.readFailedFiles(0, 64);
+        assertEquals(1, page.getFailedFiles().size());
+        assertEquals(Paths.get("first"), page.getFailedFiles().get(0).getFilePath());
+    }
+
+    @Test
+    void shouldRejectNegativeCursor() {
+        assertThrows(IllegalArgumentException.class, () -> sut.readFailedFiles(-1, 10));
+    }
 }
@@ -16,12 +16,17 @@
 
 package com.atlassian.migration.datacenter.core.fs.reporting;
 
+import com.atlassian.migration.datacenter.spi.fs.reporting.ConcurrencyAdjustment;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class DefaultFileSystemMigrationProgressTest {
@@ -72,4 +77,92 @@ public class DefaultFileSystemMigrationProgressTest {
         sut.reportCrawlingFinished();
         assertTrue(sut.isCrawlingFinished());
     }
+
+    @Test
+    void shouldKeepLatestConcurrencyAdjustments() {
+        IntStream.range(1, 100).forEach(i -> sut.reportUploadConcurrencyAdjusted(new ConcurrencyAdjustment(i, i - 1, i, "test")));
+
+        final List<ConcurrencyAdjustment> adjustments = sut.getUploadConcurrencyAdjustments();
+        assertEquals(99, sut.getUploadConcurrency());
+        assertEquals(50, adjustments.size());
+        assertEquals(99, adjustments.get(49).getNewLimit());
+    }
+
+    @Test
+    void shouldCountBytes() {
+        sut.reportBytesFound(1000);
+        sut.reportBytesFound(500);
+        sut.reportBytesUploaded(1000);
+        sut.setNumberOfBytesDownloaded(200);
+
+        assertEquals(1500, sut.getBytesFound());
+        assertEquals(1000, sut.getBytesUploaded());
+        assertEquals(200, sut.getBytesDownloaded());
+    }
+
+    @Test
+    void shouldCountSkippedFilesAsUploadedWithoutRaisingTheRate() {
+        final AtomicLong now = new AtomicLong();
+        sut = new DefaultFilesystemMigrationProgress(now::get);
+
+        sut.reportFileSkipped(1000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(1, sut.getNumberOfCommencedFileUploads());
+        assertEquals(1, sut.getCountOfUploadedFiles());
+        assertEquals(1000, sut.getBytesUploaded());
+        assertEquals(0, sut.getUploadBytesPerSecond());
+        assertEquals(0, sut.getUploadFilesPerSecond());
+    }
+
+    @Test
+    void shouldEstimateTimeRemainingFromUploadAndDownloadRates() {
+        final AtomicLong now = new AtomicLong();
+        sut = new DefaultFilesystemMigrationProgress(now::get);
+        sut.reportBytesFound(10000);
+
+        assertNull(sut.getEstimatedSecondsRemaining());
+
+        sut.reportFileUploaded();
+        sut.reportBytesUploaded(1000);
+        sut.setNumberOfBytesDownloaded(1000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(200, sut.getUploadBytesPerSecond());
+        assertEquals(0.2, sut.getUploadFilesPerSecond());
+        assertEquals(200, sut.getDownloadBytesPerSecond());
+        assertEquals(90, sut.getEstimatedSecondsRemaining());
+    }
+
+    @Test
+    void shouldNotEstimateTimeRemainingBeforeDownloadRateIsKnown() {
+        final AtomicLong now = new AtomicLong();
+        sut = new DefaultFilesystemMigrationProgress(now::get);
+        sut.reportBytesFound(10000);
+
+        sut.reportBytesUploaded(1000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+        assertEquals(200, sut.getUploadBytesPerSecond());
+        assertNull(sut.getEstimatedSecondsRemaining());
+
+        sut.reportBytesUploaded(9000);
+        sut.reportCrawlingFinished();
+        assertNull(sut.getEstimatedSecondsRemaining());
+    }
+
+    @Test
+    void shouldAddDownloadToEstimateOnceItsRateIsKnown() {
+        final AtomicLong now = new AtomicLong();
+        sut = new DefaultFilesystemMigrationProgress(now::get);
+        sut.reportBytesFound(10000);
+        sut.reportBytesUploaded(10000);
+        sut.reportCrawlingFinished();
+
+        sut.setNumberOfBytesDownloaded(1000);
+        sut.setNumberOfBytesDownloaded(2000);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(5));
+
+        assertEquals(400, sut.getDownloadBytesPerSecond());
+        assertEquals(20, sut.getEstimatedSecondsRemaining());
+    }
 }
@@ -35,7 +35,6 @@ import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
-import java.util.Set;
 
 import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus.DONE;
 import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus.FAILED;
@@ -43,7 +42,6 @@ import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigr
 import static com.atlassian.migration.datacenter.spi.fs.reporting.FilesystemMigrationStatus.UPLOADING;
 import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -150,12 +148,9 @@ public class DefaultFileSystemMigrationReportTest {
     @Test
     void testToString() {
         final long successfullyMigrated = 888L;
-        final int failedFiles = 666;
+        final long failedFiles = 666L;
         when(progress.getCountOfUploadedFiles()).thenReturn(successfullyMigrated);
-
-        final Set errorList = mock(Set.class);
-        when(errorList.size()).thenReturn(failedFiles);
-        when(errors.getFailedFiles()).thenReturn(errorList);
+        when(errors.getFailedFilesCount()).thenReturn(failedFiles);
 
         sut.setStatus(DONE);
 
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanException;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsMBeanExporterTest {
+    private final MBeanServer server = MBeanServerFactory.newMBeanServer();
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @AfterEach
+    void releaseServer() {
+        MBeanServerFactory.releaseMBeanServer(server);
+    }
+
+    @Test
+    void shouldExposeMetricsAsAttributes() throws Exception {
+        registry.counter("upload.completions").add(4);
+        registry.gauge("queue.depth", () -> 12);
+        new MetricsMBeanExporter(registry, server).afterPropertiesSet();
+        ObjectName name = new ObjectName(MetricsMBeanExporter.OBJECT_NAME);
+
+        assertEquals(4L, server.getAttribute(name, "upload.completions"));
+        assertEquals(12L, server.getAttribute(name, "queue.depth"));
+        AttributeList attributes = server.getAttributes(name, new String[]{"upload.completions", "missing"});
+        assertEquals(1, attributes.size());
+        assertThrows(AttributeNotFoundException.class, () -> server.getAttribute(name, "missing"));
+    }
+
+    @Test
+    void shouldDescribeMetricsRegisteredAfterExport() throws Exception {
+        new MetricsMBeanExporter(registry, server).afterPropertiesSet();
+        registry.counter("crawler.files");
+
+        MBeanAttributeInfo[] attributes = server.getMBeanInfo(new ObjectName(MetricsMBeanExporter.OBJECT_NAME)).getAttributes();
+
+        assertEquals(1, attributes.length);
+        assertEquals("crawler.files", attributes[0].getName());
+        assertEquals(Long.class.getName(), attributes[0].getType());
+    }
+
+    @Test
+    void shouldBeReadOnly() throws Exception {
+        registry.counter("crawler.files");
+        new MetricsMBeanExporter(registry, server).afterPropertiesSet();
+
+        assertThrows(MBeanException.class,
+                () -> server.setAttribute(new ObjectName(MetricsMBeanExporter.OBJECT_NAME), new Attribute("crawler.files", 1L)));
+    }
+
+    @Test
+    void shouldReplaceBeanOfPreviousInstanceAndUnregisterOnDestroy() throws Exception {
+        ObjectName name = new ObjectName(MetricsMBeanExporter.OBJECT_NAME);
+        new MetricsMBeanExporter(new MetricsRegistry(), server).afterPropertiesSet();
+        registry.counter("crawler.files").increment();
+
+        MetricsMBeanExporter exporter = new MetricsMBeanExporter(registry, server);
+        exporter.afterPropertiesSet();
+        assertEquals(1L, server.getAttribute(name, "crawler.files"));
+
+        exporter.destroy();
+        assertFalse(server.isRegistered(name));
+        exporter.destroy();
+        assertTrue(server.queryNames(name, null).isEmpty());
+    }
+}
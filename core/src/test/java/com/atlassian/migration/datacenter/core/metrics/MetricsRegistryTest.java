@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.SortedMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetricsRegistryTest {
+    private final MetricsRegistry registry = new MetricsRegistry();
+
+    @Test
+    void shouldReturnSameCounterForName() {
+        registry.counter("crawler.files").increment();
+        registry.counter("crawler.files").add(2);
+
+        assertSame(registry.counter("crawler.files"), registry.counter("crawler.files"));
+        assertEquals(3L, registry.snapshot().get("crawler.files"));
+    }
+
+    @Test
+    void shouldReadGaugesWhenSnapshotIsTaken() {
+        AtomicLong depth = new AtomicLong(5);
+        registry.gauge("queue.depth", depth::get);
+
+        assertEquals(5L, registry.snapshot().get("queue.depth"));
+        depth.set(8);
+        assertEquals(8L, registry.snapshot().get("queue.depth"));
+    }
+
+    @Test
+    void shouldReplaceGaugeRegisteredAgain() {
+        registry.gauge("upload.inFlight", () -> 1);
+        registry.gauge("upload.inFlight", () -> 2);
+
+        assertEquals(2L, registry.snapshot().get("upload.inFlight"));
+    }
+
+    @Test
+    void shouldRemoveGaugeWhenRegistrationIsClosed() {
+        MetricsRegistry.Registration registration = registry.gauge("queue.depth", () -> 5);
+
+        registration.close();
+
+        assertFalse(registry.snapshot().containsKey("queue.depth"));
+    }
+
+    @Test
+    void shouldKeepGaugeWhichReplacedClosedRegistration() {
+        MetricsRegistry.Registration first = registry.gauge("upload.inFlight", () -> 1);
+        registry.gauge("upload.inFlight", () -> 2);
+
+        first.close();
+
+        assertEquals(2L, registry.snapshot().get("upload.inFlight"));
+    }
+
+    @Test
+    void shouldFlattenTimers() {
+        Timer timer = registry.timer("db.export");
+        timer.record(10, TimeUnit.MILLISECONDS);
+        timer.record(30, TimeUnit.MILLISECONDS);
+
+        SortedMap<String, Long> snapshot = registry.snapshot();
+
+        assertEquals(2L, snapshot.get("db.export.count"));
+        assertEquals(40_000L, snapshot.get("db.export.totalMicros"));
+        assertEquals(30_000L, snapshot.get("db.export.maxMicros"));
+        assertEquals(30_000L, snapshot.get("db.export.p99Micros"));
+        assertEquals(5, snapshot.size());
+    }
+
+    @Test
+    void shouldRejectNameUsedByAnotherTypeOfMetric() {
+        registry.counter("upload.retries");
+
+        assertThrows(IllegalArgumentException.class, () -> registry.timer("upload.retries"));
+        assertThrows(IllegalArgumentException.class, () -> registry.gauge("upload.retries", () -> 0));
+        assertEquals(0L, registry.snapshot().get("upload.retries"));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class LatencyHistogramTest {
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    void shouldReportZeroWhenNothingWasRecorded() {
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getPercentileMicros(99));
+        assertEquals(0, snapshot.getMaxMicros());
+    }
+
+    @Test
+    void shouldRecordSmallLatenciesExactly() {
+        histogram.record(3, TimeUnit.MICROSECONDS);
+        histogram.record(7, TimeUnit.MICROSECONDS);
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(3, snapshot.getPercentileMicros(50));
+        assertEquals(7, snapshot.getPercentileMicros(100));
+    }
+
+    @Test
+    void shouldKeepPercentilesWithinFewPercent() {
+        for (int millis = 1; millis <= 1000; millis++) {
+            histogram.record(millis, TimeUnit.MILLISECONDS);
+        }
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_000, snapshot.getPercentileMicros(50), 500_000 * 0.04);
+        assertEquals(900_000, snapshot.getPercentileMicros(90), 900_000 * 0.04);
+        assertEquals(990_000, snapshot.getPercentileMicros(99), 990_000 * 0.04);
+        assertEquals(1_000_000, snapshot.getMaxMicros());
+    }
+
+    @Test
+    void shouldNotReportPercentileAboveMaximum() {
+        histogram.record(1001, TimeUnit.MICROSECONDS);
+
+        assertEquals(1001, histogram.snapshot().getPercentileMicros(50));
+    }
+
+    @Test
+    void shouldCapVeryLargeLatencies() {
+        histogram.record(100, TimeUnit.DAYS);
+
+        final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1, snapshot.getCount());
+        assertEquals(TimeUnit.HOURS.toMicros(19), snapshot.getMaxMicros(), TimeUnit.HOURS.toMicros(1));
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ThroughputMeterTest {
+    private final AtomicLong now = new AtomicLong();
+    private ThroughputMeter meter;
+
+    @BeforeEach
+    void setUp() {
+        now.set(TimeUnit.HOURS.toNanos(1));
+        meter = new ThroughputMeter(Duration.ofMinutes(1), now::get);
+    }
+
+    @Test
+    void shouldReportNoRateBeforeFirstTick() {
+        meter.mark(1000);
+        advanceSeconds(ThroughputMeter.TICK_SECONDS - 1);
+
+        assertEquals(0, meter.getRatePerSecond());
+    }
+
+    @Test
+    void shouldStartFromRateOfFirstTick() {
+        meter.mark(1000);
+        advanceSeconds(ThroughputMeter.TICK_SECONDS);
+
+        assertEquals(200, meter.getRatePerSecond());
+    }
+
+    @Test
+    void shouldMoveTowardsNewRateGradually() {
+        meter.mark(1000);
+        advanceSeconds(ThroughputMeter.TICK_SECONDS);
+        meter.mark(2000);
+        advanceSeconds(ThroughputMeter.TICK_SECONDS);
+
+        final double rate = meter.getRatePerSecond();
+        assertTrue(rate > 200 && rate < 400, "Rate should be between the old and new rates, was " + rate);
+    }
+
+    @Test
+    void shouldDecayWhileNothingIsMarked() {
+        meter.mark(1000);
+        advanceSeconds(ThroughputMeter.TICK_SECONDS);
+        assertEquals(200, meter.getRatePerSecond());
+
+        advanceSeconds(60);
+
+        assertEquals(200 * Math.exp(-1), meter.getRatePerSecond(), 0.01);
+    }
+
+    @Test
+    void shouldRejectWindowShorterThanTick() {
+        assertThrows(IllegalArgumentException.class, () -> new ThroughputMeter(Duration.ofSeconds(1), now::get));
+    }
+
+    private void advanceSeconds(long seconds) {
+        now.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+}
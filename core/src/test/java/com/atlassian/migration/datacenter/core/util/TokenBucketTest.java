@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.atlassian.migration.datacenter.core.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TokenBucketTest {
+    private final AtomicLong now = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        now.set(TimeUnit.HOURS.toNanos(1));
+    }
+
+    @Test
+    void shouldLetOneSecondWorthOfPermitsThroughRightAway() {
+        final TokenBucket bucket = new TokenBucket(100, now::get);
+
+        assertEquals(0, bucket.reserve(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(500), bucket.reserve(50));
+    }
+
+    @Test
+    void shouldRefillOverTime() {
+        final TokenBucket bucket = new TokenBucket(100, now::get);
+        bucket.reserve(150);
+
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), bucket.reserve(1));
+    }
+
+    @Test
+    void shouldNotRefillBeyondOneSecondWorthOfPermits() {
+        final TokenBucket bucket = new TokenBucket(100, now::get);
+
+        now.addAndGet(TimeUnit.MINUTES.toNanos(1));
+
+        assertEquals(0, bucket.reserve(100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), bucket.reserve(1));
+    }
+
+    @Test
+    void shouldNotLimitWhenUnlimited() {
+        final TokenBucket bucket = new TokenBucket(TokenBucket.UNLIMITED, now::get);
+
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+        assertEquals(0, bucket.reserve(Long.MAX_VALUE / 2));
+    }
+
+    @Test
+    void shouldCapAvailablePermitsWhenRateIsLowered() {
+        final TokenBucket bucket = new TokenBucket(1000, now::get);
+
+        bucket.setRate(10);
+
+        assertEquals(0, bucket.reserve(10));
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve(10));
+    }
+
+    @Test
+    void shouldStartFullWhenLimitIsIntroduced() {
+        final TokenBucket bucket = new TokenBucket(TokenBucket.UNLIMITED, now::get);
+
+        bucket.setRate(10);
+
+        assertEquals(0, bucket.reserve(10));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), bucket.reserve(1));
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.core.util;
+
+import com.atlassian.migration.datacenter.core.metrics.Timer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UploadQueueTest {
+
+    @Test
+    void shouldHandOutQueuedValuesBeforeEndOfStream() throws Exception {
+        UploadQueue<String> queue = new UploadQueue<>(10);
+        queue.put("a");
+        queue.put("b");
+        queue.finish();
+
+        assertEquals(Optional.of("a"), queue.take());
+        assertEquals(Optional.of("b"), queue.take());
+        assertEquals(Optional.empty(), queue.take());
+        assertEquals(Optional.empty(), queue.take(), "End of stream should be signalled on every take");
+    }
+
+    @Test
+    void shouldDrainInBatches() throws Exception {
+        UploadQueue<Integer> queue = new UploadQueue<>(10);
+        for (int i = 0; i < 5; i++) {
+            queue.put(i);
+        }
+        queue.finish();
+
+        List<Integer> batch = new ArrayList<>();
+        assertEquals(3, queue.drainTo(batch, 3));
+        assertEquals(2, queue.drainTo(batch, 3));
+        assertEquals(0, queue.drainTo(batch, 3));
+        assertEquals(5, batch.size());
+        assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    void shouldGiveUpDrainingOnceTimeoutHasElapsed() throws Exception {
+        UploadQueue<Integer> queue = new UploadQueue<>(10);
+        List<Integer> batch = new ArrayList<>();
+
+        assertEquals(0, queue.drainTo(batch, 3, 10, TimeUnit.MILLISECONDS));
+        assertFalse(queue.isDrained());
+
+        queue.put(1);
+        queue.finish();
+
+        assertFalse(queue.isDrained());
+        assertEquals(1, queue.drainTo(batch, 3, 10, TimeUnit.MILLISECONDS));
+        assertTrue(queue.isDrained());
+        assertEquals(0, queue.drainTo(batch, 3, 10, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldKeepTrackOfQueuedValues() throws Exception {
+        UploadQueue<String> queue = new UploadQueue<>(3);
+        queue.put("a");
+        queue.put("b");
+
+        assertTrue(queue.contains("a"));
+        assertFalse(queue.contains("c"));
+        assertEquals(2, queue.size());
+
+        queue.take();
+
+        assertFalse(queue.contains("a"));
+        assertEquals(1, queue.size());
+    }
+
+    @Test
+    void shouldBlockProducerWhenFull() throws Exception {
+        Timer putBlockTime = new Timer();
+        UploadQueue<Integer> queue = new UploadQueue<>(3, putBlockTime);
+        for (int i = 0; i < 3; i++) {
+            queue.put(i);
+        }
+        assertEquals(0, putBlockTime.snapshot().getCount(), "Puts into a queue with room shouldn't count as blocked");
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            CountDownLatch putStarted = new CountDownLatch(1);
+            Future<?> blockedPut = executor.submit(() -> {
+                putStarted.countDown();
+                queue.put(3);
+                return null;
+            });
+            putStarted.await();
+            Thread.sleep(100);
+            assertFalse(blockedPut.isDone());
+
+            queue.take();
+            blockedPut.get(5, TimeUnit.SECONDS);
+            assertEquals(3, queue.size());
+            assertEquals(1, putBlockTime.snapshot().getCount());
+            // The put may start blocking a little after it was started, so only most of the sleep is certain
+            assertTrue(putBlockTime.snapshot().getTotalMicros() >= TimeUnit.MILLISECONDS.toMicros(50));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldWakeUpParkedConsumersWhenValueIsPutOrQueueIsFinished() throws Exception {
+        UploadQueue<Integer> queue = new UploadQueue<>(3);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Optional<Integer>> first = executor.submit(queue::take);
+            Future<Optional<Integer>> second = executor.submit(queue::take);
+            // Long enough for both consumers to be done spinning and to have parked
+            Thread.sleep(200);
+            assertFalse(first.isDone());
+            assertFalse(second.isDone());
+
+            queue.put(1);
+            queue.finish();
+
+            Optional<Integer> firstValue = first.get(5, TimeUnit.SECONDS);
+            Optional<Integer> secondValue = second.get(5, TimeUnit.SECONDS);
+            assertEquals(Optional.of(1), firstValue.isPresent() ? firstValue : secondValue);
+            assertFalse(firstValue.isPresent() && secondValue.isPresent());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void shouldDeliverEveryValueExactlyOnceToMultipleConsumers() throws Exception {
+        final int producers = 4;
+        final int consumers = 4;
+        final int valuesPerProducer = 50_000;
+        UploadQueue<Integer> queue = new UploadQueue<>(50);
+        ConcurrentHashMap<Integer, Boolean> consumed = new ConcurrentHashMap<>();
+        AtomicInteger duplicates = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            List<Future<?>> consumerFutures = new ArrayList<>();
+            for (int c = 0; c < consumers; c++) {
+                consumerFutures.add(executor.submit(() -> {
+                    List<Integer> batch = new ArrayList<>();
+                    while (queue.drainTo(batch, 16) > 0) {
+                        batch.forEach(value -> {
+                            if (consumed.put(value, true) != null) {
+                                duplicates.incrementAndGet();
+                            }
+                        });
+                        batch.clear();
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<?>> producerFutures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                final int offset = p * valuesPerProducer;
+                producerFutures.add(executor.submit(() -> {
+                    for (int i = 0; i < valuesPerProducer; i++) {
+                        queue.put(offset + i);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> producer : producerFutures) {
+                producer.get(30, TimeUnit.SECONDS);
+            }
+            queue.finish();
+            for (Future<?> consumer : consumerFutures) {
+                consumer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(0, duplicates.get());
+        assertEquals(producers * valuesPerProducer, consumed.size());
+    }
+
+    @Test
+    void shouldRejectInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new UploadQueue<>(0));
+    }
+}
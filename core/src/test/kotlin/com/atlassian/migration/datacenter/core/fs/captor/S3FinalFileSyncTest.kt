@@ -16,6 +16,7 @@
 
 package com.atlassian.migration.datacenter.core.fs.captor
 
+import com.atlassian.migration.datacenter.core.fs.FileEntry
 import com.atlassian.migration.datacenter.core.fs.Uploader
 import com.atlassian.migration.datacenter.core.util.UploadQueue
 import com.atlassian.migration.datacenter.dto.FileSyncRecord
@@ -28,7 +29,6 @@ import org.hamcrest.Matchers.containsInAnyOrder
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.extension.ExtendWith
-import java.nio.file.Path
 import java.util.Optional
 
 @ExtendWith(MockKExtension::class)
@@ -54,13 +54,13 @@ internal class S3FinalFileSyncTest {
     internal fun setUp() {
         sut = S3FinalFileSync(mockSyncManager, mockUploader)
 
-        val slot = slot<UploadQueue<Path>>()
+        val slot = slot<UploadQueue<FileEntry>>()
         every { mockUploader.upload(capture(slot)) } answers {
             val uploadQueue = slot.captured
-            var path = uploadQueue.take()
-            while (path != Optional.empty<Path>()) {
-                uploadedPaths.add(path.get().toString())
-                path = uploadQueue.take()
+            var entry = uploadQueue.take()
+            while (entry != Optional.empty<FileEntry>()) {
+                uploadedPaths.add(entry.get().path.toString())
+                entry = uploadQueue.take()
             }
         }
     }
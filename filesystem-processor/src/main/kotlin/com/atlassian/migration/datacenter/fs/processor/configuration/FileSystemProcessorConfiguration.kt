@@ -20,6 +20,7 @@ import com.amazonaws.services.sqs.AmazonSQSAsync
 import com.atlassian.migration.datacenter.fs.processor.services.SQSMessageProcessor
 import org.springframework.cloud.aws.context.config.annotation.EnableStackConfiguration
 import org.springframework.cloud.aws.core.env.ResourceIdResolver
+import org.springframework.cloud.aws.messaging.listener.SqsMessageDeletionPolicy
 import org.springframework.cloud.aws.messaging.support.destination.DynamicQueueUrlDestinationResolver
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.ComponentScan
@@ -70,6 +71,8 @@ open class FileSystemProcessorConfiguration {
         val adapter = SqsMessageDrivenChannelAdapter(amazonSqs, QUEUE_LOGICAL_NAME)
         adapter.setDestinationResolver(destinationResolver)
         adapter.setQueueStopTimeout(60000)
+        // Messages are acknowledged once their files are written, so that SQS redelivers those which failed
+        adapter.setMessageDeletionPolicy(SqsMessageDeletionPolicy.NEVER)
         adapter.outputChannel = inboundChannel
         adapter.errorChannel = errorChannel
         return adapter
@@ -96,6 +99,6 @@ open class FileSystemProcessorConfiguration {
     }
 
     companion object {
-        private const val QUEUE_LOGICAL_NAME: String = "MigrationQueue"
+        const val QUEUE_LOGICAL_NAME: String = "MigrationQueue"
     }
 }
\ No newline at end of file
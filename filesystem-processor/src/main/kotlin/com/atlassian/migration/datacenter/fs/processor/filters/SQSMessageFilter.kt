@@ -16,8 +16,10 @@
 
 package com.atlassian.migration.datacenter.fs.processor.filters
 
+import org.springframework.cloud.aws.messaging.listener.Acknowledgment
 import org.springframework.integration.annotation.Filter
 import org.springframework.integration.annotation.MessageEndpoint
+import org.springframework.integration.aws.support.AwsHeaders
 import org.springframework.messaging.Message
 
 @MessageEndpoint
@@ -27,6 +29,10 @@ class SQSMessageFilter {
     fun filter(message: Message<String>): Boolean {
         val body = message.payload
         val testEvent = body.contains("TestEvent", true)
+        if (testEvent) {
+            // Discarded messages are never processed, so nothing else acknowledges them
+            (message.headers[AwsHeaders.ACKNOWLEDGMENT] as? Acknowledgment)?.acknowledge()
+        }
         return !testEvent
     }
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.fs.processor.services
+
+import org.apache.commons.io.IOUtils
+import org.slf4j.LoggerFactory
+import java.io.BufferedInputStream
+import java.io.DataInputStream
+import java.io.File
+import java.io.FileOutputStream
+import java.io.IOException
+import java.io.InputStream
+import java.nio.charset.StandardCharsets
+
+/**
+ * Extracts a bundle of small files, as uploaded by the migration assistant, into a directory while it is being
+ * downloaded. The layout is described in SmallFileBundle of the migration assistant:
+ *
+ * | magic (4) | version (4) | then per file: | key length (2) | key | size (8) | mtime (8) | content (size) |
+ * | 0 (2) | file count (4) | content offset (8) per file |
+ *
+ * Bundles of earlier passes stay in the bucket and aren't extracted in the order they were uploaded, so the same file
+ * may be extracted from an older bundle after a newer copy of it was written. A file is therefore skipped when the one
+ * in the target directory was modified at the same time or later.
+ *
+ * @param directory the directory to extract the files into
+ * @param target    the directory the files end up in, whose files are compared with those of the bundle
+ */
+class BundleExtractor(private val directory: String, private val target: String = directory) {
+
+    private val log = LoggerFactory.getLogger(BundleExtractor::class.java)
+
+    /**
+     * @return the paths of the files written, relative to the directory. Files skipped as older than those in the
+     * target directory aren't included.
+     */
+    @Throws(IOException::class)
+    fun extract(bundleKey: String, bundle: InputStream): List<String> {
+        val root = File(directory).canonicalFile
+        val targetRoot = File(target).canonicalFile
+        val input = DataInputStream(BufferedInputStream(bundle))
+        if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+            throw IOException("$bundleKey is not a bundle this processor can read")
+        }
+
+        val extracted = ArrayList<String>()
+        var files = 0
+        while (true) {
+            val keyLength = input.readUnsignedShort()
+            if (keyLength == 0) {
+                break
+            }
+            val keyBytes = ByteArray(keyLength)
+            input.readFully(keyBytes)
+            val key = String(keyBytes, StandardCharsets.UTF_8)
+            val size = input.readLong()
+            val lastModified = input.readLong()
+            files++
+
+            val localPath = File(root, key).canonicalFile
+            if (!localPath.toPath().startsWith(root.toPath())) {
+                throw IOException("$bundleKey contains $key, which is outside of the directory")
+            }
+            val targetPath = File(targetRoot, key)
+            if (targetPath.exists() && targetPath.lastModified() >= lastModified) {
+                log.debug("Skipping {} from {}, {} is at least as new", key, bundleKey, targetPath)
+                IOUtils.skipFully(input, size)
+                continue
+            }
+            localPath.parentFile.mkdirs()
+            FileOutputStream(localPath).use { output ->
+                if (IOUtils.copyLarge(input, output, 0, size) != size) {
+                    throw IOException("$bundleKey ended in the middle of $key")
+                }
+            }
+            localPath.setLastModified(lastModified)
+            log.debug("Extracted {} from {}", localPath, bundleKey)
+            extracted.add(root.toPath().relativize(localPath.toPath()).toString())
+        }
+
+        val indexedFiles = input.readInt()
+        if (indexedFiles != files) {
+            throw IOException("$bundleKey holds $files files but its index lists $indexedFiles")
+        }
+        return extracted
+    }
+
+    companion object {
+        const val BUNDLE_PREFIX = ".dc-migration-bundles/"
+        const val BUNDLE_SUFFIX = ".bundle"
+        private const val MAGIC = 0x44434d42 // "DCMB"
+        private const val VERSION = 1
+
+        fun isBundle(key: String): Boolean {
+            return key.startsWith(BUNDLE_PREFIX) && key.endsWith(BUNDLE_SUFFIX)
+        }
+    }
+}
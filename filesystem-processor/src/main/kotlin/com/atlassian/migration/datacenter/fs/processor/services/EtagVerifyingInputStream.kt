@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.fs.processor.services
+
+import com.amazonaws.services.s3.model.ObjectMetadata
+import com.amazonaws.services.s3.model.SSEAlgorithm
+import java.io.ByteArrayOutputStream
+import java.io.FilterInputStream
+import java.io.InputStream
+import java.security.MessageDigest
+
+/**
+ * Computes the ETag S3 would give the bytes read through it, so that a download can be verified while it is streamed
+ * to disk instead of hashing the written file afterwards.
+ *
+ * The ETag of a plain upload is the MD5 of the object. The ETag of a multipart upload is the MD5 of the MD5s of its
+ * parts followed by the number of parts, which can only be recomputed knowing the part size the migration assistant
+ * stores in the object metadata.
+ */
+class EtagVerifyingInputStream(input: InputStream, private val partSize: Long?) : FilterInputStream(input) {
+
+    private val digest = MessageDigest.getInstance("MD5")
+    private val partDigests = ByteArrayOutputStream()
+    private var parts = 0
+    private var readOfPart = 0L
+
+    override fun read(): Int {
+        val b = super.read()
+        if (b >= 0) {
+            update(byteArrayOf(b.toByte()), 0, 1)
+        }
+        return b
+    }
+
+    override fun read(b: ByteArray, off: Int, len: Int): Int {
+        val read = super.read(b, off, len)
+        if (read > 0) {
+            update(b, off, read)
+        }
+        return read
+    }
+
+    override fun skip(n: Long): Long {
+        // Skipped bytes need to be digested all the same
+        val buffer = ByteArray(minOf(n, SKIP_BUFFER_SIZE).toInt())
+        var skipped = 0L
+        while (skipped < n) {
+            val read = read(buffer, 0, minOf(n - skipped, buffer.size.toLong()).toInt())
+            if (read < 0) {
+                break
+            }
+            skipped += read
+        }
+        return skipped
+    }
+
+    override fun markSupported(): Boolean = false
+
+    /**
+     * @return the ETag of the bytes read so far, to be called once the stream has been read to its end
+     */
+    fun computedEtag(): String {
+        if (partSize == null) {
+            return toHex(digest.digest())
+        }
+        if (readOfPart > 0 || parts == 0) {
+            finishPart()
+        }
+        return toHex(MessageDigest.getInstance("MD5").digest(partDigests.toByteArray())) + "-" + parts
+    }
+
+    private fun update(b: ByteArray, off: Int, len: Int) {
+        if (partSize == null) {
+            digest.update(b, off, len)
+            return
+        }
+        var offset = off
+        var remaining = len
+        while (remaining > 0) {
+            val inPart = minOf(remaining.toLong(), partSize - readOfPart).toInt()
+            digest.update(b, offset, inPart)
+            readOfPart += inPart
+            offset += inPart
+            remaining -= inPart
+            if (readOfPart == partSize) {
+                finishPart()
+            }
+        }
+    }
+
+    private fun finishPart() {
+        partDigests.write(digest.digest())
+        parts++
+        readOfPart = 0
+    }
+
+    companion object {
+        const val PART_SIZE_METADATA = "dc-part-size"
+        private const val SKIP_BUFFER_SIZE = 8192L
+
+        /**
+         * @return a stream verifying the content of the object, or null if its ETag isn't a checksum that can be
+         * recomputed, e.g. because it was encrypted with KMS
+         */
+        fun forObject(input: InputStream, metadata: ObjectMetadata): EtagVerifyingInputStream? {
+            val etag = metadata.eTag ?: return null
+            if (metadata.sseAlgorithm == SSEAlgorithm.KMS.algorithm) {
+                return null
+            }
+            if (!etag.contains("-")) {
+                return EtagVerifyingInputStream(input, null)
+            }
+            val partSize = metadata.getUserMetaDataOf(PART_SIZE_METADATA)?.toLongOrNull() ?: return null
+            return if (partSize > 0) EtagVerifyingInputStream(input, partSize) else null
+        }
+
+        private fun toHex(bytes: ByteArray): String {
+            return bytes.joinToString("") { String.format("%02x", it) }
+        }
+    }
+}
@@ -18,6 +18,8 @@ package com.atlassian.migration.datacenter.fs.processor.services
 
 import com.amazonaws.services.s3.AmazonS3
 import com.amazonaws.services.s3.event.S3EventNotification
+import com.amazonaws.services.s3.model.S3Object
+import org.apache.commons.io.FileUtils
 import org.apache.commons.io.IOUtils
 import org.slf4j.LoggerFactory
 import java.io.File
@@ -25,7 +27,14 @@ import java.io.FileOutputStream
 import java.io.IOException
 import java.net.URLDecoder
 import java.nio.charset.Charset
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
 
+/**
+ * Writes an object of the migration bucket into the home directory. Downloads are verified against the ETag of the
+ * object before they replace anything in the home directory, and a failed download throws so that its message isn't
+ * acknowledged and is redelivered.
+ */
 class S3ToFileWriter(private val s3Client: AmazonS3, private val entity: S3EventNotification.S3Entity, private val jiraHome: String) : Runnable {
 
     private val log = LoggerFactory.getLogger(S3ToFileWriter::class.java)
@@ -36,29 +45,89 @@ class S3ToFileWriter(private val s3Client: AmazonS3, private val entity: S3Event
             s3Client.getObject(entity.bucket.name, key).use { s3object ->
                 val absolutePathString = "$jiraHome/$key"
                 val localPath = File(absolutePathString)
-                if (key.endsWith("/")) {
+                if (BundleExtractor.isBundle(key)) {
+                    extractBundle(key, s3object)
+                } else if (key.endsWith("/")) {
                     log.info("Got request to create directory: $absolutePathString")
                     localPath.mkdirs()
                 } else {
-                    s3object.objectContent.use { inputStream ->
-                        log.info("Got request to write file: $absolutePathString")
-                        if (!localPath.parentFile.exists()) {
-                            if (localPath.parentFile.mkdirs()) {
-                                log.info("Made the missing parent directory {}", localPath.path)
-                            }
-                        }
-                        try {
-                            IOUtils.copy(inputStream, FileOutputStream(localPath))
-                            log.info("Successfully wrote: $absolutePathString")
-                        } catch (e: IOException) {
-                            log.error("Failed to write file $absolutePathString", e)
-                        }
-                    }
+                    log.info("Got request to write file: $absolutePathString")
+                    writeFile(key, s3object, localPath)
+                    log.info("Successfully wrote: $absolutePathString")
                 }
             }
         } catch (ex: Exception) {
-            log.error("Failed to process " + ex.localizedMessage)
-            log.error(ex.cause?.localizedMessage)
+            log.error("Failed to process $key", ex)
+            throw ex
+        }
+    }
+
+    /**
+     * Downloads into a temporary file next to the target, which is only moved into place once verified.
+     */
+    private fun writeFile(key: String, s3object: S3Object, localPath: File) {
+        if (!localPath.parentFile.exists()) {
+            if (localPath.parentFile.mkdirs()) {
+                log.info("Made the missing parent directory {}", localPath.path)
+            }
+        }
+        val partialPath = File.createTempFile(".${localPath.name}.", PARTIAL_SUFFIX, localPath.parentFile)
+        try {
+            s3object.objectContent.use { objectContent ->
+                val verifier = EtagVerifyingInputStream.forObject(objectContent, s3object.objectMetadata)
+                val inputStream = verifier ?: objectContent
+                FileOutputStream(partialPath).use { outputStream -> IOUtils.copy(inputStream, outputStream) }
+                verify(key, verifier, s3object.objectMetadata.eTag)
+            }
+            // Like aws s3 sync, so that bundled copies of the file can be told apart from newer or older ones
+            s3object.objectMetadata.lastModified?.let { partialPath.setLastModified(it.time) }
+            Files.move(partialPath.toPath(), localPath.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+        } finally {
+            Files.deleteIfExists(partialPath.toPath())
+        }
+    }
+
+    /**
+     * Extracts into a staging directory within the home directory, whose files are only moved into place once the
+     * whole bundle is verified.
+     */
+    private fun extractBundle(key: String, s3object: S3Object) {
+        val home = File(jiraHome).toPath()
+        val staging = Files.createTempDirectory(home, STAGING_PREFIX)
+        try {
+            val extracted = s3object.objectContent.use { objectContent ->
+                val verifier = EtagVerifyingInputStream.forObject(objectContent, s3object.objectMetadata)
+                val inputStream = verifier ?: objectContent
+                val extracted = BundleExtractor(staging.toString(), home.toString()).extract(key, inputStream)
+                // The index isn't needed for extraction, but is part of what the ETag covers
+                IOUtils.consume(inputStream)
+                verify(key, verifier, s3object.objectMetadata.eTag)
+                extracted
+            }
+            extracted.forEach { path ->
+                val localPath = home.resolve(path)
+                Files.createDirectories(localPath.parent)
+                Files.move(staging.resolve(path), localPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+            }
+            log.info("Successfully extracted ${extracted.size} files from bundle $key")
+        } finally {
+            FileUtils.deleteDirectory(staging.toFile())
+        }
+    }
+
+    private fun verify(key: String, verifier: EtagVerifyingInputStream?, etag: String) {
+        if (verifier == null) {
+            log.debug("Unable to verify the checksum of {}, its ETag {} isn't an MD5 of its content", key, etag)
+            return
+        }
+        val computed = verifier.computedEtag()
+        if (!computed.equals(etag.replace("\"", ""), ignoreCase = true)) {
+            throw IOException("Checksum mismatch for $key: S3 has ETag $etag but the downloaded bytes have $computed")
         }
     }
-}
\ No newline at end of file
+
+    companion object {
+        private const val PARTIAL_SUFFIX = ".dc-migration-partial"
+        private const val STAGING_PREFIX = ".dc-migration-staging-"
+    }
+}
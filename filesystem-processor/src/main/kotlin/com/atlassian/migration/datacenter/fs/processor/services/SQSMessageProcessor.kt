@@ -18,21 +18,44 @@ package com.atlassian.migration.datacenter.fs.processor.services
 
 import com.amazonaws.services.s3.AmazonS3
 import com.amazonaws.services.s3.event.S3EventNotification
+import com.amazonaws.services.sqs.AmazonSQSAsync
+import com.atlassian.migration.datacenter.fs.processor.configuration.FileSystemProcessorConfiguration
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Value
+import org.springframework.cloud.aws.messaging.listener.Acknowledgment
+import org.springframework.cloud.aws.messaging.support.destination.DynamicQueueUrlDestinationResolver
+import org.springframework.integration.aws.support.AwsHeaders
 import org.springframework.messaging.Message
 import org.springframework.messaging.MessageHandler
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor
 import org.springframework.stereotype.Component
 import java.io.File
-import java.util.function.Consumer
+import java.util.concurrent.CompletableFuture
 
+/**
+ * Writes the objects of S3 event notifications into the home directory. A message is acknowledged once all its objects
+ * are written. Otherwise it is made visible again after a short delay, rather than after the visibility timeout of the
+ * queue, which is long enough for the largest downloads and would hold up the final sync waiting for the queue to drain.
+ */
 @Component
-class SQSMessageProcessor(private val s3Client: AmazonS3, private val threadPoolTaskExecutor: ThreadPoolTaskExecutor, @Value("\${app.jira.file.path}") private val jiraHome: String) : MessageHandler {
+class SQSMessageProcessor(private val s3Client: AmazonS3,
+                          private val threadPoolTaskExecutor: ThreadPoolTaskExecutor,
+                          @Value("\${app.jira.file.path}") private val jiraHome: String,
+                          private val amazonSqs: AmazonSQSAsync,
+                          private val destinationResolver: DynamicQueueUrlDestinationResolver) : MessageHandler {
 
     private val log = LoggerFactory.getLogger(SQSMessageProcessor::class.java)
 
     override fun handleMessage(message: Message<*>) {
+        try {
+            processMessage(message)
+        } catch (e: Exception) {
+            redeliverSoon(message)
+            throw e
+        }
+    }
+
+    private fun processMessage(message: Message<*>) {
         val payload = message.payload as? String
                 ?: throw IllegalArgumentException("SQS message is not a string, we can't handle that")
 
@@ -52,17 +75,35 @@ class SQSMessageProcessor(private val s3Client: AmazonS3, private val threadPool
                 }
             }
         }
-        if (s3EventNotificationRecords.size == 1) {
-            submitTask(s3Client, s3EventNotificationRecords[0].s3, jiraHome)
-        } else if (s3EventNotificationRecords.size > 1) {
-            s3EventNotificationRecords.forEach(Consumer { record: S3EventNotification.S3EventNotificationRecord -> submitTask(s3Client, record.s3, jiraHome) })
+        val tasks = s3EventNotificationRecords.map { record -> submitTask(s3Client, record.s3, jiraHome) }
+        CompletableFuture.allOf(*tasks.toTypedArray()).whenComplete { _, error ->
+            if (error == null) {
+                (message.headers[AwsHeaders.ACKNOWLEDGMENT] as? Acknowledgment)?.acknowledge()
+            } else {
+                log.warn("Not acknowledging message {}, SQS will redeliver it in {} seconds", message.headers.id, REDELIVERY_DELAY_SECONDS)
+                redeliverSoon(message)
+            }
         }
     }
 
-    private fun submitTask(s3Client: AmazonS3, item: S3EventNotification.S3Entity, jiraHome: String) {
+    private fun redeliverSoon(message: Message<*>) {
+        val receiptHandle = message.headers[AwsHeaders.RECEIPT_HANDLE] as? String ?: return
+        try {
+            val queueUrl = destinationResolver.resolveDestination(FileSystemProcessorConfiguration.QUEUE_LOGICAL_NAME)
+            amazonSqs.changeMessageVisibilityAsync(queueUrl, receiptHandle, REDELIVERY_DELAY_SECONDS)
+        } catch (e: Exception) {
+            log.warn("Unable to shorten the visibility timeout of message {}, it is redelivered once the timeout of the queue expires", message.headers.id, e)
+        }
+    }
+
+    private fun submitTask(s3Client: AmazonS3, item: S3EventNotification.S3Entity, jiraHome: String): CompletableFuture<Void> {
         val fileWriter = S3ToFileWriter(s3Client, item, jiraHome)
-        threadPoolTaskExecutor.submit(fileWriter)
+        return CompletableFuture.runAsync(fileWriter, threadPoolTaskExecutor)
     }
 
+    companion object {
+        // Long enough for a transient S3 error to clear, short enough for the retries to reach the dead letter queue quickly
+        const val REDELIVERY_DELAY_SECONDS = 30
+    }
 
 }
\ No newline at end of file
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.fs.processor.services
+
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.io.DataOutputStream
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.Path
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertTrue
+
+internal class BundleExtractorTest {
+
+    @TempDir
+    lateinit var home: Path
+
+    @Test
+    fun shouldExtractFilesWithTheirModificationTime() {
+        val extracted = BundleExtractor(home.toString()).extract("first.bundle", bundleOf(Entry("dir/file.txt", "content", 1_000_000)))
+
+        assertEquals(listOf("dir/file.txt"), extracted)
+        assertEquals("content", read("dir/file.txt"))
+        assertEquals(1_000_000, home.resolve("dir/file.txt").toFile().lastModified())
+    }
+
+    @Test
+    fun shouldKeepNewerVersionWhenOlderBundleIsExtractedLater() {
+        val extractor = BundleExtractor(home.toString())
+        extractor.extract("newer.bundle", bundleOf(Entry("file.txt", "new", 2_000_000)))
+
+        val extracted = extractor.extract("older.bundle", bundleOf(Entry("file.txt", "old", 1_000_000), Entry("other.txt", "other", 1_000_000)))
+
+        assertEquals(listOf("other.txt"), extracted)
+        assertEquals("new", read("file.txt"))
+        assertEquals("other", read("other.txt"))
+    }
+
+    @Test
+    fun shouldReplaceOlderVersionWhenNewerBundleIsExtractedLater() {
+        val extractor = BundleExtractor(home.toString())
+        extractor.extract("older.bundle", bundleOf(Entry("file.txt", "old", 1_000_000)))
+
+        extractor.extract("newer.bundle", bundleOf(Entry("file.txt", "new", 2_000_000)))
+
+        assertEquals("new", read("file.txt"))
+    }
+
+    @Test
+    fun shouldNotStageFilesOlderThanThoseInTarget(@TempDir staging: Path) {
+        Files.write(home.resolve("file.txt"), "standalone".toByteArray())
+        home.resolve("file.txt").toFile().setLastModified(2_000_000)
+
+        val extracted = BundleExtractor(staging.toString(), home.toString()).extract("older.bundle", bundleOf(Entry("file.txt", "old", 1_000_000)))
+
+        assertTrue(extracted.isEmpty())
+        assertFalse(Files.exists(staging.resolve("file.txt")))
+    }
+
+    private fun read(path: String): String {
+        return String(Files.readAllBytes(home.resolve(path)), StandardCharsets.UTF_8)
+    }
+
+    private data class Entry(val key: String, val content: String, val lastModified: Long)
+
+    private fun bundleOf(vararg entries: Entry): ByteArrayInputStream {
+        val bytes = ByteArrayOutputStream()
+        val output = DataOutputStream(bytes)
+        output.writeInt(0x44434d42)
+        output.writeInt(1)
+        val offsets = ArrayList<Long>()
+        entries.forEach { entry ->
+            val key = entry.key.toByteArray(StandardCharsets.UTF_8)
+            val content = entry.content.toByteArray(StandardCharsets.UTF_8)
+            output.writeShort(key.size)
+            output.write(key)
+            output.writeLong(content.size.toLong())
+            output.writeLong(entry.lastModified)
+            offsets.add(output.size().toLong())
+            output.write(content)
+        }
+        output.writeShort(0)
+        output.writeInt(entries.size)
+        offsets.forEach { output.writeLong(it) }
+        return ByteArrayInputStream(bytes.toByteArray())
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.atlassian.migration.datacenter.fs.processor.services
+
+import com.amazonaws.services.s3.AmazonS3
+import com.amazonaws.services.s3.model.AmazonS3Exception
+import com.amazonaws.services.s3.model.S3Object
+import com.amazonaws.services.sqs.AmazonSQSAsync
+import com.atlassian.migration.datacenter.fs.processor.configuration.FileSystemProcessorConfiguration
+import io.mockk.every
+import io.mockk.impl.annotations.MockK
+import io.mockk.junit5.MockKExtension
+import io.mockk.mockk
+import io.mockk.verify
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.junit.jupiter.api.io.TempDir
+import org.springframework.cloud.aws.messaging.listener.Acknowledgment
+import org.springframework.cloud.aws.messaging.support.destination.DynamicQueueUrlDestinationResolver
+import org.springframework.integration.aws.support.AwsHeaders
+import org.springframework.messaging.Message
+import org.springframework.messaging.support.MessageBuilder
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor
+import java.nio.file.Path
+
+@ExtendWith(MockKExtension::class)
+internal class SQSMessageProcessorTest {
+
+    @MockK
+    lateinit var s3Client: AmazonS3
+
+    @MockK(relaxed = true)
+    lateinit var amazonSqs: AmazonSQSAsync
+
+    @MockK
+    lateinit var destinationResolver: DynamicQueueUrlDestinationResolver
+
+    @MockK(relaxed = true)
+    lateinit var acknowledgment: Acknowledgment
+
+    @TempDir
+    lateinit var jiraHome: Path
+
+    private val executor = ThreadPoolTaskExecutor()
+
+    lateinit var sut: SQSMessageProcessor
+
+    @BeforeEach
+    internal fun setUp() {
+        executor.initialize()
+        every { destinationResolver.resolveDestination(FileSystemProcessorConfiguration.QUEUE_LOGICAL_NAME) } returns "queue-url"
+        sut = SQSMessageProcessor(s3Client, executor, jiraHome.toString(), amazonSqs, destinationResolver)
+    }
+
+    @AfterEach
+    internal fun tearDown() {
+        executor.shutdown()
+    }
+
+    @Test
+    fun shouldMakeFailedMessageVisibleAgainAfterShortDelay() {
+        every { s3Client.getObject("bucket", "file.txt") } throws AmazonS3Exception("Service unavailable")
+
+        sut.handleMessage(messageFor("file.txt"))
+
+        verify(timeout = 5000) { amazonSqs.changeMessageVisibilityAsync("queue-url", "receipt", SQSMessageProcessor.REDELIVERY_DELAY_SECONDS) }
+        verify(exactly = 0) { acknowledgment.acknowledge() }
+    }
+
+    @Test
+    fun shouldAcknowledgeMessageOnceObjectIsWritten() {
+        every { s3Client.getObject("bucket", "directory/") } returns mockk<S3Object>(relaxed = true)
+
+        sut.handleMessage(messageFor("directory/"))
+
+        verify(timeout = 5000) { acknowledgment.acknowledge() }
+        verify(exactly = 0) { amazonSqs.changeMessageVisibilityAsync(any<String>(), any(), any()) }
+    }
+
+    private fun messageFor(key: String): Message<String> {
+        val payload = """{"Records":[{"s3":{"bucket":{"name":"bucket"},"object":{"key":"$key"}}}]}"""
+        return MessageBuilder.withPayload(payload)
+                .setHeader(AwsHeaders.RECEIPT_HANDLE, "receipt")
+                .setHeader(AwsHeaders.ACKNOWLEDGMENT, acknowledgment)
+                .build()
+    }
+}
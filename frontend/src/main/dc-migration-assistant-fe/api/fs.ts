@@ -37,6 +37,7 @@ export type FileSystemMigrationStatusResponse = {
     status: 'NOT_STARTED' | 'FAILED' | 'UPLOADING' | 'DOWNLOADING' | 'DONE';
     elapsedTime: MigrationDuration;
     failedFiles: Array<FailedFile>;
+    failedFilesCount: number;
     uploadedFiles: number;
     filesFound: number;
     crawlingFinished: boolean;
@@ -32,11 +32,11 @@ dummyStarted.subtract(23, 'minutes');
 
 const getErrorFromResult = (result: FileSystemMigrationStatusResponse): ReactNode | undefined => {
     if (result?.failedFiles.length > 0) {
-        const failedFilesCount = result.failedFiles.length;
+        const { failedFilesCount } = result;
         return (
             <>
                 <strong>{failedFilesCount} files</strong> failed to upload.{' '}
-                {failedFilesCount === 100 &&
+                {failedFilesCount > result.failedFiles.length &&
                     I18n.getText('atlassian.migration.datacenter.fs.error.maxFailedFiles')}
                 <p />
                 {I18n.getText('atlassian.migration.datacenter.fs.error.resolutionAction')}
@@ -24,6 +24,8 @@ import com.atlassian.jira.util.BuildUtilsInfo;
 import com.atlassian.migration.datacenter.core.application.ApplicationConfiguration;
 import com.atlassian.migration.datacenter.core.application.JiraConfiguration;
 import com.atlassian.migration.datacenter.core.aws.AWSMigrationService;
+import com.atlassian.migration.datacenter.core.aws.AwsClientRegistry;
+import com.atlassian.migration.datacenter.core.aws.AwsRequestMetrics;
 import com.atlassian.migration.datacenter.core.aws.AwsMigrationServiceWrapper;
 import com.atlassian.migration.datacenter.core.aws.CancellableMigrationServiceHandler;
 import com.atlassian.migration.datacenter.core.aws.CfnApi;
@@ -67,11 +69,16 @@ import com.atlassian.migration.datacenter.core.db.DefaultDatabaseExtractorFactor
 import com.atlassian.migration.datacenter.core.db.PostgresClientTooling;
 import com.atlassian.migration.datacenter.core.fs.DefaultFileSystemMigrationReportManager;
 import com.atlassian.migration.datacenter.core.fs.DefaultFilesystemUploaderFactory;
+import com.atlassian.migration.datacenter.core.fs.FileReadExecutor;
 import com.atlassian.migration.datacenter.core.fs.FileSystemMigrationReportManager;
 import com.atlassian.migration.datacenter.core.fs.FilesystemUploaderFactory;
+import com.atlassian.migration.datacenter.core.fs.MultipartUploadCleaner;
 import com.atlassian.migration.datacenter.core.fs.S3FilesystemMigrationService;
 import com.atlassian.migration.datacenter.core.fs.S3UploaderFactory;
 import com.atlassian.migration.datacenter.core.fs.UploaderFactory;
+import com.atlassian.migration.datacenter.core.fs.UploadLatencies;
+import com.atlassian.migration.datacenter.core.fs.UploadThrottle;
+import com.atlassian.migration.datacenter.core.fs.UploadTransportSettings;
 import com.atlassian.migration.datacenter.core.fs.captor.AttachmentSyncManager;
 import com.atlassian.migration.datacenter.core.fs.captor.DefaultAttachmentSyncManager;
 import com.atlassian.migration.datacenter.core.fs.captor.QueueWatcher;
@@ -84,6 +91,9 @@ import com.atlassian.migration.datacenter.core.fs.download.s3sync.S3SyncFileSyst
 import com.atlassian.migration.datacenter.core.fs.jira.captor.AttachmentCaptor;
 import com.atlassian.migration.datacenter.core.fs.jira.captor.DefaultAttachmentCaptor;
 import com.atlassian.migration.datacenter.core.fs.jira.listener.JiraIssueAttachmentListener;
+import com.atlassian.migration.datacenter.core.fs.reporting.DefaultFileSystemMigrationErrorReport;
+import com.atlassian.migration.datacenter.core.metrics.MetricsMBeanExporter;
+import com.atlassian.migration.datacenter.core.metrics.MetricsRegistry;
 import com.atlassian.migration.datacenter.core.util.EncryptionManager;
 import com.atlassian.migration.datacenter.core.util.MigrationRunner;
 import com.atlassian.migration.datacenter.spi.MigrationService;
@@ -97,8 +107,9 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.env.Environment;
 import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
-import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.core.retry.RetryPolicy;
 import software.amazon.awssdk.services.autoscaling.AutoScalingClient;
+import software.amazon.awssdk.services.cloudformation.CloudFormationAsyncClient;
 import software.amazon.awssdk.services.ec2.Ec2Client;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
@@ -106,63 +117,96 @@ import software.amazon.awssdk.services.secretsmanager.SecretsManagerClient;
 import software.amazon.awssdk.services.sqs.SqsAsyncClient;
 import software.amazon.awssdk.services.ssm.SsmClient;
 
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.function.Supplier;
 
 @Configuration
 public class MigrationAssistantBeanConfiguration {
+    private static final String STATE_DIRECTORY_PROPERTY = "com.atlassian.migration.datacenter.fs.stateDirectory";
 
     @Bean
-    public Supplier<S3AsyncClient> s3AsyncClientSupplier(AwsCredentialsProvider credentialsProvider, RegionService regionService) {
-        return () -> S3AsyncClient.builder()
+    public AwsClientRegistry awsClientRegistry(AwsCredentialsProvider credentialsProvider, RegionService regionService, ReadCredentialsService readCredentialsService) {
+        return new AwsClientRegistry(credentialsProvider, regionService, readCredentialsService);
+    }
+
+    @Bean
+    public AwsRequestMetrics awsRequestMetrics() {
+        return new AwsRequestMetrics();
+    }
+
+    @Bean
+    public Supplier<S3AsyncClient> s3AsyncClientSupplier(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics) {
+        // Carries the uploads, so its transport is sized for the upload concurrency rather than the SDK defaults. The
+        // uploaders retry failed requests with their own backoff and budget, which SDK retries would multiply.
+        final UploadTransportSettings transport = UploadTransportSettings.fromSystemProperties();
+        return clientRegistry.supplier(S3AsyncClient.class, (credentialsProvider, region) -> S3AsyncClient.builder()
                 .credentialsProvider(credentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration().toBuilder()
+                        .retryPolicy(RetryPolicy.none())
+                        .build())
+                .httpClientBuilder(transport.httpClientBuilder())
+                .build());
     }
 
     @Bean
-    public Supplier<S3Client> s3ClientSupplier(AwsCredentialsProvider credentialsProvider, RegionService regionService) {
-        return () -> S3Client.builder()
+    public Supplier<S3Client> s3ClientSupplier(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics) {
+        return clientRegistry.supplier(S3Client.class, (credentialsProvider, region) -> S3Client.builder()
                 .credentialsProvider(credentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
     }
 
     @Bean
-    public Supplier<SsmClient> ssmClient(AwsCredentialsProvider credentialsProvider, RegionService regionService) {
-        return () -> SsmClient.builder()
+    public Supplier<SsmClient> ssmClient(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics) {
+        return clientRegistry.supplier(SsmClient.class, (credentialsProvider, region) -> SsmClient.builder()
                 .credentialsProvider(credentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
     }
 
     @Bean
-    public Supplier<SecretsManagerClient> secretsManagerClient(AwsCredentialsProvider credentialsProvider, RegionService regionService) {
-        return () -> SecretsManagerClient.builder()
+    public Supplier<SecretsManagerClient> secretsManagerClient(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics) {
+        return clientRegistry.supplier(SecretsManagerClient.class, (credentialsProvider, region) -> SecretsManagerClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
+    }
+
+    @Bean Supplier<AutoScalingClient> autoScalingClient(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics) {
+        return clientRegistry.supplier(AutoScalingClient.class, (credentialsProvider, region) -> AutoScalingClient.builder()
                 .credentialsProvider(credentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
     }
 
-    @Bean Supplier<AutoScalingClient> autoScalingClient(AwsCredentialsProvider credentialsProvider, RegionService regionService) {
-        return () -> AutoScalingClient.builder()
+    @Bean Supplier<SqsAsyncClient> sqsAsyncClient(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics){
+        return clientRegistry.supplier(SqsAsyncClient.class, (credentialsProvider, region) -> SqsAsyncClient.builder()
                 .credentialsProvider(credentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
     }
 
-    @Bean Supplier<SqsAsyncClient> sqsAsyncClient(AwsCredentialsProvider awsCredentialsProvider, RegionService regionService){
-        return () -> SqsAsyncClient.builder()
-                .credentialsProvider(awsCredentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+    @Bean Supplier<Ec2Client> ec2Client(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics){
+        return clientRegistry.supplier(Ec2Client.class, (credentialsProvider, region) -> Ec2Client.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
     }
 
-    @Bean Supplier<Ec2Client> ec2Client(AwsCredentialsProvider awsCredentialsProvider, RegionService regionService){
-        return () -> Ec2Client.builder()
-                .credentialsProvider(awsCredentialsProvider)
-                .region(Region.of(regionService.getRegion()))
-                .build();
+    @Bean Supplier<CloudFormationAsyncClient> cloudFormationAsyncClient(AwsClientRegistry clientRegistry, AwsRequestMetrics requestMetrics){
+        return clientRegistry.supplier(CloudFormationAsyncClient.class, (credentialsProvider, region) -> CloudFormationAsyncClient.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(region)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build());
     }
 
     @Bean
@@ -223,13 +267,14 @@ public class MigrationAssistantBeanConfiguration {
     @Bean
     public DatabaseArtifactS3UploadService databaseArtifactS3UploadService(Supplier<S3AsyncClient> s3AsyncClientSupplier,
                                                                            DatabaseUploadStageTransitionCallback uploadStageTransitionCallback,
-                                                                           FileSystemMigrationReportManager reportManager) {
-        return new DatabaseArtifactS3UploadService(s3AsyncClientSupplier, uploadStageTransitionCallback, reportManager);
+                                                                           FileSystemMigrationReportManager reportManager,
+                                                                           MetricsRegistry metricsRegistry) {
+        return new DatabaseArtifactS3UploadService(s3AsyncClientSupplier, uploadStageTransitionCallback, reportManager, metricsRegistry);
     }
 
     @Bean
-    public FileSystemMigrationReportManager fileSystemMigrationReportManager() {
-        return new DefaultFileSystemMigrationReportManager();
+    public FileSystemMigrationReportManager fileSystemMigrationReportManager(JiraHome jiraHome) {
+        return new DefaultFileSystemMigrationReportManager(DefaultFileSystemMigrationErrorReport.logDirectory(stateDirectory(jiraHome)));
     }
 
     @Bean
@@ -285,8 +330,8 @@ public class MigrationAssistantBeanConfiguration {
     }
 
     @Bean
-    public DatabaseArchivalService databaseArchivalService(DatabaseExtractorFactory databaseExtractorFactory, DatabaseArchiveStageTransitionCallback archiveStageTransitionCallback) {
-        return new DatabaseArchivalService(databaseExtractorFactory, archiveStageTransitionCallback);
+    public DatabaseArchivalService databaseArchivalService(DatabaseExtractorFactory databaseExtractorFactory, DatabaseArchiveStageTransitionCallback archiveStageTransitionCallback, MetricsRegistry metricsRegistry) {
+        return new DatabaseArchivalService(databaseExtractorFactory, archiveStageTransitionCallback, metricsRegistry);
     }
 
     @Bean
@@ -295,8 +340,12 @@ public class MigrationAssistantBeanConfiguration {
     }
 
     @Bean
-    public AvailabilityZoneManager availabilityZoneManager(AwsCredentialsProvider awsCredentialsProvider, GlobalInfrastructure globalInfrastructure) {
-        return new AvailabilityZoneManager(awsCredentialsProvider, globalInfrastructure);
+    public AvailabilityZoneManager availabilityZoneManager(AwsClientRegistry clientRegistry, GlobalInfrastructure globalInfrastructure, AwsRequestMetrics requestMetrics) {
+        return new AvailabilityZoneManager(region -> clientRegistry.get(Ec2Client.class, region, (credentialsProvider, clientRegion) -> Ec2Client.builder()
+                .credentialsProvider(credentialsProvider)
+                .region(clientRegion)
+                .overrideConfiguration(requestMetrics.overrideConfiguration())
+                .build()), globalInfrastructure);
     }
 
     @Bean
@@ -305,8 +354,8 @@ public class MigrationAssistantBeanConfiguration {
     }
 
     @Bean
-    public CfnApi cfnApi(AwsCredentialsProvider awsCredentialsProvider, RegionService regionService) {
-        return new CfnApi(awsCredentialsProvider, regionService);
+    public CfnApi cfnApi(Supplier<CloudFormationAsyncClient> cloudFormationClientSupplier) {
+        return new CfnApi(cloudFormationClientSupplier);
     }
 
     @Bean
@@ -327,18 +376,60 @@ public class MigrationAssistantBeanConfiguration {
     }
 
     @Bean
-    public UploaderFactory uploaderFactory(AWSMigrationHelperDeploymentService helperDeploymentService, Supplier<S3AsyncClient> clientSupplier, JiraHome jiraHome) {
-        return new S3UploaderFactory(helperDeploymentService, clientSupplier, jiraHome.getHome().toPath());
+    public UploadThrottle uploadThrottle() {
+        return UploadThrottle.fromSystemProperties();
+    }
+
+    @Bean
+    public UploadLatencies uploadLatencies() {
+        return new UploadLatencies();
+    }
+
+    @Bean
+    public FileReadExecutor fileReadExecutor() {
+        return FileReadExecutor.fromSystemProperties();
+    }
+
+    @Bean
+    public MetricsRegistry metricsRegistry() {
+        return new MetricsRegistry();
+    }
+
+    @Bean
+    public MetricsMBeanExporter metricsMBeanExporter(MetricsRegistry metricsRegistry) {
+        return new MetricsMBeanExporter(metricsRegistry);
     }
 
     @Bean
-    public FilesystemUploaderFactory filesystemUploaderFactory(UploaderFactory uploaderFactory) {
-        return new DefaultFilesystemUploaderFactory(uploaderFactory);
+    public UploaderFactory uploaderFactory(AWSMigrationHelperDeploymentService helperDeploymentService, Supplier<S3AsyncClient> clientSupplier, JiraHome jiraHome, UploadThrottle uploadThrottle, UploadLatencies uploadLatencies, MetricsRegistry metricsRegistry, FileReadExecutor fileReadExecutor) {
+        return new S3UploaderFactory(helperDeploymentService, clientSupplier, jiraHome.getHome().toPath(), uploadThrottle, uploadLatencies, metricsRegistry, fileReadExecutor);
     }
 
     @Bean
-    public S3BulkCopy s3BulkCopy(JiraHome jiraHome, FilesystemUploaderFactory filesystemUploaderFactory, FileSystemMigrationReportManager reportManager) {
-        return new S3BulkCopy(jiraHome.getHome().toPath(), filesystemUploaderFactory, reportManager);
+    public FilesystemUploaderFactory filesystemUploaderFactory(UploaderFactory uploaderFactory, MetricsRegistry metricsRegistry) {
+        return new DefaultFilesystemUploaderFactory(uploaderFactory, metricsRegistry);
+    }
+
+    @Bean
+    public S3BulkCopy s3BulkCopy(JiraHome jiraHome, FilesystemUploaderFactory filesystemUploaderFactory, FileSystemMigrationReportManager reportManager, MigrationService migrationService) {
+        return new S3BulkCopy(jiraHome.getHome().toPath(), filesystemUploaderFactory, reportManager, migrationService, stateDirectory(jiraHome));
+    }
+
+    @Bean
+    public MultipartUploadCleaner multipartUploadCleaner(EventPublisher eventPublisher, Supplier<S3AsyncClient> clientSupplier, JiraHome jiraHome) {
+        return new MultipartUploadCleaner(eventPublisher, clientSupplier, stateDirectory(jiraHome));
+    }
+
+    /**
+     * The directory of the state which has to survive a restart of Jira, i.e. the crawl manifests, the journals of
+     * multipart uploads and the logs of failed files. Defaults to the local home rather than the temporary directory,
+     * which is commonly wiped on reboot.
+     */
+    private static Path stateDirectory(JiraHome jiraHome) {
+        final String directory = System.getProperty(STATE_DIRECTORY_PROPERTY);
+        return directory != null
+                ? Paths.get(directory)
+                : jiraHome.getLocalHome().toPath().resolve("dc-migration-assistant");
     }
 
     @Bean
@@ -389,8 +480,12 @@ public class MigrationAssistantBeanConfiguration {
                                                QueueWatcher queueWatcher,
                                                JiraIssueAttachmentListener attachmentListener,
                                                FileSystemMigrationReportManager reportManager,
-                                               SqsApi sqsApi) {
-        return new S3FinalSyncRunner(attachmentSyncManager, s3ClientSupplier, jiraHome.getHome().toPath(), helperDeploymentService, queueWatcher, attachmentListener, reportManager, sqsApi);
+                                               SqsApi sqsApi,
+                                               UploadThrottle uploadThrottle,
+                                               UploadLatencies uploadLatencies,
+                                               MetricsRegistry metricsRegistry,
+                                               FileReadExecutor fileReadExecutor) {
+        return new S3FinalSyncRunner(attachmentSyncManager, s3ClientSupplier, jiraHome.getHome().toPath(), helperDeploymentService, queueWatcher, attachmentListener, reportManager, sqsApi, uploadThrottle, uploadLatencies, metricsRegistry, fileReadExecutor);
     }
 
     @Bean
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atlassian.migration.datacenter.spi.fs.reporting
+package com.atlassian.migration.datacenter.spi.fs.reporting
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect
+
+/**
+ * A change of the number of upload requests which may be in flight to S3 at the same time.
+ *
+ * @param timestamp when the limit was changed, in milliseconds since the epoch
+ * @param previousLimit the limit before the change
+ * @param newLimit the limit after the change
+ * @param reason what caused the change, e.g. S3 throttling the uploads
+ */
+@JsonAutoDetect
+class ConcurrencyAdjustment(val timestamp: Long, val previousLimit: Int, val newLimit: Int, val reason: String)
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2020 Atlassian
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atlassian.migration.datacenter.spi.fs.reporting
+
+import com.fasterxml.jackson.annotation.JsonAutoDetect
+
+/**
+ * A page of the files which failed to migrate, in the order they were reported.
+ *
+ * @param failedFiles the failures on this page, empty once the end of the failures reported so far is reached
+ * @param nextCursor  the cursor to read the next page from. More failures may be reported later, so reading from the
+ * cursor of the last page again picks them up.
+ */
+@JsonAutoDetect
+class FailedFilePage(val failedFiles: List<FailedFileMigration>, val nextCursor: Long)
@@ -15,6 +15,7 @@
  */
 package com.atlassian.migration.datacenter.spi.fs.reporting
 
+import com.fasterxml.jackson.annotation.JsonProperty
 import com.fasterxml.jackson.databind.annotation.JsonSerialize
 
 /**
@@ -23,10 +24,31 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize
 @JsonSerialize(`as` = FileSystemMigrationErrorReport::class)
 interface FileSystemMigrationErrorReport {
     /**
-     * Retrieves a set containing the files which have failed to migrate.
+     * Retrieves a set containing the first files which have failed to migrate. Implementers may limit how many files
+     * are kept here, all of them are read with [FileSystemMigrationErrorReport.readFailedFiles].
      */
     val failedFiles: Set<FailedFileMigration>
 
+    /**
+     * Gets the number of files which have failed to migrate.
+     */
+    @JsonProperty("failedFilesCount")
+    fun getFailedFilesCount(): Long
+
+    /**
+     * Gets the number of files which have failed to migrate, by reason of the failure.
+     */
+    @JsonProperty("failureReasons")
+    fun getFailedFilesCountByReason(): Map<String, Long>
+
+    /**
+     * Reads a page of all the files which have failed to migrate, in the order they were reported.
+     *
+     * @param cursor where to start reading, 0 for the first page or the [FailedFilePage.nextCursor] of the previous page
+     * @param limit  the maximum number of failures to read
+     */
+    fun readFailedFiles(cursor: Long, limit: Int): FailedFilePage
+
     /**
      * Reports that a file has failed to migrate. Implementers should be careful that the underlying
      * collection is thread safe as this may be called from multiple file upload threads.
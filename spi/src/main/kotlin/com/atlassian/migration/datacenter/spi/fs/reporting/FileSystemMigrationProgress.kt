@@ -31,6 +31,17 @@ interface FileSystemMigrationProgress {
 
     fun reportFileFound()
 
+    /**
+     * Gets the total size in bytes of the files which have been found to migrate.
+     */
+    @JsonProperty("bytesFound")
+    fun getBytesFound(): Long
+
+    /**
+     * Reports the size of a file which was found to migrate.
+     */
+    fun reportBytesFound(bytes: Long)
+
     /**
      * @return true if all files have been discovered by the migration, false otherwise. At this point, [FileSystemMigrationProgress.getNumberOfFilesFound]
      * should return the number of files that will be migrated
@@ -62,6 +73,24 @@ interface FileSystemMigrationProgress {
      */
     fun reportFileUploaded()
 
+    /**
+     * Gets the total size in bytes of the files which have been successfully migrated
+     */
+    @JsonProperty("uploadedBytes")
+    fun getBytesUploaded(): Long
+
+    /**
+     * Reports the size of a file which was migrated successfully. Implementers should be careful that the underlying
+     * collection is thread safe as this may be called from multiple file upload threads.
+     */
+    fun reportBytesUploaded(bytes: Long)
+
+    /**
+     * Reports that a file didn't need to be uploaded as a previous migration already uploaded it. The file and its
+     * bytes count as uploaded, but not towards the upload rates, which only measure what is actually transferred.
+     */
+    fun reportFileSkipped(bytes: Long)
+
     /**
      * Gets the number of files that have been successfully downloaded on the remote application
      */
@@ -72,4 +101,61 @@ interface FileSystemMigrationProgress {
      * Sets the number of files which were downloaded on the remote application
      */
     fun setNumberOfFilesDownloaded(downloadedFiles: Long)
+
+    /**
+     * Gets the total size in bytes of the files that have been downloaded on the remote application
+     */
+    @JsonProperty("downloadedBytes")
+    fun getBytesDownloaded(): Long
+
+    /**
+     * Sets the number of bytes which were downloaded on the remote application
+     */
+    fun setNumberOfBytesDownloaded(downloadedBytes: Long)
+
+    /**
+     * Gets the moving average of the bytes uploaded per second over the last few minutes
+     */
+    @JsonProperty("uploadBytesPerSecond")
+    fun getUploadBytesPerSecond(): Double
+
+    /**
+     * Gets the moving average of the files uploaded per second over the last few minutes
+     */
+    @JsonProperty("uploadFilesPerSecond")
+    fun getUploadFilesPerSecond(): Double
+
+    /**
+     * Gets the moving average of the bytes downloaded per second on the remote application over the last few minutes
+     */
+    @JsonProperty("downloadBytesPerSecond")
+    fun getDownloadBytesPerSecond(): Double
+
+    /**
+     * Gets the estimated number of seconds until the files found so far are uploaded and downloaded, based on the
+     * current rates. While crawling is still running this is a lower bound.
+     *
+     * @return the estimate, or null if it can't be made yet, e.g. because nothing has been uploaded or the download
+     * rate isn't known
+     */
+    @JsonProperty("estimatedSecondsRemaining")
+    fun getEstimatedSecondsRemaining(): Long?
+
+    /**
+     * Gets the number of upload requests which may currently be in flight to S3
+     */
+    @JsonProperty("uploadConcurrency")
+    fun getUploadConcurrency(): Int
+
+    /**
+     * Gets the most recent changes of the upload concurrency, oldest first
+     */
+    @JsonProperty("uploadConcurrencyAdjustments")
+    fun getUploadConcurrencyAdjustments(): List<ConcurrencyAdjustment>
+
+    /**
+     * Reports that the upload concurrency was changed. Implementers should be careful that the underlying
+     * collection is thread safe as this may be called from multiple file upload threads.
+     */
+    fun reportUploadConcurrencyAdjusted(adjustment: ConcurrencyAdjustment)
 }
\ No newline at end of file
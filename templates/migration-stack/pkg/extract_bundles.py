@@ -0,0 +1,136 @@
+#!/usr/bin/python3
+
+import json
+import os
+import struct
+import subprocess
+import sys
+
+# Bundles of small files uploaded by the DC Migration Assistant. The layout is described in SmallFileBundle of the
+# migration assistant:
+# | magic (4) | version (4) | then per file: | key length (2) | key | size (8) | mtime (8) | content (size) |
+# | 0 (2) | file count (4) | content offset (8) per file |
+BUNDLE_PREFIX = ".dc-migration-bundles/"
+BUNDLE_SUFFIX = ".bundle"
+MAGIC = 0x44434d42
+VERSION = 1
+COPY_BUFFER_SIZE = 1024 * 1024
+PARTIAL_SUFFIX = ".dc-migration-partial"
+
+# Lists the keys of all bundles in the migration bucket
+def listBundles(bucket: str) -> list:
+    output = subprocess.check_output(["aws", "s3api", "list-objects-v2", "--bucket", bucket, "--prefix", BUNDLE_PREFIX, "--query", "Contents[].Key", "--output", "json"])
+    keys = json.loads(output.decode("utf-8")) or []
+    return [key for key in keys if key.endswith(BUNDLE_SUFFIX)]
+
+def readFully(stream, length: int) -> bytes:
+    data = stream.read(length)
+    if len(data) != length:
+        raise EOFError("bundle ended {} bytes early".format(length - len(data)))
+    return data
+
+def copy(stream, output, length: int):
+    remaining = length
+    while remaining > 0:
+        data = stream.read(min(COPY_BUFFER_SIZE, remaining))
+        if not data:
+            raise EOFError("bundle ended {} bytes early".format(remaining))
+        output.write(data)
+        remaining -= len(data)
+
+def skip(stream, length: int):
+    remaining = length
+    while remaining > 0:
+        data = stream.read(min(COPY_BUFFER_SIZE, remaining))
+        if not data:
+            raise EOFError("bundle ended {} bytes early".format(remaining))
+        remaining -= len(data)
+
+# Bundles of earlier passes stay in the bucket and are listed in no particular order, and aws s3 sync has already
+# restored the files uploaded on their own with the time of their upload. So a file is only extracted when there is no
+# copy of it which was modified at the same time or later.
+def isAtLeastAsNew(path: str, lastModified: int) -> bool:
+    try:
+        return os.stat(path).st_mtime_ns // 1000000 >= lastModified
+    except FileNotFoundError:
+        return False
+
+# Writes every file of the bundle next to its target first and moves it into place once complete, so that a failed
+# extraction doesn't leave truncated files in the home directory
+def extractBundle(bundleKey: str, bundle, home: str, progress: dict) -> int:
+    magic, version = struct.unpack(">ii", readFully(bundle, 8))
+    if magic != MAGIC or version != VERSION:
+        raise ValueError("{} is not a bundle this script can read".format(bundleKey))
+
+    extracted = 0
+    files = 0
+    while True:
+        (keyLength,) = struct.unpack(">H", readFully(bundle, 2))
+        if keyLength == 0:
+            break
+        key = readFully(bundle, keyLength).decode("utf-8")
+        size, lastModified = struct.unpack(">qq", readFully(bundle, 16))
+        files += 1
+
+        path = os.path.realpath(os.path.join(home, key))
+        if os.path.commonpath([home, path]) != home:
+            raise ValueError("{} contains {}, which is outside of the home directory".format(bundleKey, key))
+        if isAtLeastAsNew(path, lastModified):
+            skip(bundle, size)
+            # A copy at least as new is in place, so the file counts as restored
+            progress['files'] += 1
+            progress['bytes'] += size
+            continue
+        os.makedirs(os.path.dirname(path), exist_ok=True)
+        partialPath = path + PARTIAL_SUFFIX
+        try:
+            with open(partialPath, "wb") as output:
+                copy(bundle, output, size)
+            os.utime(partialPath, (lastModified / 1000, lastModified / 1000))
+            os.replace(partialPath, path)
+        except BaseException:
+            if os.path.exists(partialPath):
+                os.remove(partialPath)
+            raise
+        extracted += 1
+        progress['files'] += 1
+        progress['bytes'] += size
+
+    (indexedFiles,) = struct.unpack(">i", readFully(bundle, 4))
+    if indexedFiles != files:
+        raise ValueError("{} holds {} files but its index lists {}".format(bundleKey, files, indexedFiles))
+    # The content offsets aren't needed, but the download has to finish to succeed
+    bundle.read()
+    return extracted
+
+# Replaces the status file in one go, as it is read by the status script while the extraction runs
+def writeStatus(statusFilePath: str, progress: dict):
+    partialPath = statusFilePath + PARTIAL_SUFFIX
+    with open(partialPath, "w") as statusFile:
+        json.dump(progress, statusFile)
+    os.replace(partialPath, statusFilePath)
+
+if len(sys.argv) != 4:
+    print("Usage: {} <bucket> <home directory> <status file>".format(sys.argv[0]))
+    exit(1)
+
+bucket = sys.argv[1]
+home = os.path.realpath(sys.argv[2])
+status_file_path = sys.argv[3]
+
+progress = {'files': 0, 'bytes': 0}
+writeStatus(status_file_path, progress)
+
+for bundle_key in listBundles(bucket):
+    download = subprocess.Popen(["aws", "s3", "cp", "s3://{}/{}".format(bucket, bundle_key), "-"], stdout=subprocess.PIPE)
+    try:
+        extracted = extractBundle(bundle_key, download.stdout, home, progress)
+    finally:
+        download.stdout.close()
+        exit_code = download.wait()
+    if exit_code != 0:
+        raise RuntimeError("download of {} failed with exit code {}".format(bundle_key, exit_code))
+    writeStatus(status_file_path, progress)
+    print("extracted {} file(s) from {}".format(extracted, bundle_key))
+
+exit(0)
@@ -54,16 +54,31 @@ def parseSyncOutput(last_line_of_output):
     else:
         raise ValueError('could not find sync progress in sync output {}'.format(last_line_of_output))
 
+# Counts the files downloaded by the s3 sync, which logs a line for every file it downloads
+def countDownloadedFiles(syncFilePath: str) -> int:
+    with open(syncFilePath, errors="replace") as syncFile:
+        return sum(line.count("download: s3://") for line in syncFile)
+
+# Reads the number of files and bytes extracted from bundles so far, which the s3 sync skips. There is no status
+# before the extraction starts, i.e. while the s3 sync runs
+def readExtractionStatus(extractionStatusFilePath: str) -> dict:
+    try:
+        with open(extractionStatusFilePath) as extractionStatusFile:
+            return json.load(extractionStatusFile)
+    except FileNotFoundError:
+        return {'files': 0, 'bytes': 0}
+
 def parseError(error_file_path: str) -> str:
     with open(error_file_path) as errFile:
         return errFile.readlines()
 
-if len(sys.argv) != 3:
-    print("Usage: {} <output file> <error file>".format(sys.argv[0]))
+if len(sys.argv) not in (3, 4):
+    print("Usage: {} <output file> <error file> [<extraction status file>]".format(sys.argv[0]))
     exit(1)
 
 output_file_path = sys.argv[1]
 error_file_path = sys.argv[2]
+extraction_status_file_path = sys.argv[3] if len(sys.argv) == 4 else None
 
 last_line = getLastLineOfSyncOutput(output_file_path)
 
@@ -86,6 +101,17 @@ try:
 except ValueError:
     progress = {}
 
+try:
+    files_downloaded = countDownloadedFiles(output_file_path)
+    if extraction_status_file_path is not None:
+        extraction = readExtractionStatus(extraction_status_file_path)
+        files_downloaded += extraction['files']
+        if 'progress' in progress:
+            progress['progress'] += extraction['bytes']
+    progress['files_downloaded'] = files_downloaded
+except (OSError, ValueError, KeyError):
+    pass
+
 result['status'] = progress
 
 print(json.dumps(result))